@@ -0,0 +1,147 @@
+package com.fbudassi.logger;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fbudassi.logger.async.AsyncDispatcher;
+
+/**
+ * Cost of a log call for the producer with AsyncJULJobLogger: the level check and the copy into the ring buffer of the AsyncDispatcher. The enabled path
+ * is measured through the logger and on the dispatcher alone, the disabled one through the logger.
+ * 
+ * Records go to a handler that does nothing, so the consumer thread keeps up and producers don't wait for free slots while the buffer isn't full.
+ * 
+ * @author fbudassi
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AsyncJobLoggerBenchmark {
+
+	private static final String MSG = "Test log message";
+	private static final String MSG_PARAMS = "Job {0} processed {1} records in {2} ms";
+
+	private AsyncJULJobLogger enabled;
+	private AsyncJULJobLogger disabled;
+	private AsyncDispatcher dispatcher;
+
+	/**
+	 * Not final, so the JIT can't fold them.
+	 */
+	private Object param1 = "job-42";
+	private Object param2 = 1000;
+	private Object param3 = 25L;
+
+	@Setup
+	public void setup() throws Exception {
+		enabled = newLogger("AsyncJobLoggerBenchmark.enabled", "ALL");
+		disabled = newLogger("AsyncJobLoggerBenchmark.disabled", "ERROR");
+		dispatcher = AsyncJULJobLogger.getDispatcher(newProperties("ALL"));
+	}
+
+	@TearDown
+	public void tearDown() {
+		AsyncJULJobLogger.closeDispatcher();
+		enabled.close();
+		disabled.close();
+	}
+
+	/**
+	 * Enabled path.
+	 */
+	@Benchmark
+	public void enabledMessage() {
+		enabled.message(MSG);
+	}
+
+	@Benchmark
+	public void enabledParam3() {
+		enabled.message(MSG_PARAMS, param1, param2, param3);
+	}
+
+	@Benchmark
+	public boolean dispatcherPublish() {
+		return dispatcher.publish(enabled.getLogger(), JULJobLoggerLevel.MESSAGE, MSG, null, null);
+	}
+
+	/**
+	 * Disabled path: MESSAGE is below the minimum level.
+	 */
+	@Benchmark
+	public void disabledMessage() {
+		disabled.message(MSG);
+	}
+
+	@Benchmark
+	public void disabledParam3() {
+		disabled.message(MSG_PARAMS, param1, param2, param3);
+	}
+
+	/**
+	 * Build an AsyncJULJobLogger without sinks, publishing to a handler that does nothing.
+	 * 
+	 * @param name
+	 * @param minLevel
+	 * @return
+	 * @throws Exception
+	 */
+	private static AsyncJULJobLogger newLogger(String name, String minLevel) throws Exception {
+		AsyncJULJobLogger ajl = new AsyncJULJobLogger();
+		ajl.init(name, newProperties(minLevel));
+
+		Logger logger = ajl.getLogger();
+		logger.setUseParentHandlers(false);
+		logger.addHandler(new Handler() {
+			@Override
+			public void publish(LogRecord record) {
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+		return ajl;
+	}
+
+	/**
+	 * Return the default properties without sinks.
+	 * 
+	 * @param minLevel
+	 * @return
+	 */
+	private static Properties newProperties(String minLevel) {
+		Properties props = new Properties();
+		for (JobLoggerProperty jlp : JobLoggerProperty.values()) {
+			if (jlp.getDefault() != null) {
+				props.setProperty(jlp.getKey(), jlp.getDefault());
+			}
+		}
+		props.setProperty(JobLoggerProperty.CONSOLE_ENABLED.getKey(), "false");
+		props.setProperty(JobLoggerProperty.FILE_ENABLED.getKey(), "false");
+		props.setProperty(JobLoggerProperty.DB_ENABLED.getKey(), "false");
+		props.setProperty(JobLoggerProperty.MIN_LEVEL.getKey(), minLevel);
+		return props;
+	}
+}
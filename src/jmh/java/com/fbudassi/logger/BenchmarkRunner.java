@@ -0,0 +1,58 @@
+package com.fbudassi.logger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatFactory;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks at every thread count with the GC profiler, and writes all the results to a single JSON file.
+ * 
+ * Usage: BenchmarkRunner &lt;results file&gt; [include regexp]
+ * 
+ * @author fbudassi
+ */
+public final class BenchmarkRunner {
+
+	private static final int[] THREADS = { 1, 4, 16 };
+	private static final String DEFAULT_INCLUDE = "com\\.fbudassi\\.logger\\..*Benchmark\\..*";
+
+	/**
+	 * Private to prevent instantiation.
+	 */
+	private BenchmarkRunner() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Usage: BenchmarkRunner <results file> [include regexp]");
+			System.exit(1);
+		}
+
+		File resultsFile = new File(args[0]);
+		String include = args.length > 1 ? args[1] : DEFAULT_INCLUDE;
+
+		List<RunResult> results = new ArrayList<>();
+		for (int threads : THREADS) {
+			Options options = new OptionsBuilder().include(include).threads(threads).addProfiler(GCProfiler.class).build();
+			results.addAll(new Runner(options).run());
+		}
+
+		if (resultsFile.getParentFile() != null) {
+			resultsFile.getParentFile().mkdirs();
+		}
+		try (PrintStream out = new PrintStream(new FileOutputStream(resultsFile), true, "UTF-8")) {
+			ResultFormatFactory.getInstance(ResultFormatType.JSON, out).writeOut(results);
+		}
+		System.out.println("Benchmark results written to " + resultsFile.getAbsolutePath());
+	}
+}
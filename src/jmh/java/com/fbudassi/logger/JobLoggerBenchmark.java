@@ -0,0 +1,322 @@
+package com.fbudassi.logger;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fbudassi.logger.sink.EventSink;
+import com.fbudassi.logger.sink.LogEvent;
+
+/**
+ * Cost of a log call for every JobLogger overload: enabled and disabled JULJobLogger paths, and NullJobLogger as the baseline. ERROR and WARN calls take the
+ * same path as MESSAGE, so only the MESSAGE overloads are measured. The main overloads are measured on DirectJobLogger too, to compare both pipelines.
+ * Structured calls add three fields, one of each kind.
+ * 
+ * Enabled records go to a handler (or sink) that does nothing, so the logger is measured and not the destination.
+ * 
+ * @author fbudassi
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JobLoggerBenchmark {
+
+	private static final String MSG = "Test log message";
+	private static final String MSG_PARAMS = "Job {0} processed {1} records in {2} ms";
+
+	private JULJobLogger enabled;
+	private JULJobLogger disabled;
+	private DirectJobLogger directEnabled;
+	private DirectJobLogger directDisabled;
+	private JobLogger nullLogger;
+
+	/**
+	 * Not final, so the JIT can't fold them.
+	 */
+	private Object param1 = "job-42";
+	private Object param2 = 1000;
+	private Object param3 = 25L;
+	private long longParam = 42L;
+	private int intParam = 7;
+	private Throwable thrown = new IllegalStateException("Benchmark exception");
+	private Supplier<String> supplier = new Supplier<String>() {
+		@Override
+		public String get() {
+			return MSG;
+		}
+	};
+
+	@Setup
+	public void setup() throws Exception {
+		enabled = newLogger("JobLoggerBenchmark.enabled", "ALL");
+		disabled = newLogger("JobLoggerBenchmark.disabled", "ERROR");
+		directEnabled = newDirectLogger("JobLoggerBenchmark.directEnabled", "ALL");
+		directDisabled = newDirectLogger("JobLoggerBenchmark.directDisabled", "ERROR");
+		nullLogger = NullJobLogger.NULL_JOB_LOGGER;
+	}
+
+	@TearDown
+	public void tearDown() {
+		enabled.close();
+		disabled.close();
+		directEnabled.close();
+		directDisabled.close();
+	}
+
+	/**
+	 * Enabled path.
+	 */
+	@Benchmark
+	public void enabledMessage() {
+		enabled.message(MSG);
+	}
+
+	@Benchmark
+	public void enabledVarargs() {
+		enabled.message(MSG_PARAMS, param1, param2, param3, longParam);
+	}
+
+	@Benchmark
+	public void enabledThrown() {
+		enabled.message(MSG, thrown);
+	}
+
+	@Benchmark
+	public void enabledSupplier() {
+		enabled.message(supplier);
+	}
+
+	@Benchmark
+	public void enabledParam1() {
+		enabled.message(MSG_PARAMS, param1);
+	}
+
+	@Benchmark
+	public void enabledParam2() {
+		enabled.message(MSG_PARAMS, param1, param2);
+	}
+
+	@Benchmark
+	public void enabledParam3() {
+		enabled.message(MSG_PARAMS, param1, param2, param3);
+	}
+
+	@Benchmark
+	public void enabledLong() {
+		enabled.message(MSG_PARAMS, longParam);
+	}
+
+	@Benchmark
+	public void enabledInt() {
+		enabled.message(MSG_PARAMS, intParam);
+	}
+
+	@Benchmark
+	public void enabledStructured() {
+		enabled.atMessage(MSG).with("jobId", param1).with("rows", longParam).with("ms", intParam).log();
+	}
+
+	/**
+	 * Disabled path: MESSAGE is below the minimum level.
+	 */
+	@Benchmark
+	public void disabledMessage() {
+		disabled.message(MSG);
+	}
+
+	@Benchmark
+	public void disabledVarargs() {
+		disabled.message(MSG_PARAMS, param1, param2, param3, longParam);
+	}
+
+	@Benchmark
+	public void disabledThrown() {
+		disabled.message(MSG, thrown);
+	}
+
+	@Benchmark
+	public void disabledSupplier() {
+		disabled.message(supplier);
+	}
+
+	@Benchmark
+	public void disabledParam1() {
+		disabled.message(MSG_PARAMS, param1);
+	}
+
+	@Benchmark
+	public void disabledParam2() {
+		disabled.message(MSG_PARAMS, param1, param2);
+	}
+
+	@Benchmark
+	public void disabledParam3() {
+		disabled.message(MSG_PARAMS, param1, param2, param3);
+	}
+
+	@Benchmark
+	public void disabledLong() {
+		disabled.message(MSG_PARAMS, longParam);
+	}
+
+	@Benchmark
+	public void disabledInt() {
+		disabled.message(MSG_PARAMS, intParam);
+	}
+
+	@Benchmark
+	public void disabledStructured() {
+		disabled.atMessage(MSG).with("jobId", param1).with("rows", longParam).with("ms", intParam).log();
+	}
+
+	/**
+	 * DirectJobLogger enabled and disabled paths.
+	 */
+	@Benchmark
+	public void directEnabledMessage() {
+		directEnabled.message(MSG);
+	}
+
+	@Benchmark
+	public void directEnabledVarargs() {
+		directEnabled.message(MSG_PARAMS, param1, param2, param3, longParam);
+	}
+
+	@Benchmark
+	public void directEnabledThrown() {
+		directEnabled.message(MSG, thrown);
+	}
+
+	@Benchmark
+	public void directEnabledParam3() {
+		directEnabled.message(MSG_PARAMS, param1, param2, param3);
+	}
+
+	@Benchmark
+	public void directEnabledStructured() {
+		directEnabled.atMessage(MSG).with("jobId", param1).with("rows", longParam).with("ms", intParam).log();
+	}
+
+	@Benchmark
+	public void directDisabledMessage() {
+		directDisabled.message(MSG);
+	}
+
+	@Benchmark
+	public void directDisabledParam3() {
+		directDisabled.message(MSG_PARAMS, param1, param2, param3);
+	}
+
+	/**
+	 * Baseline.
+	 */
+	@Benchmark
+	public void nullMessage() {
+		nullLogger.message(MSG);
+	}
+
+	@Benchmark
+	public void nullVarargs() {
+		nullLogger.message(MSG_PARAMS, param1, param2, param3, longParam);
+	}
+
+	@Benchmark
+	public void nullParam3() {
+		nullLogger.message(MSG_PARAMS, param1, param2, param3);
+	}
+
+	/**
+	 * Build a JULJobLogger without sinks, publishing to a handler that does nothing.
+	 * 
+	 * @param name
+	 * @param minLevel
+	 * @return
+	 * @throws Exception
+	 */
+	private static JULJobLogger newLogger(String name, String minLevel) throws Exception {
+		JULJobLogger jjl = new JULJobLogger();
+		jjl.init(name, newProperties(minLevel));
+
+		Logger logger = jjl.getLogger();
+		logger.setUseParentHandlers(false);
+		logger.addHandler(new Handler() {
+			@Override
+			public void publish(LogRecord record) {
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+		return jjl;
+	}
+
+	/**
+	 * Build a DirectJobLogger without sinks, writing to a sink that does nothing.
+	 * 
+	 * @param name
+	 * @param minLevel
+	 * @return
+	 * @throws Exception
+	 */
+	private static DirectJobLogger newDirectLogger(String name, String minLevel) throws Exception {
+		DirectJobLogger djl = new DirectJobLogger();
+		djl.init(name, newProperties(minLevel));
+		djl.addSink("blackhole", new EventSink() {
+			@Override
+			public void write(LogEvent event) {
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+		return djl;
+	}
+
+	/**
+	 * Return the default properties without sinks.
+	 * 
+	 * @param minLevel
+	 * @return
+	 */
+	private static Properties newProperties(String minLevel) {
+		Properties props = new Properties();
+		for (JobLoggerProperty jlp : JobLoggerProperty.values()) {
+			if (jlp.getDefault() != null) {
+				props.setProperty(jlp.getKey(), jlp.getDefault());
+			}
+		}
+		props.setProperty(JobLoggerProperty.CONSOLE_ENABLED.getKey(), "false");
+		props.setProperty(JobLoggerProperty.FILE_ENABLED.getKey(), "false");
+		props.setProperty(JobLoggerProperty.DB_ENABLED.getKey(), "false");
+		props.setProperty(JobLoggerProperty.MIN_LEVEL.getKey(), minLevel);
+		return props;
+	}
+}
@@ -0,0 +1,406 @@
+package com.fbudassi.logger;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.fbudassi.logger.handler.SinkRegistry;
+import com.fbudassi.logger.metrics.JobLoggerMetrics;
+import com.fbudassi.logger.metrics.LatencyHistogram;
+import com.fbudassi.logger.metrics.MetricsSnapshot;
+
+/**
+ * End-to-end load generator. N producer threads log through JobLoggers built like JobLoggerFactory does, each one at a fixed share of a target rate, with a
+ * configurable mix of levels, parameter counts and exceptions. Console, file and HSQLDB sinks can be enabled.
+ * 
+ * Latency is measured from the time each call was scheduled to start, not from the time it actually started, so a stalled pipeline shows up in the
+ * percentiles instead of silently lowering the rate (coordinated omission). The service time, from the actual start, is reported too.
+ * 
+ * Arguments are key=value pairs, all optional:
+ * 
+ * <pre>
+ * threads=4 rate=10000 warmup=5 duration=30 sinks=file impl=com.fbudassi.logger.JULJobLogger
+ * levels=5,15,80 params=40,30,20,10 exceptions=1 metrics=true
+ * </pre>
+ * 
+ * levels are the percentages of ERROR, WARN and MESSAGE calls; params the percentages of calls with 0, 1, 2 and 3 parameters; exceptions the percentage of
+ * calls with a Throwable.
+ * 
+ * @author fbudassi
+ */
+public final class LoadGenerator {
+
+	private static final String MSG = "Job {0} processed record {1} of batch {2}";
+	private static final String DB_URL = "jdbc:hsqldb:mem:loadgenerator";
+
+	/**
+	 * 1% precision is enough for percentiles, and still fixed size.
+	 */
+	private static final int HISTOGRAM_PRECISION = 7;
+
+	private final int threads;
+	private final double rate;
+	private final long warmupNanos;
+	private final long durationNanos;
+	private final int[] levels;
+	private final int[] params;
+	private final int exceptions;
+	private final Properties props;
+
+	private final LatencyHistogram latency = new LatencyHistogram(HISTOGRAM_PRECISION);
+	private final LatencyHistogram serviceTime = new LatencyHistogram(HISTOGRAM_PRECISION);
+	private final AtomicLong completed = new AtomicLong();
+
+	/**
+	 * Private, use main().
+	 * 
+	 * @param args
+	 */
+	private LoadGenerator(Map<String, String> args) {
+		this.threads = Integer.parseInt(get(args, "threads", "4"));
+		this.rate = Double.parseDouble(get(args, "rate", "10000"));
+		this.warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(get(args, "warmup", "5")));
+		this.durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(get(args, "duration", "30")));
+		this.levels = toCumulative(get(args, "levels", "5,15,80"), 3);
+		this.params = toCumulative(get(args, "params", "40,30,20,10"), 4);
+		this.exceptions = Integer.parseInt(get(args, "exceptions", "1"));
+
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Parameter threads should be greater than zero");
+		}
+
+		if (rate <= 0) {
+			throw new IllegalArgumentException("Parameter rate should be greater than zero");
+		}
+
+		// Start from the classpath properties, like JobLoggerFactory.
+		props = JobLoggerFactory.getProperties();
+		props.setProperty(JobLoggerProperty.IMPLEMENTATION.getKey(), get(args, "impl", JULJobLogger.class.getName()));
+		props.setProperty(JobLoggerProperty.METRICS_ENABLED.getKey(), get(args, "metrics", "true"));
+
+		String sinks = get(args, "sinks", "file");
+		props.setProperty(JobLoggerProperty.CONSOLE_ENABLED.getKey(), String.valueOf(sinks.contains("console")));
+		props.setProperty(JobLoggerProperty.FILE_ENABLED.getKey(), String.valueOf(sinks.contains("file")));
+		props.setProperty(JobLoggerProperty.DB_ENABLED.getKey(), String.valueOf(sinks.contains("db")));
+		if (sinks.contains("file")) {
+			props.setProperty(JobLoggerProperty.FILE_DESTINATION.getKey(), new File(System.getProperty("java.io.tmpdir"), "loadgenerator.log").getPath());
+			props.setProperty(JobLoggerProperty.FILE_APPEND.getKey(), "false");
+		}
+		if (sinks.contains("db")) {
+			props.setProperty(JobLoggerProperty.DB_DRIVER.getKey(), "org.hsqldb.jdbcDriver");
+			props.setProperty(JobLoggerProperty.DB_URL.getKey(), DB_URL);
+			props.setProperty(JobLoggerProperty.DB_USER.getKey(), "sa");
+			props.setProperty(JobLoggerProperty.DB_PASSWORD.getKey(), "");
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> parsed = new LinkedHashMap<>();
+		for (String arg : args) {
+			int eq = arg.indexOf('=');
+			if (eq <= 0) {
+				System.err.println("Invalid argument, expected key=value: " + arg);
+				System.exit(1);
+			}
+			parsed.put(arg.substring(0, eq).trim(), arg.substring(eq + 1).trim());
+		}
+
+		new LoadGenerator(parsed).run();
+	}
+
+	/**
+	 * Build the loggers, run the producers and print the report.
+	 * 
+	 * @throws Exception
+	 */
+	private void run() throws Exception {
+		List<AbstractJobLogger> loggers = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			JobLogger jl = JobLoggerFactory.getLogger("loadgenerator.job-" + i, props);
+			if (!(jl instanceof AbstractJobLogger)) {
+				throw new IllegalStateException("Unable to build the loggers, check the sink properties");
+			}
+			loggers.add((AbstractJobLogger) jl);
+		}
+
+		// Every producer gets an equal share of the rate, staggered so they don't all fire at the same instant.
+		final long intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) * threads / rate));
+		final long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+		final long measureStart = start + warmupNanos;
+		final long end = measureStart + durationNanos;
+
+		System.out.println("Running " + threads + " producers at " + rate + " calls/s for " + TimeUnit.NANOSECONDS.toSeconds(durationNanos) + " s (plus "
+				+ TimeUnit.NANOSECONDS.toSeconds(warmupNanos) + " s warmup)...");
+
+		final CountDownLatch done = new CountDownLatch(threads);
+		List<Thread> producers = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			final JobLogger jl = loggers.get(i);
+			final long first = start + intervalNanos * i / threads;
+			Thread producer = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						produce(jl, first, intervalNanos, measureStart, end);
+					} finally {
+						done.countDown();
+					}
+				}
+			}, "loadgenerator-producer-" + i);
+			producers.add(producer);
+		}
+
+		for (Thread producer : producers) {
+			producer.start();
+		}
+
+		// Take the GC baseline once the warmup is over.
+		long now;
+		while ((now = System.nanoTime()) < measureStart) {
+			TimeUnit.NANOSECONDS.sleep(measureStart - now);
+		}
+		Map<String, long[]> gcBefore = getGcStats();
+		done.await();
+		// Late calls finish after the end, the sustained rate accounts for them.
+		long measured = System.nanoTime() - measureStart;
+		Map<String, long[]> gcAfter = getGcStats();
+		MetricsSnapshot metrics = JobLoggerMetrics.snapshot();
+
+		// Drain: asynchronous calls first, then close every logger and sink.
+		long drainStart = System.nanoTime();
+		AsyncJULJobLogger.closeDispatcher();
+		for (AbstractJobLogger jl : loggers) {
+			jl.close();
+		}
+		SinkRegistry.closeAll();
+		long drainNanos = System.nanoTime() - drainStart;
+
+		report(measured, drainNanos, gcBefore, gcAfter, metrics);
+	}
+
+	/**
+	 * Producer loop: log one call per interval, at the scheduled times, until the end.
+	 * 
+	 * @param jl
+	 * @param first
+	 *            Scheduled time of the first call.
+	 * @param intervalNanos
+	 * @param measureStart
+	 *            Calls scheduled before this time are warmup and not recorded.
+	 * @param end
+	 *            No calls are scheduled after this time.
+	 */
+	private void produce(JobLogger jl, long first, long intervalNanos, long measureStart, long end) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		Throwable thrown = new IllegalStateException("Load generator exception");
+		long count = 0;
+
+		for (long scheduled = first; scheduled < end; scheduled += intervalNanos) {
+			// Choose the call before its scheduled time, so it's not measured.
+			int level = pick(levels, random.nextInt(100));
+			int paramCount = pick(params, random.nextInt(100));
+			boolean withThrown = random.nextInt(100) < exceptions;
+
+			// Wait for the scheduled time. If we're late, don't wait: the delay counts as latency.
+			long now;
+			while ((now = System.nanoTime()) < scheduled) {
+				long remaining = scheduled - now;
+				if (remaining > TimeUnit.MICROSECONDS.toNanos(100)) {
+					LockSupport.parkNanos(remaining - TimeUnit.MICROSECONDS.toNanos(50));
+				} else {
+					Thread.yield();
+				}
+			}
+
+			log(jl, level, paramCount, withThrown ? thrown : null, count);
+			long finished = System.nanoTime();
+
+			if (scheduled >= measureStart) {
+				latency.record(finished - scheduled);
+				serviceTime.record(finished - now);
+				completed.incrementAndGet();
+			}
+			count++;
+		}
+	}
+
+	/**
+	 * Make one log call.
+	 * 
+	 * @param jl
+	 * @param level
+	 *            0 for ERROR, 1 for WARN, 2 for MESSAGE.
+	 * @param paramCount
+	 * @param thrown
+	 *            Can be null.
+	 * @param count
+	 *            Used as parameter.
+	 */
+	private static void log(JobLogger jl, int level, int paramCount, Throwable thrown, long count) {
+		if (thrown != null) {
+			switch (level) {
+			case 0:
+				jl.error(MSG, thrown);
+				break;
+			case 1:
+				jl.warning(MSG, thrown);
+				break;
+			default:
+				jl.message(MSG, thrown);
+			}
+			return;
+		}
+
+		switch (level * 4 + paramCount) {
+		case 0:
+			jl.error(MSG);
+			break;
+		case 1:
+			jl.error(MSG, count);
+			break;
+		case 2:
+			jl.error(MSG, count, count % 100);
+			break;
+		case 3:
+			jl.error(MSG, count, count % 100, "batch");
+			break;
+		case 4:
+			jl.warning(MSG);
+			break;
+		case 5:
+			jl.warning(MSG, count);
+			break;
+		case 6:
+			jl.warning(MSG, count, count % 100);
+			break;
+		case 7:
+			jl.warning(MSG, count, count % 100, "batch");
+			break;
+		case 8:
+			jl.message(MSG);
+			break;
+		case 9:
+			jl.message(MSG, count);
+			break;
+		case 10:
+			jl.message(MSG, count, count % 100);
+			break;
+		default:
+			jl.message(MSG, count, count % 100, "batch");
+		}
+	}
+
+	/**
+	 * Print throughput, latency percentiles, GC activity and the pipeline metrics.
+	 */
+	private void report(long measuredNanos, long drainNanos, Map<String, long[]> gcBefore, Map<String, long[]> gcAfter, MetricsSnapshot metrics) {
+		double seconds = measuredNanos / 1e9;
+		long calls = completed.get();
+
+		System.out.println();
+		System.out.println("== Throughput");
+		System.out.printf("  target:     %.0f calls/s%n", rate);
+		System.out.printf("  sustained:  %.0f calls/s (%d calls in %.1f s)%n", calls / seconds, calls, seconds);
+		System.out.printf("  drain:      %.1f ms%n", drainNanos / 1e6);
+
+		System.out.println("== Latency, from scheduled start (us)");
+		printPercentiles(latency);
+		System.out.println("== Service time, from actual start (us)");
+		printPercentiles(serviceTime);
+
+		System.out.println("== GC during measurement");
+		for (Map.Entry<String, long[]> gc : gcAfter.entrySet()) {
+			long[] before = gcBefore.get(gc.getKey());
+			long count = gc.getValue()[0] - (before == null ? 0 : before[0]);
+			long time = gc.getValue()[1] - (before == null ? 0 : before[1]);
+			System.out.printf("  %-24s %6d collections, %6d ms total, %.1f ms average%n", gc.getKey(), count, time, count == 0 ? 0.0 : (double) time / count);
+		}
+
+		System.out.println("== Sinks");
+		for (Map.Entry<String, MetricsSnapshot.Sink> sink : metrics.getSinks().entrySet()) {
+			MetricsSnapshot.Sink s = sink.getValue();
+			System.out.printf("  %s: %d published, %d errors, %d bytes, p99 %.1f us%n", sink.getKey(), s.getPublished(), s.getErrors(), s.getBytesWritten(),
+					s.getLatencyP99() / 1e3);
+		}
+		for (Map.Entry<String, MetricsSnapshot.Queue> queue : metrics.getQueues().entrySet()) {
+			System.out.printf("  %s: %d queued, %d dropped%n", queue.getKey(), queue.getValue().getDepth(), queue.getValue().getDropped());
+		}
+	}
+
+	private static void printPercentiles(LatencyHistogram histogram) {
+		System.out.printf("  p50 %.1f   p99 %.1f   p99.9 %.1f   max %.1f%n", histogram.getValueAtPercentile(50) / 1e3, histogram.getValueAtPercentile(99) / 1e3,
+				histogram.getValueAtPercentile(99.9) / 1e3, histogram.getMax() / 1e3);
+	}
+
+	/**
+	 * Return the collection count and time of every garbage collector.
+	 * 
+	 * @return
+	 */
+	private static Map<String, long[]> getGcStats() {
+		Map<String, long[]> stats = new LinkedHashMap<>();
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			stats.put(gc.getName(), new long[] { gc.getCollectionCount(), gc.getCollectionTime() });
+		}
+		return stats;
+	}
+
+	/**
+	 * Pick an option given its cumulative percentages.
+	 * 
+	 * @param cumulative
+	 * @param roll
+	 *            Between 0 and 99.
+	 * @return
+	 */
+	private static int pick(int[] cumulative, int roll) {
+		for (int i = 0; i < cumulative.length; i++) {
+			if (roll < cumulative[i]) {
+				return i;
+			}
+		}
+		return cumulative.length - 1;
+	}
+
+	/**
+	 * Parse a list of percentages into cumulative ones.
+	 * 
+	 * @param value
+	 *            Comma separated percentages, adding up to 100.
+	 * @param size
+	 *            Expected number of percentages.
+	 * @return
+	 */
+	private static int[] toCumulative(String value, int size) {
+		String[] parts = value.split(",");
+		if (parts.length != size) {
+			throw new IllegalArgumentException("Expected " + size + " percentages: " + value);
+		}
+
+		int[] cumulative = new int[size];
+		int sum = 0;
+		for (int i = 0; i < size; i++) {
+			sum += Integer.parseInt(parts[i].trim());
+			cumulative[i] = sum;
+		}
+		if (sum != 100) {
+			throw new IllegalArgumentException("Percentages should add up to 100: " + value);
+		}
+		return cumulative;
+	}
+
+	private static String get(Map<String, String> args, String key, String defaultValue) {
+		String value = args.get(key);
+		return value == null || value.isEmpty() ? defaultValue : value;
+	}
+}
@@ -0,0 +1,134 @@
+package com.fbudassi.logger;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fbudassi.logger.handler.SinkRegistry;
+
+/**
+ * Throughput of many short concurrent jobs logging to a file: every operation runs JOBS jobs at the same time, each one logging a few messages, and waits
+ * for all of them. With virtual threads, a handler blocking under a monitor would pin the carriers and serialize the jobs.
+ * 
+ * The library targets Java 8, so the virtual thread executor is looked up by reflection. On a JVM without virtual threads the "virtual" executor falls back
+ * to a pool of platform threads, one per processor.
+ * 
+ * @author fbudassi
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VirtualThreadBenchmark {
+
+	private static final int JOBS = 10000;
+	private static final int MESSAGES_PER_JOB = 4;
+
+	@Param({ "com.fbudassi.logger.JULJobLogger", "com.fbudassi.logger.DirectJobLogger" })
+	private String implementation;
+
+	@Param({ "virtual", "platform" })
+	private String threads;
+
+	private File dir;
+	private AbstractJobLogger logger;
+	private ExecutorService executor;
+	private List<Callable<Void>> jobs;
+
+	@Setup
+	public void setup() throws Exception {
+		dir = Files.createTempDirectory("joblogger-benchmark").toFile();
+
+		Properties props = JobLoggerConfig.compile(new Properties()).toProperties();
+		props.setProperty(JobLoggerProperty.IMPLEMENTATION.getKey(), implementation);
+		props.setProperty(JobLoggerProperty.CONSOLE_ENABLED.getKey(), "false");
+		props.setProperty(JobLoggerProperty.FILE_ENABLED.getKey(), "true");
+		props.setProperty(JobLoggerProperty.FILE_DESTINATION.getKey(), new File(dir, "joblogger.log").getPath());
+		props.setProperty(JobLoggerProperty.FILE_APPEND.getKey(), "false");
+		props.setProperty(JobLoggerProperty.DB_ENABLED.getKey(), "false");
+		props.setProperty(JobLoggerProperty.MIN_LEVEL.getKey(), "ALL");
+
+		logger = (AbstractJobLogger) Class.forName(implementation).getDeclaredConstructor().newInstance();
+		logger.init("VirtualThreadBenchmark", props);
+
+		executor = "virtual".equals(threads) ? newVirtualThreadExecutor() : Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+		jobs = new ArrayList<>(JOBS);
+		for (int i = 0; i < JOBS; i++) {
+			final long job = i;
+			jobs.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					logger.message("Job {0} started", job);
+					for (int j = 1; j < MESSAGES_PER_JOB - 1; j++) {
+						logger.message("Job {0} step {1}", job, j);
+					}
+					logger.message("Job {0} finished", job);
+					return null;
+				}
+			});
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		executor.shutdownNow();
+		logger.close();
+		SinkRegistry.closeAll();
+
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	/**
+	 * Run every job concurrently and wait for them to finish.
+	 * 
+	 * @throws Exception
+	 */
+	@Benchmark
+	@OperationsPerInvocation(JOBS * MESSAGES_PER_JOB)
+	public void concurrentJobs() throws Exception {
+		for (Future<Void> future : executor.invokeAll(jobs)) {
+			future.get();
+		}
+	}
+
+	/**
+	 * Return an executor starting a virtual thread per task, or a pool of platform threads if the JVM doesn't have them.
+	 * 
+	 * @return
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			System.err.println("Virtual threads not available, using platform threads: " + e);
+			return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package com.fbudassi.logger.handler;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of DatabaseHandler.publish() against an in-memory HSQLDB database, inserting on the caller's thread or handing records over to the background
+ * writers. The table is emptied after every iteration.
+ * 
+ * @author fbudassi
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DatabaseHandlerBenchmark {
+
+	private static final String DRIVER = "org.hsqldb.jdbcDriver";
+	private static final String URL = "jdbc:hsqldb:mem:benchmark";
+	private static final String TABLE = "joblogger_benchmark";
+
+	@Param({ "sync", "async" })
+	private String mode;
+
+	private DatabaseHandler handler;
+	private Throwable thrown = new IllegalStateException("Benchmark exception");
+
+	@Setup
+	public void setup() throws Exception {
+		Class.forName(DRIVER);
+
+		Properties connProps = new Properties();
+		connProps.setProperty("user", "sa");
+		connProps.setProperty("password", "");
+		ConnectionPool pool = new ConnectionPool(URL, connProps, 16, 5000);
+
+		if ("async".equals(mode)) {
+			handler = new DatabaseHandler(pool, TABLE, 100, 10, 16384, 4);
+		} else {
+			handler = new DatabaseHandler(pool, TABLE);
+		}
+		handler.setFormatter(new JobLoggerFormatter());
+	}
+
+	@TearDown(org.openjdk.jmh.annotations.Level.Iteration)
+	public void clear() {
+		handler.flush();
+		handler.clear();
+	}
+
+	@TearDown
+	public void tearDown() {
+		handler.close();
+	}
+
+	@Benchmark
+	public void publish() {
+		handler.publish(newRecord(null));
+	}
+
+	@Benchmark
+	public void publishThrown() {
+		handler.publish(newRecord(thrown));
+	}
+
+	private static LogRecord newRecord(Throwable thrown) {
+		LogRecord lr = new LogRecord(Level.INFO, "Job {0} processed {1} records");
+		lr.setLoggerName("DatabaseHandlerBenchmark");
+		lr.setParameters(new Object[] { "job-42", 1000 });
+		lr.setThrown(thrown);
+		return lr;
+	}
+}
@@ -0,0 +1,53 @@
+package com.fbudassi.logger.handler;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of turning a structured record into the bytes written by the text sinks: JobLoggerFormatter plus String.getBytes(), against JsonEncoder straight
+ * into its buffer.
+ * 
+ * @author fbudassi
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EncoderBenchmark {
+
+	private final JobLoggerFormatter formatter = new JobLoggerFormatter();
+	private final JsonEncoder encoder = new JsonEncoder();
+	private final LogRecord record = newRecord();
+
+	@Benchmark
+	public byte[] text() {
+		return formatter.format(record).getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public ByteBuffer json() {
+		return encoder.encode(record);
+	}
+
+	private static LogRecord newRecord() {
+		EventFields fields = new EventFields().add("jobId", "job-42").add("rows", 1000L).add("ok", true);
+		LogRecord lr = new StructuredLogRecord(Level.INFO, "Job finished", fields);
+		lr.setLoggerName("EncoderBenchmark");
+		return lr;
+	}
+}
@@ -0,0 +1,95 @@
+package com.fbudassi.logger.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.LogRecord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fbudassi.logger.JULJobLoggerLevel;
+import com.fbudassi.logger.handler.JsonEncoder;
+import com.fbudassi.logger.handler.TextFileHandler;
+
+/**
+ * Finding the errors of one hour in a day of JSON logs (one record every 50 ms, one error every thousand records), with the sparse index and with a full
+ * parallel scan of a copy of the file without index.
+ * 
+ * @author fbudassi
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LogQueryBenchmark {
+
+	private static final long DAY_START = 1462060800000L;
+	private static final long HOUR = 3600000;
+	private static final long RECORD_INTERVAL = 50;
+	private static final int ERROR_EVERY = 1000;
+
+	@Param({ "65536" })
+	private int blockSize;
+
+	private File dir;
+	private LogQuery indexed;
+	private LogQuery scanned;
+
+	@Setup
+	public void setup() throws IOException {
+		dir = Files.createTempDirectory("joblogger-benchmark").toFile();
+		File log = new File(dir, "indexed.log");
+
+		TextFileHandler tfh = new TextFileHandler(log.getPath(), false);
+		tfh.setEncoder(new JsonEncoder());
+		tfh.enableIndex(blockSize);
+		long records = 24 * HOUR / RECORD_INTERVAL;
+		for (long i = 0; i < records; i++) {
+			LogRecord lr = new LogRecord(i % ERROR_EVERY == 0 ? JULJobLoggerLevel.ERROR : JULJobLoggerLevel.MESSAGE, "Job step finished");
+			lr.setLoggerName("LogQueryBenchmark");
+			lr.setMillis(DAY_START + i * RECORD_INTERVAL);
+			tfh.publish(lr);
+		}
+		tfh.close();
+
+		File copy = new File(dir, "scanned.log");
+		Files.copy(log.toPath(), copy.toPath());
+
+		long from = DAY_START + 12 * HOUR;
+		indexed = new LogQuery(log).level(JULJobLoggerLevel.ERROR).from(from).to(from + HOUR);
+		scanned = new LogQuery(copy).level(JULJobLoggerLevel.ERROR).from(from).to(from + HOUR);
+	}
+
+	@TearDown
+	public void tearDown() {
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	@Benchmark
+	public List<String> indexed() throws IOException {
+		return indexed.run();
+	}
+
+	@Benchmark
+	public List<String> fullScan() throws IOException {
+		return scanned.run();
+	}
+}
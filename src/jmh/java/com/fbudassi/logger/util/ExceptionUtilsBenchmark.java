@@ -0,0 +1,79 @@
+package com.fbudassi.logger.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of rendering deep stack traces, with and without a budget, and of fingerprinting them.
+ * 
+ * @author fbudassi
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExceptionUtilsBenchmark {
+
+	/**
+	 * Number of frames of the exception, which also has a cause as deep as itself.
+	 */
+	@Param({ "10", "100", "1000" })
+	private int depth;
+
+	private Throwable thrown;
+
+	@Setup
+	public void setup() {
+		try {
+			recurse(depth);
+		} catch (IllegalStateException e) {
+			thrown = e;
+		}
+	}
+
+	@Benchmark
+	public String getStackTrace() {
+		return ExceptionUtils.getStackTrace(thrown);
+	}
+
+	@Benchmark
+	public String getStackTraceBudget() {
+		return ExceptionUtils.getStackTrace(thrown, 8192, 64);
+	}
+
+	@Benchmark
+	public long getFingerprint() {
+		return ExceptionUtils.getFingerprint(thrown);
+	}
+
+	/**
+	 * Throw an exception (with a cause) from a certain stack depth.
+	 * 
+	 * @param remaining
+	 */
+	private static void recurse(int remaining) {
+		if (remaining > 0) {
+			recurse(remaining - 1);
+			return;
+		}
+
+		try {
+			throw new IllegalArgumentException("Benchmark cause");
+		} catch (IllegalArgumentException e) {
+			throw new IllegalStateException("Benchmark exception", e);
+		}
+	}
+}
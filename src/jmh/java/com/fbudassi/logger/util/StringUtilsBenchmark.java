@@ -0,0 +1,58 @@
+package com.fbudassi.logger.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of truncating strings shorter and longer than the limit, like DatabaseHandler does with every column.
+ * 
+ * @author fbudassi
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StringUtilsBenchmark {
+
+	private static final int LIMIT = 255;
+
+	/**
+	 * Length of the string to truncate.
+	 */
+	@Param({ "32", "255", "4096" })
+	private int length;
+
+	private String str;
+
+	@Setup
+	public void setup() {
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			sb.append((char) ('a' + i % 26));
+		}
+		str = sb.toString();
+	}
+
+	@Benchmark
+	public String truncate() {
+		return StringUtils.truncate(str, LIMIT);
+	}
+
+	@Benchmark
+	public int getUtf8Length() {
+		return StringUtils.getUtf8Length(str);
+	}
+}
@@ -1,9 +1,12 @@
 package com.fbudassi.logger;
 
 import java.util.Properties;
+import java.util.logging.Level;
+
+import com.fbudassi.logger.handler.EventFields;
 
 /**
- * Abstract JobLogger. Used to define the protected init() method that is needed by JobLoggerFactory but not by any other JobLogger client.
+ * Abstract JobLogger. Used to define the protected init() and close() methods that are needed by JobLoggerFactory but not by any other JobLogger client.
  * 
  * @author fbudassi
  */
@@ -20,4 +23,72 @@ public abstract class AbstractJobLogger implements JobLogger {
 	 *             Any type of exception that might get thrown during initialization.
 	 */
 	protected abstract void init(String name, Properties props) throws Exception;
-}
\ No newline at end of file
+
+	/**
+	 * Release the resources held by this concrete implementation of JobLogger. Called by JobLoggerFactory on shutdown. Does nothing by default.
+	 */
+	protected void close() {
+	}
+
+	/**
+	 * Apply a new configuration to this live JobLogger. Called by JobLoggerFactory when the properties file is reloaded. Does nothing by default.
+	 * 
+	 * @param config
+	 *            The new configuration.
+	 * @throws Exception
+	 *             Any type of exception that might get thrown while applying the configuration.
+	 */
+	protected void reconfigure(JobLoggerConfig config) throws Exception {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public LogEventBuilder atError(String msg) {
+		return isErrorEnabled() ? new StructuredEventBuilder(this, JULJobLoggerLevel.ERROR, msg) : NullLogEventBuilder.NULL_LOG_EVENT_BUILDER;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public LogEventBuilder atWarning(String msg) {
+		return isWarningEnabled() ? new StructuredEventBuilder(this, JULJobLoggerLevel.WARN, msg) : NullLogEventBuilder.NULL_LOG_EVENT_BUILDER;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public LogEventBuilder atMessage(String msg) {
+		return isMessageEnabled() ? new StructuredEventBuilder(this, JULJobLoggerLevel.MESSAGE, msg) : NullLogEventBuilder.NULL_LOG_EVENT_BUILDER;
+	}
+
+	/**
+	 * Log a structured message built by atError(), atWarning() or atMessage(). By default the fields are appended to the message as " key=value" pairs and
+	 * it's logged as a plain message, implementations that can keep them apart override it.
+	 * 
+	 * @param level
+	 *            The level of the message.
+	 * @param msg
+	 *            The message to log.
+	 * @param fields
+	 *            The key-value fields.
+	 * @param thrown
+	 *            A throwable to log its stack trace. Can be null.
+	 */
+	protected void logStructured(Level level, String msg, EventFields fields, Throwable thrown) {
+		StringBuilder sb = new StringBuilder().append(msg);
+		fields.appendTo(sb);
+		String text = sb.toString();
+
+		if (level == JULJobLoggerLevel.ERROR) {
+			error(text, thrown);
+		} else if (level == JULJobLoggerLevel.WARN) {
+			warning(text, thrown);
+		} else {
+			message(text, thrown);
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package com.fbudassi.logger;
+
+import java.util.Properties;
+import java.util.logging.Level;
+
+import com.fbudassi.logger.async.AsyncDispatcher;
+import com.fbudassi.logger.async.WaitStrategy;
+import com.fbudassi.logger.handler.EventFields;
+import com.fbudassi.logger.metrics.JobLoggerMetrics;
+
+/**
+ * JobLogger implementation that uses java.util.logging (JUL) but runs the handlers on a background thread. Log calls are handed over to a process-wide
+ * AsyncDispatcher, so the calling thread only pays for the level check and the copy into the ring buffer.
+ * 
+ * @author fbudassi
+ */
+public class AsyncJULJobLogger extends JULJobLogger {
+
+	private static final String DISPATCHER_QUEUE = "async-dispatcher";
+
+	private static volatile AsyncDispatcher dispatcher;
+
+	/**
+	 * Create an asynchronous java.util.logging based logger.
+	 */
+	protected AsyncJULJobLogger() {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void init(String name, Properties props) throws Exception {
+		super.init(name, props);
+
+		getDispatcher(props);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void publish(Level level, String msg, Object[] params, EventFields fields, Throwable thrown) {
+		if (!getLogger().isLoggable(level)) {
+			return;
+		}
+
+		// Log on the calling thread if the dispatcher has already been closed (i.e. during shutdown).
+		AsyncDispatcher ad = dispatcher;
+		if (ad == null || !ad.publish(getLogger(), level, msg, params, fields, thrown)) {
+			super.publish(level, msg, params, fields, thrown);
+		}
+	}
+
+	/**
+	 * Get the process-wide dispatcher, creating it from the properties the first time.
+	 * 
+	 * @param props
+	 *            Properties to build the dispatcher.
+	 * @return The dispatcher.
+	 */
+	static synchronized AsyncDispatcher getDispatcher(Properties props) {
+		if (dispatcher == null) {
+			int bufferSize = Integer.parseInt(props.getProperty(JobLoggerProperty.ASYNC_BUFFER_SIZE.getKey()));
+			WaitStrategy waitStrategy = WaitStrategy.valueOf(props.getProperty(JobLoggerProperty.ASYNC_WAIT_STRATEGY.getKey()).trim().toUpperCase());
+
+			boolean captureThrown = Boolean.parseBoolean(props.getProperty(JobLoggerProperty.ASYNC_CAPTURE_THROWN.getKey()));
+
+			final AsyncDispatcher ad = new AsyncDispatcher(bufferSize, waitStrategy, captureThrown);
+
+			// Dispatch pending calls before the VM exits.
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					ad.close();
+				}
+			}, "joblogger-async-shutdown"));
+
+			JobLoggerMetrics.registerQueue(DISPATCHER_QUEUE, ad);
+			dispatcher = ad;
+		}
+		return dispatcher;
+	}
+
+	/**
+	 * Dispatch the pending calls and stop the process-wide dispatcher. A new one is created the next time an AsyncJULJobLogger is initialized.
+	 */
+	static synchronized void closeDispatcher() {
+		if (dispatcher != null) {
+			dispatcher.close();
+			JobLoggerMetrics.unregisterQueue(DISPATCHER_QUEUE, dispatcher);
+			dispatcher = null;
+		}
+	}
+}
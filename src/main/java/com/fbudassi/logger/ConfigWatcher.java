@@ -0,0 +1,139 @@
+package com.fbudassi.logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls a properties file and reloads it when it changes (last modified time or size). Polling is used instead of a WatchService, since it works the same
+ * on every file system and the file rarely changes.
+ * 
+ * @author fbudassi
+ */
+final class ConfigWatcher {
+
+	/**
+	 * Gets the properties every time the file changes.
+	 */
+	interface Listener {
+
+		/**
+		 * Called from the watcher thread with the new content of the file.
+		 * 
+		 * @param props
+		 */
+		void reloaded(Properties props);
+	}
+
+	private final File file;
+	private final long intervalMillis;
+	private final Listener listener;
+	private ScheduledExecutorService executor;
+
+	/**
+	 * Last modified time and size of the file when it was last read. Only used by the watcher thread, or by check() callers.
+	 */
+	private long lastModified;
+	private long length;
+
+	/**
+	 * ConfigWatcher constructor. The current state of the file is taken as already loaded.
+	 * 
+	 * @param file
+	 *            The properties file.
+	 * @param intervalMillis
+	 *            Time between checks.
+	 * @param listener
+	 *            Gets the new properties.
+	 */
+	ConfigWatcher(File file, long intervalMillis, Listener listener) {
+		if (file == null) {
+			throw new IllegalArgumentException("Parameter file can't be null");
+		}
+
+		if (intervalMillis <= 0) {
+			throw new IllegalArgumentException("Parameter intervalMillis should be greater than zero");
+		}
+
+		if (listener == null) {
+			throw new IllegalArgumentException("Parameter listener can't be null");
+		}
+
+		this.file = file;
+		this.intervalMillis = intervalMillis;
+		this.listener = listener;
+		this.lastModified = file.lastModified();
+		this.length = file.length();
+	}
+
+	/**
+	 * Start checking the file on a daemon thread.
+	 */
+	synchronized void start() {
+		if (executor != null) {
+			return;
+		}
+
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "joblogger-config-watcher");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				check();
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop checking the file.
+	 */
+	synchronized void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Check the file once, and reload it if it changed. Errors reading it are printed and the file is checked again next time.
+	 * 
+	 * @return True if the file was reloaded.
+	 */
+	synchronized boolean check() {
+		long modified = file.lastModified();
+		long size = file.length();
+		if (modified == lastModified && size == length) {
+			return false;
+		}
+
+		Properties props = new Properties();
+		try (InputStream is = new FileInputStream(file)) {
+			props.load(is);
+		} catch (IOException e) {
+			System.err.println("Error reloading JobLogger properties file " + file + ": " + e.getMessage());
+			return false;
+		}
+
+		lastModified = modified;
+		length = size;
+		try {
+			listener.reloaded(props);
+		} catch (RuntimeException e) {
+			System.err.println("Error applying JobLogger properties file " + file + ": " + e.getMessage());
+			return false;
+		}
+		return true;
+	}
+}
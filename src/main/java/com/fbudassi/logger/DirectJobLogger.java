@@ -0,0 +1,624 @@
+package com.fbudassi.logger;
+
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+import com.fbudassi.logger.handler.EventFields;
+import com.fbudassi.logger.handler.JsonEncoder;
+import com.fbudassi.logger.handler.SinkRegistry;
+import com.fbudassi.logger.handler.SinkRegistry.SinkFactory;
+import com.fbudassi.logger.limit.RateLimiter;
+import com.fbudassi.logger.metrics.JobLoggerMetrics;
+import com.fbudassi.logger.sink.ConsoleSink;
+import com.fbudassi.logger.sink.EventSink;
+import com.fbudassi.logger.sink.HandlerSink;
+import com.fbudassi.logger.sink.LogEvent;
+import com.fbudassi.logger.util.StringUtils;
+
+/**
+ * JobLogger implementation with its own pipeline, bypassing java.util.logging loggers: the level check is a comparison with an int, log calls become a
+ * LogEvent only when enabled, and events go straight to the EventSinks of the logger, with no logger hierarchy, filters or LogRecord on the way.
+ * 
+ * The console is written to directly. Files and databases are written through the same shared handlers the JUL based loggers use, so both implementations
+ * can write to the same destinations; the LogRecord is only built for them. If metrics or collapsing are enabled, the console goes through its shared
+ * handler too.
+ * 
+ * @author fbudassi
+ */
+public class DirectJobLogger extends AbstractJobLogger {
+
+	private static final int ERROR = JULJobLoggerLevel.ERROR.intValue();
+	private static final int WARN = JULJobLoggerLevel.WARN.intValue();
+	private static final int MESSAGE = JULJobLoggerLevel.MESSAGE.intValue();
+	private static final int OFF = Level.OFF.intValue();
+
+	private static final EventSink[] NO_SINKS = new EventSink[0];
+
+	private String name;
+
+	/**
+	 * Minimum level to log, as an int.
+	 */
+	private volatile int minLevel;
+
+	/**
+	 * Sinks written to by the log calls. Replaced as a whole when sinks are attached or detached, so log calls never lock.
+	 */
+	private volatile EventSink[] sinks = NO_SINKS;
+
+	/**
+	 * Sinks attached by this logger, by SinkRegistry key. Guarded by the lock, a ReentrantLock since sinks are opened holding it.
+	 */
+	private final Map<String, EventSink> attached = new LinkedHashMap<>();
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * Rate limiters by level. Null when the level is not limited.
+	 */
+	private RateLimiter errorLimiter;
+	private RateLimiter warnLimiter;
+	private RateLimiter messageLimiter;
+
+	/**
+	 * Create a logger with its own pipeline.
+	 */
+	protected DirectJobLogger() {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void init(String name, Properties props) throws Exception {
+		if (StringUtils.isBlank(name)) {
+			throw new IllegalArgumentException("Parameter name can't be blank");
+		}
+
+		if (props == null) {
+			throw new IllegalArgumentException("Parameter props can't be null");
+		}
+
+		// Force the VM to load custom log levels before we use JobLoggerLevel.parse().
+		Class.forName(JULJobLoggerLevel.class.getCanonicalName());
+
+		this.name = name;
+		minLevel = JULJobLoggerLevel.parse(props.getProperty(JobLoggerProperty.MIN_LEVEL.getKey()).trim()).intValue();
+
+		// Rate limiting and sampling.
+		errorLimiter = JULJobLogger.newRateLimiter(props, JobLoggerProperty.RATE_LIMIT_ERROR, JobLoggerProperty.SAMPLE_ERROR);
+		warnLimiter = JULJobLogger.newRateLimiter(props, JobLoggerProperty.RATE_LIMIT_WARN, JobLoggerProperty.SAMPLE_WARN);
+		messageLimiter = JULJobLogger.newRateLimiter(props, JobLoggerProperty.RATE_LIMIT_MESSAGE, JobLoggerProperty.SAMPLE_MESSAGE);
+
+		// Sinks.
+		lock.lock();
+		try {
+			attachSinks(props);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Pick up the new minimum level and attach or detach sinks as they were enabled or disabled. The settings of the sinks kept are not changed.
+	 */
+	@Override
+	protected void reconfigure(JobLoggerConfig config) throws Exception {
+		lock.lock();
+		try {
+			minLevel = config.getMinLevel().intValue();
+			attachSinks(config.toProperties());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Detach this logger from its sinks. Shared sinks are closed once no logger is using them.
+	 */
+	@Override
+	protected void close() {
+		lock.lock();
+		try {
+			// Report what was suppressed since the last summary before the sinks go away.
+			logSuppressed(JULJobLoggerLevel.ERROR, errorLimiter);
+			logSuppressed(JULJobLoggerLevel.WARN, warnLimiter);
+			logSuppressed(JULJobLoggerLevel.MESSAGE, messageLimiter);
+
+			sinks = NO_SINKS;
+			for (Map.Entry<String, EventSink> sink : attached.entrySet()) {
+				detach(sink.getKey(), sink.getValue());
+			}
+			attached.clear();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Attach the sinks enabled in the properties, and detach the ones this logger has that are not enabled anymore.
+	 * 
+	 * Must be called holding the lock.
+	 * 
+	 * @param props
+	 * @throws Exception
+	 */
+	private void attachSinks(Properties props) throws Exception {
+		Map<String, SinkFactory> wanted = SinkHandlers.getSinkFactories(props);
+
+		// Detach the sinks not wanted anymore.
+		for (Iterator<Map.Entry<String, EventSink>> it = attached.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<String, EventSink> sink = it.next();
+			if (!wanted.containsKey(sink.getKey())) {
+				it.remove();
+				sinks = attached.values().toArray(NO_SINKS);
+				detach(sink.getKey(), sink.getValue());
+			}
+		}
+
+		// Attach the new ones. The console is written to directly, unless it needs the optional stages of its handler.
+		for (Map.Entry<String, SinkFactory> sink : wanted.entrySet()) {
+			String key = sink.getKey();
+			if (attached.containsKey(key)) {
+				continue;
+			}
+
+			if (SinkHandlers.CONSOLE_SINK.equals(key) && !SinkHandlers.isWrapped(props)) {
+				JsonEncoder encoder = SinkHandlers.newJsonEncoder(props, JobLoggerProperty.CONSOLE_FORMAT);
+				OutputStream out = SinkHandlers.newConsoleStream(props);
+				attached.put(key, encoder != null ? new ConsoleSink(out, encoder) : new ConsoleSink(out, SinkHandlers.newFormatter(props)));
+			} else {
+				attached.put(key, new HandlerSink(SinkRegistry.acquire(key, sink.getValue())));
+			}
+		}
+		sinks = attached.values().toArray(NO_SINKS);
+	}
+
+	/**
+	 * Release a sink: shared ones go back to the SinkRegistry, the others are closed.
+	 * 
+	 * @param key
+	 * @param sink
+	 */
+	private static void detach(String key, EventSink sink) {
+		if (sink instanceof HandlerSink) {
+			SinkRegistry.release(key);
+		} else {
+			sink.close();
+		}
+	}
+
+	/**
+	 * Add a sink that is not shared, i.e. to test or measure the pipeline without a destination. It's closed with the logger.
+	 * 
+	 * @param key
+	 *            Identifies the sink in this logger.
+	 * @param sink
+	 */
+	void addSink(String key, EventSink sink) {
+		lock.lock();
+		try {
+			attached.put(key, sink);
+			sinks = attached.values().toArray(NO_SINKS);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Return the sinks written to by the log calls.
+	 * 
+	 * @return
+	 */
+	EventSink[] getSinks() {
+		return sinks.clone();
+	}
+
+	/**
+	 * Return the name of the logger.
+	 * 
+	 * @return
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void error(String msg) {
+		if (isEnabled(ERROR)) {
+			log(JULJobLoggerLevel.ERROR, msg, null, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void error(String msg, Object... params) {
+		if (isEnabled(ERROR)) {
+			log(JULJobLoggerLevel.ERROR, msg, params, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void error(String msg, Throwable thrown) {
+		if (isEnabled(ERROR)) {
+			log(JULJobLoggerLevel.ERROR, msg, null, thrown);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isErrorEnabled() {
+		return isEnabled(ERROR);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void error(Supplier<String> msgSupplier) {
+		if (isEnabled(ERROR)) {
+			log(JULJobLoggerLevel.ERROR, msgSupplier.get(), null, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void error(String msg, Object param1) {
+		if (isEnabled(ERROR)) {
+			log(JULJobLoggerLevel.ERROR, msg, new Object[] { param1 }, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void error(String msg, Object param1, Object param2) {
+		if (isEnabled(ERROR)) {
+			log(JULJobLoggerLevel.ERROR, msg, new Object[] { param1, param2 }, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void error(String msg, Object param1, Object param2, Object param3) {
+		if (isEnabled(ERROR)) {
+			log(JULJobLoggerLevel.ERROR, msg, new Object[] { param1, param2, param3 }, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void error(String msg, long param1) {
+		if (isEnabled(ERROR)) {
+			log(JULJobLoggerLevel.ERROR, msg, new Object[] { param1 }, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void error(String msg, int param1) {
+		if (isEnabled(ERROR)) {
+			log(JULJobLoggerLevel.ERROR, msg, new Object[] { param1 }, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void warning(String msg) {
+		if (isEnabled(WARN)) {
+			log(JULJobLoggerLevel.WARN, msg, null, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void warning(String msg, Object... params) {
+		if (isEnabled(WARN)) {
+			log(JULJobLoggerLevel.WARN, msg, params, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void warning(String msg, Throwable thrown) {
+		if (isEnabled(WARN)) {
+			log(JULJobLoggerLevel.WARN, msg, null, thrown);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isWarningEnabled() {
+		return isEnabled(WARN);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void warning(Supplier<String> msgSupplier) {
+		if (isEnabled(WARN)) {
+			log(JULJobLoggerLevel.WARN, msgSupplier.get(), null, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void warning(String msg, Object param1) {
+		if (isEnabled(WARN)) {
+			log(JULJobLoggerLevel.WARN, msg, new Object[] { param1 }, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void warning(String msg, Object param1, Object param2) {
+		if (isEnabled(WARN)) {
+			log(JULJobLoggerLevel.WARN, msg, new Object[] { param1, param2 }, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void warning(String msg, Object param1, Object param2, Object param3) {
+		if (isEnabled(WARN)) {
+			log(JULJobLoggerLevel.WARN, msg, new Object[] { param1, param2, param3 }, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void warning(String msg, long param1) {
+		if (isEnabled(WARN)) {
+			log(JULJobLoggerLevel.WARN, msg, new Object[] { param1 }, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void warning(String msg, int param1) {
+		if (isEnabled(WARN)) {
+			log(JULJobLoggerLevel.WARN, msg, new Object[] { param1 }, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void message(String msg) {
+		if (isEnabled(MESSAGE)) {
+			log(JULJobLoggerLevel.MESSAGE, msg, null, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void message(String msg, Object... params) {
+		if (isEnabled(MESSAGE)) {
+			log(JULJobLoggerLevel.MESSAGE, msg, params, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void message(String msg, Throwable thrown) {
+		if (isEnabled(MESSAGE)) {
+			log(JULJobLoggerLevel.MESSAGE, msg, null, thrown);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isMessageEnabled() {
+		return isEnabled(MESSAGE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void message(Supplier<String> msgSupplier) {
+		if (isEnabled(MESSAGE)) {
+			log(JULJobLoggerLevel.MESSAGE, msgSupplier.get(), null, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void message(String msg, Object param1) {
+		if (isEnabled(MESSAGE)) {
+			log(JULJobLoggerLevel.MESSAGE, msg, new Object[] { param1 }, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void message(String msg, Object param1, Object param2) {
+		if (isEnabled(MESSAGE)) {
+			log(JULJobLoggerLevel.MESSAGE, msg, new Object[] { param1, param2 }, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void message(String msg, Object param1, Object param2, Object param3) {
+		if (isEnabled(MESSAGE)) {
+			log(JULJobLoggerLevel.MESSAGE, msg, new Object[] { param1, param2, param3 }, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void message(String msg, long param1) {
+		if (isEnabled(MESSAGE)) {
+			log(JULJobLoggerLevel.MESSAGE, msg, new Object[] { param1 }, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void message(String msg, int param1) {
+		if (isEnabled(MESSAGE)) {
+			log(JULJobLoggerLevel.MESSAGE, msg, new Object[] { param1 }, null);
+		}
+	}
+
+	/**
+	 * Check if a level is enabled. Same rule as java.util.logging.Logger.isLoggable(): at or above the minimum level, and nothing if the minimum is OFF.
+	 * 
+	 * @param level
+	 *            The int value of the level.
+	 * @return
+	 */
+	private boolean isEnabled(int level) {
+		int min = minLevel;
+		return level >= min && min != OFF;
+	}
+
+	/**
+	 * Log an enabled message, unless rate limiting or sampling drops it.
+	 * 
+	 * @param level
+	 *            The level of the message.
+	 * @param msg
+	 *            The message to log.
+	 * @param params
+	 *            Parameters to be replaced in the message. Can be null.
+	 * @param thrown
+	 *            A throwable to log its stack trace. Can be null.
+	 */
+	protected void log(Level level, String msg, Object[] params, Throwable thrown) {
+		if (isAllowed(level, msg)) {
+			JobLoggerMetrics.recordLevel(level);
+			publish(new LogEvent(System.currentTimeMillis(), name, level, msg, params, thrown));
+		} else {
+			JobLoggerMetrics.recordSuppressed();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The fields go to the sinks apart from the message, in the LogEvent.
+	 */
+	@Override
+	protected void logStructured(Level level, String msg, EventFields fields, Throwable thrown) {
+		if (isAllowed(level, msg)) {
+			JobLoggerMetrics.recordLevel(level);
+			publish(new LogEvent(System.currentTimeMillis(), name, level, msg, null, fields, thrown));
+		} else {
+			JobLoggerMetrics.recordSuppressed();
+		}
+	}
+
+	/**
+	 * Write an event to every sink of the logger.
+	 * 
+	 * @param event
+	 */
+	protected void publish(LogEvent event) {
+		for (EventSink sink : sinks) {
+			sink.write(event);
+		}
+	}
+
+	/**
+	 * Check the rate limiter of the level, if any. Logs the summary of suppressed records when it's due.
+	 * 
+	 * @param level
+	 * @param msg
+	 *            The message template, used as rate limiting key.
+	 * @return False if the message must be dropped.
+	 */
+	private boolean isAllowed(Level level, String msg) {
+		RateLimiter limiter = level == JULJobLoggerLevel.ERROR ? errorLimiter : level == JULJobLoggerLevel.WARN ? warnLimiter : messageLimiter;
+		if (limiter == null) {
+			return true;
+		}
+
+		long now = System.nanoTime();
+		if (limiter.isSummaryDue(now)) {
+			logSuppressed(level, limiter);
+		}
+		return limiter.tryAcquire(msg, now);
+	}
+
+	/**
+	 * Log how many records a rate limiter suppressed since the last summary, one record per message template.
+	 * 
+	 * @param level
+	 * @param limiter
+	 *            The rate limiter. Can be null.
+	 */
+	private void logSuppressed(Level level, RateLimiter limiter) {
+		if (limiter == null || !isEnabled(level.intValue())) {
+			return;
+		}
+
+		for (Map.Entry<String, Long> suppressed : limiter.drainSuppressed().entrySet()) {
+			String msg = suppressed.getKey() == null ? JULJobLogger.SUPPRESSED_OTHER : suppressed.getKey();
+			publish(new LogEvent(System.currentTimeMillis(), name, level, JULJobLogger.SUPPRESSED_MSG, new Object[] { suppressed.getValue(), msg }, null));
+		}
+	}
+}
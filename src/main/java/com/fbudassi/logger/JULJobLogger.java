@@ -1,16 +1,25 @@
 package com.fbudassi.logger;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
-import java.util.logging.ConsoleHandler;
-import java.util.logging.FileHandler;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 import java.util.logging.Handler;
+import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.logging.SimpleFormatter;
 
+import com.fbudassi.logger.handler.CollapsingHandler;
+import com.fbudassi.logger.handler.ConnectionPool;
 import com.fbudassi.logger.handler.DatabaseHandler;
+import com.fbudassi.logger.handler.EventFields;
+import com.fbudassi.logger.handler.MeteredHandler;
+import com.fbudassi.logger.handler.SinkRegistry;
+import com.fbudassi.logger.handler.SinkRegistry.SinkFactory;
+import com.fbudassi.logger.handler.StructuredLogRecord;
+import com.fbudassi.logger.limit.RateLimiter;
+import com.fbudassi.logger.metrics.JobLoggerMetrics;
 import com.fbudassi.logger.util.StringUtils;
 
 /**
@@ -20,9 +29,26 @@ import com.fbudassi.logger.util.StringUtils;
  */
 public class JULJobLogger extends AbstractJobLogger {
 
+	/**
+	 * Message of the summaries of records suppressed by rate limiting or sampling.
+	 */
+	static final String SUPPRESSED_MSG = "Rate limiting suppressed {0} records: {1}";
+	static final String SUPPRESSED_OTHER = "(other messages)";
+
 	private Logger logger;
 
-	private Connection connection;
+	/**
+	 * Rate limiters by level. Null when the level is not limited.
+	 */
+	private RateLimiter errorLimiter;
+	private RateLimiter warnLimiter;
+	private RateLimiter messageLimiter;
+
+	/**
+	 * Shared sinks attached by this logger, by SinkRegistry key. Guarded by the lock, a ReentrantLock since sinks are opened holding it.
+	 */
+	private final Map<String, Handler> sinks = new LinkedHashMap<>();
+	private final ReentrantLock lock = new ReentrantLock();
 
 	/**
 	 * Create a java.util.logging based logger.
@@ -34,7 +60,7 @@ public class JULJobLogger extends AbstractJobLogger {
 	 * {@inheritDoc}
 	 */
 	@Override
-	protected void init(String name, Properties props) throws Exception {
+	protected void init(String name, final Properties props) throws Exception {
 		if (StringUtils.isBlank(name)) {
 			throw new IllegalArgumentException("Parameter name can't be blank");
 		}
@@ -50,37 +76,107 @@ public class JULJobLogger extends AbstractJobLogger {
 		logger = Logger.getLogger(name);
 		logger.setLevel(JULJobLoggerLevel.parse(props.getProperty(JobLoggerProperty.MIN_LEVEL.getKey())));
 
-		// Console Handler.
-		if (Boolean.parseBoolean(props.getProperty(JobLoggerProperty.CONSOLE_ENABLED.getKey()))) {
-			ConsoleHandler ch = new ConsoleHandler();
-			ch.setLevel(JULJobLoggerLevel.ALL);
+		// Rate limiting and sampling.
+		errorLimiter = newRateLimiter(props, JobLoggerProperty.RATE_LIMIT_ERROR, JobLoggerProperty.SAMPLE_ERROR);
+		warnLimiter = newRateLimiter(props, JobLoggerProperty.RATE_LIMIT_WARN, JobLoggerProperty.SAMPLE_WARN);
+		messageLimiter = newRateLimiter(props, JobLoggerProperty.RATE_LIMIT_MESSAGE, JobLoggerProperty.SAMPLE_MESSAGE);
 
-			logger.addHandler(ch);
+		// Handlers.
+		lock.lock();
+		try {
+			attachSinks(props);
+		} finally {
+			lock.unlock();
 		}
+	}
 
-		// File Handler.
-		if (Boolean.parseBoolean(props.getProperty(JobLoggerProperty.FILE_ENABLED.getKey()))) {
-			String dest = props.getProperty(JobLoggerProperty.FILE_DESTINATION.getKey());
-			boolean append = Boolean.parseBoolean(props.getProperty(JobLoggerProperty.FILE_APPEND.getKey()));
-
-			Handler fh = new FileHandler(dest, append);
-			fh.setFormatter(new SimpleFormatter());
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Pick up the new minimum level and attach or detach sinks as they were enabled or disabled. The settings of the sinks kept are not changed.
+	 */
+	@Override
+	protected void reconfigure(JobLoggerConfig config) throws Exception {
+		lock.lock();
+		try {
+			logger.setLevel(config.getMinLevel());
+			attachSinks(config.toProperties());
+		} finally {
+			lock.unlock();
+		}
+	}
 
-			logger.addHandler(fh);
+	/**
+	 * Attach the sinks enabled in the properties, and detach the ones this logger has that are not enabled anymore.
+	 * 
+	 * Must be called holding the lock.
+	 * 
+	 * @param props
+	 * @throws Exception
+	 */
+	private void attachSinks(Properties props) throws Exception {
+		Map<String, SinkFactory> wanted = SinkHandlers.getSinkFactories(props);
+
+		// Detach the sinks not wanted anymore.
+		for (Iterator<Map.Entry<String, Handler>> it = sinks.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<String, Handler> sink = it.next();
+			if (!wanted.containsKey(sink.getKey())) {
+				logger.removeHandler(sink.getValue());
+				SinkRegistry.release(sink.getKey());
+				it.remove();
+			}
 		}
 
-		// Database Handler.
-		if (Boolean.parseBoolean(props.getProperty(JobLoggerProperty.DB_ENABLED.getKey()))) {
-			String driver = props.getProperty(JobLoggerProperty.DB_DRIVER.getKey());
-			String url = props.getProperty(JobLoggerProperty.DB_URL.getKey());
-			String table = props.getProperty(JobLoggerProperty.DB_TABLE.getKey());
+		// Attach the new ones.
+		for (Map.Entry<String, SinkFactory> sink : wanted.entrySet()) {
+			if (!sinks.containsKey(sink.getKey())) {
+				attach(sink.getKey(), sink.getValue());
+			}
+		}
+	}
 
-			Properties connProps = new Properties();
-			connProps.setProperty("user", props.getProperty(JobLoggerProperty.DB_USER.getKey()));
-			connProps.setProperty("password", props.getProperty(JobLoggerProperty.DB_PASSWORD.getKey()));
+	/**
+	 * Detach this logger from its sinks. Sinks are closed once no logger is using them.
+	 */
+	@Override
+	protected void close() {
+		lock.lock();
+		try {
+			// Report what was suppressed since the last summary before the handlers go away.
+			logSuppressed(JULJobLoggerLevel.ERROR, errorLimiter);
+			logSuppressed(JULJobLoggerLevel.WARN, warnLimiter);
+			logSuppressed(JULJobLoggerLevel.MESSAGE, messageLimiter);
+
+			for (Map.Entry<String, Handler> sink : sinks.entrySet()) {
+				logger.removeHandler(sink.getValue());
+				SinkRegistry.release(sink.getKey());
+			}
+			sinks.clear();
+		} finally {
+			lock.unlock();
+		}
+	}
 
-			logger.addHandler(new DatabaseHandler(newConnection(driver, url, connProps), table));
+	/**
+	 * Attach a shared sink to the inner logger. If the logger already has it (the same JUL logger was initialized before), it's not added again.
+	 * 
+	 * @param key
+	 *            Identifies the sink in the SinkRegistry.
+	 * @param factory
+	 *            Builds the sink handler if it doesn't exist yet.
+	 * @throws Exception
+	 */
+	private void attach(String key, SinkFactory factory) throws Exception {
+		Handler handler = SinkRegistry.acquire(key, factory);
+		for (Handler attached : logger.getHandlers()) {
+			if (attached == handler) {
+				SinkRegistry.release(key);
+				return;
+			}
 		}
+
+		logger.addHandler(handler);
+		sinks.put(key, handler);
 	}
 
 	/**
@@ -88,7 +184,7 @@ public class JULJobLogger extends AbstractJobLogger {
 	 */
 	@Override
 	public void error(String msg) {
-		logger.log(JULJobLoggerLevel.ERROR, msg);
+		log(JULJobLoggerLevel.ERROR, msg, null, null);
 	}
 
 	/**
@@ -96,7 +192,7 @@ public class JULJobLogger extends AbstractJobLogger {
 	 */
 	@Override
 	public void error(String msg, Object... params) {
-		logger.log(JULJobLoggerLevel.ERROR, msg, params);
+		log(JULJobLoggerLevel.ERROR, msg, params, null);
 	}
 
 	/**
@@ -104,7 +200,75 @@ public class JULJobLogger extends AbstractJobLogger {
 	 */
 	@Override
 	public void error(String msg, Throwable thrown) {
-		logger.log(JULJobLoggerLevel.ERROR, msg, thrown);
+		log(JULJobLoggerLevel.ERROR, msg, null, thrown);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isErrorEnabled() {
+		return logger.isLoggable(JULJobLoggerLevel.ERROR);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void error(Supplier<String> msgSupplier) {
+		if (isErrorEnabled()) {
+			log(JULJobLoggerLevel.ERROR, msgSupplier.get(), null, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void error(String msg, Object param1) {
+		if (isErrorEnabled()) {
+			log(JULJobLoggerLevel.ERROR, msg, new Object[] { param1 }, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void error(String msg, Object param1, Object param2) {
+		if (isErrorEnabled()) {
+			log(JULJobLoggerLevel.ERROR, msg, new Object[] { param1, param2 }, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void error(String msg, Object param1, Object param2, Object param3) {
+		if (isErrorEnabled()) {
+			log(JULJobLoggerLevel.ERROR, msg, new Object[] { param1, param2, param3 }, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void error(String msg, long param1) {
+		if (isErrorEnabled()) {
+			log(JULJobLoggerLevel.ERROR, msg, new Object[] { param1 }, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void error(String msg, int param1) {
+		if (isErrorEnabled()) {
+			log(JULJobLoggerLevel.ERROR, msg, new Object[] { param1 }, null);
+		}
 	}
 
 	/**
@@ -112,7 +276,7 @@ public class JULJobLogger extends AbstractJobLogger {
 	 */
 	@Override
 	public void warning(String msg) {
-		logger.log(JULJobLoggerLevel.WARN, msg);
+		log(JULJobLoggerLevel.WARN, msg, null, null);
 	}
 
 	/**
@@ -120,7 +284,7 @@ public class JULJobLogger extends AbstractJobLogger {
 	 */
 	@Override
 	public void warning(String msg, Object... params) {
-		logger.log(JULJobLoggerLevel.WARN, msg, params);
+		log(JULJobLoggerLevel.WARN, msg, params, null);
 	}
 
 	/**
@@ -128,7 +292,75 @@ public class JULJobLogger extends AbstractJobLogger {
 	 */
 	@Override
 	public void warning(String msg, Throwable thrown) {
-		logger.log(JULJobLoggerLevel.WARN, msg, thrown);
+		log(JULJobLoggerLevel.WARN, msg, null, thrown);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isWarningEnabled() {
+		return logger.isLoggable(JULJobLoggerLevel.WARN);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void warning(Supplier<String> msgSupplier) {
+		if (isWarningEnabled()) {
+			log(JULJobLoggerLevel.WARN, msgSupplier.get(), null, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void warning(String msg, Object param1) {
+		if (isWarningEnabled()) {
+			log(JULJobLoggerLevel.WARN, msg, new Object[] { param1 }, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void warning(String msg, Object param1, Object param2) {
+		if (isWarningEnabled()) {
+			log(JULJobLoggerLevel.WARN, msg, new Object[] { param1, param2 }, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void warning(String msg, Object param1, Object param2, Object param3) {
+		if (isWarningEnabled()) {
+			log(JULJobLoggerLevel.WARN, msg, new Object[] { param1, param2, param3 }, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void warning(String msg, long param1) {
+		if (isWarningEnabled()) {
+			log(JULJobLoggerLevel.WARN, msg, new Object[] { param1 }, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void warning(String msg, int param1) {
+		if (isWarningEnabled()) {
+			log(JULJobLoggerLevel.WARN, msg, new Object[] { param1 }, null);
+		}
 	}
 
 	/**
@@ -136,7 +368,7 @@ public class JULJobLogger extends AbstractJobLogger {
 	 */
 	@Override
 	public void message(String msg) {
-		logger.log(JULJobLoggerLevel.MESSAGE, msg);
+		log(JULJobLoggerLevel.MESSAGE, msg, null, null);
 	}
 
 	/**
@@ -144,7 +376,7 @@ public class JULJobLogger extends AbstractJobLogger {
 	 */
 	@Override
 	public void message(String msg, Object... params) {
-		logger.log(JULJobLoggerLevel.MESSAGE, msg, params);
+		log(JULJobLoggerLevel.MESSAGE, msg, params, null);
 	}
 
 	/**
@@ -152,46 +384,221 @@ public class JULJobLogger extends AbstractJobLogger {
 	 */
 	@Override
 	public void message(String msg, Throwable thrown) {
-		logger.log(JULJobLoggerLevel.MESSAGE, msg, thrown);
+		log(JULJobLoggerLevel.MESSAGE, msg, null, thrown);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isMessageEnabled() {
+		return logger.isLoggable(JULJobLoggerLevel.MESSAGE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void message(Supplier<String> msgSupplier) {
+		if (isMessageEnabled()) {
+			log(JULJobLoggerLevel.MESSAGE, msgSupplier.get(), null, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void message(String msg, Object param1) {
+		if (isMessageEnabled()) {
+			log(JULJobLoggerLevel.MESSAGE, msg, new Object[] { param1 }, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void message(String msg, Object param1, Object param2) {
+		if (isMessageEnabled()) {
+			log(JULJobLoggerLevel.MESSAGE, msg, new Object[] { param1, param2 }, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void message(String msg, Object param1, Object param2, Object param3) {
+		if (isMessageEnabled()) {
+			log(JULJobLoggerLevel.MESSAGE, msg, new Object[] { param1, param2, param3 }, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void message(String msg, long param1) {
+		if (isMessageEnabled()) {
+			log(JULJobLoggerLevel.MESSAGE, msg, new Object[] { param1 }, null);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void message(String msg, int param1) {
+		if (isMessageEnabled()) {
+			log(JULJobLoggerLevel.MESSAGE, msg, new Object[] { param1 }, null);
+		}
+	}
+
+	/**
+	 * Log a message, unless rate limiting or sampling drops it. Every error(), warning() and message() call ends up here.
+	 * 
+	 * @param level
+	 *            The level of the message.
+	 * @param msg
+	 *            The message to log.
+	 * @param params
+	 *            Parameters to be replaced in the message. Can be null.
+	 * @param thrown
+	 *            A throwable to log its stack trace. Can be null.
+	 */
+	protected void log(Level level, String msg, Object[] params, Throwable thrown) {
+		log(level, msg, params, null, thrown);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The fields go to the handlers apart from the message, in a StructuredLogRecord.
+	 */
+	@Override
+	protected void logStructured(Level level, String msg, EventFields fields, Throwable thrown) {
+		log(level, msg, null, fields, thrown);
 	}
 
 	/**
-	 * Get a connection to the database. If a connection was already open, return that one instead.
+	 * Log a message with its fields, unless its level is disabled or rate limiting or sampling drops it.
 	 * 
-	 * @param driver
-	 *            JDBC driver to use.
-	 * @param url
-	 *            JDBC url to the database.
+	 * @param level
+	 *            The level of the message.
+	 * @param msg
+	 *            The message to log.
+	 * @param params
+	 *            Parameters to be replaced in the message. Can be null.
+	 * @param fields
+	 *            Key-value fields of a structured message. Can be null.
+	 * @param thrown
+	 *            A throwable to log its stack trace. Can be null.
+	 */
+	private void log(Level level, String msg, Object[] params, EventFields fields, Throwable thrown) {
+		// The calls without parameters aren't guarded by the caller: a disabled level must not count in the metrics.
+		if (!logger.isLoggable(level)) {
+			return;
+		}
+
+		if (isAllowed(level, msg)) {
+			JobLoggerMetrics.recordLevel(level);
+			publish(level, msg, params, fields, thrown);
+		} else {
+			JobLoggerMetrics.recordSuppressed();
+		}
+	}
+
+	/**
+	 * Publish a message through the inner java.util.logging.Logger, so subclasses can change how records get dispatched to the handlers.
 	 * 
-	 * @param connProps
-	 *            Connection properties (user, password).
-	 * @return The connection.
-	 * @throws SQLException
+	 * @param level
+	 *            The level of the message.
+	 * @param msg
+	 *            The message to log.
+	 * @param params
+	 *            Parameters to be replaced in the message. Can be null.
+	 * @param fields
+	 *            Key-value fields of a structured message. Can be null.
+	 * @param thrown
+	 *            A throwable to log its stack trace. Can be null.
 	 */
-	protected synchronized Connection newConnection(String driver, String url, Properties connProps) throws SQLException {
-		// Return connection if already open.
-		if (connection != null) {
-			return connection;
+	protected void publish(Level level, String msg, Object[] params, EventFields fields, Throwable thrown) {
+		if (fields != null) {
+			// The caller is inferred lazily, as for the other calls.
+			StructuredLogRecord lr = new StructuredLogRecord(level, msg, fields);
+			lr.setLoggerName(logger.getName());
+			lr.setParameters(params);
+			lr.setThrown(thrown);
+			logger.log(lr);
+		} else if (thrown != null) {
+			logger.log(level, msg, thrown);
+		} else if (params != null) {
+			logger.log(level, msg, params);
+		} else {
+			logger.log(level, msg);
 		}
+	}
 
-		// Check parameters.
-		if (StringUtils.isBlank(driver)) {
-			throw new IllegalArgumentException("Parameter driver can't be empty");
+	/**
+	 * Check the rate limiter of the level, if any. Logs the summary of suppressed records when it's due. Must only be called for enabled levels, so records
+	 * that could never be logged don't take permits nor count as suppressed.
+	 * 
+	 * @param level
+	 * @param msg
+	 *            The message template, used as rate limiting key.
+	 * @return False if the message must be dropped.
+	 */
+	private boolean isAllowed(Level level, String msg) {
+		RateLimiter limiter = level == JULJobLoggerLevel.ERROR ? errorLimiter : level == JULJobLoggerLevel.WARN ? warnLimiter : messageLimiter;
+		if (limiter == null) {
+			return true;
 		}
 
-		if (StringUtils.isBlank(url)) {
-			throw new IllegalArgumentException("Parameter url can't be empty");
+		long now = System.nanoTime();
+		if (limiter.isSummaryDue(now)) {
+			logSuppressed(level, limiter);
 		}
+		return limiter.tryAcquire(msg, now);
+	}
 
-		// Load JDBC driver.
-		try {
-			Class.forName(driver);
-		} catch (ClassNotFoundException e) {
-			throw new IllegalStateException("Could not load JDBC driver class [" + driver + "]", e);
+	/**
+	 * Log how many records a rate limiter suppressed since the last summary, one record per message template.
+	 * 
+	 * @param level
+	 * @param limiter
+	 *            The rate limiter. Can be null.
+	 */
+	private void logSuppressed(Level level, RateLimiter limiter) {
+		if (limiter == null) {
+			return;
 		}
 
-		// Open connection.
-		return connection = DriverManager.getConnection(url, connProps);
+		for (Map.Entry<String, Long> suppressed : limiter.drainSuppressed().entrySet()) {
+			String msg = suppressed.getKey() == null ? SUPPRESSED_OTHER : suppressed.getKey();
+			publish(level, SUPPRESSED_MSG, new Object[] { suppressed.getValue(), msg }, null, null);
+		}
+	}
+
+	/**
+	 * Build the rate limiter of a level from the properties.
+	 * 
+	 * @param props
+	 * @param rate
+	 *            Property with the records per second allowed for each message template.
+	 * @param sample
+	 *            Property with the sampling rate.
+	 * @return The rate limiter, or null if the level is not limited.
+	 */
+	static RateLimiter newRateLimiter(Properties props, JobLoggerProperty rate, JobLoggerProperty sample) {
+		double permitsPerSecond = Double.parseDouble(props.getProperty(rate.getKey()));
+		int sampleRate = Integer.parseInt(props.getProperty(sample.getKey()));
+		if (permitsPerSecond == 0 && sampleRate == 1) {
+			return null;
+		}
+
+		long summaryInterval = Long.parseLong(props.getProperty(JobLoggerProperty.RATE_LIMIT_SUMMARY_INTERVAL.getKey()));
+		return new RateLimiter(permitsPerSecond, sampleRate, summaryInterval);
 	}
 
 	/**
@@ -204,11 +611,22 @@ public class JULJobLogger extends AbstractJobLogger {
 	}
 
 	/**
-	 * Return the open Connection to the database.
+	 * Return the pool of connections to the database. As the database sink is shared, it might have been created by another logger.
 	 * 
-	 * @return
+	 * @return The pool, or null if the logger has no database sink.
 	 */
-	protected Connection getConnection() {
-		return connection;
+	protected ConnectionPool getConnectionPool() {
+		for (Handler handler : logger.getHandlers()) {
+			if (handler instanceof CollapsingHandler) {
+				handler = ((CollapsingHandler) handler).getDelegate();
+			}
+			if (handler instanceof MeteredHandler) {
+				handler = ((MeteredHandler) handler).getDelegate();
+			}
+			if (handler instanceof DatabaseHandler) {
+				return ((DatabaseHandler) handler).getPool();
+			}
+		}
+		return null;
 	}
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package com.fbudassi.logger;
 
+import java.util.function.Supplier;
+
 public interface JobLogger {
 
 	/**
@@ -30,6 +32,92 @@ public interface JobLogger {
 	 */
 	public void error(String msg, Throwable thrown);
 
+	/**
+	 * Check if ERROR Level messages are going to be logged. Useful to avoid building expensive messages for nothing.
+	 * 
+	 * @return True if ERROR Level is enabled.
+	 */
+	public boolean isErrorEnabled();
+
+	/**
+	 * Log an ERROR Level message. The message is only built if the level is enabled.
+	 * 
+	 * @param msgSupplier
+	 *            A function that builds the message to log.
+	 */
+	public void error(Supplier<String> msgSupplier);
+
+	/**
+	 * Log an ERROR Level message with 1 parameter. No array is allocated if the level is disabled.
+	 * 
+	 * @param msg
+	 *            The message to log.
+	 * @param param1
+	 *            Parameter {0} to be replaced in the message.
+	 */
+	public void error(String msg, Object param1);
+
+	/**
+	 * Log an ERROR Level message with 2 parameters. No array is allocated if the level is disabled.
+	 * 
+	 * @param msg
+	 *            The message to log.
+	 * @param param1
+	 *            Parameter {0} to be replaced in the message.
+	 * @param param2
+	 *            Parameter {1} to be replaced in the message.
+	 */
+	public void error(String msg, Object param1, Object param2);
+
+	/**
+	 * Log an ERROR Level message with 3 parameters. No array is allocated if the level is disabled.
+	 * 
+	 * @param msg
+	 *            The message to log.
+	 * @param param1
+	 *            Parameter {0} to be replaced in the message.
+	 * @param param2
+	 *            Parameter {1} to be replaced in the message.
+	 * @param param3
+	 *            Parameter {2} to be replaced in the message.
+	 */
+	public void error(String msg, Object param1, Object param2, Object param3);
+
+	/**
+	 * Log an ERROR Level message with a long parameter. It's only boxed if the level is enabled.
+	 * 
+	 * @param msg
+	 *            The message to log.
+	 * @param param1
+	 *            Parameter {0} to be replaced in the message.
+	 */
+	public void error(String msg, long param1);
+
+	/**
+	 * Log an ERROR Level message with a int parameter. It's only boxed if the level is enabled.
+	 * 
+	 * @param msg
+	 *            The message to log.
+	 * @param param1
+	 *            Parameter {0} to be replaced in the message.
+	 */
+	public void error(String msg, int param1);
+
+	/**
+	 * Start a structured ERROR Level message, to add key-value fields to before logging it. For example:
+	 * 
+	 * <pre>
+	 * logger.atError("job finished").with("jobId", id).with("rows", n).log();
+	 * </pre>
+	 * 
+	 * If the level is disabled, a shared builder that does nothing is returned, so nothing is allocated.
+	 * 
+	 * @param msg
+	 *            The message to log.
+	 * @return The builder of the message. log() must be called once all the fields are added.
+	 */
+	public LogEventBuilder atError(String msg);
+
 	/**
 	 * Log a WARNING Level message.
 	 * 
@@ -58,6 +146,92 @@ public interface JobLogger {
 	 */
 	public void warning(String msg, Throwable thrown);
 
+	/**
+	 * Check if WARNING Level messages are going to be logged. Useful to avoid building expensive messages for nothing.
+	 * 
+	 * @return True if WARNING Level is enabled.
+	 */
+	public boolean isWarningEnabled();
+
+	/**
+	 * Log a WARNING Level message. The message is only built if the level is enabled.
+	 * 
+	 * @param msgSupplier
+	 *            A function that builds the message to log.
+	 */
+	public void warning(Supplier<String> msgSupplier);
+
+	/**
+	 * Log a WARNING Level message with 1 parameter. No array is allocated if the level is disabled.
+	 * 
+	 * @param msg
+	 *            The message to log.
+	 * @param param1
+	 *            Parameter {0} to be replaced in the message.
+	 */
+	public void warning(String msg, Object param1);
+
+	/**
+	 * Log a WARNING Level message with 2 parameters. No array is allocated if the level is disabled.
+	 * 
+	 * @param msg
+	 *            The message to log.
+	 * @param param1
+	 *            Parameter {0} to be replaced in the message.
+	 * @param param2
+	 *            Parameter {1} to be replaced in the message.
+	 */
+	public void warning(String msg, Object param1, Object param2);
+
+	/**
+	 * Log a WARNING Level message with 3 parameters. No array is allocated if the level is disabled.
+	 * 
+	 * @param msg
+	 *            The message to log.
+	 * @param param1
+	 *            Parameter {0} to be replaced in the message.
+	 * @param param2
+	 *            Parameter {1} to be replaced in the message.
+	 * @param param3
+	 *            Parameter {2} to be replaced in the message.
+	 */
+	public void warning(String msg, Object param1, Object param2, Object param3);
+
+	/**
+	 * Log a WARNING Level message with a long parameter. It's only boxed if the level is enabled.
+	 * 
+	 * @param msg
+	 *            The message to log.
+	 * @param param1
+	 *            Parameter {0} to be replaced in the message.
+	 */
+	public void warning(String msg, long param1);
+
+	/**
+	 * Log a WARNING Level message with a int parameter. It's only boxed if the level is enabled.
+	 * 
+	 * @param msg
+	 *            The message to log.
+	 * @param param1
+	 *            Parameter {0} to be replaced in the message.
+	 */
+	public void warning(String msg, int param1);
+
+	/**
+	 * Start a structured WARNING Level message, to add key-value fields to before logging it. For example:
+	 * 
+	 * <pre>
+	 * logger.atWarning("job finished").with("jobId", id).with("rows", n).log();
+	 * </pre>
+	 * 
+	 * If the level is disabled, a shared builder that does nothing is returned, so nothing is allocated.
+	 * 
+	 * @param msg
+	 *            The message to log.
+	 * @return The builder of the message. log() must be called once all the fields are added.
+	 */
+	public LogEventBuilder atWarning(String msg);
+
 	/**
 	 * Log a MESSAGE Level message.
 	 * 
@@ -85,4 +259,90 @@ public interface JobLogger {
 	 *            A throwable to log its stack trace.
 	 */
 	public void message(String msg, Throwable thrown);
+
+	/**
+	 * Check if MESSAGE Level messages are going to be logged. Useful to avoid building expensive messages for nothing.
+	 * 
+	 * @return True if MESSAGE Level is enabled.
+	 */
+	public boolean isMessageEnabled();
+
+	/**
+	 * Log a MESSAGE Level message. The message is only built if the level is enabled.
+	 * 
+	 * @param msgSupplier
+	 *            A function that builds the message to log.
+	 */
+	public void message(Supplier<String> msgSupplier);
+
+	/**
+	 * Log a MESSAGE Level message with 1 parameter. No array is allocated if the level is disabled.
+	 * 
+	 * @param msg
+	 *            The message to log.
+	 * @param param1
+	 *            Parameter {0} to be replaced in the message.
+	 */
+	public void message(String msg, Object param1);
+
+	/**
+	 * Log a MESSAGE Level message with 2 parameters. No array is allocated if the level is disabled.
+	 * 
+	 * @param msg
+	 *            The message to log.
+	 * @param param1
+	 *            Parameter {0} to be replaced in the message.
+	 * @param param2
+	 *            Parameter {1} to be replaced in the message.
+	 */
+	public void message(String msg, Object param1, Object param2);
+
+	/**
+	 * Log a MESSAGE Level message with 3 parameters. No array is allocated if the level is disabled.
+	 * 
+	 * @param msg
+	 *            The message to log.
+	 * @param param1
+	 *            Parameter {0} to be replaced in the message.
+	 * @param param2
+	 *            Parameter {1} to be replaced in the message.
+	 * @param param3
+	 *            Parameter {2} to be replaced in the message.
+	 */
+	public void message(String msg, Object param1, Object param2, Object param3);
+
+	/**
+	 * Log a MESSAGE Level message with a long parameter. It's only boxed if the level is enabled.
+	 * 
+	 * @param msg
+	 *            The message to log.
+	 * @param param1
+	 *            Parameter {0} to be replaced in the message.
+	 */
+	public void message(String msg, long param1);
+
+	/**
+	 * Log a MESSAGE Level message with a int parameter. It's only boxed if the level is enabled.
+	 * 
+	 * @param msg
+	 *            The message to log.
+	 * @param param1
+	 *            Parameter {0} to be replaced in the message.
+	 */
+	public void message(String msg, int param1);
+
+	/**
+	 * Start a structured MESSAGE Level message, to add key-value fields to before logging it. For example:
+	 * 
+	 * <pre>
+	 * logger.atMessage("job finished").with("jobId", id).with("rows", n).log();
+	 * </pre>
+	 * 
+	 * If the level is disabled, a shared builder that does nothing is returned, so nothing is allocated.
+	 * 
+	 * @param msg
+	 *            The message to log.
+	 * @return The builder of the message. log() must be called once all the fields are added.
+	 */
+	public LogEventBuilder atMessage(String msg);
 }
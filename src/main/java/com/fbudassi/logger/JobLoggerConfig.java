@@ -0,0 +1,126 @@
+package com.fbudassi.logger;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+
+import com.fbudassi.logger.util.StringUtils;
+
+/**
+ * Immutable, compiled snapshot of the JobLogger configuration. Blank values get their defaults, and the settings that can change at runtime are parsed
+ * once, so readers only need the reference to the snapshot and never lock.
+ * 
+ * @author fbudassi
+ */
+public final class JobLoggerConfig {
+
+	private final Map<String, String> values;
+	private final Level minLevel;
+	private final boolean consoleEnabled;
+	private final boolean fileEnabled;
+	private final boolean dbEnabled;
+
+	/**
+	 * Private, use compile().
+	 * 
+	 * @param values
+	 *            Every value, defaults included.
+	 */
+	private JobLoggerConfig(Map<String, String> values) {
+		this.values = Collections.unmodifiableMap(values);
+		this.minLevel = JULJobLoggerLevel.parse(get(JobLoggerProperty.MIN_LEVEL).trim());
+		this.consoleEnabled = Boolean.parseBoolean(get(JobLoggerProperty.CONSOLE_ENABLED));
+		this.fileEnabled = Boolean.parseBoolean(get(JobLoggerProperty.FILE_ENABLED));
+		this.dbEnabled = Boolean.parseBoolean(get(JobLoggerProperty.DB_ENABLED));
+	}
+
+	/**
+	 * Compile a series of properties into a configuration snapshot. Properties left blank get their default value.
+	 * 
+	 * @param props
+	 *            The properties. They are copied, later changes don't affect the snapshot.
+	 * @return The snapshot.
+	 * @throws IllegalArgumentException
+	 *             If a value can't be parsed, i.e. an unknown level.
+	 */
+	public static JobLoggerConfig compile(Properties props) {
+		if (props == null) {
+			throw new IllegalArgumentException("Parameter props can't be null");
+		}
+
+		// Force the VM to load custom log levels before we parse them.
+		JULJobLoggerLevel.ERROR.getName();
+
+		Map<String, String> values = new HashMap<>();
+		for (String key : props.stringPropertyNames()) {
+			values.put(key, props.getProperty(key));
+		}
+		for (JobLoggerProperty jlp : JobLoggerProperty.values()) {
+			if (jlp.getDefault() != null && StringUtils.isBlank(values.get(jlp.getKey()))) {
+				values.put(jlp.getKey(), jlp.getDefault());
+			}
+		}
+		return new JobLoggerConfig(values);
+	}
+
+	/**
+	 * Return the value of a property.
+	 * 
+	 * @param property
+	 * @return
+	 */
+	public String get(JobLoggerProperty property) {
+		return values.get(property.getKey());
+	}
+
+	/**
+	 * Return the minimum level to log.
+	 * 
+	 * @return
+	 */
+	public Level getMinLevel() {
+		return minLevel;
+	}
+
+	/**
+	 * Return true if the console handler is enabled.
+	 * 
+	 * @return
+	 */
+	public boolean isConsoleEnabled() {
+		return consoleEnabled;
+	}
+
+	/**
+	 * Return true if the file handler is enabled.
+	 * 
+	 * @return
+	 */
+	public boolean isFileEnabled() {
+		return fileEnabled;
+	}
+
+	/**
+	 * Return true if the database handler is enabled.
+	 * 
+	 * @return
+	 */
+	public boolean isDbEnabled() {
+		return dbEnabled;
+	}
+
+	/**
+	 * Return a copy of the configuration as Properties, i.e. to initialize a JobLogger.
+	 * 
+	 * @return
+	 */
+	public Properties toProperties() {
+		Properties props = new Properties();
+		for (Map.Entry<String, String> value : values.entrySet()) {
+			props.setProperty(value.getKey(), value.getValue());
+		}
+		return props;
+	}
+}
@@ -1,8 +1,19 @@
 package com.fbudassi.logger;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
+import javax.management.JMException;
+
+import com.fbudassi.logger.handler.SinkRegistry;
+import com.fbudassi.logger.metrics.JobLoggerMetrics;
+import com.fbudassi.logger.metrics.MetricsSnapshot;
 import com.fbudassi.logger.util.PropertiesUtils;
 
 /**
@@ -12,7 +23,31 @@ import com.fbudassi.logger.util.PropertiesUtils;
  */
 public final class JobLoggerFactory {
 
-	private static Properties props;
+	/**
+	 * Current configuration. Replaced as a whole when the properties file changes, so readers never lock.
+	 */
+	private static volatile JobLoggerConfig config;
+
+	/**
+	 * Loggers already built from the classpath properties, by name.
+	 */
+	private static final ConcurrentMap<String, JobLogger> loggers = new ConcurrentHashMap<>();
+
+	/**
+	 * Loggers being built, by name. Only one thread builds a logger, the others asking for it at the same time wait for it.
+	 */
+	private static final ConcurrentMap<String, Build> builds = new ConcurrentHashMap<>();
+
+	/**
+	 * The build of a logger, run by the thread that created it.
+	 */
+	private static final class Build extends FutureTask<JobLogger> {
+		private final Thread owner = Thread.currentThread();
+
+		private Build(Callable<JobLogger> callable) {
+			super(callable);
+		}
+	}
 
 	private static final String DEFAULT_PROPERTIES_FILE = "joblogger.properties";
 
@@ -20,6 +55,7 @@ public final class JobLoggerFactory {
 	 * Read properties file to build loggers.
 	 */
 	static {
+		Properties props;
 		try {
 			// Load properties.
 			props = PropertiesUtils.loadFromClasspath(DEFAULT_PROPERTIES_FILE);
@@ -30,10 +66,32 @@ public final class JobLoggerFactory {
 			props = new Properties();
 		}
 
-		// Set defaults if no values were set.
-		for (JobLoggerProperty jlp : JobLoggerProperty.values()) {
-			if (jlp.getDefault() != null) {
-				PropertiesUtils.setIfBlank(props, jlp.getKey(), jlp.getDefault());
+		// Compile the properties, setting defaults if no values were set.
+		try {
+			config = JobLoggerConfig.compile(props);
+		} catch (IllegalArgumentException e) {
+			System.err.println("Invalid JobLoggerFactory properties file, using defaults: " + e.getMessage());
+			config = JobLoggerConfig.compile(new Properties());
+		}
+
+		// Reload the properties file when it changes, if it's a file on disk.
+		long interval = Long.parseLong(config.get(JobLoggerProperty.CONFIG_RELOAD_INTERVAL));
+		File file = PropertiesUtils.getClasspathFile(DEFAULT_PROPERTIES_FILE);
+		if (interval > 0 && file != null) {
+			new ConfigWatcher(file, interval, new ConfigWatcher.Listener() {
+				@Override
+				public void reloaded(Properties props) {
+					reload(props);
+				}
+			}).start();
+		}
+
+		// Expose the metrics through JMX.
+		if (Boolean.parseBoolean(config.get(JobLoggerProperty.METRICS_JMX_ENABLED))) {
+			try {
+				JobLoggerMetrics.registerMBean();
+			} catch (JMException e) {
+				System.err.println("Unable to register JobLoggerMetrics MBean: " + e.getMessage());
 			}
 		}
 	}
@@ -45,7 +103,7 @@ public final class JobLoggerFactory {
 	}
 
 	/**
-	 * Find or create a logger for the given clazz. Depending on the JobLogger implementation, it could return an already existing logger based on clazz.
+	 * Find or create a logger for the given clazz. Loggers are built once per name and then returned from a cache.
 	 * 
 	 * @param clazz
 	 * @return
@@ -56,18 +114,92 @@ public final class JobLoggerFactory {
 	}
 
 	/**
-	 * Find or create a logger for the given name. Depending on the JobLogger implementation, it could return an already existing logger based on name.
+	 * Find or create a logger for the given name. Loggers are built once per name and then returned from a cache, so calling this method repeatedly is cheap
+	 * and doesn't add handlers again.
 	 * 
 	 * @param name
 	 *            The name of the JobLogger.
 	 * @return The concrete implementation of JobLogger.
 	 */
-	public static JobLogger getLogger(String name) {
-		return getLogger(name, props);
+	public static JobLogger getLogger(final String name) {
+		if (name == null) {
+			return getLogger(name, config.toProperties());
+		}
+
+		// Fast path: the logger was already built.
+		JobLogger jl = loggers.get(name);
+		if (jl != null) {
+			return jl;
+		}
+
+		// Build it only once, even if many threads ask for it at the same time. It's built outside the maps, since initializing it can take a while (i.e.
+		// connecting to the database) and log through the factory.
+		Build build = new Build(new Callable<JobLogger>() {
+			@Override
+			public JobLogger call() {
+				// Another thread may have built it after the first check.
+				JobLogger built = loggers.get(name);
+				if (built != null) {
+					return built;
+				}
+
+				// Don't keep the NullJobLogger, so the next call retries (i.e. the database was down).
+				built = getLogger(name, config.toProperties());
+				if (built != NullJobLogger.NULL_JOB_LOGGER) {
+					loggers.put(name, built);
+				}
+				return built;
+			}
+		});
+
+		Build running = builds.putIfAbsent(name, build);
+		if (running == null) {
+			try {
+				build.run();
+			} finally {
+				builds.remove(name, build);
+			}
+			return await(build);
+		}
+
+		// The logger is being initialized by this very thread, which can't wait for itself.
+		if (running.owner == Thread.currentThread()) {
+			return NullJobLogger.NULL_JOB_LOGGER;
+		}
+		return await(running);
+	}
+
+	/**
+	 * Wait for the build of a logger to finish, even if the thread is interrupted.
+	 * 
+	 * @param build
+	 * @return The logger built.
+	 */
+	private static JobLogger await(Build build) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return build.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException e) {
+			// The build doesn't throw checked exceptions.
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw (RuntimeException) e.getCause();
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
 	}
 
 	/**
-	 * Find or create a logger for the given name. Depending on the JobLogger implementation, it could return an already existing logger based on name.
+	 * Create a logger for the given name from a series of properties. The result is not cached.
 	 * 
 	 * @param name
 	 *            The name of the JobLogger.
@@ -97,12 +229,74 @@ public final class JobLoggerFactory {
 		}
 	}
 
+	/**
+	 * Flush and close every logger built by the factory and the handlers they share. Loggers obtained before shutdown must not be used afterwards; new ones
+	 * can be asked for as usual.
+	 */
+	public static void shutdown() {
+		// Dispatch asynchronous calls still in flight before closing their handlers.
+		AsyncJULJobLogger.closeDispatcher();
+
+		for (JobLogger jl : loggers.values()) {
+			if (jl instanceof AbstractJobLogger) {
+				((AbstractJobLogger) jl).close();
+			}
+		}
+		loggers.clear();
+
+		SinkRegistry.closeAll();
+	}
+
+	/**
+	 * Replace the configuration and apply it to the loggers built by the factory: they pick up the new minimum level and the enabled handlers without being
+	 * re-created. Other settings only affect loggers built from now on.
+	 * 
+	 * @param props
+	 *            The new properties. Blank ones get their default value.
+	 * @throws IllegalArgumentException
+	 *             If the properties are invalid. The current configuration is kept.
+	 */
+	public static void reload(Properties props) {
+		JobLoggerConfig newConfig = JobLoggerConfig.compile(props);
+		config = newConfig;
+
+		for (JobLogger jl : loggers.values()) {
+			if (jl instanceof AbstractJobLogger) {
+				try {
+					((AbstractJobLogger) jl).reconfigure(newConfig);
+				} catch (Exception e) {
+					System.err.println("Unable to reconfigure JobLogger: " + e.getMessage());
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Return the current configuration snapshot.
+	 * 
+	 * @return
+	 */
+	public static JobLoggerConfig getConfig() {
+		return config;
+	}
+
+	/**
+	 * Take a snapshot of the logging pipeline metrics: records logged per level, publish latency, errors and bytes written per sink, and depth and drops of
+	 * the asynchronous queues. Sinks are only metered if joblogger.metrics.enabled is set.
+	 * 
+	 * @return
+	 */
+	public static MetricsSnapshot getMetrics() {
+		return JobLoggerMetrics.snapshot();
+	}
+
 	/**
 	 * Return the Properties loaded from the classpath.
 	 * 
 	 * @return
 	 */
 	static Properties getProperties() {
-		return (Properties) props.clone();
+		return config.toProperties();
 	}
 }
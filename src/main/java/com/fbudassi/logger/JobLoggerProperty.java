@@ -9,14 +9,51 @@ public enum JobLoggerProperty {
 	// Global properties
 	IMPLEMENTATION("joblogger.implementation", JULJobLogger.class.getCanonicalName()),
 	MIN_LEVEL("joblogger.min.level", "ALL"),
+	CONFIG_RELOAD_INTERVAL("joblogger.config.reload.interval", "10000"),
+	STACKTRACE_MAX_LENGTH("joblogger.stacktrace.max.length", "32768"),
+	STACKTRACE_MAX_FRAMES("joblogger.stacktrace.max.frames", "256"),
+
+	// Rate limiting and sampling properties
+	RATE_LIMIT_ERROR("joblogger.ratelimit.error", "0"),
+	RATE_LIMIT_WARN("joblogger.ratelimit.warn", "0"),
+	RATE_LIMIT_MESSAGE("joblogger.ratelimit.message", "0"),
+	SAMPLE_ERROR("joblogger.sample.error", "1"),
+	SAMPLE_WARN("joblogger.sample.warn", "1"),
+	SAMPLE_MESSAGE("joblogger.sample.message", "1"),
+	RATE_LIMIT_SUMMARY_INTERVAL("joblogger.ratelimit.summary.interval", "60000"),
+
+	// Collapsing of identical consecutive records, in front of every handler
+	COLLAPSE_ENABLED("joblogger.collapse.enabled", "false"),
+	COLLAPSE_WINDOW("joblogger.collapse.window", "5000"),
+
+	// Metrics of the logging pipeline
+	METRICS_ENABLED("joblogger.metrics.enabled", "false"),
+	METRICS_JMX_ENABLED("joblogger.metrics.jmx.enabled", "true"),
+
+	// Asynchronous dispatcher properties (AsyncJULJobLogger)
+	ASYNC_BUFFER_SIZE("joblogger.async.buffer.size", "16384"),
+	ASYNC_WAIT_STRATEGY("joblogger.async.wait.strategy", "PARK"),
+	ASYNC_CAPTURE_THROWN("joblogger.async.capture.thrown", "false"),
 
 	// Console handler properties
 	CONSOLE_ENABLED("joblogger.handler.console.enabled", "true"),
+	CONSOLE_FORMAT("joblogger.handler.console.format", "text"),
+	CONSOLE_RAW("joblogger.handler.console.raw", "false"),
 
 	// File Handler properties
 	FILE_ENABLED("joblogger.handler.file.enabled", "false"),
 	FILE_APPEND("joblogger.handler.file.append", "true"),
 	FILE_DESTINATION("joblogger.handler.file.destination", "log"),
+	FILE_FORMAT("joblogger.handler.file.format", "text"),
+	FILE_MAPPED("joblogger.handler.file.mapped", "false"),
+	FILE_SEGMENT_SIZE("joblogger.handler.file.segment.size", "67108864"),
+	FILE_SEGMENT_PREALLOCATE("joblogger.handler.file.segment.preallocate", "true"),
+	FILE_ROLL_SIZE("joblogger.handler.file.roll.size", "0"),
+	FILE_ROLL_INTERVAL("joblogger.handler.file.roll.interval", "0"),
+	FILE_ROLL_ARCHIVES("joblogger.handler.file.roll.archives", "10"),
+	FILE_ROLL_COMPRESS("joblogger.handler.file.roll.compress", "true"),
+	FILE_INDEX("joblogger.handler.file.index", "false"),
+	FILE_INDEX_BLOCK_SIZE("joblogger.handler.file.index.block.size", "65536"),
 
 	// Database Handler properties
 	DB_ENABLED("joblogger.handler.db.enabled", "false"),
@@ -24,7 +61,22 @@ public enum JobLoggerProperty {
 	DB_URL("joblogger.handler.db.url", null),
 	DB_USER("joblogger.handler.db.user", null),
 	DB_PASSWORD("joblogger.handler.db.password", null),
-	DB_TABLE("joblogger.handler.db.table", "log");
+	DB_TABLE("joblogger.handler.db.table", "log"),
+	DB_ASYNC("joblogger.handler.db.async", "false"),
+	DB_BATCH_SIZE("joblogger.handler.db.batch.size", "100"),
+	DB_BATCH_LINGER("joblogger.handler.db.batch.linger", "200"),
+	DB_QUEUE_CAPACITY("joblogger.handler.db.queue.capacity", "10000"),
+	DB_WRITERS("joblogger.handler.db.writers", "1"),
+	DB_POOL_SIZE("joblogger.handler.db.pool.size", "4"),
+	DB_POOL_TIMEOUT("joblogger.handler.db.pool.timeout", "5000"),
+	DB_TRACE_DEDUP("joblogger.handler.db.trace.dedup", "false"),
+	DB_TRACE_CACHE_SIZE("joblogger.handler.db.trace.cache.size", "1024"),
+	DB_PARTITION("joblogger.handler.db.partition", "none"),
+	DB_PARTITION_RETENTION("joblogger.handler.db.partition.retention", "0"),
+	DB_JOURNAL_ENABLED("joblogger.handler.db.journal.enabled", "false"),
+	DB_JOURNAL_DIR("joblogger.handler.db.journal.dir", "joblogger-journal"),
+	DB_JOURNAL_MAX_SIZE("joblogger.handler.db.journal.max.size", "1073741824"),
+	DB_JOURNAL_RETRY("joblogger.handler.db.journal.retry", "5000");
 
 	private final String key;
 	private final String defaultValue;
@@ -0,0 +1,68 @@
+package com.fbudassi.logger;
+
+/**
+ * Builder of a structured log message: the message plus key-value fields that sinks keep apart from it, i.e. as JSON properties. Obtained from
+ * JobLogger.atError(), atWarning() or atMessage(), and logged with log(). A builder must not be used after log() is called.
+ * 
+ * @author fbudassi
+ */
+public interface LogEventBuilder {
+
+	/**
+	 * Add a field.
+	 * 
+	 * @param key
+	 *            The name of the field.
+	 * @param value
+	 *            The value of the field. Can be null.
+	 * @return This builder.
+	 */
+	public LogEventBuilder with(String key, Object value);
+
+	/**
+	 * Add a numeric field. It's not boxed.
+	 * 
+	 * @param key
+	 *            The name of the field.
+	 * @param value
+	 *            The value of the field.
+	 * @return This builder.
+	 */
+	public LogEventBuilder with(String key, long value);
+
+	/**
+	 * Add a decimal field. It's not boxed.
+	 * 
+	 * @param key
+	 *            The name of the field.
+	 * @param value
+	 *            The value of the field.
+	 * @return This builder.
+	 */
+	public LogEventBuilder with(String key, double value);
+
+	/**
+	 * Add a boolean field. It's not boxed.
+	 * 
+	 * @param key
+	 *            The name of the field.
+	 * @param value
+	 *            The value of the field.
+	 * @return This builder.
+	 */
+	public LogEventBuilder with(String key, boolean value);
+
+	/**
+	 * Allow a throwable to be logged.
+	 * 
+	 * @param thrown
+	 *            A throwable to log its stack trace.
+	 * @return This builder.
+	 */
+	public LogEventBuilder withThrown(Throwable thrown);
+
+	/**
+	 * Log the message with its fields.
+	 */
+	public void log();
+}
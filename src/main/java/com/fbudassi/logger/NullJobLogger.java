@@ -1,6 +1,7 @@
 package com.fbudassi.logger;
 
 import java.util.Properties;
+import java.util.function.Supplier;
 
 /**
  * JobLogger that applies the Null Object pattern. Useful when something goes wrong getting a logger and we need to fail gracefully.
@@ -45,6 +46,56 @@ public class NullJobLogger extends AbstractJobLogger {
 	public void error(String msg, Throwable thrown) {
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isErrorEnabled() {
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void error(Supplier<String> msgSupplier) {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void error(String msg, Object param1) {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void error(String msg, Object param1, Object param2) {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void error(String msg, Object param1, Object param2, Object param3) {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void error(String msg, long param1) {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void error(String msg, int param1) {
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -66,6 +117,56 @@ public class NullJobLogger extends AbstractJobLogger {
 	public void warning(String msg, Throwable thrown) {
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isWarningEnabled() {
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void warning(Supplier<String> msgSupplier) {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void warning(String msg, Object param1) {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void warning(String msg, Object param1, Object param2) {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void warning(String msg, Object param1, Object param2, Object param3) {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void warning(String msg, long param1) {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void warning(String msg, int param1) {
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -86,4 +187,54 @@ public class NullJobLogger extends AbstractJobLogger {
 	@Override
 	public void message(String msg, Throwable thrown) {
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isMessageEnabled() {
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void message(Supplier<String> msgSupplier) {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void message(String msg, Object param1) {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void message(String msg, Object param1, Object param2) {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void message(String msg, Object param1, Object param2, Object param3) {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void message(String msg, long param1) {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void message(String msg, int param1) {
+	}
 }
\ No newline at end of file
@@ -0,0 +1,64 @@
+package com.fbudassi.logger;
+
+/**
+ * LogEventBuilder that applies the Null Object pattern. Returned for disabled levels, so building a message that won't be logged allocates nothing.
+ * 
+ * @author fbudassi
+ */
+public final class NullLogEventBuilder implements LogEventBuilder {
+
+	public static final NullLogEventBuilder NULL_LOG_EVENT_BUILDER = new NullLogEventBuilder();
+
+	/**
+	 * Just one instance of this LogEventBuilder should exist.
+	 */
+	private NullLogEventBuilder() {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public LogEventBuilder with(String key, Object value) {
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public LogEventBuilder with(String key, long value) {
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public LogEventBuilder with(String key, double value) {
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public LogEventBuilder with(String key, boolean value) {
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public LogEventBuilder withThrown(Throwable thrown) {
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void log() {
+	}
+}
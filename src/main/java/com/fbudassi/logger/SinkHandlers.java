@@ -0,0 +1,361 @@
+package com.fbudassi.logger;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Handler;
+
+import com.fbudassi.logger.handler.BinaryFileHandler;
+import com.fbudassi.logger.handler.CollapsingHandler;
+import com.fbudassi.logger.handler.ConnectionPool;
+import com.fbudassi.logger.handler.DatabaseHandler;
+import com.fbudassi.logger.handler.JobLoggerFormatter;
+import com.fbudassi.logger.handler.JsonEncoder;
+import com.fbudassi.logger.handler.MappedFileHandler;
+import com.fbudassi.logger.handler.MeteredHandler;
+import com.fbudassi.logger.handler.PartitionPeriod;
+import com.fbudassi.logger.handler.RollingFileHandler;
+import com.fbudassi.logger.handler.SinkRegistry.SinkFactory;
+import com.fbudassi.logger.handler.TextFileHandler;
+import com.fbudassi.logger.handler.TextStreamHandler;
+import com.fbudassi.logger.util.StringUtils;
+
+/**
+ * Builds the shared handlers (sinks) enabled in the properties. Used by every JobLogger implementation, so loggers of different implementations writing to
+ * the same destination share its handler.
+ * 
+ * @author fbudassi
+ */
+final class SinkHandlers {
+
+	private static final String FORMAT_BINARY = "binary";
+	private static final String FORMAT_JSON = "json";
+
+	/**
+	 * SinkRegistry keys.
+	 */
+	static final String CONSOLE_SINK = "console";
+	static final String FILE_SINK = "file:";
+	static final String DB_SINK = "db:";
+
+	/**
+	 * Private to prevent instantiation.
+	 */
+	private SinkHandlers() {
+	}
+
+	/**
+	 * Return the factories of the sinks enabled in the properties, by SinkRegistry key. Handlers built by the factories already have the optional stages in
+	 * front of them.
+	 * 
+	 * @param props
+	 * @return
+	 */
+	static Map<String, SinkFactory> getSinkFactories(final Properties props) {
+		Map<String, SinkFactory> factories = new LinkedHashMap<>();
+
+		// Console Handler.
+		if (Boolean.parseBoolean(props.getProperty(JobLoggerProperty.CONSOLE_ENABLED.getKey()))) {
+			factories.put(CONSOLE_SINK, new SinkFactory() {
+				@Override
+				public Handler create() throws Exception {
+					return wrap(CONSOLE_SINK, newConsoleHandler(props), props);
+				}
+			});
+		}
+
+		// File Handler.
+		if (Boolean.parseBoolean(props.getProperty(JobLoggerProperty.FILE_ENABLED.getKey()))) {
+			final String key = FILE_SINK + new File(props.getProperty(JobLoggerProperty.FILE_DESTINATION.getKey())).getAbsolutePath();
+
+			factories.put(key, new SinkFactory() {
+				@Override
+				public Handler create() throws Exception {
+					return wrap(key, newFileHandler(props), props);
+				}
+			});
+		}
+
+		// Database Handler.
+		if (Boolean.parseBoolean(props.getProperty(JobLoggerProperty.DB_ENABLED.getKey()))) {
+			final String key = DB_SINK + props.getProperty(JobLoggerProperty.DB_URL.getKey()) + "|" + props.getProperty(JobLoggerProperty.DB_TABLE.getKey());
+
+			factories.put(key, new SinkFactory() {
+				@Override
+				public Handler create() throws Exception {
+					return wrap(key, newDatabaseHandler(props), props);
+				}
+			});
+		}
+		return factories;
+	}
+
+	/**
+	 * Check if the properties put optional stages (metrics, collapsing) in front of the sinks.
+	 * 
+	 * @param props
+	 * @return
+	 */
+	static boolean isWrapped(Properties props) {
+		return Boolean.parseBoolean(props.getProperty(JobLoggerProperty.METRICS_ENABLED.getKey()))
+				|| Boolean.parseBoolean(props.getProperty(JobLoggerProperty.COLLAPSE_ENABLED.getKey()));
+	}
+
+	/**
+	 * Put the optional stages in front of a sink handler: a MeteredHandler if metrics are enabled, then a CollapsingHandler if collapsing is enabled.
+	 * 
+	 * @param key
+	 *            Identifies the sink, used as its name in the metrics.
+	 * @param handler
+	 * @param props
+	 * @return The handler to attach.
+	 */
+	static Handler wrap(String key, Handler handler, Properties props) {
+		if (Boolean.parseBoolean(props.getProperty(JobLoggerProperty.METRICS_ENABLED.getKey()))) {
+			handler = new MeteredHandler(handler, key);
+		}
+
+		if (Boolean.parseBoolean(props.getProperty(JobLoggerProperty.COLLAPSE_ENABLED.getKey()))) {
+			long window = Long.parseLong(props.getProperty(JobLoggerProperty.COLLAPSE_WINDOW.getKey()));
+			handler = new CollapsingHandler(handler, window);
+		}
+		return handler;
+	}
+
+	/**
+	 * Build the console handler.
+	 * 
+	 * @param props
+	 * @return
+	 */
+	static Handler newConsoleHandler(Properties props) {
+		TextStreamHandler ch = new TextStreamHandler(newConsoleStream(props), false);
+		ch.setLevel(JULJobLoggerLevel.ALL);
+		ch.setFormatter(newFormatter(props));
+		ch.setEncoder(newJsonEncoder(props, JobLoggerProperty.CONSOLE_FORMAT));
+		return ch;
+	}
+
+	/**
+	 * Return the stream the console sinks write to: System.err, as ConsoleHandler does, or the standard error descriptor if the console is raw, so writes
+	 * don't go through the System.err monitor.
+	 * 
+	 * @param props
+	 * @return
+	 */
+	static OutputStream newConsoleStream(Properties props) {
+		if (Boolean.parseBoolean(props.getProperty(JobLoggerProperty.CONSOLE_RAW.getKey()))) {
+			return new FileOutputStream(FileDescriptor.err);
+		}
+		return System.err;
+	}
+
+	/**
+	 * Build the file handler configured in the properties.
+	 * 
+	 * @param props
+	 * @return
+	 * @throws IOException
+	 * @throws IllegalArgumentException
+	 *             If the properties combine options the file handlers don't support together.
+	 */
+	static Handler newFileHandler(Properties props) throws IOException {
+		String dest = props.getProperty(JobLoggerProperty.FILE_DESTINATION.getKey());
+		boolean append = Boolean.parseBoolean(props.getProperty(JobLoggerProperty.FILE_APPEND.getKey()));
+
+		long rollSize = Long.parseLong(props.getProperty(JobLoggerProperty.FILE_ROLL_SIZE.getKey()));
+		long rollInterval = Long.parseLong(props.getProperty(JobLoggerProperty.FILE_ROLL_INTERVAL.getKey()));
+		boolean rolling = rollSize > 0 || rollInterval > 0;
+		boolean binary = FORMAT_BINARY.equalsIgnoreCase(props.getProperty(JobLoggerProperty.FILE_FORMAT.getKey()));
+		boolean index = Boolean.parseBoolean(props.getProperty(JobLoggerProperty.FILE_INDEX.getKey()));
+		boolean mapped = Boolean.parseBoolean(props.getProperty(JobLoggerProperty.FILE_MAPPED.getKey()));
+
+		Handler fh;
+		JsonEncoder encoder = newJsonEncoder(props, JobLoggerProperty.FILE_FORMAT);
+
+		// Reject the options that a handler would otherwise ignore.
+		if (binary && rolling) {
+			throw new IllegalArgumentException("Binary files can't roll, set " + JobLoggerProperty.FILE_ROLL_SIZE.getKey() + " and "
+					+ JobLoggerProperty.FILE_ROLL_INTERVAL.getKey() + " to 0");
+		}
+
+		if (index && (encoder == null || rolling)) {
+			throw new IllegalArgumentException("Property " + JobLoggerProperty.FILE_INDEX.getKey() + " is only supported by json files that don't roll");
+		}
+
+		if (mapped && (binary || encoder != null || rolling)) {
+			throw new IllegalArgumentException("Property " + JobLoggerProperty.FILE_MAPPED.getKey() + " is only supported by text files that don't roll");
+		}
+
+		if (binary) {
+			fh = new BinaryFileHandler(dest, append);
+		} else if (rolling) {
+			int archives = Integer.parseInt(props.getProperty(JobLoggerProperty.FILE_ROLL_ARCHIVES.getKey()));
+			boolean compress = Boolean.parseBoolean(props.getProperty(JobLoggerProperty.FILE_ROLL_COMPRESS.getKey()));
+
+			RollingFileHandler rfh = new RollingFileHandler(dest, append, rollSize, rollInterval, archives, compress);
+			rfh.setEncoder(encoder);
+			fh = rfh;
+		} else if (encoder != null) {
+			TextFileHandler tfh = new TextFileHandler(dest, append);
+			tfh.setEncoder(encoder);
+			if (index) {
+				try {
+					tfh.enableIndex(Integer.parseInt(props.getProperty(JobLoggerProperty.FILE_INDEX_BLOCK_SIZE.getKey())));
+				} catch (IOException | RuntimeException e) {
+					tfh.close();
+					throw e;
+				}
+			}
+			fh = tfh;
+		} else if (mapped) {
+			int segmentSize = Integer.parseInt(props.getProperty(JobLoggerProperty.FILE_SEGMENT_SIZE.getKey()));
+			boolean preallocate = Boolean.parseBoolean(props.getProperty(JobLoggerProperty.FILE_SEGMENT_PREALLOCATE.getKey()));
+
+			fh = new MappedFileHandler(dest, append, segmentSize, preallocate);
+		} else {
+			fh = new TextFileHandler(dest, append);
+		}
+		fh.setFormatter(newFormatter(props));
+		return fh;
+	}
+
+	/**
+	 * Build the formatter used by the handlers, with the configured stack trace budget.
+	 * 
+	 * @param props
+	 * @return
+	 */
+	static JobLoggerFormatter newFormatter(Properties props) {
+		int maxLength = Integer.parseInt(props.getProperty(JobLoggerProperty.STACKTRACE_MAX_LENGTH.getKey()));
+		int maxFrames = Integer.parseInt(props.getProperty(JobLoggerProperty.STACKTRACE_MAX_FRAMES.getKey()));
+
+		return new JobLoggerFormatter(maxLength, maxFrames);
+	}
+
+	/**
+	 * Build the JSON encoder of a sink whose format property is set to json, with the configured stack trace budget.
+	 * 
+	 * @param props
+	 * @param format
+	 *            The format property of the sink.
+	 * @return The encoder, or null if the sink uses another format.
+	 */
+	static JsonEncoder newJsonEncoder(Properties props, JobLoggerProperty format) {
+		if (!FORMAT_JSON.equalsIgnoreCase(props.getProperty(format.getKey()))) {
+			return null;
+		}
+
+		int maxLength = Integer.parseInt(props.getProperty(JobLoggerProperty.STACKTRACE_MAX_LENGTH.getKey()));
+		int maxFrames = Integer.parseInt(props.getProperty(JobLoggerProperty.STACKTRACE_MAX_FRAMES.getKey()));
+
+		return new JsonEncoder(maxLength, maxFrames);
+	}
+
+	/**
+	 * Build the database handler configured in the properties, with its own pool of connections.
+	 * 
+	 * @param props
+	 * @return
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	static Handler newDatabaseHandler(Properties props) throws SQLException, IOException {
+		String driver = props.getProperty(JobLoggerProperty.DB_DRIVER.getKey());
+		String url = props.getProperty(JobLoggerProperty.DB_URL.getKey());
+		String table = props.getProperty(JobLoggerProperty.DB_TABLE.getKey());
+
+		Properties connProps = new Properties();
+		connProps.setProperty("user", props.getProperty(JobLoggerProperty.DB_USER.getKey()));
+		connProps.setProperty("password", props.getProperty(JobLoggerProperty.DB_PASSWORD.getKey()));
+
+		boolean async = Boolean.parseBoolean(props.getProperty(JobLoggerProperty.DB_ASYNC.getKey()));
+		int writers = Integer.parseInt(props.getProperty(JobLoggerProperty.DB_WRITERS.getKey()));
+		int poolSize = Integer.parseInt(props.getProperty(JobLoggerProperty.DB_POOL_SIZE.getKey()));
+		long poolTimeout = Long.parseLong(props.getProperty(JobLoggerProperty.DB_POOL_TIMEOUT.getKey()));
+
+		// Every asynchronous writer holds a connection while writing its batch.
+		if (async) {
+			poolSize = Math.max(poolSize, writers);
+		}
+
+		ConnectionPool cp = newConnectionPool(driver, url, connProps, poolSize, poolTimeout);
+		DatabaseHandler dbh;
+		if (async) {
+			int batchSize = Integer.parseInt(props.getProperty(JobLoggerProperty.DB_BATCH_SIZE.getKey()));
+			long linger = Long.parseLong(props.getProperty(JobLoggerProperty.DB_BATCH_LINGER.getKey()));
+			int capacity = Integer.parseInt(props.getProperty(JobLoggerProperty.DB_QUEUE_CAPACITY.getKey()));
+
+			dbh = new DatabaseHandler(cp, table, batchSize, linger, capacity, writers);
+		} else {
+			dbh = new DatabaseHandler(cp, table);
+		}
+
+		dbh.setFormatter(newFormatter(props));
+
+		if (Boolean.parseBoolean(props.getProperty(JobLoggerProperty.DB_TRACE_DEDUP.getKey()))) {
+			dbh.enableTraceDeduplication(Integer.parseInt(props.getProperty(JobLoggerProperty.DB_TRACE_CACHE_SIZE.getKey())));
+		}
+
+		String partition = props.getProperty(JobLoggerProperty.DB_PARTITION.getKey());
+		if (!"none".equalsIgnoreCase(partition)) {
+			dbh.enableTimePartitioning(PartitionPeriod.valueOf(partition.trim().toUpperCase()),
+					Integer.parseInt(props.getProperty(JobLoggerProperty.DB_PARTITION_RETENTION.getKey())));
+		}
+
+		// Last, records left in the journal by a previous run are replayed right away.
+		if (Boolean.parseBoolean(props.getProperty(JobLoggerProperty.DB_JOURNAL_ENABLED.getKey()))) {
+			try {
+				dbh.enableJournal(new File(props.getProperty(JobLoggerProperty.DB_JOURNAL_DIR.getKey())),
+						Long.parseLong(props.getProperty(JobLoggerProperty.DB_JOURNAL_MAX_SIZE.getKey())),
+						Long.parseLong(props.getProperty(JobLoggerProperty.DB_JOURNAL_RETRY.getKey())));
+			} catch (IOException | RuntimeException e) {
+				dbh.close();
+				throw e;
+			}
+		}
+		return dbh;
+	}
+
+	/**
+	 * Create a pool of connections to the database.
+	 * 
+	 * @param driver
+	 *            JDBC driver to use.
+	 * @param url
+	 *            JDBC url to the database.
+	 * @param connProps
+	 *            Connection properties (user, password).
+	 * @param size
+	 *            Maximum number of open connections.
+	 * @param timeoutMillis
+	 *            Maximum time to wait for a free connection.
+	 * @return The connection pool.
+	 */
+	static ConnectionPool newConnectionPool(String driver, String url, Properties connProps, int size, long timeoutMillis) {
+		// Check parameters.
+		if (StringUtils.isBlank(driver)) {
+			throw new IllegalArgumentException("Parameter driver can't be empty");
+		}
+
+		if (StringUtils.isBlank(url)) {
+			throw new IllegalArgumentException("Parameter url can't be empty");
+		}
+
+		// Load JDBC driver.
+		try {
+			Class.forName(driver);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException("Could not load JDBC driver class [" + driver + "]", e);
+		}
+
+		// Connections are opened on demand by the pool.
+		return new ConnectionPool(url, connProps, size, timeoutMillis);
+	}
+}
@@ -0,0 +1,88 @@
+package com.fbudassi.logger;
+
+import java.util.logging.Level;
+
+import com.fbudassi.logger.handler.EventFields;
+
+/**
+ * LogEventBuilder of an enabled level. Collects the fields and hands them over to the JobLogger that created it.
+ * 
+ * @author fbudassi
+ */
+final class StructuredEventBuilder implements LogEventBuilder {
+
+	private final AbstractJobLogger logger;
+	private final Level level;
+	private final String msg;
+	private final EventFields fields = new EventFields();
+	private Throwable thrown;
+
+	/**
+	 * StructuredEventBuilder constructor.
+	 * 
+	 * @param logger
+	 *            The logger that logs the message.
+	 * @param level
+	 *            The level of the message.
+	 * @param msg
+	 *            The message to log.
+	 */
+	StructuredEventBuilder(AbstractJobLogger logger, Level level, String msg) {
+		this.logger = logger;
+		this.level = level;
+		this.msg = msg;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public LogEventBuilder with(String key, Object value) {
+		fields.add(key, value);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public LogEventBuilder with(String key, long value) {
+		fields.add(key, value);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public LogEventBuilder with(String key, double value) {
+		fields.add(key, value);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public LogEventBuilder with(String key, boolean value) {
+		fields.add(key, value);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public LogEventBuilder withThrown(Throwable thrown) {
+		this.thrown = thrown;
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void log() {
+		logger.logStructured(level, msg, fields, thrown);
+	}
+}
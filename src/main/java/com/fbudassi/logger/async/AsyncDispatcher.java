@@ -0,0 +1,315 @@
+package com.fbudassi.logger.async;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import com.fbudassi.logger.handler.EventFields;
+import com.fbudassi.logger.handler.StructuredLogRecord;
+import com.fbudassi.logger.metrics.QueueGauge;
+import com.fbudassi.logger.util.ExceptionUtils;
+
+/**
+ * Dispatches log calls to java.util.logging on a background thread.
+ * 
+ * Log calls are stored in a preallocated multi-producer/single-consumer ring buffer. A producer claims a sequence with a single CAS, copies the call into the
+ * slot for that sequence and marks it as published. The only consumer thread builds the LogRecord and runs the logger handlers, so the calling thread never
+ * pays for formatting or I/O.
+ * 
+ * Parameters are copied by reference: they must not be modified after the log call.
+ * 
+ * @author fbudassi
+ */
+public class AsyncDispatcher implements QueueGauge {
+
+	private final Slot[] slots;
+	private final int mask;
+
+	/**
+	 * Sequence published in every slot, -1 if none yet. A slot is readable by the consumer when its published sequence matches the one it expects.
+	 */
+	private final AtomicLongArray published;
+
+	/**
+	 * Next sequence to be claimed by producers and next sequence to be read by the consumer.
+	 */
+	private final AtomicLong claimed = new AtomicLong();
+	private final AtomicLong consumed = new AtomicLong();
+
+	private final WaitStrategy waitStrategy;
+	private final boolean captureThrown;
+	private final Thread consumer;
+	private volatile boolean running = true;
+
+	/**
+	 * Calls whose handlers failed. Only updated by the consumer thread.
+	 */
+	private volatile long dropped;
+
+	/**
+	 * A preallocated log call.
+	 */
+	private static final class Slot {
+		private Logger logger;
+		private Level level;
+		private String msg;
+		private Object[] params;
+		private EventFields fields;
+		private Throwable thrown;
+		private long millis;
+		private int threadID;
+	}
+
+	/**
+	 * Create the dispatcher and start its consumer thread.
+	 * 
+	 * @param bufferSize
+	 *            Number of slots of the ring buffer. It's rounded up to the next power of two.
+	 * @param waitStrategy
+	 *            How threads wait when the buffer is empty or full.
+	 */
+	public AsyncDispatcher(int bufferSize, WaitStrategy waitStrategy) {
+		this(bufferSize, waitStrategy, false);
+	}
+
+	/**
+	 * Create the dispatcher and start its consumer thread.
+	 * 
+	 * @param bufferSize
+	 *            Number of slots of the ring buffer. It's rounded up to the next power of two.
+	 * @param waitStrategy
+	 *            How threads wait when the buffer is empty or full.
+	 * @param captureThrown
+	 *            If true, throwables are captured on the logging thread (description and stack frames only), and their stack traces are rendered by the
+	 *            handlers on the consumer thread from that snapshot.
+	 */
+	public AsyncDispatcher(int bufferSize, WaitStrategy waitStrategy, boolean captureThrown) {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("Parameter bufferSize should be greater than zero");
+		}
+
+		if (waitStrategy == null) {
+			throw new IllegalArgumentException("Parameter waitStrategy can't be null");
+		}
+
+		int capacity = Integer.highestOneBit(bufferSize);
+		if (capacity < bufferSize) {
+			capacity <<= 1;
+		}
+
+		this.slots = new Slot[capacity];
+		this.mask = capacity - 1;
+		this.published = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			slots[i] = new Slot();
+			published.set(i, -1);
+		}
+		this.waitStrategy = waitStrategy;
+		this.captureThrown = captureThrown;
+
+		consumer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				consume();
+			}
+		}, "joblogger-async-dispatcher");
+		consumer.setDaemon(true);
+		consumer.start();
+	}
+
+	/**
+	 * Publish a log call into the ring buffer. Waits with the configured strategy if the buffer is full.
+	 * 
+	 * @param logger
+	 *            The logger whose handlers will get the record.
+	 * @param level
+	 *            The level of the message.
+	 * @param msg
+	 *            The message to log.
+	 * @param params
+	 *            Parameters to be replaced in the message. Can be null.
+	 * @param thrown
+	 *            A throwable to log its stack trace. Can be null.
+	 * @return False if the dispatcher is closed (or its consumer thread died) and the call was not accepted, so the caller should log it by itself.
+	 */
+	public boolean publish(Logger logger, Level level, String msg, Object[] params, Throwable thrown) {
+		return publish(logger, level, msg, params, null, thrown);
+	}
+
+	/**
+	 * Publish a structured log call into the ring buffer. The consumer passes it on as a StructuredLogRecord. Waits with the configured strategy if the
+	 * buffer is full.
+	 * 
+	 * @param logger
+	 *            The logger whose handlers will get the record.
+	 * @param level
+	 *            The level of the message.
+	 * @param msg
+	 *            The message to log.
+	 * @param params
+	 *            Parameters to be replaced in the message. Can be null.
+	 * @param fields
+	 *            Key-value fields. Can be null. They must not be modified after the log call.
+	 * @param thrown
+	 *            A throwable to log its stack trace. Can be null.
+	 * @return False if the dispatcher is closed (or its consumer thread died) and the call was not accepted, so the caller should log it by itself.
+	 */
+	public boolean publish(Logger logger, Level level, String msg, Object[] params, EventFields fields, Throwable thrown) {
+		if (!running) {
+			return false;
+		}
+
+		// Capture before claiming a slot, so the consumer doesn't wait for it.
+		if (captureThrown) {
+			thrown = ExceptionUtils.capture(thrown);
+		}
+
+		// Claim a sequence, waiting while the buffer is full. If the consumer thread died, the buffer never drains: the caller logs the call by itself.
+		long seq;
+		int counter = 0;
+		while (true) {
+			seq = claimed.get();
+			if (seq - consumed.get() >= slots.length) {
+				if (!running || !consumer.isAlive()) {
+					return false;
+				}
+				waitStrategy.idle(++counter);
+			} else if (claimed.compareAndSet(seq, seq + 1)) {
+				break;
+			}
+		}
+
+		int index = (int) seq & mask;
+		Slot slot = slots[index];
+
+		// Closed while claiming: the consumer may have already stopped. The slot is published empty, so it's skipped if it's still running, and the
+		// caller logs the call by itself.
+		if (!running) {
+			published.lazySet(index, seq);
+			return false;
+		}
+
+		// Copy the call into the slot and make it visible to the consumer.
+		slot.logger = logger;
+		slot.level = level;
+		slot.msg = msg;
+		slot.params = params;
+		slot.fields = fields;
+		slot.thrown = thrown;
+		slot.millis = System.currentTimeMillis();
+		slot.threadID = (int) Thread.currentThread().getId();
+		published.lazySet(index, seq);
+
+		return true;
+	}
+
+	/**
+	 * Block until every call published before this one has been handled by the consumer.
+	 */
+	public void flush() {
+		long target = claimed.get();
+		int counter = 0;
+		while (consumed.get() < target && consumer.isAlive()) {
+			WaitStrategy.PARK.idle(++counter);
+		}
+	}
+
+	/**
+	 * Stop accepting calls, dispatch the pending ones and stop the consumer thread.
+	 */
+	public void close() {
+		running = false;
+		try {
+			consumer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Return the number of calls waiting in the ring buffer.
+	 * 
+	 * @return
+	 */
+	public long getPending() {
+		return Math.max(0, claimed.get() - consumed.get());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getQueueDepth() {
+		return getPending();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Calls rejected because the dispatcher was closed are not counted, their callers log them by themselves.
+	 */
+	@Override
+	public long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * Consumer loop. Reads the slots in sequence order and logs them until the dispatcher is closed and the buffer is empty.
+	 */
+	private void consume() {
+		long next = consumed.get();
+		int counter = 0;
+
+		while (true) {
+			int index = (int) next & mask;
+
+			if (published.get(index) != next) {
+				if (!running && next == claimed.get()) {
+					break;
+				}
+				waitStrategy.idle(++counter);
+				continue;
+			}
+			counter = 0;
+
+			// A call rejected by its producer because the dispatcher was closed.
+			Slot slot = slots[index];
+			if (slot.logger == null) {
+				consumed.lazySet(++next);
+				continue;
+			}
+
+			// Build the record and free the slot before running the handlers.
+			Logger logger = slot.logger;
+			LogRecord lr = slot.fields != null ? new StructuredLogRecord(slot.level, slot.msg, slot.fields) : new LogRecord(slot.level, slot.msg);
+			lr.setParameters(slot.params);
+			lr.setThrown(slot.thrown);
+			lr.setMillis(slot.millis);
+			lr.setThreadID(slot.threadID);
+			lr.setLoggerName(logger.getName());
+
+			// The caller can't be inferred from the consumer thread.
+			lr.setSourceClassName(logger.getName());
+			lr.setSourceMethodName(null);
+
+			slot.logger = null;
+			slot.level = null;
+			slot.msg = null;
+			slot.params = null;
+			slot.fields = null;
+			slot.thrown = null;
+			consumed.lazySet(++next);
+
+			try {
+				logger.log(lr);
+			} catch (Throwable e) {
+				// A failing handler must not kill the consumer thread, not even with an Error (i.e. a StackOverflowError formatting a parameter).
+				dropped++;
+				System.err.println("Error dispatching log record: " + e.getMessage());
+				e.printStackTrace();
+			}
+		}
+	}
+}
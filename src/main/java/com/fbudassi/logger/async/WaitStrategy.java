@@ -0,0 +1,55 @@
+package com.fbudassi.logger.async;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Strategies used by the ring buffer threads when they have to wait: the consumer when the buffer is empty and producers when it is full.
+ * 
+ * @author fbudassi
+ */
+public enum WaitStrategy {
+
+	/**
+	 * Busy spin. Lowest latency, but it burns a whole CPU core while idle.
+	 */
+	SPIN,
+
+	/**
+	 * Spin for a while and then yield the CPU to other threads.
+	 */
+	YIELD,
+
+	/**
+	 * Spin, then yield, then park the thread for a short time. Cheapest on CPU, adds up to PARK_NANOS of latency when the buffer was idle.
+	 */
+	PARK;
+
+	private static final int SPIN_TRIES = 100;
+	private static final int YIELD_TRIES = 200;
+	private static final long PARK_NANOS = 100000L;
+
+	/**
+	 * Wait once.
+	 * 
+	 * @param counter
+	 *            How many times in a row the caller has been waiting. Callers reset it once they make progress.
+	 */
+	public void idle(int counter) {
+		switch (this) {
+		case SPIN:
+			break;
+		case YIELD:
+			if (counter > SPIN_TRIES) {
+				Thread.yield();
+			}
+			break;
+		case PARK:
+			if (counter > YIELD_TRIES) {
+				LockSupport.parkNanos(PARK_NANOS);
+			} else if (counter > SPIN_TRIES) {
+				Thread.yield();
+			}
+			break;
+		}
+	}
+}
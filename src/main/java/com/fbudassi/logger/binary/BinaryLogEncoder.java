@@ -0,0 +1,173 @@
+package com.fbudassi.logger.binary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Encodes LogEntry objects in the binary log format described in BinaryLogFormat. It keeps the string table and time base of one file, so it is not
+ * thread-safe: every file needs its own encoder, used under the file lock.
+ * 
+ * @author fbudassi
+ */
+public class BinaryLogEncoder {
+
+	private final Map<String, Integer> strings = new HashMap<>();
+	private long lastMillis;
+
+	/**
+	 * Reusable buffer for frame payloads.
+	 */
+	private final PayloadBuffer payload = new PayloadBuffer();
+
+	/**
+	 * ByteArrayOutputStream that lets us write its content as a frame without copying it.
+	 */
+	private static final class PayloadBuffer extends ByteArrayOutputStream {
+		private void writeFrame(OutputStream out, int type) throws IOException {
+			out.write(type);
+			BinaryLogFormat.writeVarLong(out, count);
+			out.write(buf, 0, count);
+		}
+	}
+
+	/**
+	 * Write the file header. Must be called once, at the start of a new file.
+	 * 
+	 * @param out
+	 * @return Number of bytes written.
+	 * @throws IOException
+	 */
+	public int writeHeader(OutputStream out) throws IOException {
+		out.write(BinaryLogFormat.MAGIC);
+		out.write(BinaryLogFormat.VERSION);
+		return BinaryLogFormat.MAGIC.length + 1;
+	}
+
+	/**
+	 * Write a RESET frame and forget the string table and time base. Entries written after it can be decoded without reading anything before it.
+	 * 
+	 * @param out
+	 * @return Number of bytes written.
+	 * @throws IOException
+	 */
+	public int reset(OutputStream out) throws IOException {
+		strings.clear();
+		lastMillis = 0;
+
+		out.write(BinaryLogFormat.FRAME_RESET);
+		BinaryLogFormat.writeVarLong(out, 0);
+		return 2;
+	}
+
+	/**
+	 * Encode an entry, preceded by the STRING frames of the names it uses for the first time.
+	 * 
+	 * @param entry
+	 *            The entry to encode.
+	 * @param out
+	 *            Where to write it.
+	 * @return Number of bytes written.
+	 * @throws IOException
+	 */
+	public int encode(LogEntry entry, OutputStream out) throws IOException {
+		int written = 0;
+		int levelId = stringId(entry.getLevel());
+		if (levelId < 0) {
+			levelId = -levelId - 1;
+			written += writeString(out, levelId, entry.getLevel());
+		}
+		String logger = entry.getLogger() == null ? "" : entry.getLogger();
+		int loggerId = stringId(logger);
+		if (loggerId < 0) {
+			loggerId = -loggerId - 1;
+			written += writeString(out, loggerId, logger);
+		}
+
+		payload.reset();
+		BinaryLogFormat.writeZigZag(payload, entry.getMillis() - lastMillis);
+		BinaryLogFormat.writeZigZag(payload, entry.getLevelValue());
+		BinaryLogFormat.writeVarLong(payload, levelId);
+		BinaryLogFormat.writeVarLong(payload, loggerId);
+		writeNullable(payload, entry.getMessage());
+		BinaryLogFormat.writeVarLong(payload, entry.getSequence());
+		BinaryLogFormat.writeZigZag(payload, entry.getThreadID());
+		writeNullable(payload, entry.getStackTrace());
+		lastMillis = entry.getMillis();
+
+		written += frameSize();
+		payload.writeFrame(out, BinaryLogFormat.FRAME_RECORD);
+		return written;
+	}
+
+	/**
+	 * Return the id of a string in the table. If it's new, it's added and -(id + 1) is returned so the caller knows it must be written.
+	 * 
+	 * @param str
+	 * @return
+	 */
+	private int stringId(String str) {
+		Integer id = strings.get(str);
+		if (id != null) {
+			return id;
+		}
+		id = strings.size();
+		strings.put(str, id);
+		return -id - 1;
+	}
+
+	/**
+	 * Write a STRING frame.
+	 * 
+	 * @param out
+	 * @param id
+	 * @param str
+	 * @return Number of bytes written.
+	 * @throws IOException
+	 */
+	private int writeString(OutputStream out, int id, String str) throws IOException {
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		payload.reset();
+		BinaryLogFormat.writeVarLong(payload, id);
+		BinaryLogFormat.writeVarLong(payload, bytes.length);
+		payload.write(bytes);
+
+		int size = frameSize();
+		payload.writeFrame(out, BinaryLogFormat.FRAME_STRING);
+		return size;
+	}
+
+	/**
+	 * Write a string that can be null as length + 1 and UTF-8 bytes.
+	 * 
+	 * @param out
+	 * @param str
+	 * @throws IOException
+	 */
+	private static void writeNullable(OutputStream out, String str) throws IOException {
+		if (str == null) {
+			BinaryLogFormat.writeVarLong(out, 0);
+			return;
+		}
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		BinaryLogFormat.writeVarLong(out, bytes.length + 1L);
+		out.write(bytes);
+	}
+
+	/**
+	 * Return the size of the frame that holds the current payload.
+	 * 
+	 * @return
+	 */
+	private int frameSize() {
+		int size = payload.size();
+		int lengthBytes = 1;
+		for (long v = size >>> 7; v != 0; v >>>= 7) {
+			lengthBytes++;
+		}
+		return 1 + lengthBytes + size;
+	}
+}
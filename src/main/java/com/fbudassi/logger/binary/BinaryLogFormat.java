@@ -0,0 +1,98 @@
+package com.fbudassi.logger.binary;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Constants and varint helpers of the binary log file format.
+ * 
+ * A file starts with the MAGIC bytes and a VERSION byte, followed by frames. Every frame is a type byte, the payload length as a varint and the payload, so
+ * readers can skip frame types they don't know. Frame types are:
+ * 
+ * <ul>
+ * <li>STRING: varint id, varint length and UTF-8 bytes. Defines an entry of the string table used for level and logger names.</li>
+ * <li>RECORD: zigzag varint time delta from the previous record, zigzag varint level value, varint level name id, varint logger name id, message, varint
+ * sequence, zigzag varint threadID and stack trace. Message and stack trace are written as varint length + 1 (0 means null) and UTF-8 bytes.</li>
+ * <li>RESET: no payload. Clears the string table and the time base, so decoding can start right after it.</li>
+ * </ul>
+ * 
+ * @author fbudassi
+ */
+public final class BinaryLogFormat {
+
+	public static final byte[] MAGIC = { 'J', 'L', 'O', 'G' };
+	public static final int VERSION = 1;
+
+	public static final int FRAME_STRING = 1;
+	public static final int FRAME_RECORD = 2;
+	public static final int FRAME_RESET = 3;
+
+	/**
+	 * Private to prevent instantiation.
+	 */
+	private BinaryLogFormat() {
+	}
+
+	/**
+	 * Write an unsigned varint: 7 bits per byte, least significant group first, high bit set on every byte but the last.
+	 * 
+	 * @param out
+	 * @param value
+	 * @throws IOException
+	 */
+	public static void writeVarLong(OutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	/**
+	 * Write a signed value as a zigzag varint, so small negative numbers take few bytes too.
+	 * 
+	 * @param out
+	 * @param value
+	 * @throws IOException
+	 */
+	public static void writeZigZag(OutputStream out, long value) throws IOException {
+		writeVarLong(out, (value << 1) ^ (value >> 63));
+	}
+
+	/**
+	 * Read an unsigned varint.
+	 * 
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 *             EOFException if the stream ends in the middle of the value.
+	 */
+	public static long readVarLong(InputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.read();
+			if (b < 0) {
+				throw new EOFException("Truncated varint");
+			}
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	/**
+	 * Read a zigzag varint.
+	 * 
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public static long readZigZag(InputStream in) throws IOException {
+		long value = readVarLong(in);
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
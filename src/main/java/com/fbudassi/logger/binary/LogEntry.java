@@ -0,0 +1,129 @@
+package com.fbudassi.logger.binary;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+
+import com.fbudassi.logger.handler.JobLoggerFormatter;
+import com.fbudassi.logger.util.ExceptionUtils;
+
+/**
+ * An already formatted log record, with the same fields DatabaseHandler stores: time, level, logger, message, sequence, threadID and stackTrace.
+ * 
+ * @author fbudassi
+ */
+public class LogEntry {
+
+	private static final String TIMESTAMP_PATTERN = "yyyy-MM-dd HH:mm:ss.SSS";
+
+	private final long millis;
+	private final String level;
+	private final int levelValue;
+	private final String logger;
+	private final String message;
+	private final long sequence;
+	private final int threadID;
+	private final String stackTrace;
+
+	/**
+	 * LogEntry constructor.
+	 * 
+	 * @param millis
+	 *            Event time in milliseconds since the epoch.
+	 * @param level
+	 *            Level name.
+	 * @param levelValue
+	 *            Level integer value.
+	 * @param logger
+	 *            Logger name. Can be null.
+	 * @param message
+	 *            Formatted message. Can be null.
+	 * @param sequence
+	 *            Record sequence number.
+	 * @param threadID
+	 *            ID of the thread that logged the record.
+	 * @param stackTrace
+	 *            Rendered stack trace. Can be null.
+	 */
+	public LogEntry(long millis, String level, int levelValue, String logger, String message, long sequence, int threadID, String stackTrace) {
+		if (level == null) {
+			throw new IllegalArgumentException("Parameter level can't be null");
+		}
+
+		this.millis = millis;
+		this.level = level;
+		this.levelValue = levelValue;
+		this.logger = logger;
+		this.message = message;
+		this.sequence = sequence;
+		this.threadID = threadID;
+		this.stackTrace = stackTrace;
+	}
+
+	/**
+	 * Build a LogEntry from a LogRecord.
+	 * 
+	 * @param record
+	 *            The record.
+	 * @param formatter
+	 *            Formatter used to render the record message, and the stack trace if it's a JobLoggerFormatter.
+	 * @return The entry.
+	 */
+	public static LogEntry from(LogRecord record, Formatter formatter) {
+		String stackTrace = formatter instanceof JobLoggerFormatter ? ((JobLoggerFormatter) formatter).formatStackTrace(record.getThrown(), Integer.MAX_VALUE)
+				: ExceptionUtils.getStackTrace(record.getThrown());
+
+		return new LogEntry(record.getMillis(), record.getLevel().getName(), record.getLevel().intValue(), record.getLoggerName(),
+				formatter.formatMessage(record), record.getSequenceNumber(), record.getThreadID(), stackTrace);
+	}
+
+	public long getMillis() {
+		return millis;
+	}
+
+	public String getLevel() {
+		return level;
+	}
+
+	public int getLevelValue() {
+		return levelValue;
+	}
+
+	public String getLogger() {
+		return logger;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public int getThreadID() {
+		return threadID;
+	}
+
+	public String getStackTrace() {
+		return stackTrace;
+	}
+
+	/**
+	 * Render the entry as text: timestamp, level, logger, thread, sequence, message and stack trace if any.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(128);
+		sb.append(new SimpleDateFormat(TIMESTAMP_PATTERN).format(new Date(millis)));
+		sb.append(' ').append(level);
+		sb.append(" [").append(logger).append("] ");
+		sb.append("(thread ").append(threadID).append(", seq ").append(sequence).append(") ");
+		sb.append(message);
+		if (stackTrace != null) {
+			sb.append(System.getProperty("line.separator")).append(stackTrace);
+		}
+		return sb.toString();
+	}
+}
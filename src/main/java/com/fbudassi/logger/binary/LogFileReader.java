@@ -0,0 +1,257 @@
+package com.fbudassi.logger.binary;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming reader of binary log files. Entries are decoded one at a time, so files of any size can be read with constant memory.
+ * 
+ * It can be used from the command line to decode a file to text:
+ * 
+ * <pre>
+ * java com.fbudassi.logger.binary.LogFileReader joblogger.log
+ * </pre>
+ * 
+ * @author fbudassi
+ */
+public class LogFileReader implements Closeable {
+
+	/**
+	 * Initial buffer size for frame payloads.
+	 */
+	private static final int FRAME_CHUNK = 8192;
+
+	private final DataInputStream in;
+	private final List<String> strings = new ArrayList<>();
+	private long lastMillis;
+
+	/**
+	 * Open a binary log file.
+	 * 
+	 * @param file
+	 * @throws IOException
+	 *             If the file can't be read or it's not a binary log file.
+	 */
+	public LogFileReader(File file) throws IOException {
+		this(new FileInputStream(file), true);
+	}
+
+	/**
+	 * Read binary log entries from a stream.
+	 * 
+	 * @param in
+	 *            The stream.
+	 * @param header
+	 *            True if the stream starts with the file header, false if it is positioned right after a RESET frame or the header.
+	 * @throws IOException
+	 *             If header is true and the stream doesn't start with a valid one.
+	 */
+	public LogFileReader(InputStream in, boolean header) throws IOException {
+		if (in == null) {
+			throw new IllegalArgumentException("Parameter in can't be null");
+		}
+
+		this.in = new DataInputStream(new BufferedInputStream(in));
+
+		if (header) {
+			try {
+				byte[] magic = new byte[BinaryLogFormat.MAGIC.length];
+				this.in.readFully(magic);
+				if (!Arrays.equals(magic, BinaryLogFormat.MAGIC)) {
+					throw new IOException("Not a binary log file");
+				}
+				int version = this.in.readUnsignedByte();
+				if (version > BinaryLogFormat.VERSION) {
+					throw new IOException("Unsupported binary log version " + version);
+				}
+			} catch (IOException e) {
+				this.in.close();
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Decode the next entry.
+	 * 
+	 * @return The entry, or null at the end of the file.
+	 * @throws IOException
+	 */
+	public LogEntry next() throws IOException {
+		while (true) {
+			int type = in.read();
+			if (type < 0) {
+				return null;
+			}
+
+			byte[] frame;
+			try {
+				long length = BinaryLogFormat.readVarLong(in);
+				if (length < 0 || length > Integer.MAX_VALUE) {
+					throw new IOException("Corrupt frame");
+				}
+				frame = readFrame((int) length);
+			} catch (EOFException e) {
+				// An incomplete last frame, i.e. the writer was killed. Treat it as the end of the file.
+				return null;
+			}
+
+			ByteArrayInputStream payload = new ByteArrayInputStream(frame);
+			try {
+				switch (type) {
+				case BinaryLogFormat.FRAME_STRING:
+					// Ids are given in order, so a valid one redefines an entry or adds the next.
+					long id = BinaryLogFormat.readVarLong(payload);
+					if (id < 0 || id > strings.size()) {
+						throw new IOException("Corrupt frame");
+					}
+					String str = readString(payload, BinaryLogFormat.readVarLong(payload));
+					if (id == strings.size()) {
+						strings.add(str);
+					} else {
+						strings.set((int) id, str);
+					}
+					break;
+				case BinaryLogFormat.FRAME_RECORD:
+					return readRecord(payload);
+				case BinaryLogFormat.FRAME_RESET:
+					strings.clear();
+					lastMillis = 0;
+					break;
+				default:
+					// Unknown frame type from a newer writer: skip it.
+					break;
+				}
+			} catch (EOFException e) {
+				// The frame is complete, so a value running past its end means the length or the payload is wrong.
+				throw new IOException("Corrupt frame", e);
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Read a frame payload. The buffer grows as the bytes arrive, so a corrupt length doesn't allocate more memory than the file holds.
+	 * 
+	 * @param length
+	 * @return
+	 * @throws IOException
+	 *             EOFException if the stream ends before the whole payload.
+	 */
+	private byte[] readFrame(int length) throws IOException {
+		byte[] frame = new byte[Math.min(length, FRAME_CHUNK)];
+		int read = 0;
+		while (read < length) {
+			if (read == frame.length) {
+				frame = Arrays.copyOf(frame, (int) Math.min(length, 2L * frame.length));
+			}
+			in.readFully(frame, read, frame.length - read);
+			read = frame.length;
+		}
+		return frame;
+	}
+
+	/**
+	 * Decode a RECORD frame payload.
+	 * 
+	 * @param payload
+	 * @return
+	 * @throws IOException
+	 */
+	private LogEntry readRecord(ByteArrayInputStream payload) throws IOException {
+		long millis = lastMillis + BinaryLogFormat.readZigZag(payload);
+		int levelValue = (int) BinaryLogFormat.readZigZag(payload);
+		String level = lookup(BinaryLogFormat.readVarLong(payload));
+		String logger = lookup(BinaryLogFormat.readVarLong(payload));
+		String message = readNullable(payload);
+		long sequence = BinaryLogFormat.readVarLong(payload);
+		int threadID = (int) BinaryLogFormat.readZigZag(payload);
+		String stackTrace = readNullable(payload);
+		lastMillis = millis;
+
+		return new LogEntry(millis, level, levelValue, logger, message, sequence, threadID, stackTrace);
+	}
+
+	/**
+	 * Get a string from the table.
+	 * 
+	 * @param id
+	 * @return
+	 * @throws IOException
+	 *             If the string was never defined.
+	 */
+	private String lookup(long id) throws IOException {
+		if (id < 0 || id >= strings.size() || strings.get((int) id) == null) {
+			throw new IOException("Undefined string id " + id);
+		}
+		return strings.get((int) id);
+	}
+
+	private static String readNullable(ByteArrayInputStream payload) throws IOException {
+		long length = BinaryLogFormat.readVarLong(payload);
+		return length == 0 ? null : readString(payload, length - 1);
+	}
+
+	/**
+	 * Read UTF-8 bytes from a frame payload.
+	 * 
+	 * @param payload
+	 * @param length
+	 * @return
+	 * @throws IOException
+	 *             If the length is negative or goes past the end of the frame.
+	 */
+	private static String readString(ByteArrayInputStream payload, long length) throws IOException {
+		if (length < 0 || length > payload.available()) {
+			throw new IOException("Corrupt frame");
+		}
+		byte[] bytes = new byte[(int) length];
+		payload.read(bytes, 0, bytes.length);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Decode binary log files to text on the standard output.
+	 * 
+	 * @param args
+	 *            Paths of the files to decode.
+	 */
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			System.err.println("Usage: java " + LogFileReader.class.getCanonicalName() + " <file> [<file> ...]");
+			System.exit(1);
+		}
+
+		PrintStream out = System.out;
+		for (String path : args) {
+			try (LogFileReader reader = new LogFileReader(new File(path))) {
+				for (LogEntry entry = reader.next(); entry != null; entry = reader.next()) {
+					out.println(entry);
+				}
+			} catch (IOException e) {
+				System.err.println("Error reading " + path + ": " + e.getMessage());
+				System.exit(2);
+			}
+		}
+		out.flush();
+	}
+}
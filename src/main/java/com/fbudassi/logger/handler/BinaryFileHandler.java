@@ -0,0 +1,234 @@
+package com.fbudassi.logger.handler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+import com.fbudassi.logger.binary.BinaryLogEncoder;
+import com.fbudassi.logger.binary.BinaryLogFormat;
+import com.fbudassi.logger.binary.LogEntry;
+import com.fbudassi.logger.metrics.ByteCounter;
+import com.fbudassi.logger.util.StringUtils;
+
+/**
+ * File Handler for java.util.logging that writes records in the compact binary log format. Files can be decoded with
+ * com.fbudassi.logger.binary.LogFileReader.
+ * 
+ * Writes are guarded by a ReentrantLock instead of a monitor, so waiting threads don't pin their carrier thread. Every record is flushed to the file as
+ * soon as it's written, like TextStreamHandler does: the buffer only gathers the frames of a record into a single write, so a crash loses at most the
+ * record being written.
+ * 
+ * @author fbudassi
+ */
+public class BinaryFileHandler extends Handler implements ByteCounter {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final File file;
+	private final BinaryLogEncoder encoder = new BinaryLogEncoder();
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * Guarded by the lock.
+	 */
+	private OutputStream out;
+
+	/**
+	 * Only updated holding the handler lock.
+	 */
+	private volatile long bytesWritten;
+
+	/**
+	 * BinaryFileHandler constructor.
+	 * 
+	 * @param destination
+	 *            Path of the log file.
+	 * @param append
+	 *            If true, records are added to the existing file, after cutting off any partially written last frame. Otherwise, the file is overwritten.
+	 * @throws IOException
+	 *             If the file can't be opened, or it must be appended to and it's not a binary log file.
+	 */
+	public BinaryFileHandler(String destination, boolean append) throws IOException {
+		if (StringUtils.isBlank(destination)) {
+			throw new IllegalArgumentException("Parameter destination can't be blank");
+		}
+
+		file = new File(destination);
+
+		// A killed writer may have left a torn frame at the end: a reader would take the RESET and the new records as part of it.
+		boolean existing = false;
+		if (append && file.length() > 0) {
+			long complete = getCompleteLength(file);
+			if (complete < file.length()) {
+				try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+					raf.setLength(complete);
+				}
+			}
+			existing = complete > 0;
+		}
+		out = new BufferedOutputStream(new FileOutputStream(file, append), BUFFER_SIZE);
+
+		// A new file gets the header. Appending starts with a RESET, since we don't know the string table of the previous writer.
+		if (existing) {
+			bytesWritten = encoder.reset(out);
+		} else {
+			bytesWritten = encoder.writeHeader(out);
+		}
+
+		setFormatter(new JobLoggerFormatter());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void publish(LogRecord record) {
+		if (!isLoggable(record)) {
+			return;
+		}
+
+		// Format outside the lock.
+		LogEntry entry;
+		try {
+			entry = LogEntry.from(record, getFormatter());
+		} catch (Exception e) {
+			reportError(e.getMessage(), e, ErrorManager.FORMAT_FAILURE);
+			return;
+		}
+
+		lock.lock();
+		try {
+			if (out == null) {
+				reportError("Handler is closed", null, ErrorManager.WRITE_FAILURE);
+				return;
+			}
+
+			bytesWritten += encoder.encode(entry, out);
+			out.flush();
+		} catch (IOException e) {
+			reportError(e.getMessage(), e, ErrorManager.WRITE_FAILURE);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void flush() {
+		lock.lock();
+		try {
+			if (out != null) {
+				out.flush();
+			}
+		} catch (IOException e) {
+			reportError(e.getMessage(), e, ErrorManager.FLUSH_FAILURE);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			if (out != null) {
+				out.close();
+			}
+		} catch (IOException e) {
+			reportError(e.getMessage(), e, ErrorManager.CLOSE_FAILURE);
+		} finally {
+			out = null;
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	/**
+	 * Return the length of the complete frames at the start of a binary log file, header included. Returns 0 if not even the header is complete.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 *             If the file can't be read or it's not a binary log file.
+	 */
+	private static long getCompleteLength(File file) throws IOException {
+		long length = file.length();
+		int headerSize = BinaryLogFormat.MAGIC.length + 1;
+		if (length < headerSize) {
+			return 0;
+		}
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+			byte[] magic = new byte[BinaryLogFormat.MAGIC.length];
+			in.readFully(magic);
+			if (!Arrays.equals(magic, BinaryLogFormat.MAGIC)) {
+				throw new IOException("Not a binary log file: " + file);
+			}
+			in.readUnsignedByte();
+
+			// Walk the frames by their length prefix, without decoding them.
+			long position = headerSize;
+			while (in.read() >= 0) {
+				long end = position + 1;
+				long frameLength = 0;
+				int b;
+				int shift = 0;
+				do {
+					b = in.read();
+					if (b < 0 || shift >= 64) {
+						return position;
+					}
+					frameLength |= (long) (b & 0x7F) << shift;
+					shift += 7;
+					end++;
+				} while ((b & 0x80) != 0);
+
+				end += frameLength;
+				if (frameLength < 0 || end > length) {
+					return position;
+				}
+				for (long remaining = frameLength; remaining > 0;) {
+					long skipped = in.skip(remaining);
+					if (skipped <= 0) {
+						return position;
+					}
+					remaining -= skipped;
+				}
+				position = end;
+			}
+			return position;
+		}
+	}
+
+	/**
+	 * Return the log file.
+	 * 
+	 * @return
+	 */
+	public File getFile() {
+		return file;
+	}
+}
@@ -0,0 +1,247 @@
+package com.fbudassi.logger.handler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+import com.fbudassi.logger.util.ExceptionUtils;
+
+/**
+ * Handler that collapses bursts of identical consecutive records before they get to another handler. Records are identical if they have the same logger,
+ * level, message template, parameters and throwable fingerprint. The first record of a burst is passed on right away; the following ones are only counted, and
+ * a "Previous message repeated N times" record is passed on once a different record arrives or the time window of the burst closes.
+ * 
+ * Bursts are tracked per logger, so loggers sharing the handler don't break each other's bursts.
+ * 
+ * @author fbudassi
+ */
+public class CollapsingHandler extends Handler {
+
+	public static final String REPEATED_MSG = "Previous message repeated {0} times";
+
+	/**
+	 * Single daemon thread shared by every CollapsingHandler to close the windows of idle bursts.
+	 */
+	private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "joblogger-collapse-timer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final Handler delegate;
+	private final long windowMillis;
+	private final ScheduledFuture<?> timer;
+
+	/**
+	 * Open bursts, by logger name. Guarded by the handler itself.
+	 */
+	private final Map<String, Burst> bursts = new HashMap<>();
+	private boolean closed;
+
+	/**
+	 * The first record of a burst and how many identical records followed it.
+	 */
+	private static final class Burst {
+		private final LogRecord first;
+		private final long fingerprint;
+		private LogRecord last;
+		private int repeated;
+
+		private Burst(LogRecord first) {
+			this.first = first;
+			this.fingerprint = ExceptionUtils.getFingerprint(first.getThrown());
+			this.last = first;
+		}
+	}
+
+	/**
+	 * CollapsingHandler constructor.
+	 * 
+	 * @param delegate
+	 *            The handler that gets the collapsed records. It is owned by this handler from now on.
+	 * @param windowMillis
+	 *            Maximum duration of a burst. Once over, the repeat count is passed on even if no other record arrives.
+	 */
+	public CollapsingHandler(Handler delegate, long windowMillis) {
+		if (delegate == null) {
+			throw new IllegalArgumentException("Parameter delegate can't be null");
+		}
+
+		if (windowMillis <= 0) {
+			throw new IllegalArgumentException("Parameter windowMillis should be greater than zero");
+		}
+
+		this.delegate = delegate;
+		this.windowMillis = windowMillis;
+
+		// Check for closed windows a few times per window.
+		long period = Math.max(1, windowMillis / 4);
+		this.timer = TIMER.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				closeWindows(System.currentTimeMillis());
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void publish(LogRecord record) {
+		if (!isLoggable(record)) {
+			return;
+		}
+
+		LogRecord repeated = null;
+		synchronized (this) {
+			if (closed) {
+				reportError("Handler is closed", null, ErrorManager.WRITE_FAILURE);
+				return;
+			}
+
+			String key = String.valueOf(record.getLoggerName());
+			Burst burst = bursts.get(key);
+			if (burst != null && record.getMillis() - burst.first.getMillis() <= windowMillis && isSame(burst, record)) {
+				burst.last = record;
+				burst.repeated++;
+				return;
+			}
+
+			// A new burst starts.
+			if (burst != null) {
+				repeated = toRepeatedRecord(burst);
+			}
+			bursts.put(key, new Burst(record));
+		}
+
+		// Pass records on outside the lock, the delegate might be slow.
+		if (repeated != null) {
+			delegate.publish(repeated);
+		}
+		delegate.publish(record);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void flush() {
+		delegate.flush();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Pass on the repeat counts of the open bursts, then close the delegate.
+	 */
+	@Override
+	public void close() {
+		List<LogRecord> repeated = new ArrayList<>();
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+
+			for (Burst burst : bursts.values()) {
+				LogRecord lr = toRepeatedRecord(burst);
+				if (lr != null) {
+					repeated.add(lr);
+				}
+			}
+			bursts.clear();
+		}
+		timer.cancel(false);
+
+		for (LogRecord lr : repeated) {
+			delegate.publish(lr);
+		}
+		delegate.close();
+	}
+
+	/**
+	 * Return the handler that gets the collapsed records.
+	 * 
+	 * @return
+	 */
+	public Handler getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * Close the bursts whose window is over, passing on their repeat counts.
+	 * 
+	 * @param now
+	 *            Current time in milliseconds.
+	 */
+	void closeWindows(long now) {
+		List<LogRecord> repeated = new ArrayList<>();
+		synchronized (this) {
+			for (Iterator<Burst> it = bursts.values().iterator(); it.hasNext();) {
+				Burst burst = it.next();
+				if (now - burst.first.getMillis() > windowMillis) {
+					LogRecord lr = toRepeatedRecord(burst);
+					if (lr != null) {
+						repeated.add(lr);
+					}
+					it.remove();
+				}
+			}
+		}
+
+		for (LogRecord lr : repeated) {
+			delegate.publish(lr);
+		}
+	}
+
+	/**
+	 * Check if a record is identical to the first one of a burst.
+	 * 
+	 * @param burst
+	 * @param record
+	 * @return
+	 */
+	private static boolean isSame(Burst burst, LogRecord record) {
+		LogRecord first = burst.first;
+		return first.getLevel().equals(record.getLevel()) && Objects.equals(first.getMessage(), record.getMessage())
+				&& Arrays.equals(first.getParameters(), record.getParameters())
+				&& Objects.equals(StructuredLogRecord.getFields(first), StructuredLogRecord.getFields(record))
+				&& (first.getThrown() == null) == (record.getThrown() == null)
+				&& (record.getThrown() == null || burst.fingerprint == ExceptionUtils.getFingerprint(record.getThrown()));
+	}
+
+	/**
+	 * Build the record reporting how many times the first record of a burst was repeated.
+	 * 
+	 * @param burst
+	 * @return The record, or null if the first record was not repeated.
+	 */
+	private static LogRecord toRepeatedRecord(Burst burst) {
+		if (burst.repeated == 0) {
+			return null;
+		}
+
+		LogRecord lr = new LogRecord(burst.first.getLevel(), REPEATED_MSG);
+		lr.setLoggerName(burst.first.getLoggerName());
+		lr.setParameters(new Object[] { burst.repeated });
+		lr.setMillis(burst.last.getMillis());
+		lr.setThreadID(burst.last.getThreadID());
+		return lr;
+	}
+}
@@ -0,0 +1,327 @@
+package com.fbudassi.logger.handler;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.fbudassi.logger.util.StringUtils;
+
+/**
+ * Small JDBC connection pool for DatabaseHandler. Every thread borrows its own connection, so statements are never shared between threads. Each pooled
+ * connection caches its prepared statements. Connections idle for a while are validated when borrowed, and broken ones are discarded and reopened on demand,
+ * so logging recovers by itself after a database restart.
+ * 
+ * @author fbudassi
+ */
+public class ConnectionPool {
+
+	/**
+	 * Connections used less than this time ago are handed out without validation.
+	 */
+	private static final long VALIDATION_INTERVAL_MILLIS = 500;
+	private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+	private final String url;
+	private final Properties connProps;
+	private final long borrowTimeoutMillis;
+
+	/**
+	 * Limits the number of connections open at the same time.
+	 */
+	private final Semaphore permits;
+
+	/**
+	 * Idle connections, most recently used first. Guarded by the pool itself.
+	 */
+	private final Deque<PooledConnection> idle = new ArrayDeque<>();
+	private Connection initial;
+	private boolean closed;
+
+	/**
+	 * A connection borrowed from the pool, with its own statement cache. It must be used by one thread at a time and given back with release() or
+	 * invalidate().
+	 */
+	public static final class PooledConnection {
+		private final Connection connection;
+		private final Map<String, PreparedStatement> statements = new HashMap<>();
+		private long lastUsed;
+
+		private PooledConnection(Connection connection) {
+			this.connection = connection;
+		}
+
+		/**
+		 * Return the JDBC connection.
+		 * 
+		 * @return
+		 */
+		public Connection getConnection() {
+			return connection;
+		}
+
+		/**
+		 * Return a prepared statement for the given SQL, preparing it only the first time on this connection.
+		 * 
+		 * @param sql
+		 * @return
+		 * @throws SQLException
+		 */
+		public PreparedStatement prepare(String sql) throws SQLException {
+			PreparedStatement ps = statements.get(sql);
+			if (ps == null) {
+				ps = connection.prepareStatement(sql);
+				statements.put(sql, ps);
+			}
+			return ps;
+		}
+
+		/**
+		 * Close the cached statements, ignoring errors. They are prepared again when needed.
+		 */
+		private void closeStatements() {
+			for (PreparedStatement ps : statements.values()) {
+				try {
+					ps.close();
+				} catch (SQLException e) {
+					// Nothing to do, the statement is discarded anyway.
+				}
+			}
+			statements.clear();
+		}
+
+		/**
+		 * Close the cached statements and the connection, ignoring errors.
+		 */
+		private void closeQuietly() {
+			closeStatements();
+
+			try {
+				connection.close();
+			} catch (SQLException e) {
+				// Nothing to do, it was probably broken already.
+			}
+		}
+	}
+
+	/**
+	 * ConnectionPool constructor. Connections are opened on demand with DriverManager; the JDBC driver must be loaded already.
+	 * 
+	 * @param url
+	 *            JDBC url to the database.
+	 * @param connProps
+	 *            Connection properties (user, password).
+	 * @param maxSize
+	 *            Maximum number of connections open at the same time.
+	 * @param borrowTimeoutMillis
+	 *            Maximum time to wait for a connection when all of them are in use.
+	 */
+	public ConnectionPool(String url, Properties connProps, int maxSize, long borrowTimeoutMillis) {
+		if (StringUtils.isBlank(url)) {
+			throw new IllegalArgumentException("Parameter url can't be empty");
+		}
+
+		if (connProps == null) {
+			throw new IllegalArgumentException("Parameter connProps can't be null");
+		}
+
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Parameter maxSize should be greater than zero");
+		}
+
+		if (borrowTimeoutMillis < 0) {
+			throw new IllegalArgumentException("Parameter borrowTimeoutMillis can't be negative");
+		}
+
+		this.url = url;
+		this.connProps = connProps;
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+		this.permits = new Semaphore(maxSize, true);
+	}
+
+	/**
+	 * Pool of a single, already open connection. Callers take turns to use it. Once it's invalidated, it can't be reopened.
+	 * 
+	 * @param connection
+	 *            The connection to the database.
+	 */
+	public ConnectionPool(Connection connection) {
+		if (connection == null) {
+			throw new IllegalArgumentException("Parameter connection can't be null");
+		}
+
+		this.url = null;
+		this.connProps = null;
+		this.borrowTimeoutMillis = Long.MAX_VALUE;
+		this.permits = new Semaphore(1, true);
+		this.initial = connection;
+	}
+
+	/**
+	 * Borrow a connection, waiting if all of them are in use. Idle connections are validated before being handed out, and a new one is opened if none is
+	 * available.
+	 * 
+	 * @return The connection. Must be given back with release() or invalidate().
+	 * @throws SQLException
+	 *             If the pool is closed, no connection got free in time or a new one can't be opened.
+	 */
+	public PooledConnection borrow() throws SQLException {
+		try {
+			if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				throw new SQLException("Timeout waiting for a database connection");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted waiting for a database connection", e);
+		}
+
+		try {
+			PooledConnection pc;
+			while ((pc = pollIdle()) != null) {
+				if (System.currentTimeMillis() - pc.lastUsed < VALIDATION_INTERVAL_MILLIS || isValid(pc)) {
+					return pc;
+				}
+				pc.closeQuietly();
+			}
+			return open();
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Give a healthy connection back to the pool.
+	 * 
+	 * @param pc
+	 */
+	public void release(PooledConnection pc) {
+		pc.lastUsed = System.currentTimeMillis();
+
+		boolean discard;
+		synchronized (this) {
+			discard = closed;
+			if (!discard) {
+				idle.push(pc);
+			}
+		}
+
+		if (discard) {
+			pc.closeQuietly();
+		}
+		permits.release();
+	}
+
+	/**
+	 * Give back a connection that failed. It is discarded if it's no longer valid, so the next borrow() opens a new one. Otherwise only its cached
+	 * statements are, since the failure may come from one of them (i.e. invalidated by a schema change).
+	 * 
+	 * @param pc
+	 * @return True if the connection was discarded.
+	 */
+	public boolean invalidate(PooledConnection pc) {
+		if (isValid(pc)) {
+			pc.closeStatements();
+			release(pc);
+			return false;
+		}
+
+		pc.closeQuietly();
+		permits.release();
+		return true;
+	}
+
+	/**
+	 * Return true if new connections can be opened, i.e. the pool was not built around a single existing connection.
+	 * 
+	 * @return
+	 */
+	public boolean canReconnect() {
+		return url != null;
+	}
+
+	/**
+	 * Close the idle connections. Connections still borrowed are closed when released.
+	 */
+	public void close() {
+		Deque<PooledConnection> toClose;
+		synchronized (this) {
+			closed = true;
+			toClose = new ArrayDeque<>(idle);
+			idle.clear();
+			if (initial != null) {
+				toClose.add(new PooledConnection(initial));
+				initial = null;
+			}
+		}
+
+		for (PooledConnection pc : toClose) {
+			pc.closeQuietly();
+		}
+	}
+
+	/**
+	 * Return the number of idle connections.
+	 * 
+	 * @return
+	 */
+	public synchronized int getIdle() {
+		return idle.size();
+	}
+
+	/**
+	 * Take the most recently used idle connection.
+	 * 
+	 * @return The connection, or null if there's none.
+	 * @throws SQLException
+	 *             If the pool is closed.
+	 */
+	private synchronized PooledConnection pollIdle() throws SQLException {
+		if (closed) {
+			throw new SQLException("Connection pool is closed");
+		}
+		return idle.poll();
+	}
+
+	/**
+	 * Open a new connection, or hand out the initial one the first time.
+	 * 
+	 * @return
+	 * @throws SQLException
+	 */
+	private PooledConnection open() throws SQLException {
+		synchronized (this) {
+			if (initial != null) {
+				PooledConnection pc = new PooledConnection(initial);
+				initial = null;
+				return pc;
+			}
+		}
+
+		if (url == null) {
+			throw new SQLException("Database connection is closed and can't be reopened");
+		}
+		return new PooledConnection(DriverManager.getConnection(url, connProps));
+	}
+
+	/**
+	 * Check if a connection is still usable.
+	 * 
+	 * @param pc
+	 * @return
+	 */
+	private static boolean isValid(PooledConnection pc) {
+		try {
+			return pc.connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+}
@@ -1,42 +1,169 @@
 package com.fbudassi.logger.handler;
 
+import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.ErrorManager;
+import java.util.logging.Formatter;
 import java.util.logging.Handler;
 import java.util.logging.LogRecord;
-import java.util.logging.SimpleFormatter;
 
+import com.fbudassi.logger.binary.LogEntry;
+import com.fbudassi.logger.handler.ConnectionPool.PooledConnection;
+import com.fbudassi.logger.metrics.ByteCounter;
+import com.fbudassi.logger.metrics.QueueGauge;
 import com.fbudassi.logger.util.ExceptionUtils;
 import com.fbudassi.logger.util.StringUtils;
 
 /**
  * Custom JDBC Database Handler for java.util.logging.
  * 
+ * Connections come from a ConnectionPool, so concurrent callers never share a statement and broken connections are replaced after a database restart. By
+ * default every record is inserted on the caller's thread. When built in asynchronous mode, records are put into bounded queues and background writers
+ * insert them using JDBC batches, one transaction per batch. With several writers, records are partitioned by thread ID: each writer has its own queue,
+ * batch and connection and commits independently, and the records of a thread keep their order.
+ * 
+ * Stack traces are stored in the log rows unless deduplication is enabled, in which case each distinct trace is stored once in a companion table.
+ * 
+ * Records can be split by time into one table per day or hour, named after the log table plus the period (i.e. joblogger_20160501), so every table stays
+ * small. Records go to the table of their own time, which is created on its first record. Retention drops whole expired tables instead of deleting rows,
+ * and a view named after the log table plus "_all" joins the log table and its time partitions for queries.
+ * 
+ * With a journal enabled, records that can't be inserted are written to local disk instead of being lost, and a background replayer inserts them once
+ * the database is back. While the journal has records waiting, and in asynchronous mode when the queue is full, new records go straight to it, so callers
+ * don't wait for a database that is down or slower than them.
+ * 
  * @author fbudassi
  */
-public class DatabaseHandler extends Handler {
+public class DatabaseHandler extends Handler implements ByteCounter, QueueGauge {
+
+	private final ConnectionPool pool;
+	private final String table;
+	private final TimePartition base;
+	private final String truncateSql;
+
+	/**
+	 * Fingerprints of the stack traces known to be stored in the trace table, least recently used first. Null when stack traces are stored in the log
+	 * rows.
+	 */
+	private volatile Map<Long, Boolean> knownTraces;
+
+	/**
+	 * Time partitioning: the period of every table, the number of tables to keep and the tables known to exist, by period. The period is null when records
+	 * go to the log table. Tables are created and dropped holding the partition lock.
+	 */
+	private volatile PartitionPeriod partitionPeriod;
+	private int partitionRetention;
+	private final ConcurrentMap<Long, TimePartition> timePartitions = new ConcurrentHashMap<>();
+	private volatile TimePartition currentPartition;
+	private final ReentrantLock partitionLock = new ReentrantLock();
+
+	/**
+	 * A table records are inserted into, with its insert statements.
+	 */
+	private static final class TimePartition {
+		private final long period;
+		private final String table;
+		private final String insertSql;
+		private final String insertTraceIdSql;
 
-	private Connection connection;
-	private PreparedStatement psInsert;
-	private PreparedStatement psTruncate;
+		private TimePartition(long period, String table) {
+			this.period = period;
+			this.table = table;
+			this.insertSql = INSERT_SQL.replace(TABLE_KEY, table);
+			this.insertTraceIdSql = INSERT_TRACE_ID_SQL.replace(TABLE_KEY, table);
+		}
+	}
+
+	/**
+	 * Store-and-forward: the journal of the records waiting to be inserted, the thread replaying them and how long it waits after a failure.
+	 */
+	private volatile DiskJournal journal;
+	private Thread replayer;
+	private long retryMillis;
+
+	/**
+	 * Asynchronous mode state, one queue per writer. The queues are null when the handler works synchronously.
+	 */
+	private List<BlockingQueue<LogRecord>> queues;
+	private List<Thread> writers;
+	private int batchSize;
+	private long lingerMillis;
+	private volatile boolean closed;
+
+	/**
+	 * Records accepted by publish() and records already written (or failed) by the writers. The latter is guarded by the lock, flush() waits on its
+	 * condition. A ReentrantLock is used instead of the handler monitor, so threads waiting in flush() don't pin their carrier thread.
+	 */
+	private final AtomicLong enqueued = new AtomicLong();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition writtenChanged = lock.newCondition();
+	private long written;
+
+	/**
+	 * Metrics: bytes of column data inserted, and records accepted in asynchronous mode or journaled that could not be written.
+	 */
+	private final LongAdder bytesWritten = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
 
 	private static final String TABLE_KEY = "{table}";
+	private static final String TRACE_TABLE_SUFFIX = "_trace";
+	private static final String TRACE_ID_COLUMN = "traceID";
+	private static final String VIEW_SUFFIX = "_all";
 
 	/**
 	 * SQL queries.
 	 */
 	private static final String CREATE_TABLE_SQL = "create table {table} (logTime timestamp not null, level varchar(32) not null,"
 			+ "logger varchar(255) not null, message varchar(255) not null, sequence integer not null, threadID integer not null,"
-			+ "stackTrace varchar(8192))";
+			+ "stackTrace varchar(8192), traceID bigint)";
 	private static final String INSERT_SQL = "insert into {table} (logTime,level,logger,message,sequence,threadID,stackTrace) values (?,?,?,?,?,?,?)";
+	private static final String INSERT_TRACE_ID_SQL = "insert into {table} (logTime,level,logger,message,sequence,threadID,traceID) values (?,?,?,?,?,?,?)";
 	private static final String TRUNCATE_SQL = "truncate table {table}";
+	private static final String ADD_TRACE_ID_SQL = "alter table {table} add column traceID bigint";
+	private static final String CREATE_TRACE_TABLE_SQL = "create table {table}_trace (traceID bigint not null primary key, stackTrace varchar(8192) not null)";
+	private static final String SELECT_TRACE_SQL = "select count(*) from {table}_trace where traceID = ?";
+	private static final String INSERT_TRACE_SQL = "insert into {table}_trace (traceID,stackTrace) values (?,?)";
+	private static final String TRUNCATE_TRACE_SQL = "truncate table {table}_trace";
+	private static final String DROP_TABLE_SQL = "drop table {table}";
+	private static final String CREATE_VIEW_SQL = "create view {table}_all as ";
+	private static final String DROP_VIEW_SQL = "drop view {table}_all";
+	private static final String SELECT_ALL_SQL = "select logTime,level,logger,message,sequence,threadID,stackTrace,traceID from {table}";
 
 	/**
-	 * DatabaseHandler constructor.
+	 * SQLState class of integrity constraint violations, i.e. a trace inserted at the same time by another writer.
+	 */
+	private static final String INTEGRITY_VIOLATION_CLASS = "23";
+
+	/**
+	 * Number of journaled records replayed in one batch when the handler doesn't batch its own inserts.
+	 */
+	private static final int REPLAY_BATCH_SIZE = 100;
+
+	/**
+	 * DatabaseHandler constructor. Callers take turns to use the connection and it can't be reopened if it breaks; use a ConnectionPool for that.
 	 * 
 	 * @param connection
 	 *            The connection to the database.
@@ -45,25 +172,147 @@ public class DatabaseHandler extends Handler {
 	 * @throws SQLException
 	 */
 	public DatabaseHandler(Connection connection, String table) throws SQLException {
-		if (connection == null) {
-			throw new IllegalArgumentException("Parameter connection can't be null");
+		this(new ConnectionPool(connection), table);
+	}
+
+	/**
+	 * DatabaseHandler constructor.
+	 * 
+	 * @param pool
+	 *            The pool of connections to the database. It is owned by the handler from now on.
+	 * @param table
+	 *            The table name inside the database to store log messages.
+	 * @throws SQLException
+	 */
+	public DatabaseHandler(ConnectionPool pool, String table) throws SQLException {
+		if (pool == null) {
+			throw new IllegalArgumentException("Parameter pool can't be null");
 		}
 
 		if (StringUtils.isBlank(table)) {
 			throw new IllegalArgumentException("Parameter tableName can't be empty");
 		}
 
+		this.pool = pool;
+		this.table = table;
+		this.base = new TimePartition(0, table);
+		this.truncateSql = TRUNCATE_SQL.replace(TABLE_KEY, table);
+
 		// If log table does not exist, create it.
-		if (!isTablePresent(connection, table)) {
-			connection.createStatement().executeQuery(CREATE_TABLE_SQL.replace(TABLE_KEY, table));
+		PooledConnection pc = pool.borrow();
+		try {
+			if (!isTablePresent(pc.getConnection(), table)) {
+				pc.getConnection().createStatement().executeQuery(CREATE_TABLE_SQL.replace(TABLE_KEY, table));
+			}
+
+			// Prepare the insert statement ahead of the first record.
+			pc.prepare(base.insertSql);
+		} finally {
+			pool.release(pc);
+		}
+
+		// Set JobLogger formatter instead of the default XMLFormatter().
+		setFormatter(new JobLoggerFormatter());
+	}
+
+	/**
+	 * Asynchronous DatabaseHandler constructor. Records are queued and written by a background thread in JDBC batches.
+	 * 
+	 * @param connection
+	 *            The connection to the database. It is owned by the writer thread from now on.
+	 * @param table
+	 *            The table name inside the database to store log messages.
+	 * @param batchSize
+	 *            Maximum number of records to insert in one batch.
+	 * @param lingerMillis
+	 *            Maximum time to wait for a batch to fill up before writing it.
+	 * @param queueCapacity
+	 *            Maximum number of records waiting to be written. Callers block when the queue is full.
+	 * @throws SQLException
+	 */
+	public DatabaseHandler(Connection connection, String table, int batchSize, long lingerMillis, int queueCapacity) throws SQLException {
+		this(new ConnectionPool(connection), table, batchSize, lingerMillis, queueCapacity);
+	}
+
+	/**
+	 * Asynchronous DatabaseHandler constructor. Records are queued and written by a background thread in JDBC batches.
+	 * 
+	 * @param pool
+	 *            The pool of connections to the database. It is owned by the handler from now on.
+	 * @param table
+	 *            The table name inside the database to store log messages.
+	 * @param batchSize
+	 *            Maximum number of records to insert in one batch.
+	 * @param lingerMillis
+	 *            Maximum time to wait for a batch to fill up before writing it.
+	 * @param queueCapacity
+	 *            Maximum number of records waiting to be written. Callers block when the queue is full.
+	 * @throws SQLException
+	 */
+	public DatabaseHandler(ConnectionPool pool, String table, int batchSize, long lingerMillis, int queueCapacity) throws SQLException {
+		this(pool, table, batchSize, lingerMillis, queueCapacity, 1);
+	}
+
+	/**
+	 * Asynchronous DatabaseHandler constructor with several writers. Records are partitioned by thread ID among the writers, each one with its own queue,
+	 * batch and connection.
+	 * 
+	 * @param pool
+	 *            The pool of connections to the database. It is owned by the handler from now on. It should allow at least one connection per writer.
+	 * @param table
+	 *            The table name inside the database to store log messages.
+	 * @param batchSize
+	 *            Maximum number of records to insert in one batch.
+	 * @param lingerMillis
+	 *            Maximum time to wait for a batch to fill up before writing it.
+	 * @param queueCapacity
+	 *            Maximum number of records waiting to be written, split among the writers. Callers block when their partition queue is full.
+	 * @param writerCount
+	 *            Number of background writers.
+	 * @throws SQLException
+	 */
+	public DatabaseHandler(ConnectionPool pool, String table, int batchSize, long lingerMillis, int queueCapacity, int writerCount) throws SQLException {
+		this(pool, table);
+
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("Parameter batchSize should be greater than zero");
+		}
+
+		if (lingerMillis < 0) {
+			throw new IllegalArgumentException("Parameter lingerMillis can't be negative");
+		}
+
+		if (queueCapacity <= 0) {
+			throw new IllegalArgumentException("Parameter queueCapacity should be greater than zero");
 		}
 
-		// Create prepared statements.
-		psInsert = connection.prepareStatement(INSERT_SQL.replace(TABLE_KEY, table));
-		psTruncate = connection.prepareStatement(TRUNCATE_SQL.replace(TABLE_KEY, table));
+		if (writerCount <= 0) {
+			throw new IllegalArgumentException("Parameter writerCount should be greater than zero");
+		}
 
-		// Set simple formatter instead of the default XMLFormatter().
-		setFormatter(new SimpleFormatter());
+		this.batchSize = batchSize;
+		this.lingerMillis = lingerMillis;
+		this.queues = new ArrayList<>(writerCount);
+		this.writers = new ArrayList<>(writerCount);
+
+		// Start the background writers, each one with its share of the queue capacity.
+		int partitionCapacity = Math.max(1, queueCapacity / writerCount);
+		for (int i = 0; i < writerCount; i++) {
+			final BlockingQueue<LogRecord> queue = new ArrayBlockingQueue<>(partitionCapacity);
+			Thread writer = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					writeLoop(queue);
+				}
+			}, writerCount == 1 ? "joblogger-db-writer-" + table : "joblogger-db-writer-" + table + "-" + i);
+			writer.setDaemon(true);
+
+			queues.add(queue);
+			writers.add(writer);
+		}
+		for (Thread writer : writers) {
+			writer.start();
+		}
 	}
 
 	/**
@@ -71,16 +320,50 @@ public class DatabaseHandler extends Handler {
 	 */
 	@Override
 	public void publish(LogRecord record) {
+		if (!isLoggable(record)) {
+			return;
+		}
+
+		// Synchronous mode: insert on the caller's thread, unless the database failed and the journal has records waiting.
+		if (queues == null) {
+			DiskJournal j = journal;
+			if (j != null && j.isPending()) {
+				journal(j, Collections.singletonList(record));
+			} else {
+				writeRecord(record);
+			}
+			return;
+		}
+
+		// Asynchronous mode: hand the record over to the writer of its partition.
+		if (closed) {
+			dropped.increment();
+			reportError("Handler is closed", null, ErrorManager.WRITE_FAILURE);
+			return;
+		}
+
+		BlockingQueue<LogRecord> queue = queues.get((record.getThreadID() & Integer.MAX_VALUE) % queues.size());
+		DiskJournal j = journal;
+		if (j != null) {
+			// Callers never wait with a journal: records go to it while it has records waiting, or when the queue is full.
+			if (!j.isPending()) {
+				enqueued.incrementAndGet();
+				if (queue.offer(record)) {
+					return;
+				}
+				recordsWritten(1);
+			}
+			journal(j, Collections.singletonList(record));
+			return;
+		}
+
 		try {
-			psInsert.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
-			psInsert.setString(2, StringUtils.truncate(record.getLevel().getName(), 32));
-			psInsert.setString(3, StringUtils.truncate(record.getLoggerName(), 255));
-			psInsert.setString(4, StringUtils.truncate(getFormatter().formatMessage(record), 255));
-			psInsert.setLong(5, record.getSequenceNumber());
-			psInsert.setInt(6, record.getThreadID());
-			psInsert.setString(7, StringUtils.truncate(ExceptionUtils.getStackTrace(record.getThrown()), 8192));
-			psInsert.executeUpdate();
-		} catch (SQLException e) {
+			enqueued.incrementAndGet();
+			queue.put(record);
+		} catch (InterruptedException e) {
+			dropped.increment();
+			recordsWritten(1);
+			Thread.currentThread().interrupt();
 			reportError(e.getMessage(), e, ErrorManager.WRITE_FAILURE);
 		}
 	}
@@ -90,33 +373,952 @@ public class DatabaseHandler extends Handler {
 	 */
 	@Override
 	public void close() {
-		try {
-			if (connection != null) {
-				connection.close();
+		if (queues != null && !closed) {
+			// Stop accepting records and let the writers drain their queues.
+			closed = true;
+			try {
+				for (Thread writer : writers) {
+					writer.join();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
 			}
-		} catch (SQLException e) {
-			reportError(e.getMessage(), e, ErrorManager.CLOSE_FAILURE);
 		}
+
+		// Records not replayed yet stay in the journal for the next run.
+		if (journal != null) {
+			closed = true;
+			replayer.interrupt();
+			try {
+				replayer.join();
+				journal.close();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (IOException e) {
+				reportError(e.getMessage(), e, ErrorManager.CLOSE_FAILURE);
+			}
+		}
+
+		pool.close();
 	}
 
 	/**
 	 * {@inheritDoc}
+	 * 
+	 * In asynchronous mode, block until every record published before this call has been written.
 	 */
 	@Override
 	public void flush() {
+		if (queues == null) {
+			return;
+		}
+
+		lock.lock();
+		try {
+			long target = enqueued.get();
+			while (written < target && isWriterAlive()) {
+				writtenChanged.await(lingerMillis + 100, TimeUnit.MILLISECONDS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Store each distinct stack trace only once, in a companion table named after the log table plus "_trace", and write its fingerprint in the traceID
+	 * column of the log rows. Throwables are fingerprinted from their classes and frames; a bounded cache of the fingerprints already stored avoids rendering
+	 * and inserting the same stack trace again. Creates the trace table and the traceID column if they don't exist. Should be called before publishing
+	 * records.
+	 * 
+	 * @param cacheSize
+	 *            Maximum number of fingerprints to remember.
+	 * @throws SQLException
+	 */
+	public void enableTraceDeduplication(final int cacheSize) throws SQLException {
+		if (cacheSize <= 0) {
+			throw new IllegalArgumentException("Parameter cacheSize should be greater than zero");
+		}
+
+		PooledConnection pc = pool.borrow();
+		try {
+			Connection connection = pc.getConnection();
+			if (!isTablePresent(connection, table + TRACE_TABLE_SUFFIX)) {
+				connection.createStatement().execute(CREATE_TRACE_TABLE_SQL.replace(TABLE_KEY, table));
+			}
+			if (!isColumnPresent(connection, table, TRACE_ID_COLUMN)) {
+				connection.createStatement().execute(ADD_TRACE_ID_SQL.replace(TABLE_KEY, table));
+			}
+			pool.release(pc);
+		} catch (SQLException e) {
+			pool.invalidate(pc);
+			throw e;
+		}
+
+		knownTraces = new LinkedHashMap<Long, Boolean>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+				return size() > cacheSize;
+			}
+		};
+	}
+
+	/**
+	 * Split records by time into one table per period, named after the log table plus the period (see PartitionPeriod), and keep only the newest tables.
+	 * Adds the traceID column to the log table if it's missing, so the view over the log table and its time partitions has the same columns everywhere.
+	 * Should be called before publishing records.
+	 * 
+	 * @param period
+	 *            Period covered by every table.
+	 * @param retention
+	 *            Number of tables to keep: the oldest ones are dropped when a new one is created (0 keeps all of them).
+	 * @throws SQLException
+	 */
+	public void enableTimePartitioning(PartitionPeriod period, int retention) throws SQLException {
+		if (period == null) {
+			throw new IllegalArgumentException("Parameter period can't be null");
+		}
+
+		if (retention < 0) {
+			throw new IllegalArgumentException("Parameter retention can't be negative");
+		}
+
+		PooledConnection pc = pool.borrow();
+		partitionLock.lock();
+		try {
+			Connection connection = pc.getConnection();
+			if (!isColumnPresent(connection, table, TRACE_ID_COLUMN)) {
+				connection.createStatement().execute(ADD_TRACE_ID_SQL.replace(TABLE_KEY, table));
+			}
+
+			partitionRetention = retention;
+			dropExpiredPartitions(connection, listPartitions(connection, period));
+			pool.release(pc);
+		} catch (SQLException e) {
+			pool.invalidate(pc);
+			throw e;
+		} finally {
+			partitionLock.unlock();
+		}
+		partitionPeriod = period;
+	}
+
+	/**
+	 * Write the records that can't be inserted to a journal on local disk, and insert them from a background thread once the database is back. Records
+	 * left in the journal by a previous run are replayed right away, so this should be called before publishing records and after enabling any other
+	 * option. Replayed records keep their stack trace in the log row even if traces are deduplicated, since the original Throwable is gone.
+	 * 
+	 * @param directory
+	 *            Directory of the journal files, created if it doesn't exist. It can't be shared with other handlers.
+	 * @param maxSize
+	 *            Maximum size of the journal in bytes. Records are dropped when it's full.
+	 * @param retryMillis
+	 *            Time to wait before trying to replay records again after a failure.
+	 * @throws IOException
+	 */
+	public void enableJournal(File directory, long maxSize, long retryMillis) throws IOException {
+		if (retryMillis <= 0) {
+			throw new IllegalArgumentException("Parameter retryMillis should be greater than zero");
+		}
+
+		if (journal != null) {
+			throw new IllegalStateException("The journal is already enabled");
+		}
+
+		this.retryMillis = retryMillis;
+		final DiskJournal j = new DiskJournal(directory, maxSize);
+		replayer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				replayLoop(j);
+			}
+		}, "joblogger-db-replayer-" + table);
+		replayer.setDaemon(true);
+		journal = j;
+		replayer.start();
+	}
+
+	/**
+	 * Return the size in bytes of the journal files waiting to be replayed, 0 without a journal.
+	 * 
+	 * @return
+	 */
+	public long getJournalSize() {
+		DiskJournal j = journal;
+		return j == null ? 0 : j.getSize();
+	}
+
+	/**
+	 * Return the name of the table a record logged at a certain time goes to.
+	 * 
+	 * @param millis
+	 * @return
+	 */
+	public String getTable(long millis) {
+		PartitionPeriod period = partitionPeriod;
+		return period == null ? table : table + "_" + period.getSuffix(period.getPeriod(millis));
 	}
 
 	/**
-	 * Clear log entries from the database table.
+	 * Clear log entries from the database table, and the stored stack traces if they are deduplicated. Time partitions are dropped.
 	 */
 	public void clear() {
+		Map<Long, Boolean> known = knownTraces;
 		try {
-			psTruncate.executeUpdate();
+			PooledConnection pc = pool.borrow();
+			try {
+				if (partitionPeriod != null) {
+					dropPartitions(pc.getConnection());
+				}
+				pc.prepare(truncateSql).executeUpdate();
+				if (known != null) {
+					pc.prepare(TRUNCATE_TRACE_SQL.replace(TABLE_KEY, table)).executeUpdate();
+					synchronized (known) {
+						known.clear();
+					}
+				}
+				pool.release(pc);
+			} catch (SQLException e) {
+				pool.invalidate(pc);
+				throw e;
+			}
 		} catch (SQLException e) {
 			reportError(e.getMessage(), e, ErrorManager.GENERIC_FAILURE);
 		}
 	}
 
+	/**
+	 * Return the pool of connections to the database.
+	 * 
+	 * @return
+	 */
+	public ConnectionPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Counts the bytes of the column values inserted, stack traces included.
+	 */
+	@Override
+	public long getBytesWritten() {
+		return bytesWritten.sum();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getQueueDepth() {
+		if (queues == null) {
+			return 0;
+		}
+
+		long depth = 0;
+		for (BlockingQueue<LogRecord> queue : queues) {
+			depth += queue.size();
+		}
+		return depth;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Return the number of background writers, 0 in synchronous mode.
+	 * 
+	 * @return
+	 */
+	public int getWriterCount() {
+		return writers == null ? 0 : writers.size();
+	}
+
+	/**
+	 * Background writer loop. Collect records until the batch is full or the linger time elapses, then write them in one transaction. Exits once the handler
+	 * is closed and the queue is empty.
+	 * 
+	 * @param queue
+	 *            The queue of the writer's partition.
+	 */
+	private void writeLoop(BlockingQueue<LogRecord> queue) {
+		List<LogRecord> batch = new ArrayList<>(batchSize);
+
+		while (!closed || !queue.isEmpty()) {
+			try {
+				// Wait for the first record of the batch.
+				LogRecord first = queue.poll(lingerMillis + 100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+
+				// Fill the batch until it's full or the linger time is over.
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+				while (batch.size() < batchSize) {
+					if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+						continue;
+					}
+
+					long remaining = deadline - System.nanoTime();
+					LogRecord next = remaining > 0 && !closed ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+			} catch (InterruptedException e) {
+				closed = true;
+			}
+
+			if (!batch.isEmpty()) {
+				writeBatch(batch);
+				recordsWritten(batch.size());
+				batch.clear();
+			}
+		}
+
+		// Wake up any flush() still waiting.
+		lock.lock();
+		try {
+			writtenChanged.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Check if any background writer is still running.
+	 * 
+	 * @return
+	 */
+	private boolean isWriterAlive() {
+		for (Thread writer : writers) {
+			if (writer.isAlive()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Insert a single record. If the connection turns out to be broken, it's replaced and the insert is retried once.
+	 * 
+	 * @param record
+	 */
+	private void writeRecord(LogRecord record) {
+		for (int attempt = 0;; attempt++) {
+			PooledConnection pc = null;
+			try {
+				pc = pool.borrow();
+				Map<Long, Boolean> known = knownTraces;
+				TimePartition partition = getPartition(pc.getConnection(), record.getMillis());
+				PreparedStatement ps = pc.prepare(known == null ? partition.insertSql : partition.insertTraceIdSql);
+				int bytes = bind(pc, ps, record, known);
+				ps.executeUpdate();
+				bytesWritten.add(bytes);
+				pool.release(pc);
+				return;
+			} catch (SQLException e) {
+				if (pc != null && pool.invalidate(pc) && attempt == 0 && pool.canReconnect()) {
+					continue;
+				}
+
+				DiskJournal j = journal;
+				if (j != null) {
+					journal(j, Collections.singletonList(record));
+				}
+				reportError(e.getMessage(), e, ErrorManager.WRITE_FAILURE);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Insert a list of records using a JDBC batch inside a single transaction. If the connection turns out to be broken, it's replaced and the batch is
+	 * retried once.
+	 * 
+	 * @param batch
+	 */
+	private void writeBatch(List<LogRecord> batch) {
+		for (int attempt = 0;; attempt++) {
+			PooledConnection pc = null;
+			try {
+				pc = pool.borrow();
+				insertBatch(pc, batch);
+				pool.release(pc);
+				return;
+			} catch (SQLException e) {
+				if (pc != null && pool.invalidate(pc) && attempt == 0 && pool.canReconnect()) {
+					continue;
+				}
+
+				DiskJournal j = journal;
+				if (j != null) {
+					journal(j, batch);
+				} else {
+					dropped.add(batch.size());
+				}
+				reportError(e.getMessage(), e, ErrorManager.WRITE_FAILURE);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Insert a list of records on a connection using a JDBC batch inside a single transaction.
+	 * 
+	 * @param pc
+	 * @param batch
+	 * @throws SQLException
+	 */
+	private void insertBatch(PooledConnection pc, List<LogRecord> batch) throws SQLException {
+		Connection connection = pc.getConnection();
+		Map<Long, Boolean> known = knownTraces;
+
+		// Find the table of every record and store new stack traces before the batch transaction: tables may have to be created, and a trace inserted at
+		// the same time by another writer mustn't abort it.
+		List<PreparedStatement> statements = new ArrayList<>(batch.size());
+		for (LogRecord record : batch) {
+			TimePartition partition = getPartition(connection, record.getMillis());
+			statements.add(pc.prepare(known == null ? partition.insertSql : partition.insertTraceIdSql));
+
+			if (known != null && record.getThrown() != null) {
+				storeTrace(pc, record.getThrown(), known);
+			}
+		}
+
+		// A batch spanning several time partitions has a JDBC batch per table, all of them in the same transaction.
+		Set<PreparedStatement> used = new LinkedHashSet<>();
+		try {
+			int bytes = 0;
+			for (int i = 0; i < batch.size(); i++) {
+				PreparedStatement ps = statements.get(i);
+				bytes += bind(pc, ps, batch.get(i), known);
+				ps.addBatch();
+				used.add(ps);
+			}
+			commitBatches(connection, used);
+			bytesWritten.add(bytes);
+		} catch (SQLException e) {
+			for (PreparedStatement ps : used) {
+				ps.clearBatch();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Insert journaled entries on a connection using a JDBC batch inside a single transaction. Stack traces go to the log rows.
+	 * 
+	 * @param pc
+	 * @param entries
+	 * @throws SQLException
+	 */
+	private void insertEntries(PooledConnection pc, List<LogEntry> entries) throws SQLException {
+		Connection connection = pc.getConnection();
+
+		List<PreparedStatement> statements = new ArrayList<>(entries.size());
+		for (LogEntry entry : entries) {
+			statements.add(pc.prepare(getPartition(connection, entry.getMillis()).insertSql));
+		}
+
+		Set<PreparedStatement> used = new LinkedHashSet<>();
+		try {
+			int bytes = 0;
+			for (int i = 0; i < entries.size(); i++) {
+				PreparedStatement ps = statements.get(i);
+				bytes += bind(ps, entries.get(i));
+				ps.addBatch();
+				used.add(ps);
+			}
+			commitBatches(connection, used);
+			bytesWritten.add(bytes);
+		} catch (SQLException e) {
+			for (PreparedStatement ps : used) {
+				ps.clearBatch();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Execute the JDBC batches of some statements in a single transaction.
+	 * 
+	 * @param connection
+	 * @param statements
+	 * @throws SQLException
+	 */
+	private static void commitBatches(Connection connection, Collection<PreparedStatement> statements) throws SQLException {
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		try {
+			for (PreparedStatement ps : statements) {
+				ps.executeBatch();
+			}
+			connection.commit();
+		} catch (SQLException e) {
+			connection.rollback();
+			throw e;
+		} finally {
+			connection.setAutoCommit(autoCommit);
+		}
+	}
+
+	/**
+	 * Set the insert statement parameters from a LogRecord.
+	 * 
+	 * @param pc
+	 *            Connection used to store the stack trace if it's deduplicated.
+	 * @param psInsert
+	 * @param record
+	 * @param known
+	 *            Fingerprints of the stored stack traces, or null to write the stack trace in the log row.
+	 * @return Bytes of the values bound, for the metrics.
+	 * @throws SQLException
+	 */
+	private int bind(PooledConnection pc, PreparedStatement psInsert, LogRecord record, Map<Long, Boolean> known) throws SQLException {
+		String level = StringUtils.truncate(record.getLevel().getName(), 32);
+		String logger = StringUtils.truncate(record.getLoggerName(), 255);
+		String message = formatMessage(record, 255);
+
+		psInsert.setTimestamp(1, new Timestamp(record.getMillis()));
+		psInsert.setString(2, level);
+		psInsert.setString(3, logger);
+		psInsert.setString(4, message);
+		psInsert.setLong(5, record.getSequenceNumber());
+		psInsert.setInt(6, record.getThreadID());
+
+		// Timestamp, sequence and thread ID.
+		int bytes = 8 + 8 + 4 + StringUtils.getUtf8Length(level) + StringUtils.getUtf8Length(logger) + StringUtils.getUtf8Length(message);
+		if (known == null) {
+			String stackTrace = formatStackTrace(record.getThrown(), 8192);
+			psInsert.setString(7, stackTrace);
+			bytes += StringUtils.getUtf8Length(stackTrace);
+		} else if (record.getThrown() == null) {
+			psInsert.setNull(7, Types.BIGINT);
+		} else {
+			psInsert.setLong(7, storeTrace(pc, record.getThrown(), known));
+			bytes += 8;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Set the insert statement parameters from a journaled entry, with its stack trace.
+	 * 
+	 * @param psInsert
+	 * @param entry
+	 * @return Bytes of the values bound, for the metrics.
+	 * @throws SQLException
+	 */
+	private static int bind(PreparedStatement psInsert, LogEntry entry) throws SQLException {
+		String level = StringUtils.truncate(entry.getLevel(), 32);
+		String logger = StringUtils.truncate(entry.getLogger(), 255);
+		String message = StringUtils.truncate(entry.getMessage(), 255);
+		String stackTrace = StringUtils.truncate(entry.getStackTrace(), 8192);
+
+		psInsert.setTimestamp(1, new Timestamp(entry.getMillis()));
+		psInsert.setString(2, level);
+		psInsert.setString(3, logger);
+		psInsert.setString(4, message);
+		psInsert.setLong(5, entry.getSequence());
+		psInsert.setInt(6, entry.getThreadID());
+		psInsert.setString(7, stackTrace);
+
+		return 8 + 8 + 4 + StringUtils.getUtf8Length(level) + StringUtils.getUtf8Length(logger) + StringUtils.getUtf8Length(message)
+				+ StringUtils.getUtf8Length(stackTrace);
+	}
+
+	/**
+	 * Make sure the stack trace of a Throwable is in the trace table. It's only rendered and inserted if its fingerprint is neither cached nor stored yet.
+	 * 
+	 * @param pc
+	 * @param thrown
+	 * @param known
+	 *            Fingerprints of the stored stack traces.
+	 * @return The fingerprint, used as the trace ID.
+	 * @throws SQLException
+	 */
+	private long storeTrace(PooledConnection pc, Throwable thrown, Map<Long, Boolean> known) throws SQLException {
+		long traceID = ExceptionUtils.getFingerprint(thrown);
+		synchronized (known) {
+			if (known.get(traceID) != null) {
+				return traceID;
+			}
+		}
+
+		PreparedStatement psSelect = pc.prepare(SELECT_TRACE_SQL.replace(TABLE_KEY, table));
+		psSelect.setLong(1, traceID);
+		boolean stored;
+		try (ResultSet rs = psSelect.executeQuery()) {
+			stored = rs.next() && rs.getInt(1) > 0;
+		}
+
+		if (!stored) {
+			PreparedStatement psInsertTrace = pc.prepare(INSERT_TRACE_SQL.replace(TABLE_KEY, table));
+			String stackTrace = formatStackTrace(thrown, 8192);
+			psInsertTrace.setLong(1, traceID);
+			psInsertTrace.setString(2, stackTrace);
+			try {
+				psInsertTrace.executeUpdate();
+				bytesWritten.add(8 + StringUtils.getUtf8Length(stackTrace));
+			} catch (SQLException e) {
+				// Another writer stored it in the meantime.
+				if (e.getSQLState() == null || !e.getSQLState().startsWith(INTEGRITY_VIOLATION_CLASS)) {
+					throw e;
+				}
+			}
+		}
+
+		synchronized (known) {
+			known.put(traceID, Boolean.TRUE);
+		}
+		return traceID;
+	}
+
+	/**
+	 * Format the message of a record up to a maximum length. The JobLogger formatter stops rendering at that length, other formatters get truncated.
+	 * 
+	 * @param record
+	 * @param maxLength
+	 * @return
+	 */
+	private String formatMessage(LogRecord record, int maxLength) {
+		Formatter formatter = getFormatter();
+		if (formatter instanceof JobLoggerFormatter) {
+			return ((JobLoggerFormatter) formatter).formatMessage(record, maxLength);
+		}
+		return StringUtils.truncate(formatter.formatMessage(record), maxLength);
+	}
+
+	/**
+	 * Render a stack trace up to a maximum length. The JobLogger formatter applies its own budget too, other formatters get the whole trace rendered up to
+	 * that length.
+	 * 
+	 * @param thrown
+	 * @param maxLength
+	 * @return
+	 */
+	private String formatStackTrace(Throwable thrown, int maxLength) {
+		Formatter formatter = getFormatter();
+		if (formatter instanceof JobLoggerFormatter) {
+			return ((JobLoggerFormatter) formatter).formatStackTrace(thrown, maxLength);
+		}
+		return ExceptionUtils.getStackTrace(thrown, maxLength, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Append records to the journal, already formatted. If that fails too, they are lost.
+	 * 
+	 * @param j
+	 * @param records
+	 */
+	private void journal(DiskJournal j, List<LogRecord> records) {
+		List<LogEntry> entries = new ArrayList<>(records.size());
+		for (LogRecord record : records) {
+			String stackTrace = record.getThrown() == null ? null : formatStackTrace(record.getThrown(), 8192);
+			entries.add(new LogEntry(record.getMillis(), record.getLevel().getName(), record.getLevel().intValue(), record.getLoggerName(),
+					formatMessage(record, 255), record.getSequenceNumber(), record.getThreadID(), stackTrace));
+		}
+
+		try {
+			j.append(entries);
+		} catch (IOException e) {
+			dropped.add(records.size());
+			reportError(e.getMessage(), e, ErrorManager.WRITE_FAILURE);
+		}
+	}
+
+	/**
+	 * Replayer: insert the journaled records in batches, oldest first, and checkpoint after every batch. After a failure, it waits and tries the same batch
+	 * again. Only the first of consecutive failures is reported. A segment that can't be read is moved aside, so it doesn't stop the replay.
+	 * 
+	 * @param j
+	 */
+	private void replayLoop(DiskJournal j) {
+		int size = batchSize > 0 ? batchSize : REPLAY_BATCH_SIZE;
+		List<LogEntry> batch = Collections.emptyList();
+		boolean failing = false;
+
+		while (!closed) {
+			try {
+				if (batch.isEmpty()) {
+					try {
+						batch = j.read(size);
+					} catch (IOException | RuntimeException e) {
+						if (!j.skipSegment()) {
+							throw e;
+						}
+						reportError("Journal segment can't be read, moved aside: " + e.getMessage(), e, ErrorManager.GENERIC_FAILURE);
+						continue;
+					}
+				}
+				if (batch.isEmpty()) {
+					Thread.sleep(retryMillis);
+					continue;
+				}
+
+				replay(batch);
+				batch = Collections.emptyList();
+				j.commit();
+				failing = false;
+			} catch (SQLException | IOException | RuntimeException e) {
+				if (!failing) {
+					reportError(e.getMessage(), e, ErrorManager.WRITE_FAILURE);
+				}
+				failing = true;
+
+				try {
+					Thread.sleep(retryMillis);
+				} catch (InterruptedException ie) {
+					return;
+				}
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Insert a batch of journaled entries. The connection is replaced if it fails.
+	 * 
+	 * @param entries
+	 * @throws SQLException
+	 */
+	private void replay(List<LogEntry> entries) throws SQLException {
+		PooledConnection pc = pool.borrow();
+		try {
+			insertEntries(pc, entries);
+			pool.release(pc);
+		} catch (SQLException e) {
+			pool.invalidate(pc);
+			throw e;
+		}
+	}
+
+	/**
+	 * Return the table of a record logged at a certain time, creating its time partition if it doesn't exist yet. Must not be called inside a transaction.
+	 * 
+	 * @param connection
+	 * @param millis
+	 * @return
+	 * @throws SQLException
+	 */
+	private TimePartition getPartition(Connection connection, long millis) throws SQLException {
+		PartitionPeriod period = partitionPeriod;
+		if (period == null) {
+			return base;
+		}
+
+		// Most records go to the same table as the previous one.
+		long number = period.getPeriod(millis);
+		TimePartition current = currentPartition;
+		if (current != null && current.period == number) {
+			return current;
+		}
+
+		TimePartition partition = timePartitions.get(number);
+		if (partition == null) {
+			partition = createPartition(connection, period, number);
+		}
+
+		// Only move forward, late records don't take the place of the newest table.
+		if (current == null || number > current.period) {
+			currentPartition = partition;
+		}
+		return partition;
+	}
+
+	/**
+	 * Create the table of a period if it doesn't exist, then drop the expired ones and rebuild the view over them. Records older than every table kept by
+	 * the retention go to the log table, since their own table would be dropped right away.
+	 * 
+	 * @param connection
+	 * @param period
+	 * @param number
+	 *            The number of the period.
+	 * @return
+	 * @throws SQLException
+	 */
+	private TimePartition createPartition(Connection connection, PartitionPeriod period, long number) throws SQLException {
+		partitionLock.lock();
+		try {
+			TimePartition partition = timePartitions.get(number);
+			if (partition != null) {
+				return partition;
+			}
+
+			String name = table + "_" + period.getSuffix(number);
+			List<String> partitions = listPartitions(connection, period);
+			if (!containsIgnoreCase(partitions, name)) {
+				int retention = partitionRetention;
+				if (retention > 0 && partitions.size() >= retention && name.compareToIgnoreCase(partitions.get(partitions.size() - retention)) < 0) {
+					timePartitions.put(number, base);
+					return base;
+				}
+
+				connection.createStatement().execute(CREATE_TABLE_SQL.replace(TABLE_KEY, name));
+				partitions.add(name);
+				Collections.sort(partitions, String.CASE_INSENSITIVE_ORDER);
+			}
+
+			partition = new TimePartition(number, name);
+			timePartitions.put(number, partition);
+			dropExpiredPartitions(connection, partitions);
+			return partition;
+		} finally {
+			partitionLock.unlock();
+		}
+	}
+
+	/**
+	 * Drop the oldest time partitions beyond the retention and rebuild the view over the remaining ones. Must be called holding the partition lock.
+	 * 
+	 * @param connection
+	 * @param partitions
+	 *            The existing time partitions, oldest first.
+	 * @throws SQLException
+	 */
+	private void dropExpiredPartitions(Connection connection, List<String> partitions) throws SQLException {
+		// The view depends on the tables, it goes first.
+		dropView(connection);
+		int expired = partitionRetention == 0 ? 0 : Math.max(0, partitions.size() - partitionRetention);
+		for (String partition : partitions.subList(0, expired)) {
+			dropPartition(connection, partition);
+		}
+		createView(connection, partitions.subList(expired, partitions.size()));
+	}
+
+	/**
+	 * Drop every time partition, keeping the view over the log table.
+	 * 
+	 * @param connection
+	 * @throws SQLException
+	 */
+	private void dropPartitions(Connection connection) throws SQLException {
+		partitionLock.lock();
+		try {
+			dropView(connection);
+			for (String partition : listPartitions(connection, partitionPeriod)) {
+				dropPartition(connection, partition);
+			}
+			createView(connection, new ArrayList<String>());
+
+			// Records of old periods went to the log table, they can have their own table again.
+			timePartitions.clear();
+			currentPartition = null;
+		} finally {
+			partitionLock.unlock();
+		}
+	}
+
+	private void dropPartition(Connection connection, String partition) throws SQLException {
+		connection.createStatement().execute(DROP_TABLE_SQL.replace(TABLE_KEY, partition));
+
+		for (TimePartition known : timePartitions.values()) {
+			if (known.table.equalsIgnoreCase(partition)) {
+				timePartitions.remove(known.period);
+				if (currentPartition == known) {
+					currentPartition = null;
+				}
+			}
+		}
+	}
+
+	private static boolean containsIgnoreCase(List<String> names, String name) {
+		for (String other : names) {
+			if (other.equalsIgnoreCase(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void dropView(Connection connection) throws SQLException {
+		if (isTablePresent(connection, table + VIEW_SUFFIX)) {
+			connection.createStatement().execute(DROP_VIEW_SQL.replace(TABLE_KEY, table));
+		}
+	}
+
+	/**
+	 * Create the view joining the log table and its time partitions.
+	 * 
+	 * @param connection
+	 * @param partitions
+	 * @throws SQLException
+	 */
+	private void createView(Connection connection, List<String> partitions) throws SQLException {
+		StringBuilder sql = new StringBuilder(CREATE_VIEW_SQL.replace(TABLE_KEY, table));
+		sql.append(SELECT_ALL_SQL.replace(TABLE_KEY, table));
+		for (String partition : partitions) {
+			sql.append(" union all ").append(SELECT_ALL_SQL.replace(TABLE_KEY, partition));
+		}
+		connection.createStatement().execute(sql.toString());
+	}
+
+	/**
+	 * Return the names of the existing time partitions of the log table, oldest first.
+	 * 
+	 * @param connection
+	 * @param period
+	 * @return
+	 * @throws SQLException
+	 */
+	private List<String> listPartitions(Connection connection, PartitionPeriod period) throws SQLException {
+		String prefix = (table + "_").toUpperCase();
+		List<String> partitions = new ArrayList<>();
+
+		// The underscore is a wildcard of the pattern, the names are checked one by one anyway.
+		try (ResultSet rs = connection.getMetaData().getTables(null, null, prefix + "%", new String[] { "TABLE" })) {
+			while (rs.next()) {
+				String name = rs.getString("TABLE_NAME");
+				if (name.toUpperCase().startsWith(prefix) && period.isSuffix(name.substring(prefix.length()))) {
+					partitions.add(name);
+				}
+			}
+		}
+		Collections.sort(partitions, String.CASE_INSENSITIVE_ORDER);
+		return partitions;
+	}
+
+	/**
+	 * Account for records the writer is done with and wake up flush() callers.
+	 * 
+	 * @param count
+	 */
+	private void recordsWritten(int count) {
+		lock.lock();
+		try {
+			written += count;
+			writtenChanged.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Check if a certain column exists in a table.
+	 * 
+	 * @param connection
+	 * @param table
+	 * @param column
+	 * @return
+	 * @throws SQLException
+	 */
+	private boolean isColumnPresent(Connection connection, String table, String column) throws SQLException {
+		ResultSet rs = connection.getMetaData().getColumns(null, null, table.toUpperCase(), column.toUpperCase());
+		return rs.next();
+	}
+
 	/**
 	 * Check if a certain table exists in the database.
 	 * 
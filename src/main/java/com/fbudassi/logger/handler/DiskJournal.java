@@ -0,0 +1,443 @@
+package com.fbudassi.logger.handler;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.fbudassi.logger.binary.BinaryLogEncoder;
+import com.fbudassi.logger.binary.BinaryLogFormat;
+import com.fbudassi.logger.binary.LogEntry;
+import com.fbudassi.logger.binary.LogFileReader;
+
+/**
+ * Append-only journal of log entries on local disk, where DatabaseHandler stores the records it can't insert until they can be replayed.
+ * 
+ * Entries are appended to segment files (journal-N.log) in the binary log format, so LogFileReader can decode them too. A single replayer reads them back,
+ * oldest first. It only reads sealed segments: when it catches up with the segment being written, that segment is sealed and the next append starts a new
+ * one. The replayer saves its progress in a checkpoint file after every batch it inserts and deletes a segment once it's done with it, so after a restart
+ * replay resumes from the last checkpoint. Entries inserted but not checkpointed yet when the process stopped are replayed again.
+ * 
+ * Appends are flushed to the operating system right away, and segments are synced to disk when they are sealed.
+ * 
+ * @author fbudassi
+ */
+final class DiskJournal implements Closeable {
+
+	static final String SEGMENT_PREFIX = "journal-";
+	static final String SEGMENT_SUFFIX = ".log";
+	static final String CORRUPT_SUFFIX = ".corrupt";
+	static final String CHECKPOINT_FILE = "journal.checkpoint";
+
+	/**
+	 * Size of a segment before a new one is started.
+	 */
+	private static final long SEGMENT_SIZE = 16 * 1024 * 1024;
+
+	private final File directory;
+	private final long maxSize;
+
+	/**
+	 * Writer side, guarded by the lock: the sealed segments waiting to be replayed (oldest first), the segment being written (-1 if none) and the bytes of
+	 * all the segments on disk. A ReentrantLock is used instead of a monitor, so callers don't pin their carrier thread while writing.
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Deque<Long> sealed = new ArrayDeque<>();
+	private long nextSegment;
+	private long writing = -1;
+	private FileOutputStream writingFile;
+	private OutputStream out;
+	private BinaryLogEncoder encoder;
+	private long writingSize;
+	private long size;
+	private volatile boolean pending;
+
+	/**
+	 * Replayer side, only used by the replayer thread: the segment being read, the entries read from it and the checkpoint.
+	 */
+	private long reading = -1;
+	private LogFileReader reader;
+	private long readEntries;
+	private long checkpointSegment;
+	private long checkpointEntries;
+
+	/**
+	 * Open the journal in a directory, with the segments left by a previous run waiting to be replayed.
+	 * 
+	 * @param directory
+	 *            Directory of the journal files, created if it doesn't exist.
+	 * @param maxSize
+	 *            Maximum size of the segments on disk in bytes. Appends fail when it's reached.
+	 * @throws IOException
+	 */
+	DiskJournal(File directory, long maxSize) throws IOException {
+		if (directory == null) {
+			throw new IllegalArgumentException("Parameter directory can't be null");
+		}
+
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Parameter maxSize should be greater than zero");
+		}
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Can't create journal directory " + directory);
+		}
+
+		this.directory = directory;
+		this.maxSize = maxSize;
+		readCheckpoint();
+
+		// Segments before the checkpoint were replayed, but the process stopped before deleting them.
+		long last = -1;
+		for (long segment : listSegments()) {
+			File file = getSegmentFile(segment);
+			if (segment < checkpointSegment) {
+				file.delete();
+				continue;
+			}
+			sealed.add(segment);
+			size += file.length();
+			last = segment;
+		}
+		nextSegment = Math.max(last, checkpointSegment) + 1;
+		pending = !sealed.isEmpty();
+	}
+
+	/**
+	 * Append entries at the end of the journal.
+	 * 
+	 * @param entries
+	 * @throws IOException
+	 *             If the journal is full or the entries can't be written.
+	 */
+	void append(List<LogEntry> entries) throws IOException {
+		lock.lock();
+		try {
+			if (size >= maxSize) {
+				throw new IOException("Journal full: " + size + " bytes in " + directory);
+			}
+
+			if (out == null) {
+				openSegment();
+			}
+
+			int bytes = 0;
+			for (LogEntry entry : entries) {
+				bytes += encoder.encode(entry, out);
+			}
+			out.flush();
+			writingSize += bytes;
+			size += bytes;
+			pending = true;
+
+			if (writingSize >= SEGMENT_SIZE) {
+				seal();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Check if the journal has entries that weren't replayed yet.
+	 * 
+	 * @return
+	 */
+	boolean isPending() {
+		return pending;
+	}
+
+	/**
+	 * Return the bytes of the segments on disk.
+	 * 
+	 * @return
+	 */
+	long getSize() {
+		lock.lock();
+		try {
+			return size;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Read the next entries to replay, oldest first. A batch never spans two segments, so the checkpoint can point into one. Only called by the replayer.
+	 * 
+	 * @param max
+	 *            Maximum number of entries to read.
+	 * @return The entries, empty if everything was replayed.
+	 * @throws IOException
+	 */
+	List<LogEntry> read(int max) throws IOException {
+		List<LogEntry> entries = new ArrayList<>();
+		while (entries.size() < max) {
+			if (reader == null && !openNextSegment()) {
+				break;
+			}
+
+			LogEntry entry = reader.next();
+			if (entry == null) {
+				// The end of the segment: it's deleted once its last entries are checkpointed.
+				if (!entries.isEmpty()) {
+					break;
+				}
+				finishSegment();
+				continue;
+			}
+			entries.add(entry);
+			readEntries++;
+		}
+		return entries;
+	}
+
+	/**
+	 * Save the position of the replayer after the entries it has read. Only called by the replayer, once they were inserted.
+	 * 
+	 * @throws IOException
+	 */
+	void commit() throws IOException {
+		writeCheckpoint(reading, readEntries);
+	}
+
+	/**
+	 * Move the segment being read aside (journal-N.corrupt), with the entries not replayed yet, and the checkpoint past it. Called by the replayer when the
+	 * segment can't be decoded, so it doesn't stop the replay for good. The file is kept to recover it by hand.
+	 * 
+	 * @return False if there was no segment being read.
+	 * @throws IOException
+	 */
+	boolean skipSegment() throws IOException {
+		lock.lock();
+		try {
+			if (reading < 0 || sealed.isEmpty() || sealed.peekFirst() != reading) {
+				return false;
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		if (reader != null) {
+			reader.close();
+			reader = null;
+		}
+
+		writeCheckpoint(reading + 1, 0);
+		File file = getSegmentFile(reading);
+		long length = file.length();
+		Files.move(file.toPath(), new File(directory, SEGMENT_PREFIX + reading + CORRUPT_SUFFIX).toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+		lock.lock();
+		try {
+			sealed.pollFirst();
+			size -= length;
+		} finally {
+			lock.unlock();
+		}
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The segment being written is sealed, entries not replayed yet stay on disk for the next run. The replayer must be stopped first.
+	 */
+	@Override
+	public void close() throws IOException {
+		lock.lock();
+		try {
+			if (out != null) {
+				seal();
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		if (reader != null) {
+			reader.close();
+			reader = null;
+		}
+	}
+
+	/**
+	 * Start a new segment. Must be called holding the lock.
+	 * 
+	 * @throws IOException
+	 */
+	private void openSegment() throws IOException {
+		writingFile = new FileOutputStream(getSegmentFile(nextSegment));
+		out = new BufferedOutputStream(writingFile, 64 * 1024);
+		encoder = new BinaryLogEncoder();
+		writing = nextSegment++;
+		writingSize = encoder.writeHeader(out);
+		size += writingSize;
+	}
+
+	/**
+	 * Sync the segment being written to disk and hand it over to the replayer. Must be called holding the lock.
+	 * 
+	 * @throws IOException
+	 */
+	private void seal() throws IOException {
+		try {
+			out.flush();
+			writingFile.getFD().sync();
+		} finally {
+			out.close();
+			sealed.add(writing);
+			writing = -1;
+			out = null;
+			writingFile = null;
+			encoder = null;
+		}
+	}
+
+	/**
+	 * Open the oldest sealed segment for reading, sealing the one being written if the replayer caught up with it, and skip the entries already replayed.
+	 * 
+	 * @return False if there's nothing left to replay.
+	 * @throws IOException
+	 */
+	private boolean openNextSegment() throws IOException {
+		while (true) {
+			lock.lock();
+			try {
+				if (sealed.isEmpty()) {
+					if (out == null) {
+						pending = false;
+						return false;
+					}
+					seal();
+				}
+				reading = sealed.peekFirst();
+			} finally {
+				lock.unlock();
+			}
+
+			// A segment without a whole header: the process stopped right after creating it.
+			File file = getSegmentFile(reading);
+			if (file.length() < BinaryLogFormat.MAGIC.length + 1) {
+				finishSegment();
+				continue;
+			}
+
+			reader = new LogFileReader(file);
+			readEntries = 0;
+			if (reading == checkpointSegment) {
+				while (readEntries < checkpointEntries && reader.next() != null) {
+					readEntries++;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Move the checkpoint past the segment being read and delete it.
+	 * 
+	 * @throws IOException
+	 */
+	private void finishSegment() throws IOException {
+		if (reader != null) {
+			reader.close();
+			reader = null;
+		}
+
+		// A crash after the checkpoint and before the delete leaves the segment behind, it's deleted on startup.
+		writeCheckpoint(reading + 1, 0);
+		File file = getSegmentFile(reading);
+		long length = file.length();
+		if (!file.delete()) {
+			throw new IOException("Can't delete journal segment " + file);
+		}
+
+		lock.lock();
+		try {
+			sealed.pollFirst();
+			size -= length;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Read the checkpoint, if any: the segment the replayer is in and the entries of it already replayed.
+	 * 
+	 * @throws IOException
+	 */
+	private void readCheckpoint() throws IOException {
+		File file = new File(directory, CHECKPOINT_FILE);
+		if (!file.isFile()) {
+			return;
+		}
+
+		try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+			checkpointSegment = in.readLong();
+			checkpointEntries = in.readLong();
+		}
+	}
+
+	/**
+	 * Write the checkpoint to a temporary file, sync it and move it over the previous one, so a crash leaves either of them.
+	 * 
+	 * @param segment
+	 * @param entries
+	 * @throws IOException
+	 */
+	private void writeCheckpoint(long segment, long entries) throws IOException {
+		File tmp = new File(directory, CHECKPOINT_FILE + ".tmp");
+		try (FileOutputStream fos = new FileOutputStream(tmp)) {
+			DataOutputStream dos = new DataOutputStream(fos);
+			dos.writeLong(segment);
+			dos.writeLong(entries);
+			dos.flush();
+			fos.getFD().sync();
+		}
+		Files.move(tmp.toPath(), new File(directory, CHECKPOINT_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		checkpointSegment = segment;
+		checkpointEntries = entries;
+	}
+
+	/**
+	 * Return the numbers of the segments in the directory, oldest first.
+	 * 
+	 * @return
+	 */
+	private List<Long> listSegments() {
+		List<Long> segments = new ArrayList<>();
+		String[] names = directory.list();
+		if (names == null) {
+			return segments;
+		}
+
+		for (String name : names) {
+			if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+				try {
+					segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+				} catch (NumberFormatException e) {
+					// Not a segment.
+				}
+			}
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+
+	private File getSegmentFile(long segment) {
+		return new File(directory, SEGMENT_PREFIX + segment + SEGMENT_SUFFIX);
+	}
+}
@@ -0,0 +1,256 @@
+package com.fbudassi.logger.handler;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Key-value pairs of a structured log call, kept in the order they were added. Numbers and booleans are stored unboxed, so adding them allocates nothing
+ * until the arrays have to grow.
+ * 
+ * Fields are filled by a single thread and must not be modified once they're logged.
+ * 
+ * @author fbudassi
+ */
+public final class EventFields {
+
+	/**
+	 * Types of the values.
+	 */
+	static final byte OBJECT = 0;
+	static final byte LONG = 1;
+	static final byte DOUBLE = 2;
+	static final byte BOOLEAN = 3;
+
+	private static final int DEFAULT_CAPACITY = 4;
+
+	private String[] keys;
+	private byte[] types;
+	private Object[] objects;
+	private long[] numbers;
+	private int size;
+
+	/**
+	 * Create an empty set of fields.
+	 */
+	public EventFields() {
+		keys = new String[DEFAULT_CAPACITY];
+		types = new byte[DEFAULT_CAPACITY];
+		objects = new Object[DEFAULT_CAPACITY];
+		numbers = new long[DEFAULT_CAPACITY];
+	}
+
+	/**
+	 * Add a field.
+	 * 
+	 * @param key
+	 * @param value
+	 *            Can be null.
+	 * @return This object.
+	 */
+	public EventFields add(String key, Object value) {
+		int i = next(key, OBJECT);
+		objects[i] = value;
+		return this;
+	}
+
+	/**
+	 * Add a numeric field.
+	 * 
+	 * @param key
+	 * @param value
+	 * @return This object.
+	 */
+	public EventFields add(String key, long value) {
+		int i = next(key, LONG);
+		numbers[i] = value;
+		return this;
+	}
+
+	/**
+	 * Add a decimal field.
+	 * 
+	 * @param key
+	 * @param value
+	 * @return This object.
+	 */
+	public EventFields add(String key, double value) {
+		int i = next(key, DOUBLE);
+		numbers[i] = Double.doubleToRawLongBits(value);
+		return this;
+	}
+
+	/**
+	 * Add a boolean field.
+	 * 
+	 * @param key
+	 * @param value
+	 * @return This object.
+	 */
+	public EventFields add(String key, boolean value) {
+		int i = next(key, BOOLEAN);
+		numbers[i] = value ? 1 : 0;
+		return this;
+	}
+
+	/**
+	 * Return the number of fields.
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Return the key of a field.
+	 * 
+	 * @param index
+	 * @return
+	 */
+	public String getKey(int index) {
+		checkIndex(index);
+		return keys[index];
+	}
+
+	/**
+	 * Return the value of a field. Numbers and booleans are boxed.
+	 * 
+	 * @param index
+	 * @return
+	 */
+	public Object getValue(int index) {
+		checkIndex(index);
+		switch (types[index]) {
+		case LONG:
+			return numbers[index];
+		case DOUBLE:
+			return Double.longBitsToDouble(numbers[index]);
+		case BOOLEAN:
+			return numbers[index] != 0;
+		default:
+			return objects[index];
+		}
+	}
+
+	/**
+	 * Append the fields as " key=value" pairs, as the text formatters render them.
+	 * 
+	 * @param sb
+	 */
+	public void appendTo(StringBuilder sb) {
+		for (int i = 0; i < size; i++) {
+			sb.append(' ').append(keys[i]).append('=');
+			switch (types[i]) {
+			case LONG:
+				sb.append(numbers[i]);
+				break;
+			case DOUBLE:
+				sb.append(Double.longBitsToDouble(numbers[i]));
+				break;
+			case BOOLEAN:
+				sb.append(numbers[i] != 0);
+				break;
+			default:
+				sb.append(objects[i]);
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		appendTo(sb);
+		return sb.length() == 0 ? "" : sb.substring(1);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Fields are equal if they have the same keys with the same values, in the same order.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+
+		if (!(obj instanceof EventFields)) {
+			return false;
+		}
+
+		EventFields other = (EventFields) obj;
+		if (size != other.size) {
+			return false;
+		}
+
+		for (int i = 0; i < size; i++) {
+			if (!keys[i].equals(other.keys[i]) || types[i] != other.types[i]) {
+				return false;
+			}
+
+			if (types[i] == OBJECT ? !Objects.equals(objects[i], other.objects[i]) : numbers[i] != other.numbers[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		int hash = 1;
+		for (int i = 0; i < size; i++) {
+			hash = 31 * hash + keys[i].hashCode();
+			hash = 31 * hash + (types[i] == OBJECT ? Objects.hashCode(objects[i]) : Long.hashCode(numbers[i]));
+		}
+		return hash;
+	}
+
+	byte getType(int index) {
+		return types[index];
+	}
+
+	long getNumber(int index) {
+		return numbers[index];
+	}
+
+	Object getObject(int index) {
+		return objects[index];
+	}
+
+	/**
+	 * Claim the slot of a new field, growing the arrays if needed.
+	 * 
+	 * @param key
+	 * @param type
+	 * @return The index of the field.
+	 */
+	private int next(String key, byte type) {
+		if (key == null) {
+			throw new IllegalArgumentException("Parameter key can't be null");
+		}
+
+		if (size == keys.length) {
+			int capacity = size * 2;
+			keys = Arrays.copyOf(keys, capacity);
+			types = Arrays.copyOf(types, capacity);
+			objects = Arrays.copyOf(objects, capacity);
+			numbers = Arrays.copyOf(numbers, capacity);
+		}
+
+		keys[size] = key;
+		types[size] = type;
+		return size++;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+}
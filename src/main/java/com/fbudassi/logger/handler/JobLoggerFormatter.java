@@ -0,0 +1,514 @@
+package com.fbudassi.logger.handler;
+
+import java.text.DateFormat;
+import java.text.FieldPosition;
+import java.text.MessageFormat;
+import java.text.NumberFormat;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import com.fbudassi.logger.util.ExceptionUtils;
+
+/**
+ * Formatter that produces the same output as java.util.logging.SimpleFormatter with its default format, but avoids most of its per record cost:
+ * 
+ * <ul>
+ * <li>Message templates are parsed once and kept in a bounded cache, instead of going through java.text.MessageFormat for every record.</li>
+ * <li>Output is rendered into a StringBuilder reused by each thread.</li>
+ * <li>The timestamp prefix is rendered once per second.</li>
+ * <li>Messages can be rendered up to a maximum length, without building the whole string first.</li>
+ * <li>Stack traces are rendered straight into the same builder, up to a character and frame budget.</li>
+ * </ul>
+ * 
+ * Templates using quotes or format types (i.e. {0,number,#}) fall back to java.text.MessageFormat.
+ * 
+ * @author fbudassi
+ */
+public class JobLoggerFormatter extends Formatter {
+
+	/**
+	 * Maximum number of parsed templates to keep. Once full, new templates are parsed on every use.
+	 */
+	private static final int TEMPLATE_CACHE_SIZE = 1024;
+
+	/**
+	 * Builders grown above this size are not kept, to avoid retaining memory after a huge record.
+	 */
+	private static final int MAX_KEPT_BUILDER = 64 * 1024;
+
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+	private final ConcurrentMap<String, Template> templates = new ConcurrentHashMap<>();
+
+	/**
+	 * Stack trace budget: maximum number of characters and maximum number of frames of each throwable in the chain.
+	 */
+	private final int maxTraceLength;
+	private final int maxTraceFrames;
+
+	private final ThreadLocal<ThreadState> state = new ThreadLocal<ThreadState>() {
+		@Override
+		protected ThreadState initialValue() {
+			return new ThreadState();
+		}
+	};
+
+	/**
+	 * Per thread reusable objects.
+	 */
+	private static final class ThreadState {
+		private StringBuilder sb = new StringBuilder(256);
+		private long second = Long.MIN_VALUE;
+		private String timestamp;
+		private NumberFormat numberFormat;
+		private DateFormat dateFormat;
+		private StringBuffer formatBuffer;
+		private FieldPosition fieldPosition;
+	}
+
+	/**
+	 * A parsed message template: literals[0] arg[0] literals[1] arg[1] ... literals[n].
+	 */
+	private static final class Template {
+		private static final Template RAW = new Template(null, null);
+		private static final Template COMPLEX = new Template(null, null);
+
+		private final String[] literals;
+		private final int[] args;
+
+		private Template(String[] literals, int[] args) {
+			this.literals = literals;
+			this.args = args;
+		}
+	}
+
+	/**
+	 * Create a formatter that renders whole stack traces.
+	 */
+	public JobLoggerFormatter() {
+		this(Integer.MAX_VALUE, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Create a formatter that renders stack traces up to a budget.
+	 * 
+	 * @param maxTraceLength
+	 *            Maximum number of characters of a stack trace.
+	 * @param maxTraceFrames
+	 *            Maximum number of frames of each throwable in the chain.
+	 */
+	public JobLoggerFormatter(int maxTraceLength, int maxTraceFrames) {
+		if (maxTraceLength < 0) {
+			throw new IllegalArgumentException("Parameter maxTraceLength can't be negative");
+		}
+
+		if (maxTraceFrames < 0) {
+			throw new IllegalArgumentException("Parameter maxTraceFrames can't be negative");
+		}
+
+		this.maxTraceLength = maxTraceLength;
+		this.maxTraceFrames = maxTraceFrames;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String format(LogRecord record) {
+		String sourceClass = record.getSourceClassName();
+		String sourceMethod = sourceClass != null ? record.getSourceMethodName() : null;
+		return format(record.getMillis(), sourceClass != null ? sourceClass : record.getLoggerName(), sourceMethod, record.getLevel(), record.getMessage(),
+				record.getParameters(), StructuredLogRecord.getFields(record), record.getThrown(), record);
+	}
+
+	/**
+	 * Format a log call that doesn't go through a LogRecord. The output is the same as format() for a record of the logger without source class.
+	 * 
+	 * @param millis
+	 *            Event time in milliseconds.
+	 * @param loggerName
+	 *            The name of the logger.
+	 * @param level
+	 *            The level of the message.
+	 * @param msg
+	 *            The message template.
+	 * @param params
+	 *            Parameters to be replaced in the message. Can be null.
+	 * @param thrown
+	 *            A throwable to render its stack trace. Can be null.
+	 * @return The formatted event.
+	 */
+	public String format(long millis, String loggerName, Level level, String msg, Object[] params, Throwable thrown) {
+		return format(millis, loggerName, null, level, msg, params, null, thrown, null);
+	}
+
+	/**
+	 * Format a structured log call that doesn't go through a LogRecord. The fields follow the message as " key=value" pairs.
+	 * 
+	 * @param millis
+	 *            Event time in milliseconds.
+	 * @param loggerName
+	 *            The name of the logger.
+	 * @param level
+	 *            The level of the message.
+	 * @param msg
+	 *            The message template.
+	 * @param params
+	 *            Parameters to be replaced in the message. Can be null.
+	 * @param fields
+	 *            Key-value fields. Can be null.
+	 * @param thrown
+	 *            A throwable to render its stack trace. Can be null.
+	 * @return The formatted event.
+	 */
+	public String format(long millis, String loggerName, Level level, String msg, Object[] params, EventFields fields, Throwable thrown) {
+		return format(millis, loggerName, null, level, msg, params, fields, thrown, null);
+	}
+
+	/**
+	 * Format a log call, from a record or not.
+	 * 
+	 * @param millis
+	 * @param source
+	 *            Source class, or the logger name.
+	 * @param sourceMethod
+	 *            Source method. Can be null.
+	 * @param level
+	 * @param msg
+	 * @param params
+	 * @param fields
+	 *            Key-value fields. Can be null.
+	 * @param thrown
+	 * @param record
+	 *            The record, only used for localized messages and complex templates. Can be null.
+	 * @return
+	 */
+	private String format(long millis, String source, String sourceMethod, Level level, String msg, Object[] params, EventFields fields, Throwable thrown,
+			LogRecord record) {
+		ThreadState ts = state.get();
+		StringBuilder sb = ts.sb;
+		sb.setLength(0);
+
+		// Timestamp and source.
+		appendTimestamp(ts, millis);
+		sb.append(' ').append(source);
+		if (sourceMethod != null) {
+			sb.append(' ').append(sourceMethod);
+		}
+		sb.append(LINE_SEPARATOR);
+
+		// Level and message.
+		sb.append(level.getLocalizedName()).append(": ");
+		appendMessage(ts, msg, params, record, Integer.MAX_VALUE);
+		if (fields != null) {
+			fields.appendTo(sb);
+		}
+
+		// Stack trace.
+		if (thrown != null) {
+			sb.append(LINE_SEPARATOR);
+			ExceptionUtils.appendStackTrace(sb, thrown, maxTraceLength, maxTraceFrames);
+		}
+		sb.append(LINE_SEPARATOR);
+
+		return release(ts);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String formatMessage(LogRecord record) {
+		return formatMessage(record, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Format the message of a record, rendering at most maxLength characters. The fields of a structured record follow the message as " key=value" pairs.
+	 * 
+	 * @param record
+	 *            The record whose message is formatted.
+	 * @param maxLength
+	 *            The maximum length of the result.
+	 * @return The formatted message.
+	 */
+	public String formatMessage(LogRecord record, int maxLength) {
+		if (maxLength < 0) {
+			throw new IllegalArgumentException("Parameter maxLength should be greater than zero");
+		}
+
+		// Nothing to render, avoid touching the builder.
+		String msg = record.getMessage();
+		Object[] params = record.getParameters();
+		EventFields fields = StructuredLogRecord.getFields(record);
+		if (record.getResourceBundle() == null && (params == null || params.length == 0) && fields == null) {
+			return msg == null || msg.length() <= maxLength ? msg : msg.substring(0, maxLength);
+		}
+
+		ThreadState ts = state.get();
+		ts.sb.setLength(0);
+		appendMessage(ts, msg, params, record, maxLength);
+		if (fields != null && ts.sb.length() < maxLength) {
+			fields.appendTo(ts.sb);
+			if (ts.sb.length() > maxLength) {
+				ts.sb.setLength(maxLength);
+			}
+		}
+		return release(ts);
+	}
+
+	/**
+	 * Append the formatted message to a builder, i.e. to encode it without building a String.
+	 * 
+	 * @param out
+	 *            The builder to append to.
+	 * @param msg
+	 * @param params
+	 * @param record
+	 *            The record of the message, if any. Can be null.
+	 */
+	void appendMessage(StringBuilder out, String msg, Object[] params, LogRecord record) {
+		ThreadState ts = state.get();
+		ts.sb.setLength(0);
+		appendMessage(ts, msg, params, record, Integer.MAX_VALUE);
+		out.append(ts.sb);
+		if (ts.sb.capacity() > MAX_KEPT_BUILDER) {
+			ts.sb = new StringBuilder(256);
+		}
+	}
+
+	/**
+	 * Render the stack trace of a throwable within the formatter budget and at most maxLength characters.
+	 * 
+	 * @param thrown
+	 *            The throwable. Can be null.
+	 * @param maxLength
+	 *            The maximum length of the result.
+	 * @return The stack trace, or null if thrown is null.
+	 */
+	public String formatStackTrace(Throwable thrown, int maxLength) {
+		return ExceptionUtils.getStackTrace(thrown, Math.min(maxLength, maxTraceLength), maxTraceFrames);
+	}
+
+	/**
+	 * Append the formatted message to the thread builder, stopping at limit characters.
+	 * 
+	 * @param ts
+	 * @param msg
+	 * @param params
+	 * @param record
+	 *            The record of the message, if any. Can be null.
+	 * @param limit
+	 *            Length of the builder after which nothing else is appended.
+	 */
+	private void appendMessage(ThreadState ts, String msg, Object[] params, LogRecord record, int limit) {
+		StringBuilder sb = ts.sb;
+
+		// Localized messages and complex templates are left to the JUL implementation.
+		boolean localized = record != null && record.getResourceBundle() != null;
+		Template template = localized || msg == null ? Template.COMPLEX : getTemplate(msg);
+		if (params == null || params.length == 0 || template == Template.RAW) {
+			append(sb, msg, limit);
+			return;
+		}
+
+		if (template == Template.COMPLEX) {
+			append(sb, record != null ? super.formatMessage(record) : formatComplex(msg, params), limit);
+			return;
+		}
+
+		for (int i = 0; i < template.args.length && sb.length() < limit; i++) {
+			append(sb, template.literals[i], limit);
+
+			int arg = template.args[i];
+			if (arg < params.length) {
+				appendParam(ts, params[arg], limit);
+			} else {
+				// Same as MessageFormat: missing arguments are left as they are.
+				append(sb, "{" + arg + "}", limit);
+			}
+		}
+		append(sb, template.literals[template.args.length], limit);
+	}
+
+	/**
+	 * Format a complex template without a record, the same way java.util.logging.Formatter does.
+	 * 
+	 * @param msg
+	 * @param params
+	 * @return
+	 */
+	private static String formatComplex(String msg, Object[] params) {
+		if (msg == null) {
+			return null;
+		}
+
+		try {
+			return MessageFormat.format(msg, params);
+		} catch (IllegalArgumentException e) {
+			// Same as java.util.logging.Formatter: use the template as it is.
+			return msg;
+		}
+	}
+
+	/**
+	 * Append a message parameter, rendered the same way java.text.MessageFormat does for a plain {n} placeholder.
+	 * 
+	 * @param ts
+	 * @param param
+	 * @param limit
+	 */
+	private void appendParam(ThreadState ts, Object param, int limit) {
+		StringBuilder sb = ts.sb;
+
+		if (param == null) {
+			append(sb, "null", limit);
+		} else if (param instanceof String) {
+			append(sb, (String) param, limit);
+		} else if (param instanceof Number || param instanceof Date) {
+			if (ts.formatBuffer == null) {
+				ts.formatBuffer = new StringBuffer(32);
+				ts.fieldPosition = new FieldPosition(0);
+				ts.numberFormat = NumberFormat.getInstance();
+				ts.dateFormat = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
+			}
+			ts.formatBuffer.setLength(0);
+			if (param instanceof Number) {
+				ts.numberFormat.format(param, ts.formatBuffer, ts.fieldPosition);
+			} else {
+				ts.dateFormat.format(param, ts.formatBuffer, ts.fieldPosition);
+			}
+			int length = Math.min(ts.formatBuffer.length(), Math.max(0, limit - sb.length()));
+			sb.append(ts.formatBuffer, 0, length);
+		} else {
+			append(sb, param.toString(), limit);
+		}
+	}
+
+	/**
+	 * Append the "MMM dd, yyyy h:mm:ss a" timestamp prefix, rendering it only once per second.
+	 * 
+	 * @param ts
+	 * @param millis
+	 */
+	private void appendTimestamp(ThreadState ts, long millis) {
+		long second = millis / 1000;
+		if (second != ts.second) {
+			ts.timestamp = String.format("%1$tb %1$td, %1$tY %1$tl:%1$tM:%1$tS %1$Tp", new Date(second * 1000));
+			ts.second = second;
+		}
+		ts.sb.append(ts.timestamp);
+	}
+
+	/**
+	 * Get the parsed template of a message, from the cache if possible.
+	 * 
+	 * @param msg
+	 * @return
+	 */
+	private Template getTemplate(String msg) {
+		Template template = templates.get(msg);
+		if (template == null) {
+			template = parse(msg);
+			if (templates.size() < TEMPLATE_CACHE_SIZE) {
+				templates.putIfAbsent(msg, template);
+			}
+		}
+		return template;
+	}
+
+	/**
+	 * Parse a message template. Only plain {n} placeholders are supported, anything else is considered COMPLEX.
+	 * 
+	 * @param msg
+	 * @return
+	 */
+	private static Template parse(String msg) {
+		// Same check as java.util.logging.Formatter: without "{digit" it's not a template at all.
+		boolean placeholder = false;
+		for (int i = msg.indexOf('{'); i >= 0 && i < msg.length() - 1; i = msg.indexOf('{', i + 1)) {
+			if (Character.isDigit(msg.charAt(i + 1))) {
+				placeholder = true;
+				break;
+			}
+		}
+		if (!placeholder) {
+			return Template.RAW;
+		}
+
+		if (msg.indexOf('\'') >= 0) {
+			return Template.COMPLEX;
+		}
+
+		int count = 0;
+		for (int i = 0; i < msg.length(); i++) {
+			if (msg.charAt(i) == '{') {
+				count++;
+			}
+		}
+
+		String[] literals = new String[count + 1];
+		int[] args = new int[count];
+		int start = 0;
+		for (int n = 0; n < count; n++) {
+			int open = msg.indexOf('{', start);
+			int close = msg.indexOf('}', open);
+			if (close < 0 || close == open + 1) {
+				return Template.COMPLEX;
+			}
+
+			int arg = 0;
+			for (int i = open + 1; i < close; i++) {
+				char c = msg.charAt(i);
+				if (c < '0' || c > '9' || arg > 9999) {
+					return Template.COMPLEX;
+				}
+				arg = arg * 10 + (c - '0');
+			}
+
+			literals[n] = msg.substring(start, open);
+			args[n] = arg;
+			start = close + 1;
+		}
+
+		String tail = msg.substring(start);
+		if (tail.indexOf('}') >= 0) {
+			return Template.COMPLEX;
+		}
+		literals[count] = tail;
+
+		return new Template(literals, args);
+	}
+
+	/**
+	 * Append a string without going over limit characters.
+	 * 
+	 * @param sb
+	 * @param str
+	 * @param limit
+	 */
+	private static void append(StringBuilder sb, String str, int limit) {
+		if (str == null) {
+			str = "null";
+		}
+		int length = Math.min(str.length(), Math.max(0, limit - sb.length()));
+		sb.append(str, 0, length);
+	}
+
+	/**
+	 * Return the builder content and drop the builder if it grew too much.
+	 * 
+	 * @param ts
+	 * @return
+	 */
+	private static String release(ThreadState ts) {
+		String result = ts.sb.toString();
+		if (ts.sb.capacity() > MAX_KEPT_BUILDER) {
+			ts.sb = new StringBuilder(256);
+		}
+		return result;
+	}
+}
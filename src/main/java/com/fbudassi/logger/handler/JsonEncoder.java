@@ -0,0 +1,466 @@
+package com.fbudassi.logger.handler;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import com.fbudassi.logger.util.ExceptionUtils;
+
+/**
+ * Encodes log calls as JSON lines, straight into a UTF-8 ByteBuffer:
+ * 
+ * <pre>
+ * {"time":"2016-05-01T10:15:30.123Z","level":"MESSAGE","logger":"com.example.Job","msg":"job finished","jobId":"job-42","rows":1000}
+ * </pre>
+ * 
+ * The fields of structured calls follow the message in the order they were added, numbers and booleans as JSON literals and anything else as a string.
+ * Strings are escaped and encoded character by character, no intermediate String or map is built. The stack trace, if any, goes last as "thrown".
+ * Positional parameters of classic calls are rendered into the message as JobLoggerFormatter does.
+ * 
+ * The buffer returned belongs to the calling thread and is reused by its next call, so it must be consumed right away.
+ * 
+ * @author fbudassi
+ */
+public class JsonEncoder {
+
+	/**
+	 * Buffers grown above this size are not kept, to avoid retaining memory after a huge record.
+	 */
+	private static final int MAX_KEPT_BUFFER = 64 * 1024;
+	private static final int DEFAULT_BUFFER = 512;
+
+	private static final byte[] HEX = "0123456789abcdef".getBytes();
+	private static final DateTimeFormatter SECOND_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss").withZone(ZoneOffset.UTC);
+
+	private static final byte[] TIME = ascii("{\"time\":\"");
+	private static final byte[] LEVEL = ascii("Z\",\"level\":");
+	private static final byte[] LOGGER = ascii(",\"logger\":");
+	private static final byte[] MSG = ascii(",\"msg\":");
+	private static final byte[] THROWN = ascii(",\"thrown\":");
+	private static final byte[] NULL = ascii("null");
+	private static final byte[] TRUE = ascii("true");
+	private static final byte[] FALSE = ascii("false");
+
+	private final JobLoggerFormatter messageFormatter;
+	private final int maxTraceLength;
+	private final int maxTraceFrames;
+
+	private final ThreadLocal<ThreadState> state = new ThreadLocal<ThreadState>() {
+		@Override
+		protected ThreadState initialValue() {
+			return new ThreadState();
+		}
+	};
+
+	/**
+	 * Per thread reusable objects.
+	 */
+	private static final class ThreadState {
+		private ByteBuffer buffer = ByteBuffer.allocate(DEFAULT_BUFFER);
+		private byte[] bytes = buffer.array();
+		private int pos;
+		private StringBuilder sb = new StringBuilder(256);
+		private long second = Long.MIN_VALUE;
+		private byte[] secondPrefix;
+	}
+
+	/**
+	 * Create an encoder that renders whole stack traces.
+	 */
+	public JsonEncoder() {
+		this(Integer.MAX_VALUE, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Create an encoder that renders stack traces up to a budget.
+	 * 
+	 * @param maxTraceLength
+	 *            Maximum number of characters of a stack trace.
+	 * @param maxTraceFrames
+	 *            Maximum number of frames of each throwable in the chain.
+	 */
+	public JsonEncoder(int maxTraceLength, int maxTraceFrames) {
+		if (maxTraceLength < 0) {
+			throw new IllegalArgumentException("Parameter maxTraceLength can't be negative");
+		}
+
+		if (maxTraceFrames < 0) {
+			throw new IllegalArgumentException("Parameter maxTraceFrames can't be negative");
+		}
+
+		this.maxTraceLength = maxTraceLength;
+		this.maxTraceFrames = maxTraceFrames;
+		this.messageFormatter = new JobLoggerFormatter(maxTraceLength, maxTraceFrames);
+	}
+
+	/**
+	 * Encode a record.
+	 * 
+	 * @param record
+	 * @return The JSON line, from position to limit. Only valid until the next call of this thread.
+	 */
+	public ByteBuffer encode(LogRecord record) {
+		return encode(record.getMillis(), record.getLoggerName(), record.getLevel(), record.getMessage(), record.getParameters(),
+				StructuredLogRecord.getFields(record), record.getThrown(), record);
+	}
+
+	/**
+	 * Encode a log call that doesn't go through a LogRecord.
+	 * 
+	 * @param millis
+	 *            Event time in milliseconds.
+	 * @param loggerName
+	 *            The name of the logger.
+	 * @param level
+	 *            The level of the message.
+	 * @param msg
+	 *            The message template.
+	 * @param params
+	 *            Parameters to be replaced in the message. Can be null.
+	 * @param fields
+	 *            Key-value fields. Can be null.
+	 * @param thrown
+	 *            A throwable to render its stack trace. Can be null.
+	 * @return The JSON line, from position to limit. Only valid until the next call of this thread.
+	 */
+	public ByteBuffer encode(long millis, String loggerName, Level level, String msg, Object[] params, EventFields fields, Throwable thrown) {
+		return encode(millis, loggerName, level, msg, params, fields, thrown, null);
+	}
+
+	/**
+	 * Encode a log call, from a record or not.
+	 * 
+	 * @param millis
+	 * @param loggerName
+	 * @param level
+	 * @param msg
+	 * @param params
+	 * @param fields
+	 * @param thrown
+	 * @param record
+	 *            The record, only used to render localized messages. Can be null.
+	 * @return
+	 */
+	private ByteBuffer encode(long millis, String loggerName, Level level, String msg, Object[] params, EventFields fields, Throwable thrown,
+			LogRecord record) {
+		ThreadState ts = state.get();
+		if (ts.bytes.length > MAX_KEPT_BUFFER) {
+			ts.buffer = ByteBuffer.allocate(DEFAULT_BUFFER);
+			ts.bytes = ts.buffer.array();
+		}
+		ts.pos = 0;
+
+		writeRaw(ts, TIME);
+		writeTime(ts, millis);
+		writeRaw(ts, LEVEL);
+		writeString(ts, level.getName());
+		writeRaw(ts, LOGGER);
+		writeString(ts, loggerName);
+
+		// Message, rendered first if it has parameters.
+		writeRaw(ts, MSG);
+		if ((params == null || params.length == 0) && (record == null || record.getResourceBundle() == null)) {
+			writeString(ts, msg);
+		} else {
+			StringBuilder sb = resetBuilder(ts);
+			messageFormatter.appendMessage(sb, msg, params, record);
+			writeString(ts, sb);
+		}
+
+		// Fields.
+		if (fields != null) {
+			for (int i = 0; i < fields.size(); i++) {
+				write(ts, (byte) ',');
+				writeString(ts, fields.getKey(i));
+				write(ts, (byte) ':');
+				writeField(ts, fields, i);
+			}
+		}
+
+		// Stack trace.
+		if (thrown != null) {
+			writeRaw(ts, THROWN);
+			StringBuilder sb = resetBuilder(ts);
+			ExceptionUtils.appendStackTrace(sb, thrown, maxTraceLength, maxTraceFrames);
+			writeString(ts, sb);
+		}
+
+		write(ts, (byte) '}');
+		write(ts, (byte) '\n');
+
+		ts.buffer.clear();
+		ts.buffer.limit(ts.pos);
+		return ts.buffer;
+	}
+
+	/**
+	 * Write the value of a field.
+	 * 
+	 * @param ts
+	 * @param fields
+	 * @param i
+	 */
+	private void writeField(ThreadState ts, EventFields fields, int i) {
+		switch (fields.getType(i)) {
+		case EventFields.LONG:
+			writeLong(ts, fields.getNumber(i));
+			break;
+		case EventFields.DOUBLE:
+			writeDouble(ts, Double.longBitsToDouble(fields.getNumber(i)));
+			break;
+		case EventFields.BOOLEAN:
+			writeRaw(ts, fields.getNumber(i) != 0 ? TRUE : FALSE);
+			break;
+		default:
+			writeObject(ts, fields.getObject(i));
+		}
+	}
+
+	/**
+	 * Write an object: integral numbers and booleans as JSON literals, anything else as a string.
+	 * 
+	 * @param ts
+	 * @param value
+	 */
+	private void writeObject(ThreadState ts, Object value) {
+		if (value == null) {
+			writeRaw(ts, NULL);
+		} else if (value instanceof CharSequence) {
+			writeString(ts, (CharSequence) value);
+		} else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			writeLong(ts, ((Number) value).longValue());
+		} else if (value instanceof Double || value instanceof Float) {
+			writeDouble(ts, ((Number) value).doubleValue());
+		} else if (value instanceof Boolean) {
+			writeRaw(ts, ((Boolean) value).booleanValue() ? TRUE : FALSE);
+		} else {
+			writeString(ts, value.toString());
+		}
+	}
+
+	/**
+	 * Write a double. Infinite and NaN values have no JSON literal, they're written as strings.
+	 * 
+	 * @param ts
+	 * @param value
+	 */
+	private void writeDouble(ThreadState ts, double value) {
+		StringBuilder sb = resetBuilder(ts);
+		sb.append(value);
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			writeString(ts, sb);
+		} else {
+			writeAscii(ts, sb);
+		}
+	}
+
+	/**
+	 * Write a long, digit by digit.
+	 * 
+	 * @param ts
+	 * @param value
+	 */
+	private static void writeLong(ThreadState ts, long value) {
+		if (value == Long.MIN_VALUE) {
+			writeRaw(ts, ascii(Long.toString(value)));
+			return;
+		}
+
+		if (value < 0) {
+			write(ts, (byte) '-');
+			value = -value;
+		}
+
+		int digits = 1;
+		for (long v = value; v >= 10; v /= 10) {
+			digits++;
+		}
+		ensure(ts, digits);
+		for (int i = ts.pos + digits - 1; i >= ts.pos; i--) {
+			ts.bytes[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		ts.pos += digits;
+	}
+
+	/**
+	 * Write the ISO 8601 time of an event, in UTC and without the closing "Z". The part up to the second is rendered only once per second.
+	 * 
+	 * @param ts
+	 * @param millis
+	 */
+	private static void writeTime(ThreadState ts, long millis) {
+		long second = Math.floorDiv(millis, 1000);
+		if (second != ts.second) {
+			ts.secondPrefix = ascii(SECOND_FORMAT.format(Instant.ofEpochSecond(second)));
+			ts.second = second;
+		}
+		writeRaw(ts, ts.secondPrefix);
+
+		int ms = (int) Math.floorMod(millis, 1000);
+		ensure(ts, 4);
+		ts.bytes[ts.pos++] = '.';
+		ts.bytes[ts.pos++] = (byte) ('0' + ms / 100);
+		ts.bytes[ts.pos++] = (byte) ('0' + ms / 10 % 10);
+		ts.bytes[ts.pos++] = (byte) ('0' + ms % 10);
+	}
+
+	/**
+	 * Write a JSON string: quoted, escaped and encoded as UTF-8.
+	 * 
+	 * @param ts
+	 * @param str
+	 *            Can be null.
+	 */
+	private static void writeString(ThreadState ts, CharSequence str) {
+		if (str == null) {
+			writeRaw(ts, NULL);
+			return;
+		}
+
+		int length = str.length();
+
+		// At most 6 bytes per char (an escaped control char), plus the quotes.
+		ensure(ts, length * 6 + 2);
+		byte[] bytes = ts.bytes;
+		int pos = ts.pos;
+
+		bytes[pos++] = '"';
+
+		// Fast path for the plain ASCII prefix, usually the whole string.
+		int i = 0;
+		for (; i < length; i++) {
+			char c = str.charAt(i);
+			if (c >= 0x80 || c < 0x20 || c == '"' || c == '\\') {
+				break;
+			}
+			bytes[pos++] = (byte) c;
+		}
+
+		for (; i < length; i++) {
+			char c = str.charAt(i);
+			if (c < 0x80) {
+				if (c >= 0x20 && c != '"' && c != '\\') {
+					bytes[pos++] = (byte) c;
+				} else {
+					bytes[pos++] = '\\';
+					switch (c) {
+					case '"':
+						bytes[pos++] = '"';
+						break;
+					case '\\':
+						bytes[pos++] = '\\';
+						break;
+					case '\n':
+						bytes[pos++] = 'n';
+						break;
+					case '\r':
+						bytes[pos++] = 'r';
+						break;
+					case '\t':
+						bytes[pos++] = 't';
+						break;
+					default:
+						bytes[pos++] = 'u';
+						bytes[pos++] = '0';
+						bytes[pos++] = '0';
+						bytes[pos++] = HEX[c >> 4];
+						bytes[pos++] = HEX[c & 0xF];
+					}
+				}
+			} else if (c < 0x800) {
+				bytes[pos++] = (byte) (0xC0 | c >> 6);
+				bytes[pos++] = (byte) (0x80 | c & 0x3F);
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(str.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, str.charAt(++i));
+				bytes[pos++] = (byte) (0xF0 | cp >> 18);
+				bytes[pos++] = (byte) (0x80 | cp >> 12 & 0x3F);
+				bytes[pos++] = (byte) (0x80 | cp >> 6 & 0x3F);
+				bytes[pos++] = (byte) (0x80 | cp & 0x3F);
+			} else if (Character.isSurrogate(c)) {
+				// Unpaired surrogate, not valid UTF-8. Same replacement as String.getBytes().
+				bytes[pos++] = '?';
+			} else {
+				bytes[pos++] = (byte) (0xE0 | c >> 12);
+				bytes[pos++] = (byte) (0x80 | c >> 6 & 0x3F);
+				bytes[pos++] = (byte) (0x80 | c & 0x3F);
+			}
+		}
+		bytes[pos++] = '"';
+
+		ts.pos = pos;
+	}
+
+	/**
+	 * Write characters known to be ASCII, without quotes nor escaping.
+	 * 
+	 * @param ts
+	 * @param str
+	 */
+	private static void writeAscii(ThreadState ts, CharSequence str) {
+		int length = str.length();
+		ensure(ts, length);
+		for (int i = 0; i < length; i++) {
+			ts.bytes[ts.pos++] = (byte) str.charAt(i);
+		}
+	}
+
+	private static void writeRaw(ThreadState ts, byte[] raw) {
+		ensure(ts, raw.length);
+		System.arraycopy(raw, 0, ts.bytes, ts.pos, raw.length);
+		ts.pos += raw.length;
+	}
+
+	private static void write(ThreadState ts, byte b) {
+		ensure(ts, 1);
+		ts.bytes[ts.pos++] = b;
+	}
+
+	/**
+	 * Make room for count more bytes, growing the thread buffer if needed.
+	 * 
+	 * @param ts
+	 * @param count
+	 */
+	private static void ensure(ThreadState ts, int count) {
+		if (ts.bytes.length - ts.pos >= count) {
+			return;
+		}
+
+		long needed = (long) ts.pos + count;
+		if (needed > Integer.MAX_VALUE - 8) {
+			throw new OutOfMemoryError("Encoded record too large");
+		}
+
+		int capacity = (int) Math.max(needed, Math.min((long) ts.bytes.length * 2, Integer.MAX_VALUE - 8));
+		ByteBuffer grown = ByteBuffer.allocate(capacity);
+		System.arraycopy(ts.bytes, 0, grown.array(), 0, ts.pos);
+		ts.buffer = grown;
+		ts.bytes = grown.array();
+	}
+
+	/**
+	 * Return the thread builder, empty and not too big.
+	 * 
+	 * @param ts
+	 * @return
+	 */
+	private static StringBuilder resetBuilder(ThreadState ts) {
+		if (ts.sb.capacity() > MAX_KEPT_BUFFER) {
+			ts.sb = new StringBuilder(256);
+		}
+		ts.sb.setLength(0);
+		return ts.sb;
+	}
+
+	private static byte[] ascii(String str) {
+		byte[] bytes = new byte[str.length()];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) str.charAt(i);
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,394 @@
+package com.fbudassi.logger.handler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+import com.fbudassi.logger.metrics.ByteCounter;
+import com.fbudassi.logger.util.StringUtils;
+
+/**
+ * File Handler for java.util.logging that appends records into memory-mapped segment files.
+ * 
+ * Records are encoded and copied into a fixed-size MappedByteBuffer, so writing a record costs a memory copy and the OS writes the pages back to disk on its
+ * own. When the next record doesn't fit in a segment, the handler rolls over to the next one: destination.0, destination.1, etc. A record is never split
+ * between two segments, one bigger than a segment gets a segment of its own. The next segment can be created and mapped in the background, so rolling over
+ * doesn't stall the logging thread. Segments are truncated to their real size when they are left or the handler is closed.
+ * 
+ * A segment can't be truncated if the process dies before leaving it, or on platforms that don't truncate a file while it's mapped (Windows, as Java 8 can't
+ * unmap a buffer). Such segments keep their full size with a zero-filled tail, which is trimmed the next time a handler starts in append mode.
+ * 
+ * Writes are guarded by a ReentrantLock instead of a monitor, so waiting threads don't pin their carrier thread.
+ * 
+ * @author fbudassi
+ */
+public class MappedFileHandler extends Handler implements ByteCounter {
+
+	private static final int PAGE_SIZE = 4096;
+
+	private final String destination;
+	private final int segmentSize;
+	private final boolean preallocate;
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * Guarded by the lock.
+	 */
+	private Segment current;
+	private Future<Segment> next;
+	private ExecutorService preallocator;
+
+	/**
+	 * Only updated holding the lock.
+	 */
+	private volatile long bytesWritten;
+
+	/**
+	 * A mapped segment file.
+	 */
+	private static final class Segment {
+		private final int index;
+		private final RandomAccessFile file;
+		private final MappedByteBuffer buffer;
+
+		private Segment(int index, RandomAccessFile file, MappedByteBuffer buffer) {
+			this.index = index;
+			this.file = file;
+			this.buffer = buffer;
+		}
+	}
+
+	/**
+	 * MappedFileHandler constructor.
+	 * 
+	 * @param destination
+	 *            Base path of the segment files. The segment number is appended to it.
+	 * @param append
+	 *            If true, new segments are added after the existing ones. Otherwise, existing segments are deleted.
+	 * @param segmentSize
+	 *            Size in bytes of every segment.
+	 * @param preallocate
+	 *            If true, the next segment is created and mapped in the background before the current one is full.
+	 * @throws IOException
+	 */
+	public MappedFileHandler(String destination, boolean append, int segmentSize, boolean preallocate) throws IOException {
+		if (StringUtils.isBlank(destination)) {
+			throw new IllegalArgumentException("Parameter destination can't be blank");
+		}
+
+		if (segmentSize <= 0) {
+			throw new IllegalArgumentException("Parameter segmentSize should be greater than zero");
+		}
+
+		this.destination = destination;
+		this.segmentSize = segmentSize;
+		this.preallocate = preallocate;
+
+		// Find where to start: after the last existing segment or from scratch.
+		int last = -1;
+		for (int i = 0; getSegmentFile(i).exists(); i++) {
+			if (append) {
+				trim(getSegmentFile(i));
+			} else if (!getSegmentFile(i).delete()) {
+				throw new IOException("Could not delete segment " + getSegmentFile(i));
+			}
+			last = i;
+		}
+		current = createSegment(append ? last + 1 : 0, false);
+
+		if (preallocate) {
+			preallocator = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "joblogger-segment-preallocator");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			scheduleNext();
+		}
+
+		setFormatter(new JobLoggerFormatter());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void publish(LogRecord record) {
+		if (!isLoggable(record)) {
+			return;
+		}
+
+		// Encode outside the lock.
+		byte[] bytes;
+		try {
+			bytes = encode(getFormatter().format(record));
+		} catch (Exception e) {
+			reportError(e.getMessage(), e, ErrorManager.FORMAT_FAILURE);
+			return;
+		}
+
+		write(bytes);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Forces the current segment to be written to disk.
+	 */
+	@Override
+	public void flush() {
+		lock.lock();
+		try {
+			if (current != null) {
+				current.buffer.force();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			if (current == null) {
+				return;
+			}
+
+			try {
+				release(current);
+			} catch (IOException e) {
+				reportError(e.getMessage(), e, ErrorManager.CLOSE_FAILURE);
+			}
+			current = null;
+
+			// Discard the preallocated segment, it was never written.
+			if (preallocator != null) {
+				preallocator.shutdown();
+				try {
+					Segment unused = next.get();
+					unused.file.close();
+					getSegmentFile(unused.index).delete();
+				} catch (Exception e) {
+					reportError(e.getMessage(), e, ErrorManager.CLOSE_FAILURE);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	/**
+	 * Return the file of a certain segment.
+	 * 
+	 * @param index
+	 * @return
+	 */
+	public File getSegmentFile(int index) {
+		return new File(destination + "." + index);
+	}
+
+	/**
+	 * Copy a record into the current segment, rolling over to the next one first if it doesn't fit. A record is never split between two segments: one
+	 * bigger than a segment gets a segment of its own, grown to its size.
+	 * 
+	 * @param bytes
+	 */
+	private void write(byte[] bytes) {
+		lock.lock();
+		try {
+			if (current == null) {
+				reportError("Handler is closed", null, ErrorManager.WRITE_FAILURE);
+				return;
+			}
+
+			if (bytes.length > current.buffer.remaining()) {
+				if (current.buffer.position() > 0) {
+					roll();
+				}
+				if (bytes.length > current.buffer.remaining()) {
+					current = grow(current, bytes.length);
+				}
+			}
+
+			current.buffer.put(bytes);
+			bytesWritten += bytes.length;
+		} catch (IOException e) {
+			reportError(e.getMessage(), e, ErrorManager.WRITE_FAILURE);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Leave the current segment and continue in the next one. The next segment is obtained first: if it can't be created, the current one stays in place
+	 * and the next write tries again.
+	 * 
+	 * @throws IOException
+	 */
+	private void roll() throws IOException {
+		Segment segment;
+		if (preallocate) {
+			try {
+				segment = next.get();
+			} catch (ExecutionException e) {
+				// The background creation failed, try again on this thread.
+				segment = createSegment(current.index + 1, false);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for segment " + getSegmentFile(current.index + 1), e);
+			}
+		} else {
+			segment = createSegment(current.index + 1, false);
+		}
+
+		Segment previous = current;
+		current = segment;
+		if (preallocate) {
+			scheduleNext();
+		}
+		release(previous);
+	}
+
+	/**
+	 * Create the segment after the current one in the background.
+	 */
+	private void scheduleNext() {
+		final int index = current.index + 1;
+		next = preallocator.submit(new Callable<Segment>() {
+			@Override
+			public Segment call() throws Exception {
+				return createSegment(index, true);
+			}
+		});
+	}
+
+	/**
+	 * Create and map a segment file.
+	 * 
+	 * @param index
+	 *            The segment number.
+	 * @param touch
+	 *            If true, write every page so the OS allocates them now instead of on the first record.
+	 * @return
+	 * @throws IOException
+	 */
+	private Segment createSegment(int index, boolean touch) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(getSegmentFile(index), "rw");
+		try {
+			file.setLength(segmentSize);
+			MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+			if (touch) {
+				for (int i = 0; i < segmentSize; i += PAGE_SIZE) {
+					buffer.put(i, (byte) 0);
+				}
+			}
+			return new Segment(index, file, buffer);
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Map an empty segment again with a bigger size.
+	 * 
+	 * @param segment
+	 * @param size
+	 *            The new size in bytes.
+	 * @return The grown segment.
+	 * @throws IOException
+	 */
+	private static Segment grow(Segment segment, int size) throws IOException {
+		segment.file.setLength(size);
+		MappedByteBuffer buffer = segment.file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		return new Segment(segment.index, segment.file, buffer);
+	}
+
+	/**
+	 * Truncate a segment to the bytes actually written and close it.
+	 * 
+	 * @param segment
+	 * @throws IOException
+	 */
+	private void release(Segment segment) throws IOException {
+		try {
+			segment.file.getChannel().truncate(segment.buffer.position());
+		} catch (IOException e) {
+			// The platform doesn't truncate mapped files: the zero-filled tail is trimmed on the next start.
+		} finally {
+			segment.file.close();
+		}
+	}
+
+	/**
+	 * Cut off the zero-filled tail of a segment left by a previous run. Records end with a line separator, so they never end with a zero.
+	 * 
+	 * @param file
+	 * @throws IOException
+	 */
+	private static void trim(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			long end = raf.length();
+			byte[] page = new byte[PAGE_SIZE];
+			while (end > 0) {
+				int length = (int) Math.min(page.length, end);
+				raf.seek(end - length);
+				raf.readFully(page, 0, length);
+
+				int i = length - 1;
+				while (i >= 0 && page[i] == 0) {
+					i--;
+				}
+				if (i >= 0) {
+					end = end - length + i + 1;
+					break;
+				}
+				end -= length;
+			}
+
+			if (end < raf.length()) {
+				raf.setLength(end);
+			}
+		}
+	}
+
+	/**
+	 * Encode a formatted record with the handler encoding, or the platform one if none was set.
+	 * 
+	 * @param str
+	 * @return
+	 * @throws UnsupportedEncodingException
+	 */
+	private byte[] encode(String str) throws UnsupportedEncodingException {
+		String encoding = getEncoding();
+		return encoding == null ? str.getBytes(Charset.defaultCharset()) : str.getBytes(encoding);
+	}
+}
@@ -0,0 +1,125 @@
+package com.fbudassi.logger.handler;
+
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+import com.fbudassi.logger.metrics.ByteCounter;
+import com.fbudassi.logger.metrics.JobLoggerMetrics;
+import com.fbudassi.logger.metrics.QueueGauge;
+import com.fbudassi.logger.metrics.SinkMetrics;
+
+/**
+ * Handler that records the metrics of another handler in JobLoggerMetrics: publish latency, errors it reports and bytes it writes. If the handler has an
+ * asynchronous queue, its depth and drops are registered too.
+ * 
+ * Bytes are read from the handler if it counts them itself (it implements ByteCounter), as every built-in sink does.
+ * 
+ * @author fbudassi
+ */
+public class MeteredHandler extends Handler {
+
+	private final Handler delegate;
+	private final String name;
+	private final SinkMetrics metrics;
+
+	/**
+	 * Forwards errors to the original ErrorManager of the handler, counting them.
+	 */
+	private static final class CountingErrorManager extends ErrorManager {
+		private final ErrorManager delegate;
+		private final SinkMetrics metrics;
+
+		private CountingErrorManager(ErrorManager delegate, SinkMetrics metrics) {
+			this.delegate = delegate;
+			this.metrics = metrics;
+		}
+
+		@Override
+		public void error(String msg, Exception ex, int code) {
+			metrics.recordError();
+			delegate.error(msg, ex, code);
+		}
+	}
+
+	/**
+	 * MeteredHandler constructor.
+	 * 
+	 * @param delegate
+	 *            The handler to meter. It is owned by this handler from now on.
+	 * @param name
+	 *            Name of the sink in the metrics.
+	 */
+	public MeteredHandler(Handler delegate, String name) {
+		if (delegate == null) {
+			throw new IllegalArgumentException("Parameter delegate can't be null");
+		}
+
+		this.delegate = delegate;
+		this.name = name;
+		this.metrics = JobLoggerMetrics.registerSink(name);
+
+		delegate.setErrorManager(new CountingErrorManager(delegate.getErrorManager(), metrics));
+
+		if (delegate instanceof ByteCounter) {
+			metrics.setByteCounter((ByteCounter) delegate);
+		}
+
+		if (delegate instanceof QueueGauge) {
+			JobLoggerMetrics.registerQueue(name, (QueueGauge) delegate);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void publish(LogRecord record) {
+		if (!isLoggable(record)) {
+			return;
+		}
+
+		long start = System.nanoTime();
+		delegate.publish(record);
+		metrics.recordPublish(System.nanoTime() - start);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void flush() {
+		delegate.flush();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		delegate.close();
+
+		JobLoggerMetrics.unregisterSink(name, metrics);
+		if (delegate instanceof QueueGauge) {
+			JobLoggerMetrics.unregisterQueue(name, (QueueGauge) delegate);
+		}
+	}
+
+	/**
+	 * Return the metered handler.
+	 * 
+	 * @return
+	 */
+	public Handler getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * Return the metrics of the handler.
+	 * 
+	 * @return
+	 */
+	public SinkMetrics getMetrics() {
+		return metrics;
+	}
+}
@@ -0,0 +1,77 @@
+package com.fbudassi.logger.handler;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Period covered by every time partition (table) of the DatabaseHandler. Periods are aligned to UTC, so partitions don't depend on the time zone of the
+ * writer nor on daylight saving time.
+ * 
+ * @author fbudassi
+ */
+public enum PartitionPeriod {
+	DAILY(TimeUnit.DAYS.toMillis(1), "yyyyMMdd"),
+	HOURLY(TimeUnit.HOURS.toMillis(1), "yyyyMMddHH");
+
+	private final long millis;
+	private final int suffixLength;
+	private final DateTimeFormatter format;
+
+	private PartitionPeriod(long millis, String pattern) {
+		this.millis = millis;
+		this.suffixLength = pattern.length();
+		this.format = DateTimeFormatter.ofPattern(pattern).withZone(ZoneOffset.UTC);
+	}
+
+	/**
+	 * Return the length of a period in milliseconds.
+	 * 
+	 * @return
+	 */
+	public long getMillis() {
+		return millis;
+	}
+
+	/**
+	 * Return the number of the period of a time, counted from the epoch.
+	 * 
+	 * @param time
+	 *            Time in milliseconds.
+	 * @return
+	 */
+	public long getPeriod(long time) {
+		return Math.floorDiv(time, millis);
+	}
+
+	/**
+	 * Return the table name suffix of a period, i.e. 20160501 for a day. Suffixes sort in the same order as their periods.
+	 * 
+	 * @param period
+	 *            The number of the period.
+	 * @return
+	 */
+	public String getSuffix(long period) {
+		return format.format(Instant.ofEpochMilli(period * millis));
+	}
+
+	/**
+	 * Check if a string can be the table name suffix of a period.
+	 * 
+	 * @param suffix
+	 * @return
+	 */
+	public boolean isSuffix(String suffix) {
+		if (suffix.length() != suffixLength) {
+			return false;
+		}
+
+		for (int i = 0; i < suffix.length(); i++) {
+			if (suffix.charAt(i) < '0' || suffix.charAt(i) > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,396 @@
+package com.fbudassi.logger.handler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.ErrorManager;
+import java.util.zip.GZIPOutputStream;
+
+import com.fbudassi.logger.util.StringUtils;
+
+/**
+ * File Handler for java.util.logging that rolls its file over by size and/or time, and keeps a limited number of archives. See TextStreamHandler.
+ * 
+ * Records are written to the destination file. When the next record would make it bigger than the maximum size, or the current time interval ends, the file
+ * is renamed to destination.N, N being the next archive number, and a new destination file is started. A record is never split between two files.
+ * 
+ * Renaming is the only work done by the logging thread: compressing the archive (destination.N.gz) and deleting the oldest ones beyond the retention limit
+ * are done by a background thread, so logging never waits on them. Archives left uncompressed by a previous run are compressed when the handler starts.
+ * 
+ * @author fbudassi
+ */
+public class RollingFileHandler extends TextStreamHandler {
+
+	static final String GZIP_SUFFIX = ".gz";
+
+	private static final int BUFFER_SIZE = 8192;
+	private static final long CLOSE_TIMEOUT = 30000;
+
+	private final File file;
+	private final long maxSize;
+	private final long interval;
+	private final int maxArchives;
+	private final boolean compress;
+	private final ExecutorService archiver;
+
+	/**
+	 * Guarded by the lock of TextStreamHandler, since the file is only used through the stream.
+	 */
+	private FileOutputStream out;
+	private long size;
+	private long nextRoll;
+	private int nextIndex;
+
+	/**
+	 * Stream given to TextStreamHandler, which writes every record with a single write while holding its lock. It forwards to the active file of the handler.
+	 */
+	private static final class RollingStream extends OutputStream {
+		private RollingFileHandler handler;
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			handler.writeFile(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			handler.out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			handler.out.close();
+		}
+	}
+
+	/**
+	 * RollingFileHandler constructor.
+	 * 
+	 * @param destination
+	 *            Path of the active log file. Archives are created next to it.
+	 * @param append
+	 *            If true, records are added to the existing file. Otherwise, the file is overwritten. Existing archives are kept either way.
+	 * @param maxSize
+	 *            Maximum size in bytes of a file before rolling it over (0 for no limit).
+	 * @param interval
+	 *            Time in milliseconds covered by every file, aligned to the local time (0 for no limit). I.e. 3600000 starts a new file every hour.
+	 * @param maxArchives
+	 *            Number of archives to keep, the oldest ones are deleted (0 keeps all of them).
+	 * @param compress
+	 *            If true, archives are compressed with GZIP.
+	 * @throws IOException
+	 */
+	public RollingFileHandler(String destination, boolean append, long maxSize, long interval, int maxArchives, boolean compress) throws IOException {
+		this(new RollingStream(), destination, append, maxSize, interval, maxArchives, compress);
+	}
+
+	/**
+	 * Hook the stream to the handler and open the file.
+	 * 
+	 * @param stream
+	 * @param destination
+	 * @param append
+	 * @param maxSize
+	 * @param interval
+	 * @param maxArchives
+	 * @param compress
+	 * @throws IOException
+	 */
+	private RollingFileHandler(RollingStream stream, String destination, boolean append, long maxSize, long interval, int maxArchives, boolean compress)
+			throws IOException {
+		super(stream, true);
+
+		// Check parameters.
+		if (StringUtils.isBlank(destination)) {
+			throw new IllegalArgumentException("Parameter destination can't be blank");
+		}
+
+		if (maxSize < 0) {
+			throw new IllegalArgumentException("Parameter maxSize can't be negative");
+		}
+
+		if (interval < 0) {
+			throw new IllegalArgumentException("Parameter interval can't be negative");
+		}
+
+		if (maxArchives < 0) {
+			throw new IllegalArgumentException("Parameter maxArchives can't be negative");
+		}
+
+		this.file = new File(destination).getAbsoluteFile();
+		this.maxSize = maxSize;
+		this.interval = interval;
+		this.maxArchives = maxArchives;
+		this.compress = compress;
+
+		// Continue after the last archive, whatever the retention left.
+		List<Integer> archives = listArchives();
+		nextIndex = archives.isEmpty() ? 0 : archives.get(archives.size() - 1) + 1;
+
+		// An appended file from a past interval is rolled over on the first record.
+		long now = System.currentTimeMillis();
+		if (append && file.length() > 0) {
+			size = file.length();
+			nextRoll = nextRollTime(Math.min(now, file.lastModified()));
+		} else {
+			nextRoll = nextRollTime(now);
+		}
+		out = new FileOutputStream(file, append);
+
+		archiver = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "joblogger-file-archiver");
+				t.setDaemon(true);
+				t.setPriority(Thread.MIN_PRIORITY);
+				return t;
+			}
+		});
+		stream.handler = this;
+
+		// Finish the work of a previous run: compress its plain archives and apply the retention.
+		archiver.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (RollingFileHandler.this.compress) {
+					for (Integer index : listArchives()) {
+						File archive = getArchiveFile(index, false);
+						if (archive.exists()) {
+							compress(archive);
+						}
+					}
+				}
+				purge();
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Waits for the archives being compressed or purged in the background.
+	 */
+	@Override
+	public void close() {
+		super.close();
+
+		archiver.shutdown();
+		try {
+			if (!archiver.awaitTermination(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				reportError("Archiving didn't finish in " + CLOSE_TIMEOUT + " ms", null, ErrorManager.CLOSE_FAILURE);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Return the active log file.
+	 * 
+	 * @return
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Return the file of a certain archive.
+	 * 
+	 * @param index
+	 *            The archive number.
+	 * @param compressed
+	 *            If true, the name of the compressed archive.
+	 * @return
+	 */
+	public File getArchiveFile(int index, boolean compressed) {
+		return new File(file.getPath() + "." + index + (compressed ? GZIP_SUFFIX : ""));
+	}
+
+	/**
+	 * Write a record to the active file, rolling it over first if needed. Called holding the lock of TextStreamHandler.
+	 * 
+	 * @param b
+	 * @param off
+	 * @param len
+	 * @throws IOException
+	 */
+	private void writeFile(byte[] b, int off, int len) throws IOException {
+		if ((maxSize > 0 && size > 0 && size + len > maxSize) || (interval > 0 && System.currentTimeMillis() >= nextRoll)) {
+			roll();
+		}
+
+		out.write(b, off, len);
+		size += len;
+	}
+
+	/**
+	 * Rename the active file to the next archive and start a new one. The archive is handed over to the background thread.
+	 * 
+	 * @throws IOException
+	 */
+	private void roll() throws IOException {
+		nextRoll = nextRollTime(System.currentTimeMillis());
+
+		// Nothing to archive in an empty file.
+		if (size == 0) {
+			return;
+		}
+
+		out.close();
+		final File archive = getArchiveFile(nextIndex, false);
+		if (file.renameTo(archive)) {
+			nextIndex++;
+			size = 0;
+			out = new FileOutputStream(file, false);
+
+			try {
+				archiver.execute(new Runnable() {
+					@Override
+					public void run() {
+						// It may already be compressed by the startup task.
+						if (compress && archive.exists()) {
+							compress(archive);
+						}
+						purge();
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				reportError(e.getMessage(), e, ErrorManager.GENERIC_FAILURE);
+			}
+		} else {
+			// Keep writing to the same file, it's better than losing records.
+			out = new FileOutputStream(file, true);
+			reportError("Could not rename " + file + " to " + archive, null, ErrorManager.OPEN_FAILURE);
+		}
+	}
+
+	/**
+	 * Return the time when the interval of a given instant ends, or never if the handler doesn't roll over by time.
+	 * 
+	 * @param millis
+	 * @return
+	 */
+	private long nextRollTime(long millis) {
+		if (interval == 0) {
+			return Long.MAX_VALUE;
+		}
+
+		long offset = TimeZone.getDefault().getOffset(millis);
+		return ((millis + offset) / interval + 1) * interval - offset;
+	}
+
+	/**
+	 * Compress an archive and delete it. Runs on the background thread.
+	 * 
+	 * @param archive
+	 */
+	private void compress(File archive) {
+		File gz = new File(archive.getPath() + GZIP_SUFFIX);
+		try {
+			try (InputStream in = new FileInputStream(archive); OutputStream os = new GZIPOutputStream(new FileOutputStream(gz), BUFFER_SIZE)) {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				int n;
+				while ((n = in.read(buffer)) != -1) {
+					os.write(buffer, 0, n);
+				}
+			}
+		} catch (IOException e) {
+			// Keep the plain archive, it's compressed again on the next start.
+			gz.delete();
+			reportError("Could not compress " + archive + ": " + e.getMessage(), e, ErrorManager.GENERIC_FAILURE);
+			return;
+		}
+
+		if (!archive.delete()) {
+			reportError("Could not delete " + archive, null, ErrorManager.GENERIC_FAILURE);
+		}
+	}
+
+	/**
+	 * Delete the oldest archives beyond the retention limit. Runs on the background thread.
+	 */
+	private void purge() {
+		if (maxArchives == 0) {
+			return;
+		}
+
+		List<Integer> archives = listArchives();
+		for (int i = 0; i < archives.size() - maxArchives; i++) {
+			int index = archives.get(i);
+			File plain = getArchiveFile(index, false);
+			File gz = getArchiveFile(index, true);
+			if ((plain.exists() && !plain.delete()) || (gz.exists() && !gz.delete())) {
+				reportError("Could not delete archive " + index + " of " + file, null, ErrorManager.GENERIC_FAILURE);
+			}
+		}
+	}
+
+	/**
+	 * Return the numbers of the existing archives, compressed or not, in ascending order.
+	 * 
+	 * @return
+	 */
+	private List<Integer> listArchives() {
+		List<Integer> archives = new ArrayList<>();
+		String prefix = file.getName() + ".";
+		String[] names = file.getParentFile().list();
+		if (names == null) {
+			return archives;
+		}
+
+		for (String name : names) {
+			if (!name.startsWith(prefix)) {
+				continue;
+			}
+
+			String index = name.substring(prefix.length());
+			if (index.endsWith(GZIP_SUFFIX)) {
+				index = index.substring(0, index.length() - GZIP_SUFFIX.length());
+			}
+			if (isNumber(index)) {
+				Integer i = Integer.valueOf(index);
+				if (!archives.contains(i)) {
+					archives.add(i);
+				}
+			}
+		}
+		Collections.sort(archives);
+		return archives;
+	}
+
+	/**
+	 * Check if a string is a non-negative int.
+	 * 
+	 * @param str
+	 * @return
+	 */
+	private static boolean isNumber(String str) {
+		if (str.isEmpty() || str.length() > 9) {
+			return false;
+		}
+
+		for (int i = 0; i < str.length(); i++) {
+			if (str.charAt(i) < '0' || str.charAt(i) > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,155 @@
+package com.fbudassi.logger.handler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Handler;
+
+import com.fbudassi.logger.util.StringUtils;
+
+/**
+ * Process-wide registry of shared handlers (sinks). Every logger writing to the same destination gets the same handler: one FileHandler per file, one
+ * DatabaseHandler per JDBC url and table, etc. Handlers are reference counted and closed when the last logger releases them, or all at once on shutdown.
+ * 
+ * @author fbudassi
+ */
+public final class SinkRegistry {
+
+	/**
+	 * Guards the sinks. A ReentrantLock rather than a monitor, since handlers are built holding it and that can mean I/O (opening files, connecting to the
+	 * database), which would pin the carrier of a virtual thread.
+	 */
+	private static final ReentrantLock lock = new ReentrantLock();
+	private static final Map<String, Sink> sinks = new HashMap<>();
+
+	/**
+	 * Builds the handler of a sink the first time it's acquired.
+	 */
+	public interface SinkFactory {
+
+		/**
+		 * Create the handler.
+		 * 
+		 * @return The handler.
+		 * @throws Exception
+		 *             Any type of exception that might get thrown building the handler.
+		 */
+		public Handler create() throws Exception;
+	}
+
+	/**
+	 * A shared handler and the number of users it has.
+	 */
+	private static final class Sink {
+		private final Handler handler;
+		private int references;
+
+		private Sink(Handler handler) {
+			this.handler = handler;
+		}
+	}
+
+	/**
+	 * Private to prevent instantiation.
+	 */
+	private SinkRegistry() {
+	}
+
+	/**
+	 * Get the handler of a sink, creating it if nobody is using it yet. Every call must be paired with a release() call.
+	 * 
+	 * @param key
+	 *            Identifies the sink, i.e. its destination.
+	 * @param factory
+	 *            Builds the handler if it doesn't exist.
+	 * @return The shared handler.
+	 * @throws Exception
+	 *             If the handler has to be created and the factory fails.
+	 */
+	public static Handler acquire(String key, SinkFactory factory) throws Exception {
+		if (StringUtils.isBlank(key)) {
+			throw new IllegalArgumentException("Parameter key can't be blank");
+		}
+
+		if (factory == null) {
+			throw new IllegalArgumentException("Parameter factory can't be null");
+		}
+
+		lock.lock();
+		try {
+			Sink sink = sinks.get(key);
+			if (sink == null) {
+				sink = new Sink(factory.create());
+				sinks.put(key, sink);
+			}
+			sink.references++;
+			return sink.handler;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Release a sink. Its handler is closed when nobody is using it anymore.
+	 * 
+	 * @param key
+	 *            Identifies the sink.
+	 */
+	public static void release(String key) {
+		Handler toClose = null;
+		lock.lock();
+		try {
+			Sink sink = sinks.get(key);
+			if (sink != null && --sink.references <= 0) {
+				sinks.remove(key);
+				toClose = sink.handler;
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		// Close outside the lock, it can take a while (i.e. draining a queue).
+		if (toClose != null) {
+			toClose.close();
+		}
+	}
+
+	/**
+	 * Close every sink once, no matter how many users it has.
+	 */
+	public static void closeAll() {
+		List<Handler> toClose = new ArrayList<>();
+		lock.lock();
+		try {
+			for (Sink sink : sinks.values()) {
+				toClose.add(sink.handler);
+			}
+			sinks.clear();
+		} finally {
+			lock.unlock();
+		}
+
+		for (Handler handler : toClose) {
+			handler.close();
+		}
+	}
+
+	/**
+	 * Return the number of users of a sink, 0 if it doesn't exist.
+	 * 
+	 * @param key
+	 *            Identifies the sink.
+	 * @return
+	 */
+	public static int getReferences(String key) {
+		lock.lock();
+		try {
+			Sink sink = sinks.get(key);
+			return sink == null ? 0 : sink.references;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package com.fbudassi.logger.handler;
+
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * LogRecord of a structured log call: it carries the key-value fields of the call along with the message, so handlers can render or encode them.
+ * 
+ * @author fbudassi
+ */
+public class StructuredLogRecord extends LogRecord {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Not serialized, like the parameters of a record are only serialized as strings.
+	 */
+	private final transient EventFields fields;
+
+	/**
+	 * StructuredLogRecord constructor.
+	 * 
+	 * @param level
+	 *            The level of the message.
+	 * @param msg
+	 *            The message.
+	 * @param fields
+	 *            The key-value fields.
+	 */
+	public StructuredLogRecord(Level level, String msg, EventFields fields) {
+		super(level, msg);
+
+		if (fields == null) {
+			throw new IllegalArgumentException("Parameter fields can't be null");
+		}
+
+		this.fields = fields;
+	}
+
+	public EventFields getFields() {
+		return fields;
+	}
+
+	/**
+	 * Return the fields of a record, if it has any.
+	 * 
+	 * @param record
+	 * @return The fields, or null if the record is not structured.
+	 */
+	public static EventFields getFields(LogRecord record) {
+		return record instanceof StructuredLogRecord ? ((StructuredLogRecord) record).fields : null;
+	}
+}
@@ -0,0 +1,122 @@
+package com.fbudassi.logger.handler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.logging.ErrorManager;
+import java.util.logging.LogRecord;
+
+import com.fbudassi.logger.index.LogIndexFormat;
+import com.fbudassi.logger.index.LogIndexWriter;
+import com.fbudassi.logger.util.StringUtils;
+
+/**
+ * File Handler for java.util.logging that writes formatted text records to a file, without holding a monitor while writing. See TextStreamHandler.
+ * 
+ * Unlike java.util.logging.FileHandler, the destination is a plain path (no %t, %h, %g or %u patterns) and no lock file is created: sharing a file between
+ * loggers is done by the SinkRegistry.
+ * 
+ * JSON lines files can have a sparse index next to them (destination.idx), so they can be queried with LogQuery without reading the whole file.
+ * 
+ * @author fbudassi
+ */
+public class TextFileHandler extends TextStreamHandler {
+
+	private final File file;
+
+	/**
+	 * Set before publishing records, then only used holding the lock of TextStreamHandler.
+	 */
+	private LogIndexWriter index;
+
+	/**
+	 * TextFileHandler constructor.
+	 * 
+	 * @param destination
+	 *            Path of the log file.
+	 * @param append
+	 *            If true, records are added to the existing file. Otherwise, the file is overwritten.
+	 * @throws IOException
+	 */
+	public TextFileHandler(String destination, boolean append) throws IOException {
+		this(new File(checkDestination(destination)), append);
+	}
+
+	/**
+	 * Open the file once its path was checked.
+	 * 
+	 * @param file
+	 * @param append
+	 * @throws IOException
+	 */
+	private TextFileHandler(File file, boolean append) throws IOException {
+		super(new FileOutputStream(file, append), true);
+		this.file = file;
+	}
+
+	/**
+	 * Write a sparse index of the file while records are written. Must be called before publishing any record, with a JsonEncoder set: the index is only
+	 * useful for JSON lines, the text format can't be queried.
+	 * 
+	 * @param blockSize
+	 *            Number of bytes of the file covered by every index entry.
+	 * @throws IOException
+	 */
+	public void enableIndex(int blockSize) throws IOException {
+		if (getEncoder() == null) {
+			throw new IllegalStateException("The index needs a JsonEncoder");
+		}
+
+		index = new LogIndexWriter(LogIndexFormat.getIndexFile(file), file.length(), blockSize);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void written(LogRecord record, int length) throws IOException {
+		if (index != null) {
+			index.add(record.getMillis(), record.getLevel().getName(), length);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Closes the index once no more records can be written.
+	 */
+	@Override
+	public void close() {
+		super.close();
+
+		if (index != null) {
+			try {
+				index.close();
+			} catch (IOException e) {
+				reportError(e.getMessage(), e, ErrorManager.CLOSE_FAILURE);
+			}
+		}
+	}
+
+	/**
+	 * Return the log file.
+	 * 
+	 * @return
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Check the destination before opening it.
+	 * 
+	 * @param destination
+	 * @return
+	 */
+	private static String checkDestination(String destination) {
+		if (StringUtils.isBlank(destination)) {
+			throw new IllegalArgumentException("Parameter destination can't be blank");
+		}
+		return destination;
+	}
+}
@@ -0,0 +1,215 @@
+package com.fbudassi.logger.handler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+import com.fbudassi.logger.metrics.ByteCounter;
+
+/**
+ * Text Handler for java.util.logging that writes formatted records to an OutputStream, as java.util.logging.StreamHandler does, but without holding a
+ * monitor: records are formatted and encoded before taking the lock, and the lock is a ReentrantLock, so threads waiting for it (virtual ones included)
+ * don't pin the carrier thread they run on. Every record is written with a single write to the stream, so it's not buffered by the handler.
+ * 
+ * With a JsonEncoder, records are written as UTF-8 JSON lines instead of going through the formatter, and no head nor tail is written.
+ * 
+ * @author fbudassi
+ */
+public class TextStreamHandler extends Handler implements ByteCounter {
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final boolean closeStream;
+
+	/**
+	 * Guarded by the lock.
+	 */
+	private OutputStream out;
+	private boolean doneHeader;
+
+	private volatile Charset charset = Charset.defaultCharset();
+	private volatile JsonEncoder encoder;
+
+	/**
+	 * Only updated holding the lock.
+	 */
+	private volatile long bytesWritten;
+
+	/**
+	 * TextStreamHandler constructor.
+	 * 
+	 * @param out
+	 *            The stream to write to.
+	 * @param closeStream
+	 *            If true, the stream is closed with the handler. Otherwise it's only flushed, i.e. for the console.
+	 */
+	public TextStreamHandler(OutputStream out, boolean closeStream) {
+		if (out == null) {
+			throw new IllegalArgumentException("Parameter out can't be null");
+		}
+
+		this.out = out;
+		this.closeStream = closeStream;
+
+		setFormatter(new JobLoggerFormatter());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setEncoding(String encoding) throws SecurityException, UnsupportedEncodingException {
+		super.setEncoding(encoding);
+		charset = encoding == null ? Charset.defaultCharset() : Charset.forName(encoding);
+	}
+
+	/**
+	 * Write records as JSON lines with the given encoder, or through the formatter if null.
+	 * 
+	 * @param encoder
+	 */
+	public void setEncoder(JsonEncoder encoder) {
+		this.encoder = encoder;
+	}
+
+	public JsonEncoder getEncoder() {
+		return encoder;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void publish(LogRecord record) {
+		if (!isLoggable(record)) {
+			return;
+		}
+
+		// Format and encode outside the lock. The JSON buffer belongs to this thread, it stays valid until it's written.
+		JsonEncoder json = encoder;
+		byte[] bytes;
+		int offset;
+		int length;
+		try {
+			if (json != null) {
+				ByteBuffer buffer = json.encode(record);
+				bytes = buffer.array();
+				offset = buffer.arrayOffset() + buffer.position();
+				length = buffer.remaining();
+			} else {
+				bytes = getFormatter().format(record).getBytes(charset);
+				offset = 0;
+				length = bytes.length;
+			}
+		} catch (Exception e) {
+			reportError(e.getMessage(), e, ErrorManager.FORMAT_FAILURE);
+			return;
+		}
+
+		lock.lock();
+		try {
+			// Dropped once closed, as StreamHandler does.
+			if (out == null) {
+				return;
+			}
+
+			if (!doneHeader) {
+				if (json == null) {
+					write(getFormatter().getHead(this));
+				}
+				doneHeader = true;
+			}
+			out.write(bytes, offset, length);
+			bytesWritten += length;
+			written(record, length);
+		} catch (IOException e) {
+			reportError(e.getMessage(), e, ErrorManager.WRITE_FAILURE);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void flush() {
+		lock.lock();
+		try {
+			if (out != null) {
+				out.flush();
+			}
+		} catch (IOException e) {
+			reportError(e.getMessage(), e, ErrorManager.FLUSH_FAILURE);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Writes the tail of the formatter if any record was written, as StreamHandler does.
+	 */
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			if (out == null) {
+				return;
+			}
+
+			if (doneHeader && encoder == null) {
+				write(getFormatter().getTail(this));
+			}
+			if (closeStream) {
+				out.close();
+			} else {
+				out.flush();
+			}
+		} catch (IOException e) {
+			reportError(e.getMessage(), e, ErrorManager.CLOSE_FAILURE);
+		} finally {
+			out = null;
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	/**
+	 * Called holding the lock right after a record was written, in the order records reach the stream. Does nothing by default.
+	 * 
+	 * @param record
+	 * @param length
+	 *            Number of bytes written for the record.
+	 * @throws IOException
+	 */
+	protected void written(LogRecord record, int length) throws IOException {
+	}
+
+	/**
+	 * Write a string to the stream. Must be called holding the lock.
+	 * 
+	 * @param str
+	 * @throws IOException
+	 */
+	private void write(String str) throws IOException {
+		if (str != null && !str.isEmpty()) {
+			byte[] bytes = str.getBytes(charset);
+			out.write(bytes);
+			bytesWritten += bytes.length;
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package com.fbudassi.logger.index;
+
+import java.io.File;
+
+/**
+ * Constants of the sparse index written next to a JSON lines log file (destination.idx).
+ * 
+ * An index file starts with the MAGIC bytes and a VERSION byte, followed by fixed-size entries, one for every block of the log file. A block is a run of
+ * whole records of about the configured block size. Every entry holds, as big-endian values:
+ * 
+ * <ul>
+ * <li>long: offset of the first byte of the block in the log file.</li>
+ * <li>long: offset of the byte after the last record of the block.</li>
+ * <li>long: time of the oldest record of the block, in milliseconds.</li>
+ * <li>long: time of the newest record of the block, in milliseconds.</li>
+ * <li>int: bitmap of the levels present in the block, see levelBit().</li>
+ * <li>int: number of records of the block.</li>
+ * </ul>
+ * 
+ * Blocks are written in file order and never overlap. Parts of the log file not covered by any entry (i.e. the records after the last complete block) are
+ * simply not indexed, so readers must scan them.
+ * 
+ * @author fbudassi
+ */
+public final class LogIndexFormat {
+
+	public static final byte[] MAGIC = { 'J', 'I', 'D', 'X' };
+	public static final int VERSION = 1;
+
+	public static final int HEADER_SIZE = MAGIC.length + 1;
+	public static final int ENTRY_SIZE = 4 * 8 + 2 * 4;
+
+	public static final String INDEX_SUFFIX = ".idx";
+
+	/**
+	 * Levels with a bit of their own. Any other level shares one of the upper bits with others, so a block may be scanned for nothing but never skipped by
+	 * mistake.
+	 */
+	private static final String[] KNOWN_LEVELS = { "MESSAGE", "WARN", "ERROR", "FINEST", "FINER", "FINE", "CONFIG", "INFO", "WARNING", "SEVERE" };
+	private static final int SHARED_BITS = 32 - KNOWN_LEVELS.length;
+
+	/**
+	 * Private to prevent instantiation.
+	 */
+	private LogIndexFormat() {
+	}
+
+	/**
+	 * Return the index file of a log file.
+	 * 
+	 * @param log
+	 * @return
+	 */
+	public static File getIndexFile(File log) {
+		return new File(log.getPath() + INDEX_SUFFIX);
+	}
+
+	/**
+	 * Return the bit of a level in the bitmap of a block.
+	 * 
+	 * @param levelName
+	 * @return
+	 */
+	public static int levelBit(String levelName) {
+		for (int i = 0; i < KNOWN_LEVELS.length; i++) {
+			if (KNOWN_LEVELS[i].equals(levelName)) {
+				return 1 << i;
+			}
+		}
+		return 1 << (KNOWN_LEVELS.length + (levelName.hashCode() & 0x7FFFFFFF) % SHARED_BITS);
+	}
+}
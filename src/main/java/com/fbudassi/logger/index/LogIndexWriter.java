@@ -0,0 +1,181 @@
+package com.fbudassi.logger.index;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Writes the sparse index of a log file while its records are written. See LogIndexFormat.
+ * 
+ * Records are added in file order with their time, level and length. Once a block holds at least the block size, its entry is written with a single write,
+ * so the index costs one small write per block and nothing is buffered. The last block is written when the writer is closed; if the process dies before,
+ * its records are just not indexed.
+ * 
+ * Not thread-safe: TextFileHandler calls it holding its lock.
+ * 
+ * @author fbudassi
+ */
+public class LogIndexWriter implements Closeable {
+
+	private final FileOutputStream out;
+	private final int blockSize;
+	private final ByteBuffer entry = ByteBuffer.allocate(LogIndexFormat.ENTRY_SIZE);
+
+	/**
+	 * Offset in the log file of the next record.
+	 */
+	private long offset;
+
+	/**
+	 * Current block.
+	 */
+	private long blockStart;
+	private long minMillis;
+	private long maxMillis;
+	private int levels;
+	private int records;
+
+	/**
+	 * LogIndexWriter constructor.
+	 * 
+	 * @param file
+	 *            The index file.
+	 * @param offset
+	 *            Size of the log file: records are added after it. If it's zero, the index is started again. Otherwise, new entries are added to the
+	 *            existing index, as long as it's valid and doesn't go beyond the offset.
+	 * @param blockSize
+	 *            Minimum number of bytes of the log file covered by every entry.
+	 * @throws IOException
+	 */
+	public LogIndexWriter(File file, long offset, int blockSize) throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException("Parameter file can't be null");
+		}
+
+		if (offset < 0) {
+			throw new IllegalArgumentException("Parameter offset can't be negative");
+		}
+
+		if (blockSize <= 0) {
+			throw new IllegalArgumentException("Parameter blockSize should be greater than zero");
+		}
+
+		this.offset = offset;
+		this.blockSize = blockSize;
+
+		long validLength = offset > 0 ? validLength(file, offset) : 0;
+		if (validLength > 0) {
+			// Drop a partial entry left by a crash, so new entries stay aligned.
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.setLength(validLength);
+			}
+			out = new FileOutputStream(file, true);
+		} else {
+			out = new FileOutputStream(file, false);
+			try {
+				out.write(LogIndexFormat.MAGIC);
+				out.write(LogIndexFormat.VERSION);
+			} catch (IOException e) {
+				out.close();
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Add a record written to the log file.
+	 * 
+	 * @param millis
+	 *            Time of the record.
+	 * @param levelName
+	 *            Name of the level of the record.
+	 * @param length
+	 *            Number of bytes of the record.
+	 * @throws IOException
+	 */
+	public void add(long millis, String levelName, int length) throws IOException {
+		if (records == 0) {
+			blockStart = offset;
+			minMillis = millis;
+			maxMillis = millis;
+		} else {
+			minMillis = Math.min(minMillis, millis);
+			maxMillis = Math.max(maxMillis, millis);
+		}
+		levels |= LogIndexFormat.levelBit(levelName);
+		records++;
+		offset += length;
+
+		if (offset - blockStart >= blockSize) {
+			writeEntry();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Writes the entry of the last block.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (records > 0) {
+				writeEntry();
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Write the entry of the current block and start a new one.
+	 * 
+	 * @throws IOException
+	 */
+	private void writeEntry() throws IOException {
+		entry.clear();
+		entry.putLong(blockStart).putLong(offset).putLong(minMillis).putLong(maxMillis).putInt(levels).putInt(records);
+		out.write(entry.array(), 0, entry.position());
+
+		levels = 0;
+		records = 0;
+	}
+
+	/**
+	 * Return the length of the valid part of an existing index: its header and whole entries, as long as they end before the log file offset.
+	 * 
+	 * @param file
+	 * @param offset
+	 *            Size of the log file.
+	 * @return The length to keep, or 0 if the index must be started again.
+	 * @throws IOException
+	 */
+	private static long validLength(File file, long offset) throws IOException {
+		long length = file.length();
+		if (length < LogIndexFormat.HEADER_SIZE) {
+			return 0;
+		}
+
+		long entries = (length - LogIndexFormat.HEADER_SIZE) / LogIndexFormat.ENTRY_SIZE;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			byte[] magic = new byte[LogIndexFormat.MAGIC.length];
+			raf.readFully(magic);
+			if (!Arrays.equals(magic, LogIndexFormat.MAGIC) || raf.readUnsignedByte() != LogIndexFormat.VERSION) {
+				return 0;
+			}
+
+			// The last entry must end inside the log file, i.e. it wasn't overwritten since.
+			if (entries > 0) {
+				raf.seek(LogIndexFormat.HEADER_SIZE + (entries - 1) * LogIndexFormat.ENTRY_SIZE + 8);
+				if (raf.readLong() > offset) {
+					return 0;
+				}
+			}
+		}
+		return LogIndexFormat.HEADER_SIZE + entries * LogIndexFormat.ENTRY_SIZE;
+	}
+}
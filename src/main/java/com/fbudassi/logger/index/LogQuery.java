@@ -0,0 +1,559 @@
+package com.fbudassi.logger.index;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import com.fbudassi.logger.JULJobLoggerLevel;
+
+/**
+ * Query over a JSON lines log file written by the file handler, using its sparse index (see LogIndexFormat) to read as little of the file as possible.
+ * 
+ * Blocks whose time range doesn't overlap the query, or whose level bitmap has none of the requested levels, are skipped without being read. The remaining
+ * blocks, and the parts of the file not covered by the index, are read in parallel and every record in them is checked. Without an index, the whole file is
+ * scanned in parallel. Matching records are returned in file order.
+ * 
+ * <pre>
+ * List&lt;String&gt; errors = new LogQuery(new File("joblogger.log")).from(start).to(end).level(JULJobLoggerLevel.ERROR).run();
+ * </pre>
+ * 
+ * It can be used from the command line too:
+ * 
+ * <pre>
+ * java com.fbudassi.logger.index.LogQuery joblogger.log ERROR,WARN 2016-05-01T00:00:00Z 2016-05-02T00:00:00Z
+ * </pre>
+ * 
+ * A query can be run many times, i.e. while the file is still written, but it's not thread-safe.
+ * 
+ * @author fbudassi
+ */
+public class LogQuery {
+
+	/**
+	 * Size of the chunks an unindexed part of the file is split into to be scanned in parallel.
+	 */
+	private static final int CHUNK_SIZE = 1024 * 1024;
+	private static final int TAIL_READ = 8192;
+
+	private static final byte[] TIME = "{\"time\":\"".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] LEVEL = "Z\",\"level\":\"".getBytes(StandardCharsets.US_ASCII);
+	private static final int TIMESTAMP_LENGTH = "2016-05-01T10:15:30.123".length();
+	private static final int LEVEL_OFFSET = TIME.length + TIMESTAMP_LENGTH + LEVEL.length;
+
+	private final File log;
+	private long from = Long.MIN_VALUE;
+	private long to = Long.MAX_VALUE;
+	private byte[][] levels;
+	private int levelMask = -1;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	private final AtomicLong bytesScanned = new AtomicLong();
+
+	/**
+	 * A part of the log file to scan.
+	 */
+	private static final class Range {
+		private final long start;
+		private final long end;
+		private final boolean aligned;
+
+		/**
+		 * @param start
+		 * @param end
+		 * @param aligned
+		 *            True if a record starts right at the start of the range.
+		 */
+		private Range(long start, long end, boolean aligned) {
+			this.start = start;
+			this.end = end;
+			this.aligned = aligned;
+		}
+	}
+
+	/**
+	 * Create a query over every record of a log file.
+	 * 
+	 * @param log
+	 *            The log file. Its index, if any, is the file with the same name plus ".idx".
+	 */
+	public LogQuery(File log) {
+		if (log == null) {
+			throw new IllegalArgumentException("Parameter log can't be null");
+		}
+
+		this.log = log;
+	}
+
+	/**
+	 * Keep only records logged at or after a time.
+	 * 
+	 * @param millis
+	 * @return This query.
+	 */
+	public LogQuery from(long millis) {
+		this.from = millis;
+		return this;
+	}
+
+	/**
+	 * Keep only records logged before a time.
+	 * 
+	 * @param millis
+	 * @return This query.
+	 */
+	public LogQuery to(long millis) {
+		this.to = millis;
+		return this;
+	}
+
+	/**
+	 * Keep only records of some levels.
+	 * 
+	 * @param levels
+	 *            The levels, none to keep every level.
+	 * @return This query.
+	 */
+	public LogQuery level(Level... levels) {
+		if (levels == null || levels.length == 0) {
+			this.levels = null;
+			this.levelMask = -1;
+			return this;
+		}
+
+		byte[][] names = new byte[levels.length][];
+		int mask = 0;
+		for (int i = 0; i < levels.length; i++) {
+			if (levels[i] == null) {
+				throw new IllegalArgumentException("Parameter levels can't contain null");
+			}
+
+			String name = levels[i].getName();
+			names[i] = (name + "\"").getBytes(StandardCharsets.UTF_8);
+			mask |= LogIndexFormat.levelBit(name);
+		}
+		this.levels = names;
+		this.levelMask = mask;
+		return this;
+	}
+
+	/**
+	 * Set the number of threads scanning the file.
+	 * 
+	 * @param threads
+	 * @return This query.
+	 */
+	public LogQuery parallelism(int threads) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Parameter threads should be greater than zero");
+		}
+
+		this.parallelism = threads;
+		return this;
+	}
+
+	/**
+	 * Return the number of bytes of the log file read by the last run, to see how much of the file the index saved.
+	 * 
+	 * @return
+	 */
+	public long getBytesScanned() {
+		return bytesScanned.get();
+	}
+
+	/**
+	 * Run the query.
+	 * 
+	 * @return The matching records (JSON lines without the line separator), in file order.
+	 * @throws IOException
+	 */
+	public List<String> run() throws IOException {
+		bytesScanned.set(0);
+
+		try (final FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.READ)) {
+			List<Range> ranges = selectRanges(channel.size());
+			List<String> matches = new ArrayList<>();
+
+			// Small queries don't pay for threads.
+			if (parallelism == 1 || ranges.size() <= 1) {
+				for (Range range : ranges) {
+					scan(channel, range, matches);
+				}
+				return matches;
+			}
+
+			ExecutorService executor = newExecutor(Math.min(parallelism, ranges.size()));
+			try {
+				List<Future<List<String>>> futures = new ArrayList<>(ranges.size());
+				for (final Range range : ranges) {
+					futures.add(executor.submit(new Callable<List<String>>() {
+						@Override
+						public List<String> call() throws Exception {
+							List<String> found = new ArrayList<>();
+							scan(channel, range, found);
+							return found;
+						}
+					}));
+				}
+
+				for (Future<List<String>> future : futures) {
+					matches.addAll(future.get());
+				}
+				return matches;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Query interrupted", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw new IOException(e.getCause());
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * Return the parts of the file to scan: the indexed blocks that may hold matching records, and everything the index doesn't cover.
+	 * 
+	 * @param length
+	 *            Size of the log file.
+	 * @return
+	 * @throws IOException
+	 */
+	private List<Range> selectRanges(long length) throws IOException {
+		List<Range> ranges = new ArrayList<>();
+		ByteBuffer index = readIndex();
+
+		long cursor = 0;
+		while (index != null && index.remaining() >= LogIndexFormat.ENTRY_SIZE) {
+			long start = index.getLong();
+			long end = index.getLong();
+			long minMillis = index.getLong();
+			long maxMillis = index.getLong();
+			int blockLevels = index.getInt();
+			index.getInt();
+
+			// An entry that doesn't fit the file: the rest of the index is not trusted.
+			if (start < cursor || end <= start || end > length) {
+				break;
+			}
+
+			addUnindexed(ranges, cursor, start);
+			if (maxMillis >= from && minMillis < to && (blockLevels & levelMask) != 0) {
+				ranges.add(new Range(start, end, true));
+			}
+			cursor = end;
+		}
+		addUnindexed(ranges, cursor, length);
+		return ranges;
+	}
+
+	/**
+	 * Read the whole index, it's small compared to the file.
+	 * 
+	 * @return The entries, or null if there's no valid index.
+	 * @throws IOException
+	 */
+	private ByteBuffer readIndex() throws IOException {
+		File file = LogIndexFormat.getIndexFile(log);
+		if (!file.isFile()) {
+			return null;
+		}
+
+		ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		if (index.remaining() < LogIndexFormat.HEADER_SIZE) {
+			return null;
+		}
+
+		byte[] magic = new byte[LogIndexFormat.MAGIC.length];
+		index.get(magic);
+		if (!Arrays.equals(magic, LogIndexFormat.MAGIC) || index.get() != LogIndexFormat.VERSION) {
+			return null;
+		}
+		return index;
+	}
+
+	/**
+	 * Add a part of the file not covered by the index, split in chunks so it's scanned in parallel too.
+	 * 
+	 * @param ranges
+	 * @param start
+	 *            Where a record starts.
+	 * @param end
+	 */
+	private static void addUnindexed(List<Range> ranges, long start, long end) {
+		for (long chunk = start; chunk < end; chunk += CHUNK_SIZE) {
+			ranges.add(new Range(chunk, Math.min(end, chunk + CHUNK_SIZE), chunk == start));
+		}
+	}
+
+	/**
+	 * Check every record starting in a range. The record crossing the end of the range, if any, is read until its end.
+	 * 
+	 * @param channel
+	 * @param range
+	 * @param matches
+	 *            Where matching records are added.
+	 * @throws IOException
+	 */
+	private void scan(FileChannel channel, Range range, List<String> matches) throws IOException {
+		int length = (int) (range.end - range.start);
+		byte[] bytes = new byte[length];
+		readFully(channel, ByteBuffer.wrap(bytes), range.start);
+
+		// Skip the end of the record started in the previous chunk.
+		int pos = 0;
+		if (!range.aligned && !isLineStart(channel, range.start)) {
+			pos = indexOf(bytes, 0, length) + 1;
+			if (pos == 0) {
+				return;
+			}
+		}
+
+		while (pos < length) {
+			int eol = indexOf(bytes, pos, length);
+			if (eol < 0) {
+				byte[] line = readCrossing(channel, bytes, pos, length, range.end);
+				if (line != null) {
+					match(line, 0, line.length - 1, matches);
+				}
+				return;
+			}
+
+			match(bytes, pos, eol, matches);
+			pos = eol + 1;
+		}
+	}
+
+	/**
+	 * Check a record and add it if it matches the query. Lines that weren't written by JsonEncoder are ignored.
+	 * 
+	 * @param bytes
+	 * @param start
+	 * @param end
+	 *            Position of the line separator.
+	 * @param matches
+	 */
+	private void match(byte[] bytes, int start, int end, List<String> matches) {
+		if (end - start < LEVEL_OFFSET || !startsWith(bytes, start, TIME) || !startsWith(bytes, start + TIME.length + TIMESTAMP_LENGTH, LEVEL)) {
+			return;
+		}
+
+		// Check the level first, it's cheaper than the time.
+		if (levels != null) {
+			boolean found = false;
+			for (byte[] level : levels) {
+				if (startsWith(bytes, start + LEVEL_OFFSET, level)) {
+					found = true;
+					break;
+				}
+			}
+			if (!found) {
+				return;
+			}
+		}
+
+		long millis = parseMillis(bytes, start + TIME.length);
+		if (millis >= from && millis < to) {
+			matches.add(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * Parse a yyyy-MM-ddTHH:mm:ss.SSS UTC timestamp.
+	 * 
+	 * @param bytes
+	 * @param pos
+	 * @return The time in milliseconds, or Long.MIN_VALUE if it's malformed.
+	 */
+	private static long parseMillis(byte[] bytes, int pos) {
+		try {
+			long day = LocalDate.of(digits(bytes, pos, 4), digits(bytes, pos + 5, 2), digits(bytes, pos + 8, 2)).toEpochDay();
+			long seconds = day * 86400 + digits(bytes, pos + 11, 2) * 3600 + digits(bytes, pos + 14, 2) * 60 + digits(bytes, pos + 17, 2);
+			return seconds * 1000 + digits(bytes, pos + 20, 3);
+		} catch (RuntimeException e) {
+			return Long.MIN_VALUE;
+		}
+	}
+
+	private static int digits(byte[] bytes, int pos, int count) {
+		int value = 0;
+		for (int i = pos; i < pos + count; i++) {
+			int digit = bytes[i] - '0';
+			if (digit < 0 || digit > 9) {
+				throw new NumberFormatException("Not a digit");
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	/**
+	 * Read the rest of a record crossing the end of a range.
+	 * 
+	 * @param channel
+	 * @param bytes
+	 * @param pos
+	 *            Where the record starts.
+	 * @param length
+	 * @param position
+	 *            Position in the file of the end of the range.
+	 * @return The whole record with its line separator, or null if the file ends before it.
+	 * @throws IOException
+	 */
+	private byte[] readCrossing(FileChannel channel, byte[] bytes, int pos, int length, long position) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		line.write(bytes, pos, length - pos);
+
+		ByteBuffer piece = ByteBuffer.allocate(TAIL_READ);
+		while (true) {
+			piece.clear();
+			int read = channel.read(piece, position);
+			if (read <= 0) {
+				return null;
+			}
+			bytesScanned.addAndGet(read);
+
+			int eol = indexOf(piece.array(), 0, read);
+			if (eol >= 0) {
+				line.write(piece.array(), 0, eol + 1);
+				return line.toByteArray();
+			}
+			line.write(piece.array(), 0, read);
+			position += read;
+		}
+	}
+
+	/**
+	 * Check if a record starts at a position, i.e. it's right after a line separator.
+	 * 
+	 * @param channel
+	 * @param position
+	 * @return
+	 * @throws IOException
+	 */
+	private static boolean isLineStart(FileChannel channel, long position) throws IOException {
+		ByteBuffer previous = ByteBuffer.allocate(1);
+		return channel.read(previous, position - 1) == 1 && previous.get(0) == '\n';
+	}
+
+	private void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) {
+				throw new IOException("Unexpected end of " + log);
+			}
+		}
+		bytesScanned.addAndGet(buffer.position());
+	}
+
+	private static int indexOf(byte[] bytes, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (bytes[i] == '\n') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean startsWith(byte[] bytes, int pos, byte[] prefix) {
+		if (pos + prefix.length > bytes.length) {
+			return false;
+		}
+
+		for (int i = 0; i < prefix.length; i++) {
+			if (bytes[pos + i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Create the threads of a run.
+	 * 
+	 * @param threads
+	 * @return
+	 */
+	private static ExecutorService newExecutor(int threads) {
+		return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "joblogger-query-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Print the matching records of a log file on the standard output.
+	 * 
+	 * @param args
+	 *            Path of the file, and optionally the levels separated by commas and the time range as ISO-8601 instants.
+	 */
+	public static void main(String[] args) {
+		if (args.length == 0 || args.length > 4) {
+			System.err.println("Usage: java " + LogQuery.class.getCanonicalName() + " <file> [<level>[,<level>...] [<from> [<to>]]]");
+			System.exit(1);
+		}
+
+		// Register the JobLogger levels so they can be parsed.
+		Level.parse(JULJobLoggerLevel.ERROR.getName());
+
+		LogQuery query = new LogQuery(new File(args[0]));
+		try {
+			if (args.length > 1) {
+				String[] names = args[1].split(",");
+				Level[] levels = new Level[names.length];
+				for (int i = 0; i < names.length; i++) {
+					levels[i] = Level.parse(names[i].trim());
+				}
+				query.level(levels);
+			}
+			if (args.length > 2) {
+				query.from(Instant.parse(args[2]).toEpochMilli());
+			}
+			if (args.length > 3) {
+				query.to(Instant.parse(args[3]).toEpochMilli());
+			}
+		} catch (RuntimeException e) {
+			System.err.println("Invalid argument: " + e.getMessage());
+			System.exit(1);
+		}
+
+		PrintStream out = System.out;
+		try {
+			for (String record : query.run()) {
+				out.println(record);
+			}
+		} catch (IOException e) {
+			System.err.println("Error reading " + args[0] + ": " + e.getMessage());
+			System.exit(2);
+		}
+		out.flush();
+	}
+}
@@ -0,0 +1,178 @@
+package com.fbudassi.logger.limit;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Rate limiter and sampler of log calls, keyed by message template.
+ * 
+ * Every key gets its own token bucket, implemented as a generic cell rate algorithm: the bucket is a single AtomicLong holding the time at which it will be
+ * full again, updated with a CAS. Sampling keeps one call out of N at random. Neither takes locks nor allocates once the key has been seen; the number of keys
+ * is bounded and keys over the limit share one bucket.
+ * 
+ * Calls that are not let through are counted per key, so a summary of the suppressed records can be logged every now and then.
+ * 
+ * @author fbudassi
+ */
+public class RateLimiter {
+
+	/**
+	 * Maximum number of keys with their own bucket.
+	 */
+	private static final int MAX_KEYS = 1024;
+
+	/**
+	 * Key used for null templates.
+	 */
+	private static final String NULL_KEY = "null";
+
+	private final long intervalNanos;
+	private final long burstNanos;
+	private final int sampleRate;
+	private final long summaryIntervalNanos;
+
+	private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+	private final Bucket overflow = new Bucket();
+	private final AtomicLong nextSummary;
+
+	private final Function<String, Bucket> newBucket = new Function<String, Bucket>() {
+		@Override
+		public Bucket apply(String key) {
+			return new Bucket();
+		}
+	};
+
+	/**
+	 * State of a key.
+	 */
+	private static final class Bucket {
+		/**
+		 * Theoretical arrival time of the next call, in System.nanoTime() terms. Long.MIN_VALUE until the first call.
+		 */
+		private final AtomicLong tat = new AtomicLong(Long.MIN_VALUE);
+		private final AtomicLong suppressed = new AtomicLong();
+	}
+
+	/**
+	 * RateLimiter constructor.
+	 * 
+	 * @param permitsPerSecond
+	 *            Calls let through per second and key, also the size of the burst allowed. 0 means no rate limit.
+	 * @param sampleRate
+	 *            Keep one call out of sampleRate, at random. 1 means no sampling.
+	 * @param summaryIntervalMillis
+	 *            Minimum time between summaries of the suppressed calls.
+	 */
+	public RateLimiter(double permitsPerSecond, int sampleRate, long summaryIntervalMillis) {
+		if (permitsPerSecond < 0) {
+			throw new IllegalArgumentException("Parameter permitsPerSecond can't be negative");
+		}
+
+		if (sampleRate <= 0) {
+			throw new IllegalArgumentException("Parameter sampleRate should be greater than zero");
+		}
+
+		if (summaryIntervalMillis <= 0) {
+			throw new IllegalArgumentException("Parameter summaryIntervalMillis should be greater than zero");
+		}
+
+		this.intervalNanos = permitsPerSecond == 0 ? 0 : Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+		this.burstNanos = Math.max(1, (long) permitsPerSecond) * intervalNanos;
+		this.sampleRate = sampleRate;
+		this.summaryIntervalNanos = TimeUnit.MILLISECONDS.toNanos(summaryIntervalMillis);
+		this.nextSummary = new AtomicLong(System.nanoTime() + summaryIntervalNanos);
+	}
+
+	/**
+	 * Check if a call with the given key may go through.
+	 * 
+	 * @param key
+	 *            The message template.
+	 * @param now
+	 *            Current System.nanoTime().
+	 * @return False if the call must be dropped. It's counted as suppressed.
+	 */
+	public boolean tryAcquire(String key, long now) {
+		Bucket bucket = getBucket(key);
+
+		// Sampling.
+		if (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+			bucket.suppressed.incrementAndGet();
+			return false;
+		}
+
+		// Rate limit.
+		if (intervalNanos > 0) {
+			while (true) {
+				long tat = bucket.tat.get();
+				long newTat = (tat == Long.MIN_VALUE || tat - now < 0 ? now : tat) + intervalNanos;
+				if (newTat - now > burstNanos) {
+					bucket.suppressed.incrementAndGet();
+					return false;
+				}
+				if (bucket.tat.compareAndSet(tat, newTat)) {
+					break;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Check if it's time to log a summary of the suppressed calls. Returns true to only one of the threads calling it once the interval is over.
+	 * 
+	 * @param now
+	 *            Current System.nanoTime().
+	 * @return
+	 */
+	public boolean isSummaryDue(long now) {
+		long next = nextSummary.get();
+		return now - next >= 0 && nextSummary.compareAndSet(next, now + summaryIntervalNanos);
+	}
+
+	/**
+	 * Return the number of calls suppressed per key since the last call, and reset them. Keys with nothing suppressed are left out; calls of keys over the
+	 * limit are reported under a null key.
+	 * 
+	 * @return
+	 */
+	public Map<String, Long> drainSuppressed() {
+		Map<String, Long> suppressed = new LinkedHashMap<>();
+		for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+			long count = entry.getValue().suppressed.getAndSet(0);
+			if (count > 0) {
+				suppressed.put(entry.getKey(), count);
+			}
+		}
+
+		long count = overflow.suppressed.getAndSet(0);
+		if (count > 0) {
+			suppressed.put(null, count);
+		}
+		return suppressed;
+	}
+
+	/**
+	 * Get the bucket of a key, creating it if there's room for one more.
+	 * 
+	 * @param key
+	 * @return
+	 */
+	private Bucket getBucket(String key) {
+		if (key == null) {
+			key = NULL_KEY;
+		}
+
+		Bucket bucket = buckets.get(key);
+		if (bucket == null) {
+			bucket = buckets.size() < MAX_KEYS ? buckets.computeIfAbsent(key, newBucket) : overflow;
+		}
+		return bucket;
+	}
+}
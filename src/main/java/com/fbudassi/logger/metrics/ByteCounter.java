@@ -0,0 +1,16 @@
+package com.fbudassi.logger.metrics;
+
+/**
+ * Implemented by handlers (and formatters) that know how many bytes they wrote to their destination.
+ * 
+ * @author fbudassi
+ */
+public interface ByteCounter {
+
+	/**
+	 * Return the number of bytes written so far.
+	 * 
+	 * @return
+	 */
+	public long getBytesWritten();
+}
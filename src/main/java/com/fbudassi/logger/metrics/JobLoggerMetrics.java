@@ -0,0 +1,283 @@
+package com.fbudassi.logger.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.fbudassi.logger.JULJobLoggerLevel;
+import com.fbudassi.logger.util.StringUtils;
+
+/**
+ * Process-wide metrics of the logging pipeline: records logged per level, publish latency, errors and bytes written per sink, and depth and drops of the
+ * asynchronous queues. Counters are striped (LongAdder), so recording them doesn't make logging threads contend.
+ * 
+ * @author fbudassi
+ */
+public final class JobLoggerMetrics {
+
+	public static final String OBJECT_NAME = "com.fbudassi.logger:type=JobLoggerMetrics";
+
+	private static final LongAdder errors = new LongAdder();
+	private static final LongAdder warnings = new LongAdder();
+	private static final LongAdder messages = new LongAdder();
+	private static final LongAdder suppressed = new LongAdder();
+
+	private static final ConcurrentMap<String, SinkMetrics> sinks = new ConcurrentHashMap<>();
+	private static final ConcurrentMap<String, QueueGauge> queues = new ConcurrentHashMap<>();
+
+	/**
+	 * Private to prevent instantiation.
+	 */
+	private JobLoggerMetrics() {
+	}
+
+	/**
+	 * Count a record logged.
+	 * 
+	 * @param level
+	 *            One of the JULJobLoggerLevel levels.
+	 */
+	public static void recordLevel(Level level) {
+		if (level == JULJobLoggerLevel.ERROR) {
+			errors.increment();
+		} else if (level == JULJobLoggerLevel.WARN) {
+			warnings.increment();
+		} else {
+			messages.increment();
+		}
+	}
+
+	/**
+	 * Count a record dropped by rate limiting or sampling.
+	 */
+	public static void recordSuppressed() {
+		suppressed.increment();
+	}
+
+	/**
+	 * Register a sink, replacing any other with the same name.
+	 * 
+	 * @param name
+	 *            Name of the sink.
+	 * @return The metrics of the sink.
+	 */
+	public static SinkMetrics registerSink(String name) {
+		if (StringUtils.isBlank(name)) {
+			throw new IllegalArgumentException("Parameter name can't be blank");
+		}
+
+		SinkMetrics metrics = new SinkMetrics();
+		sinks.put(name, metrics);
+		return metrics;
+	}
+
+	/**
+	 * Unregister a sink, if its metrics are still the registered ones.
+	 * 
+	 * @param name
+	 * @param metrics
+	 */
+	public static void unregisterSink(String name, SinkMetrics metrics) {
+		sinks.remove(name, metrics);
+	}
+
+	/**
+	 * Register an asynchronous queue, replacing any other with the same name.
+	 * 
+	 * @param name
+	 *            Name of the queue.
+	 * @param gauge
+	 *            Reads the queue state.
+	 */
+	public static void registerQueue(String name, QueueGauge gauge) {
+		if (StringUtils.isBlank(name)) {
+			throw new IllegalArgumentException("Parameter name can't be blank");
+		}
+
+		if (gauge == null) {
+			throw new IllegalArgumentException("Parameter gauge can't be null");
+		}
+
+		queues.put(name, gauge);
+	}
+
+	/**
+	 * Unregister an asynchronous queue, if the gauge is still the registered one.
+	 * 
+	 * @param name
+	 * @param gauge
+	 */
+	public static void unregisterQueue(String name, QueueGauge gauge) {
+		queues.remove(name, gauge);
+	}
+
+	/**
+	 * Take a snapshot of every metric. Sinks and queues are sorted by name.
+	 * 
+	 * @return
+	 */
+	public static MetricsSnapshot snapshot() {
+		Map<String, MetricsSnapshot.Sink> sinkSnapshots = new LinkedHashMap<>();
+		for (Map.Entry<String, SinkMetrics> sink : new TreeMap<>(sinks).entrySet()) {
+			sinkSnapshots.put(sink.getKey(), new MetricsSnapshot.Sink(sink.getValue()));
+		}
+
+		Map<String, MetricsSnapshot.Queue> queueSnapshots = new LinkedHashMap<>();
+		for (Map.Entry<String, QueueGauge> queue : new TreeMap<>(queues).entrySet()) {
+			queueSnapshots.put(queue.getKey(), new MetricsSnapshot.Queue(queue.getValue()));
+		}
+
+		return new MetricsSnapshot(errors.sum(), warnings.sum(), messages.sum(), suppressed.sum(), sinkSnapshots, queueSnapshots);
+	}
+
+	/**
+	 * Register the JobLoggerMetricsMXBean in the platform MBean server, unless it's already there.
+	 * 
+	 * @throws JMException
+	 */
+	public static synchronized void registerMBean() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(OBJECT_NAME);
+		if (!server.isRegistered(name)) {
+			server.registerMBean(new MXBean(), name);
+		}
+	}
+
+	/**
+	 * MXBean view of the metrics. Every attribute takes a new snapshot.
+	 */
+	private static final class MXBean implements JobLoggerMetricsMXBean {
+
+		/**
+		 * Reads one value of a sink snapshot.
+		 */
+		private interface SinkValue {
+			long get(MetricsSnapshot.Sink sink);
+		}
+
+		@Override
+		public long getErrorCount() {
+			return errors.sum();
+		}
+
+		@Override
+		public long getWarningCount() {
+			return warnings.sum();
+		}
+
+		@Override
+		public long getMessageCount() {
+			return messages.sum();
+		}
+
+		@Override
+		public long getSuppressedCount() {
+			return suppressed.sum();
+		}
+
+		@Override
+		public Map<String, Long> getSinkPublishCounts() {
+			return toMap(new SinkValue() {
+				@Override
+				public long get(MetricsSnapshot.Sink sink) {
+					return sink.getPublished();
+				}
+			});
+		}
+
+		@Override
+		public Map<String, Long> getSinkErrorCounts() {
+			return toMap(new SinkValue() {
+				@Override
+				public long get(MetricsSnapshot.Sink sink) {
+					return sink.getErrors();
+				}
+			});
+		}
+
+		@Override
+		public Map<String, Long> getSinkBytesWritten() {
+			return toMap(new SinkValue() {
+				@Override
+				public long get(MetricsSnapshot.Sink sink) {
+					return sink.getBytesWritten();
+				}
+			});
+		}
+
+		@Override
+		public Map<String, Long> getSinkLatencyP50() {
+			return toMap(new SinkValue() {
+				@Override
+				public long get(MetricsSnapshot.Sink sink) {
+					return sink.getLatencyP50();
+				}
+			});
+		}
+
+		@Override
+		public Map<String, Long> getSinkLatencyP99() {
+			return toMap(new SinkValue() {
+				@Override
+				public long get(MetricsSnapshot.Sink sink) {
+					return sink.getLatencyP99();
+				}
+			});
+		}
+
+		@Override
+		public Map<String, Long> getSinkLatencyP999() {
+			return toMap(new SinkValue() {
+				@Override
+				public long get(MetricsSnapshot.Sink sink) {
+					return sink.getLatencyP999();
+				}
+			});
+		}
+
+		@Override
+		public Map<String, Long> getSinkLatencyMax() {
+			return toMap(new SinkValue() {
+				@Override
+				public long get(MetricsSnapshot.Sink sink) {
+					return sink.getLatencyMax();
+				}
+			});
+		}
+
+		@Override
+		public Map<String, Long> getQueueDepths() {
+			Map<String, Long> map = new LinkedHashMap<>();
+			for (Map.Entry<String, MetricsSnapshot.Queue> queue : snapshot().getQueues().entrySet()) {
+				map.put(queue.getKey(), queue.getValue().getDepth());
+			}
+			return map;
+		}
+
+		@Override
+		public Map<String, Long> getQueueDrops() {
+			Map<String, Long> map = new LinkedHashMap<>();
+			for (Map.Entry<String, MetricsSnapshot.Queue> queue : snapshot().getQueues().entrySet()) {
+				map.put(queue.getKey(), queue.getValue().getDropped());
+			}
+			return map;
+		}
+
+		private static Map<String, Long> toMap(SinkValue value) {
+			Map<String, Long> map = new LinkedHashMap<>();
+			for (Map.Entry<String, MetricsSnapshot.Sink> sink : snapshot().getSinks().entrySet()) {
+				map.put(sink.getKey(), value.get(sink.getValue()));
+			}
+			return map;
+		}
+	}
+}
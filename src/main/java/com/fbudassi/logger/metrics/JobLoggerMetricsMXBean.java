@@ -0,0 +1,38 @@
+package com.fbudassi.logger.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of the logging pipeline metrics, registered in the platform MBean server as com.fbudassi.logger:type=JobLoggerMetrics. Maps are
+ * keyed by sink or queue name; latencies are in nanoseconds.
+ * 
+ * @author fbudassi
+ */
+public interface JobLoggerMetricsMXBean {
+
+	public long getErrorCount();
+
+	public long getWarningCount();
+
+	public long getMessageCount();
+
+	public long getSuppressedCount();
+
+	public Map<String, Long> getSinkPublishCounts();
+
+	public Map<String, Long> getSinkErrorCounts();
+
+	public Map<String, Long> getSinkBytesWritten();
+
+	public Map<String, Long> getSinkLatencyP50();
+
+	public Map<String, Long> getSinkLatencyP99();
+
+	public Map<String, Long> getSinkLatencyP999();
+
+	public Map<String, Long> getSinkLatencyMax();
+
+	public Map<String, Long> getQueueDepths();
+
+	public Map<String, Long> getQueueDrops();
+}
@@ -0,0 +1,169 @@
+package com.fbudassi.logger.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-bucket histogram of latencies in nanoseconds. Buckets are log-linear: every power of two is split in 2^subBucketBits buckets, so a value read back is
+ * at most 1 / 2^subBucketBits over the recorded one (25% by default). Recording is a couple of atomic increments, without locks or allocations.
+ * 
+ * @author fbudassi
+ */
+public class LatencyHistogram {
+
+	private static final int DEFAULT_SUB_BUCKET_BITS = 2;
+
+	/**
+	 * Sub-buckets per power of two, as a number of bits and as a count.
+	 */
+	private final int subBits;
+	private final int subCount;
+	private final int buckets;
+
+	private final AtomicLongArray counts;
+	private final LongAdder total = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * LatencyHistogram constructor, with a 25% precision.
+	 */
+	public LatencyHistogram() {
+		this(DEFAULT_SUB_BUCKET_BITS);
+	}
+
+	/**
+	 * LatencyHistogram constructor.
+	 * 
+	 * @param subBucketBits
+	 *            Every power of two is split in 2^subBucketBits buckets. Each bit halves the error and doubles the memory used.
+	 */
+	public LatencyHistogram(int subBucketBits) {
+		if (subBucketBits < 1 || subBucketBits > 10) {
+			throw new IllegalArgumentException("Parameter subBucketBits should be between 1 and 10");
+		}
+
+		this.subBits = subBucketBits;
+		this.subCount = 1 << subBucketBits;
+		this.buckets = 63 * subCount;
+		this.counts = new AtomicLongArray(buckets);
+	}
+
+	/**
+	 * Record a value. Negative values are recorded as 0.
+	 * 
+	 * @param nanos
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+
+		counts.incrementAndGet(getBucket(nanos));
+		total.add(nanos);
+
+		long current;
+		while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+			// Another thread raised the max, check again.
+		}
+	}
+
+	/**
+	 * Return the number of values recorded.
+	 * 
+	 * @return
+	 */
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < buckets; i++) {
+			count += counts.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * Return the biggest value recorded.
+	 * 
+	 * @return
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Return the mean of the values recorded, 0 if there are none.
+	 * 
+	 * @return
+	 */
+	public long getMean() {
+		long count = getCount();
+		return count == 0 ? 0 : total.sum() / count;
+	}
+
+	/**
+	 * Return the value at a certain percentile, as the upper bound of its bucket (never over the max).
+	 * 
+	 * @param percentile
+	 *            Between 0 and 100.
+	 * @return The value, 0 if nothing was recorded.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("Parameter percentile should be between 0 and 100");
+		}
+
+		long[] snapshot = new long[buckets];
+		long count = 0;
+		for (int i = 0; i < buckets; i++) {
+			snapshot[i] = counts.get(i);
+			count += snapshot[i];
+		}
+		if (count == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+		for (int i = 0; i < buckets; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(getUpperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Return the bucket of a value.
+	 * 
+	 * @param value
+	 *            A value, not negative.
+	 * @return
+	 */
+	int getBucket(long value) {
+		if (value < subCount) {
+			return (int) value;
+		}
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - subBits)) & (subCount - 1);
+		return exponent * subCount + sub;
+	}
+
+	/**
+	 * Return the biggest value that falls in a bucket.
+	 * 
+	 * @param bucket
+	 * @return
+	 */
+	long getUpperBound(int bucket) {
+		if (bucket < subCount) {
+			return bucket;
+		}
+
+		int exponent = bucket / subCount;
+		int sub = bucket % subCount;
+		// Overflows to Long.MIN_VALUE for the last bucket, so the result is Long.MAX_VALUE.
+		return ((long) (subCount + sub + 1) << (exponent - subBits)) - 1;
+	}
+}
@@ -0,0 +1,166 @@
+package com.fbudassi.logger.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Point-in-time copy of the logging pipeline metrics.
+ * 
+ * @author fbudassi
+ */
+public final class MetricsSnapshot {
+
+	private final long errors;
+	private final long warnings;
+	private final long messages;
+	private final long suppressed;
+	private final Map<String, Sink> sinks;
+	private final Map<String, Queue> queues;
+
+	/**
+	 * Metrics of a sink. Latencies are in nanoseconds.
+	 */
+	public static final class Sink {
+		private final long published;
+		private final long errors;
+		private final long bytesWritten;
+		private final long latencyMean;
+		private final long latencyP50;
+		private final long latencyP99;
+		private final long latencyP999;
+		private final long latencyMax;
+
+		Sink(SinkMetrics metrics) {
+			LatencyHistogram latency = metrics.getLatency();
+			this.published = latency.getCount();
+			this.errors = metrics.getErrors();
+			this.bytesWritten = metrics.getBytesWritten();
+			this.latencyMean = latency.getMean();
+			this.latencyP50 = latency.getValueAtPercentile(50);
+			this.latencyP99 = latency.getValueAtPercentile(99);
+			this.latencyP999 = latency.getValueAtPercentile(99.9);
+			this.latencyMax = latency.getMax();
+		}
+
+		public long getPublished() {
+			return published;
+		}
+
+		public long getErrors() {
+			return errors;
+		}
+
+		/**
+		 * Return the number of bytes written, -1 if the sink can't tell.
+		 * 
+		 * @return
+		 */
+		public long getBytesWritten() {
+			return bytesWritten;
+		}
+
+		public long getLatencyMean() {
+			return latencyMean;
+		}
+
+		public long getLatencyP50() {
+			return latencyP50;
+		}
+
+		public long getLatencyP99() {
+			return latencyP99;
+		}
+
+		public long getLatencyP999() {
+			return latencyP999;
+		}
+
+		public long getLatencyMax() {
+			return latencyMax;
+		}
+	}
+
+	/**
+	 * Metrics of an asynchronous queue.
+	 */
+	public static final class Queue {
+		private final long depth;
+		private final long dropped;
+
+		Queue(QueueGauge gauge) {
+			this.depth = gauge.getQueueDepth();
+			this.dropped = gauge.getDropped();
+		}
+
+		public long getDepth() {
+			return depth;
+		}
+
+		public long getDropped() {
+			return dropped;
+		}
+	}
+
+	MetricsSnapshot(long errors, long warnings, long messages, long suppressed, Map<String, Sink> sinks, Map<String, Queue> queues) {
+		this.errors = errors;
+		this.warnings = warnings;
+		this.messages = messages;
+		this.suppressed = suppressed;
+		this.sinks = Collections.unmodifiableMap(sinks);
+		this.queues = Collections.unmodifiableMap(queues);
+	}
+
+	/**
+	 * Return the number of ERROR records logged.
+	 * 
+	 * @return
+	 */
+	public long getErrors() {
+		return errors;
+	}
+
+	/**
+	 * Return the number of WARN records logged.
+	 * 
+	 * @return
+	 */
+	public long getWarnings() {
+		return warnings;
+	}
+
+	/**
+	 * Return the number of MESSAGE records logged.
+	 * 
+	 * @return
+	 */
+	public long getMessages() {
+		return messages;
+	}
+
+	/**
+	 * Return the number of records dropped by rate limiting or sampling.
+	 * 
+	 * @return
+	 */
+	public long getSuppressed() {
+		return suppressed;
+	}
+
+	/**
+	 * Return the metrics of every metered sink, by name.
+	 * 
+	 * @return
+	 */
+	public Map<String, Sink> getSinks() {
+		return sinks;
+	}
+
+	/**
+	 * Return the metrics of every asynchronous queue, by name.
+	 * 
+	 * @return
+	 */
+	public Map<String, Queue> getQueues() {
+		return queues;
+	}
+}
@@ -0,0 +1,23 @@
+package com.fbudassi.logger.metrics;
+
+/**
+ * Implemented by asynchronous parts of the pipeline that keep records in a queue before writing them.
+ * 
+ * @author fbudassi
+ */
+public interface QueueGauge {
+
+	/**
+	 * Return the number of records waiting in the queue.
+	 * 
+	 * @return
+	 */
+	public long getQueueDepth();
+
+	/**
+	 * Return the number of records that were accepted but never written, i.e. because the queue was closed.
+	 * 
+	 * @return
+	 */
+	public long getDropped();
+}
@@ -0,0 +1,70 @@
+package com.fbudassi.logger.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of a sink: records published, time spent publishing them, errors reported and bytes written.
+ * 
+ * @author fbudassi
+ */
+public class SinkMetrics {
+
+	private final LongAdder errors = new LongAdder();
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private volatile ByteCounter byteCounter;
+
+	/**
+	 * Record a publish() call on the sink.
+	 * 
+	 * @param nanos
+	 *            Time it took.
+	 */
+	public void recordPublish(long nanos) {
+		latency.record(nanos);
+	}
+
+	/**
+	 * Record an error reported by the sink.
+	 */
+	public void recordError() {
+		errors.increment();
+	}
+
+	/**
+	 * Set where the bytes written by the sink are counted.
+	 * 
+	 * @param byteCounter
+	 *            Can be null if the sink can't tell.
+	 */
+	public void setByteCounter(ByteCounter byteCounter) {
+		this.byteCounter = byteCounter;
+	}
+
+	/**
+	 * Return the publish() latency histogram. Its count is the number of records published.
+	 * 
+	 * @return
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	/**
+	 * Return the number of errors reported.
+	 * 
+	 * @return
+	 */
+	public long getErrors() {
+		return errors.sum();
+	}
+
+	/**
+	 * Return the number of bytes written, -1 if the sink can't tell.
+	 * 
+	 * @return
+	 */
+	public long getBytesWritten() {
+		ByteCounter bc = byteCounter;
+		return bc == null ? -1 : bc.getBytesWritten();
+	}
+}
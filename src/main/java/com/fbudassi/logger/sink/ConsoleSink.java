@@ -0,0 +1,159 @@
+package com.fbudassi.logger.sink;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.fbudassi.logger.handler.JobLoggerFormatter;
+import com.fbudassi.logger.handler.JsonEncoder;
+
+/**
+ * Sink that writes events to the console, with the same output as a java.util.logging.ConsoleHandler using a JobLoggerFormatter.
+ * 
+ * Events are formatted and encoded by the calling thread, only the write itself is done under a ReentrantLock, so virtual threads waiting for it don't pin
+ * their carrier thread.
+ * 
+ * With a JsonEncoder, events are written as UTF-8 JSON lines instead.
+ * 
+ * @author fbudassi
+ */
+public class ConsoleSink implements EventSink {
+
+	private final OutputStream out;
+	private final JobLoggerFormatter formatter;
+	private final JsonEncoder encoder;
+	private final Charset charset = Charset.defaultCharset();
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * Create a sink writing to System.err, as ConsoleHandler does.
+	 * 
+	 * @param formatter
+	 */
+	public ConsoleSink(JobLoggerFormatter formatter) {
+		this(System.err, formatter);
+	}
+
+	/**
+	 * ConsoleSink constructor.
+	 * 
+	 * @param out
+	 *            The stream to write to. It's not closed by the sink.
+	 * @param formatter
+	 *            Formats the events.
+	 */
+	public ConsoleSink(OutputStream out, JobLoggerFormatter formatter) {
+		if (out == null) {
+			throw new IllegalArgumentException("Parameter out can't be null");
+		}
+
+		if (formatter == null) {
+			throw new IllegalArgumentException("Parameter formatter can't be null");
+		}
+
+		this.out = out;
+		this.formatter = formatter;
+		this.encoder = null;
+	}
+
+	/**
+	 * Create a sink writing JSON lines to System.err.
+	 * 
+	 * @param encoder
+	 */
+	public ConsoleSink(JsonEncoder encoder) {
+		this(System.err, encoder);
+	}
+
+	/**
+	 * Constructor of a sink writing JSON lines.
+	 * 
+	 * @param out
+	 *            The stream to write to. It's not closed by the sink.
+	 * @param encoder
+	 *            Encodes the events.
+	 */
+	public ConsoleSink(OutputStream out, JsonEncoder encoder) {
+		if (out == null) {
+			throw new IllegalArgumentException("Parameter out can't be null");
+		}
+
+		if (encoder == null) {
+			throw new IllegalArgumentException("Parameter encoder can't be null");
+		}
+
+		this.out = out;
+		this.formatter = null;
+		this.encoder = encoder;
+	}
+
+	/**
+	 * Return the encoder of the sink.
+	 * 
+	 * @return The encoder, or null if the events are written as text.
+	 */
+	public JsonEncoder getEncoder() {
+		return encoder;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(LogEvent event) {
+		byte[] bytes;
+		int offset;
+		int length;
+		if (encoder != null) {
+			// The buffer belongs to this thread, it stays valid until it's written.
+			ByteBuffer buffer = encoder.encode(event.getMillis(), event.getLoggerName(), event.getLevel(), event.getMessage(), event.getParams(),
+					event.getFields(), event.getThrown());
+			bytes = buffer.array();
+			offset = buffer.arrayOffset() + buffer.position();
+			length = buffer.remaining();
+		} else {
+			String formatted = formatter.format(event.getMillis(), event.getLoggerName(), event.getLevel(), event.getMessage(), event.getParams(),
+					event.getFields(), event.getThrown());
+			bytes = formatted.getBytes(charset);
+			offset = 0;
+			length = bytes.length;
+		}
+
+		lock.lock();
+		try {
+			out.write(bytes, offset, length);
+			out.flush();
+		} catch (IOException e) {
+			// Like ConsoleHandler, a broken console doesn't fail the caller.
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void flush() {
+		lock.lock();
+		try {
+			out.flush();
+		} catch (IOException e) {
+			// Ignored, see write().
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The stream is only flushed, it belongs to the caller.
+	 */
+	@Override
+	public void close() {
+		flush();
+	}
+}
@@ -0,0 +1,27 @@
+package com.fbudassi.logger.sink;
+
+/**
+ * Destination of the LogEvents of the native JobLogger pipeline. Sinks are called from the logging threads, so they must be thread safe.
+ * 
+ * @author fbudassi
+ */
+public interface EventSink {
+
+	/**
+	 * Write an event. Errors are handled by the sink, they never reach the logging thread.
+	 * 
+	 * @param event
+	 *            The event to write.
+	 */
+	public void write(LogEvent event);
+
+	/**
+	 * Flush any buffered output.
+	 */
+	public void flush();
+
+	/**
+	 * Flush and release the resources held by the sink.
+	 */
+	public void close();
+}
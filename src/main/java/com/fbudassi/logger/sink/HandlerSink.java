@@ -0,0 +1,62 @@
+package com.fbudassi.logger.sink;
+
+import java.util.logging.Handler;
+
+/**
+ * Sink that passes events on to a java.util.logging.Handler, so the native pipeline can write to every destination the handlers support (text, binary and
+ * mapped files, databases) and share them with JUL based loggers. The LogRecord is only built once the event is known to be written, and the handler
+ * sinks of the event share it.
+ * 
+ * @author fbudassi
+ */
+public class HandlerSink implements EventSink {
+
+	private final Handler handler;
+
+	/**
+	 * HandlerSink constructor.
+	 * 
+	 * @param handler
+	 *            The handler that gets the events.
+	 */
+	public HandlerSink(Handler handler) {
+		if (handler == null) {
+			throw new IllegalArgumentException("Parameter handler can't be null");
+		}
+
+		this.handler = handler;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(LogEvent event) {
+		handler.publish(event.toLogRecord());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void flush() {
+		handler.flush();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		handler.close();
+	}
+
+	/**
+	 * Return the handler that gets the events.
+	 * 
+	 * @return
+	 */
+	public Handler getHandler() {
+		return handler;
+	}
+}
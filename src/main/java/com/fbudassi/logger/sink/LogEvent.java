@@ -0,0 +1,130 @@
+package com.fbudassi.logger.sink;
+
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import com.fbudassi.logger.handler.EventFields;
+import com.fbudassi.logger.handler.StructuredLogRecord;
+
+/**
+ * A log call as seen by the EventSinks: much lighter than a java.util.logging.LogRecord, it only holds what the call provided and the time it was made.
+ * Events are immutable and can be shared between sinks, handler sinks also share the LogRecord built from them.
+ * 
+ * @author fbudassi
+ */
+public final class LogEvent {
+
+	private final long millis;
+	private final String loggerName;
+	private final Level level;
+	private final String message;
+	private final Object[] params;
+	private final EventFields fields;
+	private final Throwable thrown;
+
+	/**
+	 * The LogRecord of the event, built on the first call to toLogRecord. Not guarded: an event is written to its sinks by the thread that logged it.
+	 */
+	private LogRecord record;
+
+	/**
+	 * LogEvent constructor.
+	 * 
+	 * @param millis
+	 *            Event time in milliseconds.
+	 * @param loggerName
+	 *            The name of the logger.
+	 * @param level
+	 *            The level of the message.
+	 * @param message
+	 *            The message template.
+	 * @param params
+	 *            Parameters to be replaced in the message. Can be null.
+	 * @param thrown
+	 *            A throwable to log its stack trace. Can be null.
+	 */
+	public LogEvent(long millis, String loggerName, Level level, String message, Object[] params, Throwable thrown) {
+		this(millis, loggerName, level, message, params, null, thrown);
+	}
+
+	/**
+	 * Constructor of the event of a structured log call.
+	 * 
+	 * @param millis
+	 *            Event time in milliseconds.
+	 * @param loggerName
+	 *            The name of the logger.
+	 * @param level
+	 *            The level of the message.
+	 * @param message
+	 *            The message template.
+	 * @param params
+	 *            Parameters to be replaced in the message. Can be null.
+	 * @param fields
+	 *            Key-value fields. Can be null.
+	 * @param thrown
+	 *            A throwable to log its stack trace. Can be null.
+	 */
+	public LogEvent(long millis, String loggerName, Level level, String message, Object[] params, EventFields fields, Throwable thrown) {
+		if (level == null) {
+			throw new IllegalArgumentException("Parameter level can't be null");
+		}
+
+		this.millis = millis;
+		this.loggerName = loggerName;
+		this.level = level;
+		this.message = message;
+		this.params = params;
+		this.fields = fields;
+		this.thrown = thrown;
+	}
+
+	public long getMillis() {
+		return millis;
+	}
+
+	public String getLoggerName() {
+		return loggerName;
+	}
+
+	public Level getLevel() {
+		return level;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public Object[] getParams() {
+		return params;
+	}
+
+	public EventFields getFields() {
+		return fields;
+	}
+
+	public Throwable getThrown() {
+		return thrown;
+	}
+
+	/**
+	 * Return the LogRecord of the event, i.e. to publish it to a java.util.logging.Handler. The record gets the thread ID of the calling thread. Events with
+	 * fields get a StructuredLogRecord.
+	 * 
+	 * The record is built once and shared by every handler the event is written to, as java.util.logging does with the handlers of a logger, so they all see
+	 * the same sequence number.
+	 * 
+	 * @return
+	 */
+	public LogRecord toLogRecord() {
+		if (record == null) {
+			LogRecord lr = fields != null ? new StructuredLogRecord(level, message, fields) : new LogRecord(level, message);
+			lr.setMillis(millis);
+			lr.setLoggerName(loggerName);
+			lr.setParameters(params);
+			lr.setThrown(thrown);
+			record = lr;
+		}
+		return record;
+	}
+}
@@ -0,0 +1,78 @@
+package com.fbudassi.logger.util;
+
+import java.util.Set;
+
+/**
+ * Snapshot of a Throwable: its description, stack frames, causes and suppressed exceptions. It is rendered exactly like the original, but doesn't keep a
+ * reference to it. Built with ExceptionUtils.capture().
+ * 
+ * @author fbudassi
+ */
+public class CapturedThrowable extends Throwable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String className;
+	private final String description;
+
+	/**
+	 * CapturedThrowable constructor.
+	 * 
+	 * @param original
+	 *            The captured throwable.
+	 * @param cause
+	 *            The captured cause. Can be null.
+	 */
+	private CapturedThrowable(Throwable original, CapturedThrowable cause) {
+		super(original.getMessage(), cause);
+		this.className = original.getClass().getName();
+		this.description = original.toString();
+		setStackTrace(original.getStackTrace());
+	}
+
+	/**
+	 * Capture a throwable and, recursively, its cause and suppressed exceptions. Circular references are left out.
+	 * 
+	 * @param original
+	 * @param seen
+	 *            Throwables already captured.
+	 * @return
+	 */
+	static CapturedThrowable capture(Throwable original, Set<Throwable> seen) {
+		seen.add(original);
+
+		Throwable cause = original.getCause();
+		CapturedThrowable captured = new CapturedThrowable(original, cause == null || seen.contains(cause) ? null : capture(cause, seen));
+		for (Throwable suppressed : original.getSuppressed()) {
+			if (!seen.contains(suppressed)) {
+				captured.addSuppressed(capture(suppressed, seen));
+			}
+		}
+		return captured;
+	}
+
+	/**
+	 * Return the class name of the captured throwable.
+	 * 
+	 * @return
+	 */
+	public String getClassName() {
+		return className;
+	}
+
+	/**
+	 * The stack trace is copied from the original, there's nothing to fill in.
+	 */
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
+
+	/**
+	 * Return the description of the captured throwable, i.e. its class name and message.
+	 */
+	@Override
+	public String toString() {
+		return description;
+	}
+}
@@ -1,7 +1,8 @@
 package com.fbudassi.logger.util;
 
-import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
 
 /**
  * Utilities to manipulate Throwable objects.
@@ -10,6 +11,29 @@ import java.io.StringWriter;
  */
 public class ExceptionUtils {
 
+	/**
+	 * 64-bit FNV-1a constants.
+	 */
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+	/**
+	 * Builders grown above this size are not kept, to avoid retaining memory after a huge stack trace.
+	 */
+	private static final int MAX_KEPT_BUILDER = 64 * 1024;
+
+	/**
+	 * Per thread reusable builder used to render stack traces.
+	 */
+	private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder(1024);
+		}
+	};
+
 	/**
 	 * Private to prevent instantiation.
 	 */
@@ -18,19 +42,189 @@ public class ExceptionUtils {
 
 	/**
 	 * Gets the stack trace from a Throwable as a String.
-	 *
+	 * 
 	 * @param throwable
 	 *            the Throwable to be examined
 	 * @return the stack trace as a String
 	 */
 	public static String getStackTrace(final Throwable thrown) {
+		return getStackTrace(thrown, Integer.MAX_VALUE, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Gets the stack trace from a Throwable as a String, rendering at most maxLength characters and maxFrames frames of each throwable in the chain.
+	 * 
+	 * @param thrown
+	 *            the Throwable to be examined
+	 * @param maxLength
+	 *            the maximum length of the result
+	 * @param maxFrames
+	 *            the maximum number of frames of each throwable
+	 * @return the stack trace as a String
+	 */
+	public static String getStackTrace(final Throwable thrown, int maxLength, int maxFrames) {
 		if (thrown == null) {
 			return null;
 		}
 
-		final StringWriter sw = new StringWriter();
-		final PrintWriter pw = new PrintWriter(sw, true);
-		thrown.printStackTrace(pw);
-		return sw.getBuffer().toString();
+		StringBuilder sb = BUFFER.get();
+		sb.setLength(0);
+		appendStackTrace(sb, thrown, maxLength, maxFrames);
+
+		String result = sb.toString();
+		if (sb.capacity() > MAX_KEPT_BUILDER) {
+			BUFFER.remove();
+		}
+		return result;
+	}
+
+	/**
+	 * Appends the stack trace of a Throwable to a StringBuilder, in the same layout as Throwable.printStackTrace(). Rendering stops once maxLength characters
+	 * were appended, and at most maxFrames frames of each throwable in the chain are rendered. Consecutive repetitions of the same frame (i.e. recursion) are
+	 * collapsed into one line.
+	 * 
+	 * @param sb
+	 *            the builder to append to
+	 * @param thrown
+	 *            the Throwable to be examined
+	 * @param maxLength
+	 *            the maximum number of characters to append
+	 * @param maxFrames
+	 *            the maximum number of frames of each throwable
+	 */
+	public static void appendStackTrace(StringBuilder sb, final Throwable thrown, int maxLength, int maxFrames) {
+		if (maxLength < 0) {
+			throw new IllegalArgumentException("Parameter maxLength can't be negative");
+		}
+
+		if (maxFrames < 0) {
+			throw new IllegalArgumentException("Parameter maxFrames can't be negative");
+		}
+
+		if (thrown == null) {
+			return;
+		}
+
+		int limit = (int) Math.min((long) sb.length() + maxLength, Integer.MAX_VALUE);
+		Set<Throwable> seen = Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>());
+		appendThrowable(sb, thrown, null, "", "", seen, limit, maxFrames);
+		if (sb.length() > limit) {
+			sb.setLength(limit);
+		}
+	}
+
+	/**
+	 * Captures a Throwable, its causes and suppressed exceptions into a CapturedThrowable. Only descriptions and stack frames are copied, so it can be
+	 * rendered later on another thread, even if the original is modified or garbage collected.
+	 * 
+	 * @param thrown
+	 *            the Throwable to be captured
+	 * @return the captured Throwable, or null if thrown is null
+	 */
+	public static Throwable capture(final Throwable thrown) {
+		if (thrown == null || thrown instanceof CapturedThrowable) {
+			return thrown;
+		}
+		return CapturedThrowable.capture(thrown, Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>()));
+	}
+
+	/**
+	 * Computes a fingerprint of a Throwable from the exception classes and stack frames of it and its causes. Messages are left out, so the same failure
+	 * happening over and over gets the same fingerprint even if the messages carry different values. The stack trace is not rendered.
+	 * 
+	 * @param thrown
+	 *            the Throwable to be examined
+	 * @return the fingerprint, or 0 if thrown is null
+	 */
+	public static long getFingerprint(final Throwable thrown) {
+		if (thrown == null) {
+			return 0;
+		}
+
+		long hash = FNV_OFFSET_BASIS;
+		Set<Throwable> seen = Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>());
+		for (Throwable t = thrown; t != null && seen.add(t); t = t.getCause()) {
+			hash = hash(hash, t instanceof CapturedThrowable ? ((CapturedThrowable) t).getClassName() : t.getClass().getName());
+			for (StackTraceElement frame : t.getStackTrace()) {
+				hash = hash(hash, frame.getClassName());
+				hash = hash(hash, frame.getMethodName());
+				hash = hash(hash, frame.getLineNumber());
+			}
+		}
+
+		// Keep 0 for "no throwable".
+		return hash == 0 ? 1 : hash;
+	}
+
+	/**
+	 * Append a throwable of the chain, then its suppressed exceptions and its cause. Frames in common with the enclosing throwable are left out.
+	 * 
+	 * @return False if the length limit was reached.
+	 */
+	private static boolean appendThrowable(StringBuilder sb, Throwable t, StackTraceElement[] enclosing, String caption, String prefix, Set<Throwable> seen,
+			int limit, int maxFrames) {
+		if (!seen.add(t)) {
+			sb.append(prefix).append(caption).append("[CIRCULAR REFERENCE: ").append(t).append(']').append(LINE_SEPARATOR);
+			return sb.length() < limit;
+		}
+		sb.append(prefix).append(caption).append(t).append(LINE_SEPARATOR);
+
+		// Frames in common with the enclosing trace.
+		StackTraceElement[] trace = t.getStackTrace();
+		int last = trace.length - 1;
+		if (enclosing != null) {
+			for (int n = enclosing.length - 1; last >= 0 && n >= 0 && trace[last].equals(enclosing[n]); n--) {
+				last--;
+			}
+		}
+
+		int frames = 0;
+		for (int i = 0; i <= last;) {
+			if (sb.length() >= limit) {
+				return false;
+			}
+
+			if (frames == maxFrames) {
+				sb.append(prefix).append("\t... ").append(last - i + 1).append(" frames omitted").append(LINE_SEPARATOR);
+				break;
+			}
+			sb.append(prefix).append("\tat ").append(trace[i]).append(LINE_SEPARATOR);
+			frames++;
+
+			int next = i + 1;
+			while (next <= last && trace[next].equals(trace[i])) {
+				next++;
+			}
+			if (next - i > 1) {
+				sb.append(prefix).append("\t... repeated ").append(next - i - 1).append(" times").append(LINE_SEPARATOR);
+			}
+			i = next;
+		}
+		if (last < trace.length - 1) {
+			sb.append(prefix).append("\t... ").append(trace.length - 1 - last).append(" more").append(LINE_SEPARATOR);
+		}
+
+		for (Throwable suppressed : t.getSuppressed()) {
+			if (!appendThrowable(sb, suppressed, trace, "Suppressed: ", prefix + "\t", seen, limit, maxFrames)) {
+				return false;
+			}
+		}
+
+		Throwable cause = t.getCause();
+		if (cause != null) {
+			return appendThrowable(sb, cause, trace, "Caused by: ", prefix, seen, limit, maxFrames);
+		}
+		return sb.length() < limit;
+	}
+
+	private static long hash(long hash, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			hash = hash(hash, value.charAt(i));
+		}
+		return hash(hash, 0xFFFF);
+	}
+
+	private static long hash(long hash, int value) {
+		return (hash ^ value) * FNV_PRIME;
 	}
 }
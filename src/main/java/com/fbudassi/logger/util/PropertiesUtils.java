@@ -1,7 +1,10 @@
 package com.fbudassi.logger.util;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.util.Properties;
 
 /**
@@ -43,6 +46,34 @@ public class PropertiesUtils {
 		return props;
 	}
 
+	/**
+	 * Return the file behind a classpath resource, i.e. to watch it for changes.
+	 * 
+	 * @param resource
+	 *            The resource path.
+	 * @return The file, or null if the resource doesn't exist or is not a plain file (i.e. it's inside a jar).
+	 */
+	public static File getClasspathFile(String resource) {
+		if (StringUtils.isBlank(resource)) {
+			throw new IllegalArgumentException("Parameter resource can't be blank");
+		}
+
+		if (!resource.startsWith("/")) {
+			resource = "/" + resource;
+		}
+
+		URL url = PropertiesUtils.class.getResource(resource);
+		if (url == null || !"file".equals(url.getProtocol())) {
+			return null;
+		}
+
+		try {
+			return new File(url.toURI());
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			return null;
+		}
+	}
+
 	/**
 	 * Set the value of a certain property key if it is not defined or is blank.
 	 * 
@@ -51,4 +51,35 @@ public class StringUtils {
 
 		return str == null || str.length() <= length ? str : str.substring(0, length);
 	}
+
+	/**
+	 * Count the bytes of a string encoded as UTF-8, without encoding it.
+	 * 
+	 * @param str
+	 *            The string. Can be null.
+	 * @return The number of bytes, 0 for null.
+	 */
+	public static int getUtf8Length(CharSequence str) {
+		if (str == null) {
+			return 0;
+		}
+
+		int length = str.length();
+		int bytes = length;
+		for (int i = 0; i < length; i++) {
+			char c = str.charAt(i);
+			if (c >= 0x800) {
+				if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(str.charAt(i + 1))) {
+					// 4 bytes for the pair of chars.
+					bytes += 2;
+					i++;
+				} else {
+					bytes += 2;
+				}
+			} else if (c >= 0x80) {
+				bytes++;
+			}
+		}
+		return bytes;
+	}
 }
@@ -0,0 +1,75 @@
+package com.fbudassi.logger;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+import org.junit.Test;
+
+/**
+ * Tests for AsyncJULJobLogger.
+ * 
+ * @author fbudassi
+ */
+public class AsyncJULJobLoggerTest {
+
+	private static final String LOG_MESSAGE = "Test log message";
+	private static final String LOG_MESSAGE_PARAM = "Test log message: {0}";
+	private static final String PARAM = "test_param";
+
+	@Test
+	public void testGetLoggerFromProperties() {
+		Properties props = JobLoggerFactory.getProperties();
+		props.setProperty(JobLoggerProperty.IMPLEMENTATION.getKey(), AsyncJULJobLogger.class.getCanonicalName());
+		props.setProperty(JobLoggerProperty.DB_ENABLED.getKey(), "false");
+
+		JobLogger logger = JobLoggerFactory.getLogger("testGetLoggerFromProperties", props);
+		assertThat(logger, is(instanceOf(AsyncJULJobLogger.class)));
+	}
+
+	@Test
+	public void testLogIsDispatched() throws Exception {
+		Properties props = JobLoggerFactory.getProperties();
+		props.setProperty(JobLoggerProperty.CONSOLE_ENABLED.getKey(), "false");
+		props.setProperty(JobLoggerProperty.DB_ENABLED.getKey(), "false");
+		props.setProperty(JobLoggerProperty.MIN_LEVEL.getKey(), "WARN");
+
+		AsyncJULJobLogger jl = new AsyncJULJobLogger();
+		jl.init("testLogIsDispatched", props);
+
+		final List<LogRecord> records = Collections.synchronizedList(new ArrayList<LogRecord>());
+		jl.getLogger().setUseParentHandlers(false);
+		jl.getLogger().addHandler(new Handler() {
+			@Override
+			public void publish(LogRecord record) {
+				records.add(record);
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+
+		jl.message(LOG_MESSAGE); // below the minimum level
+		jl.warning(LOG_MESSAGE_PARAM, PARAM);
+		jl.error(LOG_MESSAGE, new Exception());
+		AsyncJULJobLogger.getDispatcher(props).flush();
+
+		assertThat(records.size(), is(2));
+		assertThat(records.get(0).getLevel(), is(JULJobLoggerLevel.WARN));
+		assertThat(records.get(0).getParameters()[0], is((Object) PARAM));
+		assertThat(records.get(0).getThreadID(), is((int) Thread.currentThread().getId()));
+		assertThat(records.get(1).getLevel(), is(JULJobLoggerLevel.ERROR));
+		assertThat(records.get(1).getThrown(), is(notNullValue()));
+	}
+}
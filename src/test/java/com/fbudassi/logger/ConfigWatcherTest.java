@@ -0,0 +1,108 @@
+package com.fbudassi.logger;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for ConfigWatcher.
+ * 
+ * @author fbudassi
+ */
+public class ConfigWatcherTest {
+
+	private File file;
+	private final List<Properties> reloads = new ArrayList<>();
+	private final ConfigWatcher.Listener listener = new ConfigWatcher.Listener() {
+		@Override
+		public void reloaded(Properties props) {
+			reloads.add(props);
+		}
+	};
+
+	@Before
+	public void createFile() throws IOException {
+		file = File.createTempFile("joblogger", ".properties");
+		write("joblogger.min.level=ALL");
+	}
+
+	@After
+	public void deleteFile() {
+		file.delete();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testFileNull() {
+		new ConfigWatcher(null, 1000, listener);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testIntervalZero() {
+		new ConfigWatcher(file, 0, listener);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testListenerNull() {
+		new ConfigWatcher(file, 1000, null);
+	}
+
+	@Test
+	public void testNoChange() {
+		ConfigWatcher watcher = new ConfigWatcher(file, 1000, listener);
+
+		assertThat(watcher.check(), is(false));
+		assertThat(reloads, is(empty()));
+	}
+
+	@Test
+	public void testChange() throws IOException {
+		ConfigWatcher watcher = new ConfigWatcher(file, 1000, listener);
+		write("joblogger.min.level=ERROR");
+
+		assertThat(watcher.check(), is(true));
+		assertThat(reloads.size(), is(1));
+		assertThat(reloads.get(0).getProperty(JobLoggerProperty.MIN_LEVEL.getKey()), is("ERROR"));
+
+		// Only reloaded once per change.
+		assertThat(watcher.check(), is(false));
+		assertThat(reloads.size(), is(1));
+	}
+
+	@Test
+	public void testListenerError() throws IOException {
+		ConfigWatcher watcher = new ConfigWatcher(file, 1000, new ConfigWatcher.Listener() {
+			@Override
+			public void reloaded(Properties props) {
+				throw new IllegalArgumentException("Invalid");
+			}
+		});
+		write("joblogger.min.level=NOT_A_LEVEL");
+
+		assertThat(watcher.check(), is(false));
+	}
+
+	/**
+	 * Replace the content of the file, changing its size or last modified time.
+	 * 
+	 * @param content
+	 * @throws IOException
+	 */
+	private void write(String content) throws IOException {
+		long modified = file.lastModified();
+		try (OutputStream os = new FileOutputStream(file)) {
+			os.write(content.getBytes("ISO-8859-1"));
+		}
+		file.setLastModified(modified + 2000);
+	}
+}
@@ -0,0 +1,372 @@
+package com.fbudassi.logger;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import com.fbudassi.logger.handler.DatabaseHandler;
+import com.fbudassi.logger.handler.SinkRegistry;
+import com.fbudassi.logger.handler.StructuredLogRecord;
+import com.fbudassi.logger.handler.TextFileHandler;
+import com.fbudassi.logger.sink.ConsoleSink;
+import com.fbudassi.logger.sink.EventSink;
+import com.fbudassi.logger.sink.HandlerSink;
+import com.fbudassi.logger.sink.LogEvent;
+
+/**
+ * Tests for DirectJobLogger. Same sociable approach as JULJobLoggerTest: handlers and the database are not mocked.
+ * 
+ * @author fbudassi
+ */
+public class DirectJobLoggerTest {
+
+	private static final String LOG_MESSAGE = "Test log message";
+	private static final String LOG_MESSAGE_PARAM = "Test log message: {0}";
+	private static final String PARAM = "test_param";
+
+	/**
+	 * init tests.
+	 * 
+	 * @throws Exception
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInitNameNull() throws Exception {
+		new DirectJobLogger().init(null, getProperties(false, false, false));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInitPropsNull() throws Exception {
+		new DirectJobLogger().init("testInitPropsNull", null);
+	}
+
+	@Test
+	public void testInitNoSinks() throws Exception {
+		DirectJobLogger djl = new DirectJobLogger();
+		djl.init("testInitNoSinks", getProperties(false, false, false));
+
+		assertThat(djl.getName(), is("testInitNoSinks"));
+		assertThat(djl.getSinks().length, is(0));
+		assertThat(djl.isMessageEnabled(), is(true));
+	}
+
+	@Test
+	public void testInitConsole() throws Exception {
+		DirectJobLogger djl = new DirectJobLogger();
+		djl.init("testInitConsole", getProperties(true, false, false));
+
+		// The console is written to directly.
+		assertThat(djl.getSinks().length, is(1));
+		assertThat(djl.getSinks()[0], is(instanceOf(ConsoleSink.class)));
+
+		djl.close();
+		assertThat(djl.getSinks().length, is(0));
+	}
+
+	@Test
+	public void testInitConsoleMetered() throws Exception {
+		Properties props = getProperties(true, false, false);
+		props.setProperty(JobLoggerProperty.METRICS_ENABLED.getKey(), "true");
+		DirectJobLogger djl = new DirectJobLogger();
+		djl.init("testInitConsoleMetered", props);
+
+		// The shared console handler is used, so it can be metered.
+		assertThat(djl.getSinks()[0], is(instanceOf(HandlerSink.class)));
+		assertThat(SinkRegistry.getReferences("console"), is(greaterThan(0)));
+
+		djl.close();
+	}
+
+	@Test
+	public void testInitConsoleJson() throws Exception {
+		Properties props = getProperties(true, false, false);
+		props.setProperty(JobLoggerProperty.CONSOLE_FORMAT.getKey(), "json");
+
+		DirectJobLogger djl = new DirectJobLogger();
+		djl.init("testInitConsoleJson", props);
+
+		assertThat(djl.getSinks()[0], is(instanceOf(ConsoleSink.class)));
+		assertThat(((ConsoleSink) djl.getSinks()[0]).getEncoder(), is(notNullValue()));
+		djl.close();
+	}
+
+	@Test
+	public void testInitDb() throws Exception {
+		DirectJobLogger djl = new DirectJobLogger();
+		djl.init("testInitDb", getProperties(false, false, true));
+
+		assertThat(djl.getSinks().length, is(1));
+		assertThat(((HandlerSink) djl.getSinks()[0]).getHandler(), is(instanceOf(DatabaseHandler.class)));
+
+		djl.close();
+	}
+
+	@Test
+	public void testSharedFileSinkWithJUL() throws Exception {
+		File logFile = File.createTempFile("joblogger", ".log");
+		String key = "file:" + logFile.getAbsolutePath();
+
+		Properties props = getProperties(false, true, false);
+		props.setProperty(JobLoggerProperty.FILE_DESTINATION.getKey(), logFile.getPath());
+		props.setProperty(JobLoggerProperty.FILE_APPEND.getKey(), "false");
+
+		JULJobLogger jul = new JULJobLogger();
+		jul.init("testSharedFileSinkWithJUL.jul", props);
+		DirectJobLogger direct = new DirectJobLogger();
+		direct.init("testSharedFileSinkWithJUL.direct", props);
+
+		// Both loggers write through the same handler.
+		HandlerSink sink = (HandlerSink) direct.getSinks()[0];
+		assertThat(sink.getHandler(), is(instanceOf(TextFileHandler.class)));
+		assertThat(sink.getHandler(), is(sameInstance(jul.getLogger().getHandlers()[0])));
+		assertThat(SinkRegistry.getReferences(key), is(2));
+
+		jul.message(LOG_MESSAGE_PARAM, "jul");
+		direct.message(LOG_MESSAGE_PARAM, "direct");
+
+		direct.close();
+		assertThat(SinkRegistry.getReferences(key), is(1));
+		jul.close();
+		assertThat(SinkRegistry.getReferences(key), is(0));
+
+		// Same message lines, the direct one tells its logger name as source.
+		String content = new String(Files.readAllBytes(logFile.toPath()), Charset.defaultCharset());
+		assertThat(content, containsString("MESSAGE: Test log message: jul"));
+		assertThat(content, containsString(" testSharedFileSinkWithJUL.direct" + System.getProperty("line.separator") + "MESSAGE: Test log message: direct"));
+
+		logFile.delete();
+	}
+
+	/**
+	 * Log call tests.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testLogCalls() throws Exception {
+		DirectJobLogger djl = new DirectJobLogger();
+		djl.init("testLogCalls", getProperties(false, false, false));
+		List<LogEvent> events = collectEvents(djl);
+
+		Throwable thrown = new Exception();
+		djl.error(LOG_MESSAGE);
+		djl.warning(LOG_MESSAGE_PARAM, PARAM, 1, 2L);
+		djl.message(LOG_MESSAGE, thrown);
+		djl.error(LOG_MESSAGE_PARAM, PARAM);
+		djl.warning(LOG_MESSAGE_PARAM, PARAM, PARAM);
+		djl.message(LOG_MESSAGE_PARAM, PARAM, PARAM, PARAM);
+		djl.error(LOG_MESSAGE_PARAM, 42L);
+		djl.warning(LOG_MESSAGE_PARAM, 42);
+
+		assertThat(events.size(), is(8));
+		assertThat(events.get(0).getLevel(), is(JULJobLoggerLevel.ERROR));
+		assertThat(events.get(0).getLoggerName(), is("testLogCalls"));
+		assertThat(events.get(0).getParams(), is(nullValue()));
+		assertThat(events.get(1).getLevel(), is(JULJobLoggerLevel.WARN));
+		assertThat(events.get(1).getParams(), is(new Object[] { PARAM, 1, 2L }));
+		assertThat(events.get(2).getLevel(), is(JULJobLoggerLevel.MESSAGE));
+		assertThat(events.get(2).getThrown(), is(sameInstance(thrown)));
+		assertThat(events.get(3).getParams(), is(new Object[] { PARAM }));
+		assertThat(events.get(4).getParams(), is(new Object[] { PARAM, PARAM }));
+		assertThat(events.get(5).getParams(), is(new Object[] { PARAM, PARAM, PARAM }));
+		assertThat(events.get(6).getParams(), is(new Object[] { 42L }));
+		assertThat(events.get(7).getParams(), is(new Object[] { 42 }));
+	}
+
+	@Test
+	public void testStructured() throws Exception {
+		DirectJobLogger djl = new DirectJobLogger();
+		djl.init("testStructured", getProperties(false, false, false));
+		List<LogEvent> events = collectEvents(djl);
+
+		Throwable thrown = new Exception();
+		djl.atWarning(LOG_MESSAGE).with("jobId", PARAM).with("rows", 42).withThrown(thrown).log();
+
+		assertThat(events.size(), is(1));
+		assertThat(events.get(0).getLevel(), is(JULJobLoggerLevel.WARN));
+		assertThat(events.get(0).getMessage(), is(LOG_MESSAGE));
+		assertThat(events.get(0).getParams(), is(nullValue()));
+		assertThat(events.get(0).getThrown(), is(sameInstance(thrown)));
+		assertThat(events.get(0).getFields().toString(), is("jobId=" + PARAM + " rows=42"));
+
+		// Handlers get the fields in a StructuredLogRecord.
+		assertThat(StructuredLogRecord.getFields(events.get(0).toLogRecord()), is(sameInstance(events.get(0).getFields())));
+	}
+
+	@Test
+	public void testStructuredDisabled() throws Exception {
+		DirectJobLogger djl = new DirectJobLogger();
+		Properties props = getProperties(false, false, false);
+		props.setProperty(JobLoggerProperty.MIN_LEVEL.getKey(), "ERROR");
+		djl.init("testStructuredDisabled", props);
+
+		assertThat(djl.atWarning(LOG_MESSAGE), is(sameInstance((LogEventBuilder) NullLogEventBuilder.NULL_LOG_EVENT_BUILDER)));
+	}
+
+	@Test
+	public void testIsEnabled() throws Exception {
+		DirectJobLogger djl = new DirectJobLogger();
+		Properties props = getProperties(false, false, false);
+		props.setProperty(JobLoggerProperty.MIN_LEVEL.getKey(), "WARN");
+		djl.init("testIsEnabled", props);
+		List<LogEvent> events = collectEvents(djl);
+
+		assertThat(djl.isErrorEnabled(), is(true));
+		assertThat(djl.isWarningEnabled(), is(true));
+		assertThat(djl.isMessageEnabled(), is(false));
+
+		djl.message(LOG_MESSAGE);
+		djl.message(LOG_MESSAGE_PARAM, PARAM);
+		djl.warning(LOG_MESSAGE);
+		assertThat(events.size(), is(1));
+	}
+
+	@Test
+	public void testLevelOff() throws Exception {
+		DirectJobLogger djl = new DirectJobLogger();
+		Properties props = getProperties(false, false, false);
+		props.setProperty(JobLoggerProperty.MIN_LEVEL.getKey(), "OFF");
+		djl.init("testLevelOff", props);
+
+		assertThat(djl.isErrorEnabled(), is(false));
+	}
+
+	@Test
+	public void testSupplierOnlyCalledWhenEnabled() throws Exception {
+		DirectJobLogger djl = new DirectJobLogger();
+		Properties props = getProperties(false, false, false);
+		props.setProperty(JobLoggerProperty.MIN_LEVEL.getKey(), "WARN");
+		djl.init("testSupplierOnlyCalledWhenEnabled", props);
+		List<LogEvent> events = collectEvents(djl);
+
+		final AtomicInteger calls = new AtomicInteger();
+		Supplier<String> supplier = new Supplier<String>() {
+			@Override
+			public String get() {
+				calls.incrementAndGet();
+				return LOG_MESSAGE;
+			}
+		};
+
+		djl.message(supplier);
+		assertThat(calls.get(), is(0));
+
+		djl.error(supplier);
+		assertThat(calls.get(), is(1));
+		assertThat(events.size(), is(1));
+		assertThat(events.get(0).getMessage(), is(LOG_MESSAGE));
+	}
+
+	@Test
+	public void testRateLimitSummaryOnClose() throws Exception {
+		DirectJobLogger djl = new DirectJobLogger();
+		Properties props = getProperties(false, false, false);
+		props.setProperty(JobLoggerProperty.RATE_LIMIT_MESSAGE.getKey(), "1");
+		djl.init("testRateLimitSummaryOnClose", props);
+		List<LogEvent> events = collectEvents(djl);
+
+		djl.message(LOG_MESSAGE);
+		djl.message(LOG_MESSAGE);
+		djl.message(LOG_MESSAGE);
+		assertThat(events.size(), is(1));
+
+		djl.close();
+		assertThat(events.size(), is(2));
+		assertThat(events.get(1).getMessage(), is(JULJobLogger.SUPPRESSED_MSG));
+		assertThat(events.get(1).getParams(), is(new Object[] { 2L, LOG_MESSAGE }));
+	}
+
+	@Test
+	public void testReconfigure() throws Exception {
+		DirectJobLogger djl = new DirectJobLogger();
+		djl.init("testReconfigure", getProperties(false, false, false));
+
+		// Raise the level and enable the console.
+		Properties props = getProperties(true, false, false);
+		props.setProperty(JobLoggerProperty.MIN_LEVEL.getKey(), "ERROR");
+		djl.reconfigure(JobLoggerConfig.compile(props));
+
+		assertThat(djl.isErrorEnabled(), is(true));
+		assertThat(djl.isWarningEnabled(), is(false));
+		assertThat(djl.getSinks().length, is(1));
+
+		// The same configuration again keeps the same sink.
+		EventSink console = djl.getSinks()[0];
+		djl.reconfigure(JobLoggerConfig.compile(props));
+		assertThat(djl.getSinks()[0], is(sameInstance(console)));
+
+		// Disable the console.
+		djl.reconfigure(JobLoggerConfig.compile(getProperties(false, false, false)));
+		assertThat(djl.isMessageEnabled(), is(true));
+		assertThat(djl.getSinks().length, is(0));
+	}
+
+	@Test
+	public void testFromFactory() {
+		Properties props = JobLoggerFactory.getProperties();
+		props.setProperty(JobLoggerProperty.IMPLEMENTATION.getKey(), DirectJobLogger.class.getCanonicalName());
+		JobLogger jl = JobLoggerFactory.getLogger("testFromFactory", props);
+
+		assertThat(jl, is(instanceOf(DirectJobLogger.class)));
+		((DirectJobLogger) jl).close();
+	}
+
+	/**
+	 * Add a sink that keeps the events in a list.
+	 * 
+	 * @param djl
+	 * @return
+	 */
+	private static List<LogEvent> collectEvents(DirectJobLogger djl) {
+		final List<LogEvent> events = new ArrayList<>();
+		djl.addSink("collect", new EventSink() {
+			@Override
+			public void write(LogEvent event) {
+				events.add(event);
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+		return events;
+	}
+
+	/**
+	 * Return a Properties instance with the defaults and the sinks chosen.
+	 * 
+	 * @param console
+	 * @param file
+	 * @param db
+	 * @return
+	 */
+	private static Properties getProperties(boolean console, boolean file, boolean db) {
+		Properties props = JobLoggerConfig.compile(new Properties()).toProperties();
+		props.setProperty(JobLoggerProperty.CONSOLE_ENABLED.getKey(), String.valueOf(console));
+		props.setProperty(JobLoggerProperty.FILE_ENABLED.getKey(), String.valueOf(file));
+		props.setProperty(JobLoggerProperty.DB_ENABLED.getKey(), String.valueOf(db));
+
+		// Testing environment database.
+		if (db) {
+			props.setProperty(JobLoggerProperty.DB_DRIVER.getKey(), "org.hsqldb.jdbcDriver");
+			props.setProperty(JobLoggerProperty.DB_URL.getKey(), "jdbc:hsqldb:mem:logdb");
+			props.setProperty(JobLoggerProperty.DB_USER.getKey(), "sa");
+			props.setProperty(JobLoggerProperty.DB_PASSWORD.getKey(), "");
+			props.setProperty(JobLoggerProperty.DB_TABLE.getKey(), "joblogger");
+		}
+		return props;
+	}
+}
@@ -3,17 +3,34 @@ package com.fbudassi.logger;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.sql.Connection;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
-import java.util.logging.ConsoleHandler;
-import java.util.logging.FileHandler;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.fbudassi.logger.handler.CollapsingHandler;
+import com.fbudassi.logger.handler.ConnectionPool;
 import com.fbudassi.logger.handler.DatabaseHandler;
+import com.fbudassi.logger.handler.MeteredHandler;
+import com.fbudassi.logger.handler.RollingFileHandler;
+import com.fbudassi.logger.handler.SinkRegistry;
+import com.fbudassi.logger.handler.StructuredLogRecord;
+import com.fbudassi.logger.handler.TextFileHandler;
+import com.fbudassi.logger.handler.TextStreamHandler;
+import com.fbudassi.logger.metrics.JobLoggerMetrics;
+import com.fbudassi.logger.metrics.MetricsSnapshot;
 
 /**
  * Tests for JULJobLogger.
@@ -88,7 +105,33 @@ public class JULJobLoggerTest {
 
 		Logger jul = jjl.getLogger();
 		assertThat(jul.getHandlers().length, is(1));
-		assertThat(jul.getHandlers()[0], is(instanceOf(ConsoleHandler.class)));
+		assertThat(jul.getHandlers()[0], is(instanceOf(TextStreamHandler.class)));
+	}
+
+	@Test
+	public void testConsoleFollowsSystemErr() throws Exception {
+		PrintStream err = System.err;
+		ByteArrayOutputStream captured = new ByteArrayOutputStream();
+		System.setErr(new PrintStream(captured, true));
+		try {
+			Handler handler = SinkHandlers.newConsoleHandler(getProperties(true, false, false));
+			handler.publish(new LogRecord(JULJobLoggerLevel.MESSAGE, LOG_MESSAGE));
+			handler.close();
+		} finally {
+			System.setErr(err);
+		}
+
+		// The console writes to the redirected System.err, as ConsoleHandler does.
+		assertThat(captured.toString(), containsString(LOG_MESSAGE));
+	}
+
+	@Test
+	public void testConsoleRaw() {
+		Properties props = getProperties(true, false, false);
+		assertThat(SinkHandlers.newConsoleStream(props), is(sameInstance((OutputStream) System.err)));
+
+		props.setProperty(JobLoggerProperty.CONSOLE_RAW.getKey(), "true");
+		assertThat(SinkHandlers.newConsoleStream(props), is(instanceOf(FileOutputStream.class)));
 	}
 
 	@Test
@@ -98,7 +141,27 @@ public class JULJobLoggerTest {
 
 		Logger jul = jjl.getLogger();
 		assertThat(jul.getHandlers().length, is(1));
-		assertThat(jul.getHandlers()[0], is(instanceOf(FileHandler.class)));
+		assertThat(jul.getHandlers()[0], is(instanceOf(TextFileHandler.class)));
+
+		// Delete log file created during the test.
+		File logFile = new File(JobLoggerProperty.FILE_DESTINATION.getDefault());
+		if (logFile.exists()) {
+			logFile.delete();
+		}
+	}
+
+	@Test
+	public void testInitFileJson() throws Exception {
+		Properties props = getProperties(false, true, false);
+		props.setProperty(JobLoggerProperty.FILE_FORMAT.getKey(), "json");
+
+		JULJobLogger jjl = new JULJobLogger();
+		jjl.init("testInitFileJson", props);
+
+		Handler handler = jjl.getLogger().getHandlers()[0];
+		assertThat(handler, is(instanceOf(TextFileHandler.class)));
+		assertThat(((TextFileHandler) handler).getEncoder(), is(notNullValue()));
+		jjl.close();
 
 		// Delete log file created during the test.
 		File logFile = new File(JobLoggerProperty.FILE_DESTINATION.getDefault());
@@ -107,6 +170,59 @@ public class JULJobLoggerTest {
 		}
 	}
 
+	@Test
+	public void testInitFileRolling() throws Exception {
+		File logFile = File.createTempFile("joblogger", ".log");
+		Properties props = getProperties(false, true, false);
+		props.setProperty(JobLoggerProperty.FILE_DESTINATION.getKey(), logFile.getPath());
+		props.setProperty(JobLoggerProperty.FILE_ROLL_SIZE.getKey(), "1024");
+
+		JULJobLogger jjl = new JULJobLogger();
+		jjl.init("testInitFileRolling", props);
+
+		assertThat(jjl.getLogger().getHandlers()[0], is(instanceOf(RollingFileHandler.class)));
+		jjl.close();
+
+		// Delete log file created during the test.
+		logFile.delete();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInitFileIndexRolling() throws Exception {
+		Properties props = getProperties(false, true, false);
+		props.setProperty(JobLoggerProperty.FILE_FORMAT.getKey(), "json");
+		props.setProperty(JobLoggerProperty.FILE_INDEX.getKey(), "true");
+		props.setProperty(JobLoggerProperty.FILE_ROLL_SIZE.getKey(), "1024");
+
+		new JULJobLogger().init("testInitFileIndexRolling", props);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInitFileIndexText() throws Exception {
+		Properties props = getProperties(false, true, false);
+		props.setProperty(JobLoggerProperty.FILE_INDEX.getKey(), "true");
+
+		new JULJobLogger().init("testInitFileIndexText", props);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInitFileMappedJson() throws Exception {
+		Properties props = getProperties(false, true, false);
+		props.setProperty(JobLoggerProperty.FILE_FORMAT.getKey(), "json");
+		props.setProperty(JobLoggerProperty.FILE_MAPPED.getKey(), "true");
+
+		new JULJobLogger().init("testInitFileMappedJson", props);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInitFileBinaryRolling() throws Exception {
+		Properties props = getProperties(false, true, false);
+		props.setProperty(JobLoggerProperty.FILE_FORMAT.getKey(), "binary");
+		props.setProperty(JobLoggerProperty.FILE_ROLL_INTERVAL.getKey(), "86400000");
+
+		new JULJobLogger().init("testInitFileBinaryRolling", props);
+	}
+
 	@Test
 	public void testInitDb() throws Exception {
 		JULJobLogger jjl = new JULJobLogger();
@@ -116,8 +232,93 @@ public class JULJobLoggerTest {
 		assertThat(jul.getHandlers().length, is(1));
 		assertThat(jul.getHandlers()[0], is(instanceOf(DatabaseHandler.class)));
 
-		Connection conn = jjl.getConnection();
-		assertThat(conn, is(notNullValue()));
+		ConnectionPool pool = jjl.getConnectionPool();
+		assertThat(pool, is(notNullValue()));
+	}
+
+	@Test
+	public void testSharedFileSink() throws Exception {
+		File logFile = File.createTempFile("joblogger", ".log");
+		String key = "file:" + logFile.getAbsolutePath();
+
+		Properties props = getProperties(false, true, false);
+		props.setProperty(JobLoggerProperty.FILE_DESTINATION.getKey(), logFile.getPath());
+
+		JULJobLogger first = new JULJobLogger();
+		first.init("testSharedFileSink1", props);
+		JULJobLogger second = new JULJobLogger();
+		second.init("testSharedFileSink2", props);
+
+		// Both loggers write through the same handler.
+		assertThat(second.getLogger().getHandlers()[0], is(sameInstance(first.getLogger().getHandlers()[0])));
+		assertThat(SinkRegistry.getReferences(key), is(2));
+
+		first.close();
+		assertThat(first.getLogger().getHandlers().length, is(0));
+		assertThat(SinkRegistry.getReferences(key), is(1));
+
+		second.close();
+		assertThat(SinkRegistry.getReferences(key), is(0));
+
+		logFile.delete();
+	}
+
+	@Test
+	public void testInitSameNameTwice() throws Exception {
+		JULJobLogger first = new JULJobLogger();
+		first.init("testInitSameNameTwice", getProperties(true, false, false));
+		JULJobLogger second = new JULJobLogger();
+		second.init("testInitSameNameTwice", getProperties(true, false, false));
+
+		// The JUL logger is the same, the console handler must not be added twice.
+		assertThat(second.getLogger().getHandlers().length, is(1));
+
+		first.close();
+		second.close();
+	}
+
+	@Test
+	public void testReconfigure() throws Exception {
+		JULJobLogger jjl = new JULJobLogger();
+		jjl.init("testReconfigure", getProperties(false, false, false));
+		assertThat(jjl.getLogger().getHandlers().length, is(0));
+
+		// Raise the level and enable the console.
+		Properties props = getProperties(true, false, false);
+		props.setProperty(JobLoggerProperty.MIN_LEVEL.getKey(), "ERROR");
+		jjl.reconfigure(JobLoggerConfig.compile(props));
+
+		assertThat(jjl.isErrorEnabled(), is(true));
+		assertThat(jjl.isWarningEnabled(), is(false));
+		assertThat(jjl.getLogger().getHandlers().length, is(1));
+		assertThat(SinkRegistry.getReferences("console"), is(greaterThan(0)));
+
+		// The same configuration again keeps the same handler.
+		Handler console = jjl.getLogger().getHandlers()[0];
+		jjl.reconfigure(JobLoggerConfig.compile(props));
+		assertThat(jjl.getLogger().getHandlers().length, is(1));
+		assertThat(jjl.getLogger().getHandlers()[0], is(sameInstance(console)));
+
+		// Disable the console.
+		jjl.reconfigure(JobLoggerConfig.compile(getProperties(false, false, false)));
+		assertThat(jjl.isMessageEnabled(), is(true));
+		assertThat(jjl.getLogger().getHandlers().length, is(0));
+
+		jjl.close();
+	}
+
+	@Test
+	public void testSharedDbConnection() throws Exception {
+		JULJobLogger first = new JULJobLogger();
+		first.init("testSharedDbConnection1", getProperties(false, false, true));
+		JULJobLogger second = new JULJobLogger();
+		second.init("testSharedDbConnection2", getProperties(false, false, true));
+
+		assertThat(second.getLogger().getHandlers()[0], is(sameInstance(first.getLogger().getHandlers()[0])));
+		assertThat(second.getConnectionPool(), is(sameInstance(first.getConnectionPool())));
+
+		first.close();
+		second.close();
 	}
 
 	/**
@@ -174,6 +375,247 @@ public class JULJobLoggerTest {
 		logger.message(LOG_MESSAGE, new Exception());
 	}
 
+	/**
+	 * Guards, supplier and fixed-arity tests.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testIsEnabled() throws Exception {
+		JULJobLogger jjl = new JULJobLogger();
+		Properties props = getProperties(false, false, false);
+		props.setProperty(JobLoggerProperty.MIN_LEVEL.getKey(), "WARN");
+		jjl.init("testIsEnabled", props);
+
+		assertThat(jjl.isErrorEnabled(), is(true));
+		assertThat(jjl.isWarningEnabled(), is(true));
+		assertThat(jjl.isMessageEnabled(), is(false));
+	}
+
+	@Test
+	public void testStructured() throws Exception {
+		JULJobLogger jjl = new JULJobLogger();
+		jjl.init("testStructured", getProperties(false, false, false));
+		List<LogRecord> records = collectRecords(jjl);
+
+		Throwable thrown = new Exception();
+		jjl.atError(LOG_MESSAGE).with("jobId", PARAM).with("rows", 42).withThrown(thrown).log();
+		jjl.atWarning(LOG_MESSAGE).with("ratio", 0.5).log();
+		jjl.atMessage(LOG_MESSAGE).with("ok", true).log();
+
+		assertThat(records.size(), is(3));
+		assertThat(records.get(0), is(instanceOf(StructuredLogRecord.class)));
+		assertThat(records.get(0).getLevel(), is(JULJobLoggerLevel.ERROR));
+		assertThat(records.get(0).getMessage(), is(LOG_MESSAGE));
+		assertThat(records.get(0).getLoggerName(), is("testStructured"));
+		assertThat(records.get(0).getThrown(), is(sameInstance(thrown)));
+		assertThat(StructuredLogRecord.getFields(records.get(0)).toString(), is("jobId=" + PARAM + " rows=42"));
+		assertThat(records.get(1).getLevel(), is(JULJobLoggerLevel.WARN));
+		assertThat(StructuredLogRecord.getFields(records.get(1)).toString(), is("ratio=0.5"));
+		assertThat(records.get(2).getLevel(), is(JULJobLoggerLevel.MESSAGE));
+		assertThat(StructuredLogRecord.getFields(records.get(2)).toString(), is("ok=true"));
+	}
+
+	@Test
+	public void testStructuredDisabled() throws Exception {
+		JULJobLogger jjl = new JULJobLogger();
+		Properties props = getProperties(false, false, false);
+		props.setProperty(JobLoggerProperty.MIN_LEVEL.getKey(), "WARN");
+		jjl.init("testStructuredDisabled", props);
+		List<LogRecord> records = collectRecords(jjl);
+
+		// The shared builder is returned, nothing is allocated.
+		assertThat(jjl.atMessage(LOG_MESSAGE), is(sameInstance((LogEventBuilder) NullLogEventBuilder.NULL_LOG_EVENT_BUILDER)));
+		jjl.atMessage(LOG_MESSAGE).with("rows", 42).log();
+		assertThat(records.size(), is(0));
+	}
+
+	@Test
+	public void testSupplierOnlyCalledWhenEnabled() throws Exception {
+		JULJobLogger jjl = new JULJobLogger();
+		Properties props = getProperties(false, false, false);
+		props.setProperty(JobLoggerProperty.MIN_LEVEL.getKey(), "WARN");
+		jjl.init("testSupplierOnlyCalledWhenEnabled", props);
+		List<LogRecord> records = collectRecords(jjl);
+
+		final AtomicInteger calls = new AtomicInteger();
+		Supplier<String> supplier = new Supplier<String>() {
+			@Override
+			public String get() {
+				calls.incrementAndGet();
+				return LOG_MESSAGE;
+			}
+		};
+
+		jjl.message(supplier);
+		assertThat(calls.get(), is(0));
+		assertThat(records.size(), is(0));
+
+		jjl.warning(supplier);
+		assertThat(calls.get(), is(1));
+		assertThat(records.size(), is(1));
+		assertThat(records.get(0).getMessage(), is(LOG_MESSAGE));
+	}
+
+	@Test
+	public void testRateLimit() throws Exception {
+		Properties props = getProperties(false, false, false);
+		props.setProperty(JobLoggerProperty.RATE_LIMIT_WARN.getKey(), "5");
+
+		JULJobLogger jjl = new JULJobLogger();
+		jjl.init("testRateLimit", props);
+		List<LogRecord> records = collectRecords(jjl);
+
+		for (int i = 0; i < 100; i++) {
+			jjl.warning(LOG_MESSAGE_PARAM, i);
+			jjl.message(LOG_MESSAGE_PARAM, i);
+		}
+
+		// Only WARN is limited: a burst of 5 warnings and every message.
+		assertThat(records.size(), is(105));
+
+		// The suppressed warnings are summarized on close.
+		jjl.close();
+		assertThat(records.size(), is(106));
+		LogRecord summary = records.get(105);
+		assertThat(summary.getLevel(), is(JULJobLoggerLevel.WARN));
+		assertThat(summary.getParameters(), is(new Object[] { 95L, LOG_MESSAGE_PARAM }));
+	}
+
+	@Test
+	public void testDisabledLevelNotMetered() throws Exception {
+		Properties props = getProperties(false, false, false);
+		props.setProperty(JobLoggerProperty.MIN_LEVEL.getKey(), JULJobLoggerLevel.ERROR.getName());
+
+		JULJobLogger jjl = new JULJobLogger();
+		jjl.init("testDisabledLevelNotMetered", props);
+		List<LogRecord> records = collectRecords(jjl);
+
+		MetricsSnapshot before = JobLoggerMetrics.snapshot();
+		for (int i = 0; i < 1000; i++) {
+			jjl.message(LOG_MESSAGE);
+			jjl.warning(LOG_MESSAGE, new IllegalStateException());
+		}
+
+		MetricsSnapshot after = JobLoggerMetrics.snapshot();
+		assertThat(records.size(), is(0));
+		assertThat(after.getMessages() - before.getMessages(), is(0L));
+		assertThat(after.getWarnings() - before.getWarnings(), is(0L));
+		assertThat(after.getSuppressed() - before.getSuppressed(), is(0L));
+		jjl.close();
+	}
+
+	@Test
+	public void testRateLimitDisabledLevel() throws Exception {
+		Properties props = getProperties(false, false, false);
+		props.setProperty(JobLoggerProperty.RATE_LIMIT_WARN.getKey(), "5");
+		props.setProperty(JobLoggerProperty.MIN_LEVEL.getKey(), JULJobLoggerLevel.ERROR.getName());
+
+		JULJobLogger jjl = new JULJobLogger();
+		jjl.init("testRateLimitDisabledLevel", props);
+		List<LogRecord> records = collectRecords(jjl);
+
+		long suppressed = JobLoggerMetrics.snapshot().getSuppressed();
+		for (int i = 0; i < 1000; i++) {
+			jjl.warning(LOG_MESSAGE);
+		}
+		assertThat(JobLoggerMetrics.snapshot().getSuppressed() - suppressed, is(0L));
+
+		// The burst is still whole once the level is enabled, and there's nothing to summarize.
+		jjl.getLogger().setLevel(JULJobLoggerLevel.ALL);
+		for (int i = 0; i < 5; i++) {
+			jjl.warning(LOG_MESSAGE);
+		}
+		assertThat(records.size(), is(5));
+
+		jjl.close();
+		assertThat(records.size(), is(5));
+	}
+
+	@Test
+	public void testMeteredCollapsedFileSink() throws Exception {
+		File logFile = File.createTempFile("joblogger", ".log");
+		String key = "file:" + logFile.getAbsolutePath();
+
+		Properties props = getProperties(false, true, false);
+		props.setProperty(JobLoggerProperty.FILE_DESTINATION.getKey(), logFile.getPath());
+		props.setProperty(JobLoggerProperty.METRICS_ENABLED.getKey(), "true");
+		props.setProperty(JobLoggerProperty.COLLAPSE_ENABLED.getKey(), "true");
+
+		JULJobLogger jjl = new JULJobLogger();
+		jjl.init("testMeteredCollapsedFileSink", props);
+
+		// Collapsing goes first, so only what gets to the file is metered.
+		Handler handler = jjl.getLogger().getHandlers()[0];
+		assertThat(handler, is(instanceOf(CollapsingHandler.class)));
+		Handler metered = ((CollapsingHandler) handler).getDelegate();
+		assertThat(metered, is(instanceOf(MeteredHandler.class)));
+		assertThat(((MeteredHandler) metered).getDelegate(), is(instanceOf(TextFileHandler.class)));
+
+		long warnings = JobLoggerMetrics.snapshot().getWarnings();
+		for (int i = 0; i < 10; i++) {
+			jjl.warning(LOG_MESSAGE);
+		}
+
+		MetricsSnapshot snapshot = JobLoggerMetrics.snapshot();
+		assertThat(snapshot.getWarnings() - warnings, is(10L));
+		MetricsSnapshot.Sink sink = snapshot.getSinks().get(key);
+		assertThat(sink.getPublished(), is(1L));
+		assertThat(sink.getErrors(), is(0L));
+		assertThat(sink.getBytesWritten(), is(greaterThan(0L)));
+
+		jjl.close();
+		assertThat(JobLoggerMetrics.snapshot().getSinks().containsKey(key), is(false));
+
+		logFile.delete();
+	}
+
+	@Test
+	public void testFixedArityParams() throws Exception {
+		JULJobLogger jjl = new JULJobLogger();
+		jjl.init("testFixedArityParams", getProperties(false, false, false));
+		List<LogRecord> records = collectRecords(jjl);
+
+		jjl.error(LOG_MESSAGE_PARAM, PARAM);
+		jjl.warning(LOG_MESSAGE_PARAM, PARAM, 2);
+		jjl.message(LOG_MESSAGE_PARAM, PARAM, 2, 3L);
+		jjl.message(LOG_MESSAGE_PARAM, 42L);
+		jjl.message(LOG_MESSAGE_PARAM, 7);
+
+		assertThat(records.size(), is(5));
+		assertThat(records.get(0).getParameters(), is(new Object[] { PARAM }));
+		assertThat(records.get(1).getParameters(), is(new Object[] { PARAM, 2 }));
+		assertThat(records.get(2).getParameters(), is(new Object[] { PARAM, 2, 3L }));
+		assertThat(records.get(3).getParameters(), is(new Object[] { 42L }));
+		assertThat(records.get(4).getParameters(), is(new Object[] { 7 }));
+	}
+
+	/**
+	 * Attach a handler to the JULJobLogger that keeps every record it gets.
+	 * 
+	 * @param jjl
+	 * @return The list where records are kept.
+	 */
+	private static List<LogRecord> collectRecords(JULJobLogger jjl) {
+		final List<LogRecord> records = new ArrayList<>();
+		jjl.getLogger().setUseParentHandlers(false);
+		jjl.getLogger().addHandler(new Handler() {
+			@Override
+			public void publish(LogRecord record) {
+				records.add(record);
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+		return records;
+	}
+
 	/**
 	 * Return a Properties instance basically setted up depending on the handlers chosen.
 	 * 
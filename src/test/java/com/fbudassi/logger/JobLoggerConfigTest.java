@@ -0,0 +1,72 @@
+package com.fbudassi.logger;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Properties;
+import java.util.logging.Level;
+
+import org.junit.Test;
+
+/**
+ * Tests for JobLoggerConfig.
+ * 
+ * @author fbudassi
+ */
+public class JobLoggerConfigTest {
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCompileNull() {
+		JobLoggerConfig.compile(null);
+	}
+
+	@Test
+	public void testCompileDefaults() {
+		Properties props = new Properties();
+		props.setProperty(JobLoggerProperty.CONSOLE_ENABLED.getKey(), " ");
+		JobLoggerConfig config = JobLoggerConfig.compile(props);
+
+		for (JobLoggerProperty jlp : JobLoggerProperty.values()) {
+			assertThat(config.get(jlp), is(jlp.getDefault()));
+		}
+		assertThat(config.getMinLevel(), is((Level) JULJobLoggerLevel.ALL));
+		assertThat(config.isConsoleEnabled(), is(Boolean.parseBoolean(JobLoggerProperty.CONSOLE_ENABLED.getDefault())));
+		assertThat(config.toProperties().getProperty(JobLoggerProperty.MIN_LEVEL.getKey()), is(JobLoggerProperty.MIN_LEVEL.getDefault()));
+	}
+
+	@Test
+	public void testCompileValues() {
+		Properties props = new Properties();
+		props.setProperty(JobLoggerProperty.MIN_LEVEL.getKey(), "WARN");
+		props.setProperty(JobLoggerProperty.CONSOLE_ENABLED.getKey(), "true");
+		props.setProperty(JobLoggerProperty.FILE_ENABLED.getKey(), "true");
+		props.setProperty(JobLoggerProperty.DB_ENABLED.getKey(), "false");
+		JobLoggerConfig config = JobLoggerConfig.compile(props);
+
+		assertThat(config.getMinLevel(), is((Level) JULJobLoggerLevel.WARN));
+		assertThat(config.isConsoleEnabled(), is(true));
+		assertThat(config.isFileEnabled(), is(true));
+		assertThat(config.isDbEnabled(), is(false));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCompileInvalidLevel() {
+		Properties props = new Properties();
+		props.setProperty(JobLoggerProperty.MIN_LEVEL.getKey(), "NOT_A_LEVEL");
+		JobLoggerConfig.compile(props);
+	}
+
+	@Test
+	public void testImmutable() {
+		Properties props = new Properties();
+		props.setProperty(JobLoggerProperty.MIN_LEVEL.getKey(), "ERROR");
+		JobLoggerConfig config = JobLoggerConfig.compile(props);
+
+		// Neither the source properties nor the copies change the snapshot.
+		props.setProperty(JobLoggerProperty.MIN_LEVEL.getKey(), "MESSAGE");
+		config.toProperties().setProperty(JobLoggerProperty.MIN_LEVEL.getKey(), "MESSAGE");
+
+		assertThat(config.get(JobLoggerProperty.MIN_LEVEL), is("ERROR"));
+		assertThat(config.getMinLevel(), is((Level) JULJobLoggerLevel.ERROR));
+	}
+}
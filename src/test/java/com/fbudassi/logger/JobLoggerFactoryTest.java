@@ -4,6 +4,8 @@ import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
 
 import org.junit.Test;
 
@@ -54,6 +56,146 @@ public class JobLoggerFactoryTest {
 		JULJobLogger jjl = (JULJobLogger) logger;
 		assertThat(jjl.getLogger(), is(notNullValue()));
 		assertThat(jjl.getLogger().getHandlers().length, is(2));
-		assertThat(jjl.getConnection(), is(notNullValue()));
+		assertThat(jjl.getConnectionPool(), is(notNullValue()));
+	}
+
+	@Test
+	public void testGetLoggerCached() {
+		JobLogger first = JobLoggerFactory.getLogger("testGetLoggerCached");
+		JobLogger second = JobLoggerFactory.getLogger("testGetLoggerCached");
+
+		// Same instance, and handlers were only added once.
+		assertThat(second, is(sameInstance(first)));
+		assertThat(((JULJobLogger) second).getLogger().getHandlers().length, is(2));
+	}
+
+	@Test
+	public void testGetLoggerConcurrent() throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final JobLogger[] results = new JobLogger[8];
+
+		Thread[] threads = new Thread[results.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					results[index] = JobLoggerFactory.getLogger("testGetLoggerConcurrent");
+				}
+			});
+			threads[i].start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		// Only one logger was built, and its handlers were only added once.
+		for (JobLogger result : results) {
+			assertThat(result, is(sameInstance(results[0])));
+		}
+		assertThat(((JULJobLogger) results[0]).getLogger().getHandlers().length, is(2));
+	}
+
+	@Test(timeout = 10000)
+	public void testGetLoggerRecursive() {
+		Properties original = JobLoggerFactory.getProperties();
+		Properties props = JobLoggerFactory.getProperties();
+		props.setProperty(JobLoggerProperty.IMPLEMENTATION.getKey(), RecursiveJobLogger.class.getName());
+		try {
+			JobLoggerFactory.reload(props);
+
+			// The call made while initializing the logger gets a NullJobLogger instead of waiting for itself.
+			JobLogger logger = JobLoggerFactory.getLogger("testGetLoggerRecursive");
+			assertThat(logger, is(instanceOf(RecursiveJobLogger.class)));
+			assertThat(((RecursiveJobLogger) logger).inner, is(sameInstance((JobLogger) NullJobLogger.NULL_JOB_LOGGER)));
+			assertThat(JobLoggerFactory.getLogger("testGetLoggerRecursive"), is(sameInstance(logger)));
+		} finally {
+			JobLoggerFactory.reload(original);
+		}
+	}
+
+	@Test
+	public void testGetLoggerByClassCached() {
+		assertThat(JobLoggerFactory.getLogger(Cached.class), is(sameInstance(JobLoggerFactory.getLogger(Cached.class.getCanonicalName()))));
+	}
+
+	@Test
+	public void testGetLoggerNullNameNotCached() {
+		assertThat(JobLoggerFactory.getLogger((String) null), is(instanceOf(NullJobLogger.class)));
+	}
+
+	@Test
+	public void testShutdown() {
+		JULJobLogger before = (JULJobLogger) JobLoggerFactory.getLogger("testShutdown");
+
+		JobLoggerFactory.shutdown();
+		assertThat(before.getLogger().getHandlers().length, is(0));
+
+		// A new logger is built after shutdown.
+		JULJobLogger after = (JULJobLogger) JobLoggerFactory.getLogger("testShutdown");
+		assertThat(after, is(not(sameInstance(before))));
+		assertThat(after.getLogger().getHandlers().length, is(2));
+	}
+
+	@Test
+	public void testReload() {
+		Properties original = JobLoggerFactory.getProperties();
+		JobLogger logger = JobLoggerFactory.getLogger("testReload");
+		assertThat(logger.isMessageEnabled(), is(true));
+
+		Properties props = JobLoggerFactory.getProperties();
+		props.setProperty(JobLoggerProperty.MIN_LEVEL.getKey(), "ERROR");
+		try {
+			JobLoggerFactory.reload(props);
+
+			// The cached logger picks up the new level without being re-created.
+			assertThat(JobLoggerFactory.getConfig().getMinLevel(), is((Level) JULJobLoggerLevel.ERROR));
+			assertThat(JobLoggerFactory.getLogger("testReload"), is(sameInstance(logger)));
+			assertThat(logger.isErrorEnabled(), is(true));
+			assertThat(logger.isMessageEnabled(), is(false));
+		} finally {
+			JobLoggerFactory.reload(original);
+		}
+		assertThat(logger.isMessageEnabled(), is(true));
+	}
+
+	@Test
+	public void testReloadInvalid() {
+		JobLoggerConfig before = JobLoggerFactory.getConfig();
+		Properties props = JobLoggerFactory.getProperties();
+		props.setProperty(JobLoggerProperty.MIN_LEVEL.getKey(), "NOT_A_LEVEL");
+
+		try {
+			JobLoggerFactory.reload(props);
+			fail("Invalid level should be rejected");
+		} catch (IllegalArgumentException e) {
+			// The current configuration is kept.
+			assertThat(JobLoggerFactory.getConfig(), is(sameInstance(before)));
+		}
+	}
+
+	/**
+	 * Logger that asks the factory for itself while it's initialized.
+	 */
+	static class RecursiveJobLogger extends JULJobLogger {
+		private JobLogger inner;
+
+		@Override
+		protected void init(String name, Properties props) throws Exception {
+			super.init(name, props);
+			inner = JobLoggerFactory.getLogger(name);
+		}
+	}
+
+	/**
+	 * Class used only to name a logger.
+	 */
+	private static class Cached {
 	}
 }
@@ -1,5 +1,10 @@
 package com.fbudassi.logger;
 
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.function.Supplier;
+
 import org.junit.Test;
 
 /**
@@ -81,4 +86,42 @@ public class NullJobLoggerTest {
 	public void testMessageThrown() {
 		logger.message(LOG_MESSAGE, new Exception());
 	}
+
+	/**
+	 * Guards, supplier and fixed-arity tests.
+	 */
+	@Test
+	public void testIsEnabled() {
+		assertThat(logger.isErrorEnabled(), is(false));
+		assertThat(logger.isWarningEnabled(), is(false));
+		assertThat(logger.isMessageEnabled(), is(false));
+	}
+
+	@Test
+	public void testSupplierNotCalled() {
+		Supplier<String> supplier = new Supplier<String>() {
+			@Override
+			public String get() {
+				throw new AssertionError("Supplier should never be called");
+			}
+		};
+
+		logger.error(supplier);
+		logger.warning(supplier);
+		logger.message(supplier);
+	}
+
+	@Test
+	public void testStructured() {
+		assertThat(logger.atError(LOG_MESSAGE), is(sameInstance((LogEventBuilder) NullLogEventBuilder.NULL_LOG_EVENT_BUILDER)));
+		assertThat(logger.atWarning(LOG_MESSAGE), is(sameInstance((LogEventBuilder) NullLogEventBuilder.NULL_LOG_EVENT_BUILDER)));
+		logger.atMessage(LOG_MESSAGE).with("key", PARAM).with("rows", 1).with("ratio", 0.5).with("ok", true).withThrown(new Exception()).log();
+	}
+
+	@Test
+	public void testFixedArityParams() {
+		logger.error(LOG_MESSAGE_PARAM, PARAM, PARAM, PARAM);
+		logger.warning(LOG_MESSAGE_PARAM, 1L);
+		logger.message(LOG_MESSAGE_PARAM, 1);
+	}
 }
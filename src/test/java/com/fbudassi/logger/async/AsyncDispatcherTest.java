@@ -0,0 +1,262 @@
+package com.fbudassi.logger.async;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+import com.fbudassi.logger.JULJobLoggerLevel;
+import com.fbudassi.logger.handler.EventFields;
+import com.fbudassi.logger.handler.StructuredLogRecord;
+import com.fbudassi.logger.util.CapturedThrowable;
+import com.fbudassi.logger.util.ExceptionUtils;
+
+/**
+ * Tests for AsyncDispatcher.
+ * 
+ * @author fbudassi
+ */
+public class AsyncDispatcherTest {
+
+	private static final String LOG_MESSAGE = "Test log message";
+
+	/**
+	 * Constructor tests.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateInvalidBufferSize() {
+		new AsyncDispatcher(0, WaitStrategy.PARK);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateNullWaitStrategy() {
+		new AsyncDispatcher(16, null);
+	}
+
+	/**
+	 * publish tests.
+	 */
+	@Test
+	public void testPublishSingleThread() {
+		CollectingHandler handler = new CollectingHandler();
+		Logger logger = newLogger("testPublishSingleThread", handler);
+
+		AsyncDispatcher dispatcher = new AsyncDispatcher(16, WaitStrategy.PARK);
+		Exception thrown = new Exception();
+		assertThat(dispatcher.publish(logger, JULJobLoggerLevel.ERROR, LOG_MESSAGE, new Object[] { 1 }, thrown), is(true));
+		dispatcher.flush();
+
+		assertThat(handler.records.size(), is(1));
+		LogRecord lr = handler.records.get(0);
+		assertThat(lr.getLevel(), is(JULJobLoggerLevel.ERROR));
+		assertThat(lr.getMessage(), is(LOG_MESSAGE));
+		assertThat(lr.getParameters()[0], is((Object) 1));
+		assertThat(lr.getThrown(), is(sameInstance((Throwable) thrown)));
+		assertThat(lr.getThreadID(), is((int) Thread.currentThread().getId()));
+
+		dispatcher.close();
+	}
+
+	@Test
+	public void testPublishStructured() {
+		CollectingHandler handler = new CollectingHandler();
+		Logger logger = newLogger("testPublishStructured", handler);
+
+		AsyncDispatcher dispatcher = new AsyncDispatcher(16, WaitStrategy.PARK);
+		EventFields fields = new EventFields().add("rows", 42L);
+		assertThat(dispatcher.publish(logger, JULJobLoggerLevel.MESSAGE, LOG_MESSAGE, null, fields, null), is(true));
+		dispatcher.flush();
+
+		assertThat(handler.records.size(), is(1));
+		assertThat(StructuredLogRecord.getFields(handler.records.get(0)), is(sameInstance(fields)));
+
+		dispatcher.close();
+	}
+
+	@Test
+	public void testPublishManyThreadsSmallBuffer() throws InterruptedException {
+		final CollectingHandler handler = new CollectingHandler();
+		final Logger logger = newLogger("testPublishManyThreadsSmallBuffer", handler);
+
+		// A buffer much smaller than the number of calls forces producers to wrap around and wait.
+		final AsyncDispatcher dispatcher = new AsyncDispatcher(8, WaitStrategy.YIELD);
+		final int threads = 4;
+		final int calls = 1000;
+
+		List<Thread> producers = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			Thread producer = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < calls; i++) {
+						dispatcher.publish(logger, JULJobLoggerLevel.MESSAGE, LOG_MESSAGE, new Object[] { i }, null);
+					}
+				}
+			});
+			producers.add(producer);
+			producer.start();
+		}
+		for (Thread producer : producers) {
+			producer.join();
+		}
+		dispatcher.close();
+
+		assertThat(handler.records.size(), is(threads * calls));
+		assertThat(dispatcher.getPending(), is(0L));
+	}
+
+	@Test
+	public void testPublishCaptureThrown() {
+		CollectingHandler handler = new CollectingHandler();
+		Logger logger = newLogger("testPublishCaptureThrown", handler);
+
+		AsyncDispatcher dispatcher = new AsyncDispatcher(16, WaitStrategy.PARK, true);
+		Exception thrown = new IllegalStateException(LOG_MESSAGE);
+		dispatcher.publish(logger, JULJobLoggerLevel.ERROR, LOG_MESSAGE, null, thrown);
+		dispatcher.close();
+
+		// The handler gets a snapshot that renders the same as the original.
+		Throwable captured = handler.records.get(0).getThrown();
+		assertThat(captured, is(instanceOf(CapturedThrowable.class)));
+		assertThat(ExceptionUtils.getStackTrace(captured), is(ExceptionUtils.getStackTrace(thrown)));
+	}
+
+	@Test
+	public void testPublishAfterClose() {
+		AsyncDispatcher dispatcher = new AsyncDispatcher(16, WaitStrategy.SPIN);
+		dispatcher.close();
+
+		assertThat(dispatcher.publish(newLogger("testPublishAfterClose", new CollectingHandler()), JULJobLoggerLevel.MESSAGE, LOG_MESSAGE, null, null),
+				is(false));
+	}
+
+	@Test
+	public void testPublishWhileClosing() throws InterruptedException {
+		// Every call accepted by publish must get to the handler, even if the dispatcher is closed while it's being published.
+		for (int round = 0; round < 50; round++) {
+			final CollectingHandler handler = new CollectingHandler();
+			final Logger logger = newLogger("testPublishWhileClosing", handler);
+			final AsyncDispatcher dispatcher = new AsyncDispatcher(64, WaitStrategy.YIELD);
+			final AtomicLong accepted = new AtomicLong();
+
+			List<Thread> producers = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				Thread producer = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						while (dispatcher.publish(logger, JULJobLoggerLevel.MESSAGE, LOG_MESSAGE, null, null)) {
+							accepted.incrementAndGet();
+						}
+					}
+				});
+				producers.add(producer);
+				producer.start();
+			}
+			Thread.sleep(1);
+			dispatcher.close();
+			for (Thread producer : producers) {
+				producer.join();
+			}
+			logger.removeHandler(handler);
+
+			assertThat(handler.records.size(), is((int) accepted.get()));
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testHandlerError() {
+		final CollectingHandler handler = new CollectingHandler();
+		Logger logger = newLogger("testHandlerError", new Handler() {
+			@Override
+			public void publish(LogRecord record) {
+				if ("fail".equals(record.getMessage())) {
+					throw new StackOverflowError();
+				}
+				handler.publish(record);
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+
+		// The consumer survives the Error and keeps draining the buffer.
+		AsyncDispatcher dispatcher = new AsyncDispatcher(8, WaitStrategy.YIELD);
+		assertThat(dispatcher.publish(logger, JULJobLoggerLevel.ERROR, "fail", null, null), is(true));
+		for (int i = 0; i < 100; i++) {
+			assertThat(dispatcher.publish(logger, JULJobLoggerLevel.MESSAGE, LOG_MESSAGE, null, null), is(true));
+		}
+		dispatcher.close();
+
+		assertThat(handler.records.size(), is(100));
+		assertThat(dispatcher.getDropped(), is(1L));
+	}
+
+	@Test(timeout = 10000)
+	public void testPublishConsumerDead() {
+		// Building the record throws outside the handlers and kills the consumer thread.
+		Logger logger = new Logger(AsyncDispatcherTest.class.getCanonicalName() + ".testPublishConsumerDead", null) {
+			@Override
+			public String getName() {
+				throw new StackOverflowError();
+			}
+		};
+
+		// Producers don't wait forever for a full buffer, they are told to log the calls by themselves.
+		AsyncDispatcher dispatcher = new AsyncDispatcher(8, WaitStrategy.YIELD);
+		int accepted = 0;
+		while (dispatcher.publish(logger, JULJobLoggerLevel.MESSAGE, LOG_MESSAGE, null, null)) {
+			accepted++;
+		}
+		assertThat(accepted, is(8));
+		dispatcher.close();
+	}
+
+	/**
+	 * Return a logger that only writes to the given handler.
+	 * 
+	 * @param name
+	 * @param handler
+	 * @return
+	 */
+	private static Logger newLogger(String name, Handler handler) {
+		Logger logger = Logger.getLogger(AsyncDispatcherTest.class.getCanonicalName() + "." + name);
+		logger.setLevel(JULJobLoggerLevel.ALL);
+		logger.setUseParentHandlers(false);
+		logger.addHandler(handler);
+		return logger;
+	}
+
+	/**
+	 * Handler that keeps every record it gets.
+	 */
+	private static class CollectingHandler extends Handler {
+
+		private final List<LogRecord> records = Collections.synchronizedList(new ArrayList<LogRecord>());
+
+		@Override
+		public void publish(LogRecord record) {
+			records.add(record);
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
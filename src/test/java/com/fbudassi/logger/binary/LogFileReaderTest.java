@@ -0,0 +1,333 @@
+package com.fbudassi.logger.binary;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fbudassi.logger.JULJobLoggerLevel;
+import com.fbudassi.logger.handler.BinaryFileHandler;
+
+/**
+ * Tests for LogFileReader, using BinaryFileHandler and BinaryLogEncoder to write the files.
+ * 
+ * @author fbudassi
+ */
+public class LogFileReaderTest {
+
+	private static final String LOG_MESSAGE = "Test log message";
+	private static final String LOG_MESSAGE_PARAM = "Test log message: {0}";
+	private static final String PARAM = "test_param";
+
+	private File file;
+
+	@Before
+	public void createFile() throws IOException {
+		file = File.createTempFile("joblogger", ".log");
+	}
+
+	@After
+	public void deleteFile() {
+		file.delete();
+	}
+
+	/**
+	 * Varint tests.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testVarLongRoundTrip() throws IOException {
+		long[] values = { 0, 1, 127, 128, 300, Integer.MAX_VALUE, Long.MAX_VALUE, -1, Long.MIN_VALUE };
+		for (long value : values) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			BinaryLogFormat.writeVarLong(out, value);
+			BinaryLogFormat.writeZigZag(out, value);
+
+			ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+			assertThat(BinaryLogFormat.readVarLong(in), is(value));
+			assertThat(BinaryLogFormat.readZigZag(in), is(value));
+		}
+	}
+
+	/**
+	 * Round trip tests.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testReadWrittenRecords() throws IOException {
+		BinaryFileHandler bfh = new BinaryFileHandler(file.getPath(), false);
+		LogRecord first = newRecord(JULJobLoggerLevel.ERROR, LOG_MESSAGE_PARAM, PARAM);
+		first.setThrown(new Exception());
+		LogRecord second = newRecord(JULJobLoggerLevel.WARN, LOG_MESSAGE);
+		bfh.publish(first);
+		bfh.publish(second);
+		bfh.close();
+
+		try (LogFileReader reader = new LogFileReader(file)) {
+			LogEntry entry = reader.next();
+			assertThat(entry.getMillis(), is(first.getMillis()));
+			assertThat(entry.getLevel(), is(JULJobLoggerLevel.ERROR.getName()));
+			assertThat(entry.getLevelValue(), is(JULJobLoggerLevel.ERROR.intValue()));
+			assertThat(entry.getLogger(), is(this.getClass().getCanonicalName()));
+			assertThat(entry.getMessage(), is("Test log message: test_param"));
+			assertThat(entry.getSequence(), is(first.getSequenceNumber()));
+			assertThat(entry.getThreadID(), is(first.getThreadID()));
+			assertThat(entry.getStackTrace(), startsWith("java.lang.Exception"));
+
+			entry = reader.next();
+			assertThat(entry.getLevel(), is(JULJobLoggerLevel.WARN.getName()));
+			assertThat(entry.getMessage(), is(LOG_MESSAGE));
+			assertThat(entry.getStackTrace(), is(nullValue()));
+
+			assertThat(reader.next(), is(nullValue()));
+		}
+	}
+
+	@Test
+	public void testReadAppendedFile() throws IOException {
+		BinaryFileHandler bfh = new BinaryFileHandler(file.getPath(), false);
+		bfh.publish(newRecord(JULJobLoggerLevel.ERROR, LOG_MESSAGE));
+		bfh.close();
+
+		// The second writer starts with a RESET, so its string ids don't clash with the first one.
+		bfh = new BinaryFileHandler(file.getPath(), true);
+		bfh.publish(newRecord(JULJobLoggerLevel.WARN, LOG_MESSAGE));
+		bfh.close();
+
+		try (LogFileReader reader = new LogFileReader(file)) {
+			assertThat(reader.next().getLevel(), is(JULJobLoggerLevel.ERROR.getName()));
+			assertThat(reader.next().getLevel(), is(JULJobLoggerLevel.WARN.getName()));
+			assertThat(reader.next(), is(nullValue()));
+		}
+	}
+
+	@Test
+	public void testReadWhileWriting() throws IOException {
+		BinaryFileHandler bfh = new BinaryFileHandler(file.getPath(), false);
+		try {
+			bfh.publish(newRecord(JULJobLoggerLevel.ERROR, LOG_MESSAGE));
+
+			// Records reach the file without flush() or close().
+			try (LogFileReader reader = new LogFileReader(file)) {
+				assertThat(reader.next().getMessage(), is(LOG_MESSAGE));
+				assertThat(reader.next(), is(nullValue()));
+			}
+		} finally {
+			bfh.close();
+		}
+	}
+
+	@Test
+	public void testReadAppendedTornFile() throws IOException {
+		BinaryFileHandler bfh = new BinaryFileHandler(file.getPath(), false);
+		bfh.publish(newRecord(JULJobLoggerLevel.ERROR, LOG_MESSAGE));
+		bfh.publish(newRecord(JULJobLoggerLevel.ERROR, LOG_MESSAGE));
+		bfh.close();
+
+		// The writer was killed in the middle of the last record.
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() - 5);
+		}
+
+		// The torn record is cut off, so it doesn't swallow the records appended after it.
+		bfh = new BinaryFileHandler(file.getPath(), true);
+		for (int i = 0; i < 3; i++) {
+			bfh.publish(newRecord(JULJobLoggerLevel.WARN, LOG_MESSAGE));
+		}
+		bfh.close();
+
+		try (LogFileReader reader = new LogFileReader(file)) {
+			assertThat(reader.next().getLevel(), is(JULJobLoggerLevel.ERROR.getName()));
+			for (int i = 0; i < 3; i++) {
+				LogEntry entry = reader.next();
+				assertThat(entry.getLevel(), is(JULJobLoggerLevel.WARN.getName()));
+				assertThat(entry.getMessage(), is(LOG_MESSAGE));
+			}
+			assertThat(reader.next(), is(nullValue()));
+		}
+	}
+
+	@Test
+	public void testAppendTornHeader() throws IOException {
+		Files.write(file.toPath(), new byte[] { 'J', 'L' });
+
+		BinaryFileHandler bfh = new BinaryFileHandler(file.getPath(), true);
+		bfh.publish(newRecord(JULJobLoggerLevel.WARN, LOG_MESSAGE));
+		bfh.close();
+
+		try (LogFileReader reader = new LogFileReader(file)) {
+			assertThat(reader.next().getLevel(), is(JULJobLoggerLevel.WARN.getName()));
+			assertThat(reader.next(), is(nullValue()));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testAppendNotBinaryFile() throws IOException {
+		Files.write(file.toPath(), "plain text".getBytes());
+		new BinaryFileHandler(file.getPath(), true);
+	}
+
+	@Test
+	public void testReadTruncatedFile() throws IOException {
+		BinaryLogEncoder encoder = new BinaryLogEncoder();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		encoder.writeHeader(out);
+		encoder.encode(new LogEntry(1000, "MESSAGE", 1, "logger", LOG_MESSAGE, 1, 1, null), out);
+		encoder.encode(new LogEntry(2000, "MESSAGE", 1, "logger", LOG_MESSAGE, 2, 1, null), out);
+		byte[] bytes = out.toByteArray();
+
+		// A partially written last record is ignored.
+		try (LogFileReader reader = new LogFileReader(new ByteArrayInputStream(bytes, 0, bytes.length - 3), true)) {
+			assertThat(reader.next().getSequence(), is(1L));
+			assertThat(reader.next(), is(nullValue()));
+		}
+	}
+
+	@Test
+	public void testReadCorruptFrameLength() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new BinaryLogEncoder().writeHeader(out);
+		out.write(BinaryLogFormat.FRAME_RECORD);
+		BinaryLogFormat.writeVarLong(out, -1);
+
+		try (LogFileReader reader = new LogFileReader(new ByteArrayInputStream(out.toByteArray()), true)) {
+			reader.next();
+			fail("A negative frame length must be rejected");
+		} catch (IOException e) {
+			assertThat(e.getMessage(), is("Corrupt frame"));
+		}
+
+		// A length past the end of the file is a torn last frame, read without allocating it.
+		out.reset();
+		new BinaryLogEncoder().writeHeader(out);
+		out.write(BinaryLogFormat.FRAME_RECORD);
+		BinaryLogFormat.writeVarLong(out, Integer.MAX_VALUE);
+		out.write(new byte[100]);
+
+		try (LogFileReader reader = new LogFileReader(new ByteArrayInputStream(out.toByteArray()), true)) {
+			assertThat(reader.next(), is(nullValue()));
+		}
+	}
+
+	@Test
+	public void testReadCorruptStringLength() throws IOException {
+		BinaryLogEncoder encoder = new BinaryLogEncoder();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		encoder.writeHeader(out);
+		encoder.encode(new LogEntry(1000, "MESSAGE", 1, "logger", LOG_MESSAGE, 1, 1, null), out);
+
+		// STRING frame whose length goes past the end of the frame.
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		BinaryLogFormat.writeVarLong(payload, 2);
+		BinaryLogFormat.writeVarLong(payload, Long.MAX_VALUE);
+		payload.write("abc".getBytes(StandardCharsets.UTF_8));
+		writeFrame(out, BinaryLogFormat.FRAME_STRING, payload.toByteArray());
+
+		assertCorrupt(out.toByteArray(), 1);
+
+		// RECORD frame whose message length goes past the end of the frame.
+		out.reset();
+		encoder = new BinaryLogEncoder();
+		encoder.writeHeader(out);
+		encoder.encode(new LogEntry(1000, "MESSAGE", 1, "logger", LOG_MESSAGE, 1, 1, null), out);
+		payload.reset();
+		BinaryLogFormat.writeZigZag(payload, 0);
+		BinaryLogFormat.writeZigZag(payload, 1);
+		BinaryLogFormat.writeVarLong(payload, 0);
+		BinaryLogFormat.writeVarLong(payload, 1);
+		BinaryLogFormat.writeVarLong(payload, 1000);
+		payload.write("abc".getBytes(StandardCharsets.UTF_8));
+		writeFrame(out, BinaryLogFormat.FRAME_RECORD, payload.toByteArray());
+
+		assertCorrupt(out.toByteArray(), 1);
+
+		// RECORD frame cut in the middle of a value.
+		out.reset();
+		encoder = new BinaryLogEncoder();
+		encoder.writeHeader(out);
+		encoder.encode(new LogEntry(1000, "MESSAGE", 1, "logger", LOG_MESSAGE, 1, 1, null), out);
+		payload.reset();
+		BinaryLogFormat.writeZigZag(payload, 0);
+		payload.write(0x80);
+		writeFrame(out, BinaryLogFormat.FRAME_RECORD, payload.toByteArray());
+
+		assertCorrupt(out.toByteArray(), 1);
+	}
+
+	@Test
+	public void testReadCorruptStringId() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new BinaryLogEncoder().writeHeader(out);
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		BinaryLogFormat.writeVarLong(payload, Integer.MAX_VALUE);
+		BinaryLogFormat.writeVarLong(payload, 3);
+		payload.write("abc".getBytes(StandardCharsets.UTF_8));
+		writeFrame(out, BinaryLogFormat.FRAME_STRING, payload.toByteArray());
+
+		assertCorrupt(out.toByteArray(), 0);
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadNotBinaryFile() throws IOException {
+		new LogFileReader(new ByteArrayInputStream("plain text".getBytes()), true);
+	}
+
+	/**
+	 * Write a frame with the given payload.
+	 * 
+	 * @param out
+	 * @param type
+	 * @param payload
+	 * @throws IOException
+	 */
+	private static void writeFrame(ByteArrayOutputStream out, int type, byte[] payload) throws IOException {
+		out.write(type);
+		BinaryLogFormat.writeVarLong(out, payload.length);
+		out.write(payload);
+	}
+
+	/**
+	 * Check that a file reads the given number of entries and then fails with a corrupt frame.
+	 * 
+	 * @param bytes
+	 * @param entries
+	 * @throws IOException
+	 */
+	private static void assertCorrupt(byte[] bytes, int entries) throws IOException {
+		try (LogFileReader reader = new LogFileReader(new ByteArrayInputStream(bytes), true)) {
+			for (int i = 0; i < entries; i++) {
+				assertThat(reader.next(), is(notNullValue()));
+			}
+			reader.next();
+			fail("The corrupt frame must be rejected");
+		} catch (IOException e) {
+			assertThat(e.getMessage(), is("Corrupt frame"));
+		}
+	}
+
+	/**
+	 * Build a log record.
+	 * 
+	 * @return
+	 */
+	private LogRecord newRecord(Level level, String msg, Object... params) {
+		LogRecord lr = new LogRecord(level, msg);
+		lr.setLoggerName(this.getClass().getCanonicalName());
+		lr.setParameters(params);
+		return lr;
+	}
+}
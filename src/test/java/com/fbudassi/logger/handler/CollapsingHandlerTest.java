@@ -0,0 +1,227 @@
+package com.fbudassi.logger.handler;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.Test;
+
+/**
+ * Tests for CollapsingHandler.
+ * 
+ * @author fbudassi
+ */
+public class CollapsingHandlerTest {
+
+	private static final long WINDOW = 60000;
+
+	/**
+	 * Constructor tests.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullDelegate() {
+		new CollapsingHandler(null, WINDOW);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidWindow() {
+		new CollapsingHandler(new CapturingHandler(), 0);
+	}
+
+	/**
+	 * publish tests.
+	 */
+	@Test
+	public void testPublishCollapsesBurst() {
+		CapturingHandler delegate = new CapturingHandler();
+		CollapsingHandler ch = new CollapsingHandler(delegate, WINDOW);
+
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < 5; i++) {
+			ch.publish(newRecord("job", Level.SEVERE, "Retry {0}", new Object[] { 1 }, null, now + i));
+		}
+		assertThat(delegate.records.size(), is(1));
+
+		// A different record ends the burst.
+		ch.publish(newRecord("job", Level.SEVERE, "Retry {0}", new Object[] { 2 }, null, now + 5));
+		assertThat(delegate.records.size(), is(3));
+		assertThat(delegate.records.get(1).getMessage(), is(CollapsingHandler.REPEATED_MSG));
+		assertThat(delegate.records.get(1).getParameters()[0], is((Object) 4));
+		assertThat(delegate.records.get(1).getMillis(), is(now + 4));
+		assertThat(delegate.records.get(2).getParameters()[0], is((Object) 2));
+
+		ch.close();
+		assertThat(delegate.records.size(), is(3));
+		assertThat(delegate.closed, is(true));
+	}
+
+	@Test
+	public void testPublishDifferentRecords() {
+		CapturingHandler delegate = new CapturingHandler();
+		CollapsingHandler ch = new CollapsingHandler(delegate, WINDOW);
+
+		long now = System.currentTimeMillis();
+		ch.publish(newRecord("job", Level.SEVERE, "Failed", null, null, now));
+		ch.publish(newRecord("job", Level.WARNING, "Failed", null, null, now));
+		ch.publish(newRecord("job", Level.WARNING, "Failed", null, new IllegalStateException("a"), now));
+		ch.publish(newRecord("job", Level.WARNING, "Failed", null, new IllegalArgumentException("b"), now));
+		ch.close();
+
+		assertThat(delegate.records.size(), is(4));
+		for (LogRecord lr : delegate.records) {
+			assertThat(lr.getMessage(), is("Failed"));
+		}
+	}
+
+	@Test
+	public void testPublishStructured() {
+		CapturingHandler delegate = new CapturingHandler();
+		CollapsingHandler ch = new CollapsingHandler(delegate, WINDOW);
+
+		// Same message, different fields: not a repeat.
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < 3; i++) {
+			LogRecord lr = new StructuredLogRecord(Level.SEVERE, "payment failed", new EventFields().add("orderId", i));
+			lr.setLoggerName("job");
+			lr.setMillis(now);
+			ch.publish(lr);
+		}
+		assertThat(delegate.records.size(), is(3));
+
+		// Same message and fields: a repeat.
+		LogRecord lr = new StructuredLogRecord(Level.SEVERE, "payment failed", new EventFields().add("orderId", 2));
+		lr.setLoggerName("job");
+		lr.setMillis(now);
+		ch.publish(lr);
+		ch.close();
+
+		assertThat(delegate.records.size(), is(4));
+		assertThat(StructuredLogRecord.getFields(delegate.records.get(2)).getValue(0), is((Object) 2L));
+		assertThat(delegate.records.get(3).getMessage(), is(CollapsingHandler.REPEATED_MSG));
+	}
+
+	@Test
+	public void testPublishSameFingerprint() {
+		CapturingHandler delegate = new CapturingHandler();
+		CollapsingHandler ch = new CollapsingHandler(delegate, WINDOW);
+
+		// Same stack trace, different instances.
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < 3; i++) {
+			ch.publish(newRecord("job", Level.SEVERE, "Failed", null, new IllegalStateException("Connection refused"), now));
+		}
+		ch.close();
+
+		assertThat(delegate.records.size(), is(2));
+		assertThat(delegate.records.get(0).getThrown(), is(notNullValue()));
+		assertThat(delegate.records.get(1).getMessage(), is(CollapsingHandler.REPEATED_MSG));
+		assertThat(delegate.records.get(1).getParameters()[0], is((Object) 2));
+		assertThat(delegate.records.get(1).getThrown(), is(nullValue()));
+	}
+
+	@Test
+	public void testPublishPerLogger() {
+		CapturingHandler delegate = new CapturingHandler();
+		CollapsingHandler ch = new CollapsingHandler(delegate, WINDOW);
+
+		// Interleaved loggers don't break each other's bursts.
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < 3; i++) {
+			ch.publish(newRecord("job1", Level.INFO, "Working", null, null, now));
+			ch.publish(newRecord("job2", Level.INFO, "Working", null, null, now));
+		}
+		assertThat(delegate.records.size(), is(2));
+
+		ch.close();
+		assertThat(delegate.records.size(), is(4));
+		assertThat(delegate.records.get(2).getMessage(), is(CollapsingHandler.REPEATED_MSG));
+		assertThat(delegate.records.get(3).getMessage(), is(CollapsingHandler.REPEATED_MSG));
+	}
+
+	@Test
+	public void testPublishWindowOver() {
+		CapturingHandler delegate = new CapturingHandler();
+		CollapsingHandler ch = new CollapsingHandler(delegate, 1000);
+
+		long now = System.currentTimeMillis();
+		ch.publish(newRecord("job", Level.INFO, "Working", null, null, now));
+		ch.publish(newRecord("job", Level.INFO, "Working", null, null, now + 500));
+		// Over the window: the count is reported and a new burst starts.
+		ch.publish(newRecord("job", Level.INFO, "Working", null, null, now + 1500));
+
+		assertThat(delegate.records.size(), is(3));
+		assertThat(delegate.records.get(1).getParameters()[0], is((Object) 1));
+		assertThat(delegate.records.get(2).getMessage(), is("Working"));
+		ch.close();
+	}
+
+	@Test
+	public void testCloseWindows() {
+		CapturingHandler delegate = new CapturingHandler();
+		CollapsingHandler ch = new CollapsingHandler(delegate, 1000);
+
+		long now = System.currentTimeMillis();
+		ch.publish(newRecord("job", Level.INFO, "Working", null, null, now));
+		ch.publish(newRecord("job", Level.INFO, "Working", null, null, now));
+
+		ch.closeWindows(now + 500);
+		assertThat(delegate.records.size(), is(1));
+
+		ch.closeWindows(now + 1500);
+		assertThat(delegate.records.size(), is(2));
+		assertThat(delegate.records.get(1).getMessage(), is(CollapsingHandler.REPEATED_MSG));
+
+		// Nothing left to report.
+		ch.close();
+		assertThat(delegate.records.size(), is(2));
+	}
+
+	@Test
+	public void testPublishClosed() {
+		CapturingHandler delegate = new CapturingHandler();
+		CollapsingHandler ch = new CollapsingHandler(delegate, WINDOW);
+		ch.close();
+
+		ch.publish(newRecord("job", Level.INFO, "Working", null, null, System.currentTimeMillis()));
+		assertThat(delegate.records.size(), is(0));
+	}
+
+	/**
+	 * Build a record.
+	 */
+	private static LogRecord newRecord(String logger, Level level, String msg, Object[] params, Throwable thrown, long millis) {
+		LogRecord lr = new LogRecord(level, msg);
+		lr.setLoggerName(logger);
+		lr.setParameters(params);
+		lr.setThrown(thrown);
+		lr.setMillis(millis);
+		return lr;
+	}
+
+	/**
+	 * Handler keeping every record it gets.
+	 */
+	private static class CapturingHandler extends Handler {
+		private final List<LogRecord> records = new ArrayList<>();
+		private boolean closed;
+
+		@Override
+		public synchronized void publish(LogRecord record) {
+			records.add(record);
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+}
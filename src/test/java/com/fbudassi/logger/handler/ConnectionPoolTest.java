@@ -0,0 +1,175 @@
+package com.fbudassi.logger.handler;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fbudassi.logger.handler.ConnectionPool.PooledConnection;
+
+/**
+ * Tests for ConnectionPool. It uses an in-memory RDBMS to avoid mocking JDBC.
+ * 
+ * @author fbudassi
+ */
+public class ConnectionPoolTest {
+
+	/**
+	 * Database connection properties.
+	 */
+	private static final String URL = "jdbc:hsqldb:mem:pooldb";
+	private static final String USER = "sa";
+	private static final String PASSWORD = "";
+	private static final String SELECT_SQL = "VALUES (1)";
+
+	private ConnectionPool pool;
+
+	@Before
+	public void createPool() {
+		pool = new ConnectionPool(URL, getConnProps(), 2, 100);
+	}
+
+	@After
+	public void closePool() {
+		pool.close();
+	}
+
+	/**
+	 * Constructor tests.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateBlankUrl() {
+		new ConnectionPool(" ", getConnProps(), 2, 100);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateInvalidSize() {
+		new ConnectionPool(URL, getConnProps(), 0, 100);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateNullConnection() {
+		new ConnectionPool((Connection) null);
+	}
+
+	/**
+	 * borrow/release tests.
+	 * 
+	 * @throws SQLException
+	 */
+	@Test
+	public void testBorrowReusesConnection() throws SQLException {
+		PooledConnection first = pool.borrow();
+		pool.release(first);
+		PooledConnection second = pool.borrow();
+
+		assertThat(second, is(sameInstance(first)));
+		pool.release(second);
+		assertThat(pool.getIdle(), is(1));
+	}
+
+	@Test
+	public void testBorrowDistinctConnections() throws SQLException {
+		PooledConnection first = pool.borrow();
+		PooledConnection second = pool.borrow();
+
+		assertThat(second.getConnection(), is(not(sameInstance(first.getConnection()))));
+		pool.release(first);
+		pool.release(second);
+	}
+
+	@Test(expected = SQLException.class)
+	public void testBorrowTimeout() throws SQLException {
+		pool.borrow();
+		pool.borrow();
+
+		// Both connections are in use.
+		pool.borrow();
+	}
+
+	@Test(expected = SQLException.class)
+	public void testBorrowClosed() throws SQLException {
+		pool.close();
+		pool.borrow();
+	}
+
+	@Test
+	public void testPrepareCached() throws SQLException {
+		PooledConnection pc = pool.borrow();
+
+		assertThat(pc.prepare(SELECT_SQL), is(sameInstance(pc.prepare(SELECT_SQL))));
+		pool.release(pc);
+	}
+
+	/**
+	 * invalidate tests.
+	 * 
+	 * @throws SQLException
+	 */
+	@Test
+	public void testInvalidateValidConnection() throws SQLException {
+		PooledConnection pc = pool.borrow();
+
+		assertThat(pool.invalidate(pc), is(false));
+		assertThat(pool.getIdle(), is(1));
+	}
+
+	@Test
+	public void testInvalidateValidConnectionDropsStatements() throws SQLException {
+		PooledConnection pc = pool.borrow();
+		PreparedStatement ps = pc.prepare("VALUES 1");
+		pool.invalidate(pc);
+
+		// The statement that failed may be invalid, it's prepared again.
+		assertThat(ps.isClosed(), is(true));
+		pc = pool.borrow();
+		assertThat(pc.prepare("VALUES 1"), is(not(sameInstance(ps))));
+		pool.release(pc);
+	}
+
+	@Test
+	public void testInvalidateBrokenConnectionReconnects() throws SQLException {
+		PooledConnection broken = pool.borrow();
+		broken.getConnection().close();
+
+		assertThat(pool.invalidate(broken), is(true));
+		assertThat(pool.getIdle(), is(0));
+
+		// A new connection is opened.
+		PooledConnection pc = pool.borrow();
+		assertThat(pc.getConnection().isValid(1), is(true));
+		pool.release(pc);
+	}
+
+	@Test
+	public void testSingleConnectionCantReconnect() throws SQLException {
+		ConnectionPool single = new ConnectionPool(DriverManager.getConnection(URL, getConnProps()));
+		assertThat(single.canReconnect(), is(false));
+
+		PooledConnection pc = single.borrow();
+		pc.getConnection().close();
+		single.invalidate(pc);
+
+		try {
+			single.borrow();
+			fail("Expected SQLException");
+		} catch (SQLException e) {
+			assertThat(e.getMessage(), containsString("can't be reopened"));
+		}
+	}
+
+	private static Properties getConnProps() {
+		Properties connProps = new Properties();
+		connProps.setProperty("user", USER);
+		connProps.setProperty("password", PASSWORD);
+		return connProps;
+	}
+}
@@ -3,11 +3,21 @@ package com.fbudassi.logger.handler;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.ErrorManager;
 import java.util.logging.LogRecord;
 
 import org.junit.After;
@@ -15,6 +25,8 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import com.fbudassi.logger.JULJobLoggerLevel;
+import com.fbudassi.logger.binary.LogEntry;
+import com.fbudassi.logger.handler.ConnectionPool.PooledConnection;
 
 /**
  * Tests for DatabaseHandler. It uses an in-memory RDBMS to avoid mocking JDBC.
@@ -33,6 +45,18 @@ public class DatabaseHandlerTest {
 	private static final String USER = "sa";
 	private static final String PASSWORD = "";
 	private static final String TABLE = "joblogger";
+	private static final String ASYNC_TABLE = "joblogger_async";
+	private static final String POOL_TABLE = "joblogger_pool";
+	private static final String DEDUP_TABLE = "joblogger_dedup";
+	private static final String PART_TABLE = "joblogger_part";
+	private static final String JOURNAL_TABLE = "joblogger_journal";
+
+	/**
+	 * Time partitioning: 2016-05-01T00:00:00Z and the length of a day and an hour.
+	 */
+	private static final long DAY_START = 1462060800000L;
+	private static final long DAY = 86400000L;
+	private static final long HOUR = 3600000L;
 
 	/**
 	 * Database queries.
@@ -81,7 +105,7 @@ public class DatabaseHandlerTest {
 	@Test(expected = IllegalArgumentException.class)
 	public void testCreateDatabaseHandlerNullConnection() {
 		try {
-			new DatabaseHandler(null, TABLE);
+			new DatabaseHandler((Connection) null, TABLE);
 		} catch (SQLException e) {
 			fail();
 		}
@@ -185,4 +209,602 @@ public class DatabaseHandlerTest {
 		assertThat(selectRs.getString(7), is(notNullValue()));
 		assertThat(selectRs.next(), is(false));
 	}
+
+	@Test
+	public void testPublishAsyncBatched() throws SQLException {
+		// The async writer commits its own transactions, so it gets its own connection and table to keep isolation.
+		Connection asyncConnection = DriverManager.getConnection(URL, USER, PASSWORD);
+		DatabaseHandler dbh = new DatabaseHandler(asyncConnection, ASYNC_TABLE, 10, 50, 100);
+
+		try {
+			// Publish more records than a single batch holds.
+			for (int i = 0; i < 25; i++) {
+				LogRecord lr = new LogRecord(JULJobLoggerLevel.MESSAGE, LOG_MESSAGE);
+				lr.setLoggerName(this.getClass().getCanonicalName());
+				dbh.publish(lr);
+			}
+
+			// Flush must wait until every record is in the database.
+			dbh.flush();
+
+			ResultSet countRs = connection.createStatement().executeQuery("SELECT COUNT(*) FROM " + ASYNC_TABLE);
+			assertThat(countRs.next(), is(true));
+			assertThat(countRs.getInt(1), is(25));
+		} finally {
+			dbh.clear();
+			dbh.close();
+		}
+	}
+
+	@Test
+	public void testCloseAsyncDrainsQueue() throws SQLException {
+		Connection asyncConnection = DriverManager.getConnection(URL, USER, PASSWORD);
+		DatabaseHandler dbh = new DatabaseHandler(asyncConnection, ASYNC_TABLE, 100, 1000, 100);
+
+		for (int i = 0; i < 5; i++) {
+			LogRecord lr = new LogRecord(JULJobLoggerLevel.WARN, LOG_MESSAGE);
+			lr.setLoggerName(this.getClass().getCanonicalName());
+			dbh.publish(lr);
+		}
+
+		// Close must write pending records before releasing the connection.
+		dbh.close();
+
+		ResultSet countRs = connection.createStatement().executeQuery("SELECT COUNT(*) FROM " + ASYNC_TABLE);
+		assertThat(countRs.next(), is(true));
+		assertThat(countRs.getInt(1), is(5));
+		connection.createStatement().executeUpdate("TRUNCATE TABLE " + ASYNC_TABLE);
+		connection.commit();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateDatabaseHandlerInvalidBatchSize() throws SQLException {
+		new DatabaseHandler(connection, TABLE, 0, 50, 100);
+	}
+
+	@Test
+	public void testPublishAsyncPartitioned() throws Exception {
+		final DatabaseHandler dbh = new DatabaseHandler(newPool(4), POOL_TABLE, 10, 20, 1000, 4);
+		assertThat(dbh.getWriterCount(), is(4));
+
+		try {
+			Thread[] threads = new Thread[8];
+			for (int t = 0; t < threads.length; t++) {
+				threads[t] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						for (int i = 0; i < 100; i++) {
+							LogRecord lr = new LogRecord(JULJobLoggerLevel.MESSAGE, LOG_MESSAGE);
+							lr.setLoggerName(Thread.currentThread().getName());
+							dbh.publish(lr);
+						}
+					}
+				}, "testPublishAsyncPartitioned-" + t);
+				threads[t].start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			dbh.flush();
+
+			// Every record was written, and the records of each thread kept their order.
+			ResultSet selectRs = connection.createStatement().executeQuery("SELECT logger, sequence FROM " + POOL_TABLE);
+			Map<String, Long> lastSequence = new HashMap<>();
+			int count = 0;
+			while (selectRs.next()) {
+				Long last = lastSequence.put(selectRs.getString(1), selectRs.getLong(2));
+				if (last != null) {
+					assertThat(selectRs.getLong(2), is(greaterThan(last)));
+				}
+				count++;
+			}
+			assertThat(count, is(800));
+			assertThat(lastSequence.size(), is(8));
+		} finally {
+			dbh.clear();
+			dbh.close();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateDatabaseHandlerInvalidWriterCount() throws SQLException {
+		new DatabaseHandler(newPool(1), POOL_TABLE, 10, 50, 100, 0);
+	}
+
+	@Test
+	public void testPublishConcurrentPooled() throws Exception {
+		final DatabaseHandler dbh = new DatabaseHandler(newPool(4), POOL_TABLE);
+
+		try {
+			// Every thread inserts through its own connection and statement.
+			Thread[] threads = new Thread[8];
+			for (int t = 0; t < threads.length; t++) {
+				threads[t] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						for (int i = 0; i < 50; i++) {
+							LogRecord lr = new LogRecord(JULJobLoggerLevel.MESSAGE, LOG_MESSAGE);
+							lr.setLoggerName(Thread.currentThread().getName());
+							dbh.publish(lr);
+						}
+					}
+				});
+				threads[t].start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+
+			ResultSet countRs = connection.createStatement().executeQuery("SELECT COUNT(*) FROM " + POOL_TABLE + " WHERE message = '" + LOG_MESSAGE + "'");
+			assertThat(countRs.next(), is(true));
+			assertThat(countRs.getInt(1), is(400));
+			assertThat(dbh.getPool().getIdle(), is(lessThanOrEqualTo(4)));
+		} finally {
+			dbh.clear();
+			dbh.close();
+		}
+	}
+
+	@Test
+	public void testPublishReconnects() throws SQLException {
+		ConnectionPool pool = newPool(1);
+		DatabaseHandler dbh = new DatabaseHandler(pool, POOL_TABLE);
+
+		try {
+			// Break the idle connection, as a database restart would.
+			PooledConnection pc = pool.borrow();
+			pc.getConnection().close();
+			pool.release(pc);
+
+			LogRecord lr = new LogRecord(JULJobLoggerLevel.ERROR, LOG_MESSAGE);
+			lr.setLoggerName(this.getClass().getCanonicalName());
+			dbh.publish(lr);
+
+			ResultSet countRs = connection.createStatement().executeQuery("SELECT COUNT(*) FROM " + POOL_TABLE);
+			assertThat(countRs.next(), is(true));
+			assertThat(countRs.getInt(1), is(1));
+		} finally {
+			dbh.clear();
+			dbh.close();
+		}
+	}
+
+	@Test
+	public void testPublishTraceDeduplicated() throws SQLException {
+		DatabaseHandler dbh = new DatabaseHandler(newPool(1), DEDUP_TABLE);
+		dbh.enableTraceDeduplication(16);
+
+		try {
+			// The same failure, logged over and over.
+			for (int i = 0; i < 10; i++) {
+				LogRecord lr = new LogRecord(JULJobLoggerLevel.ERROR, LOG_MESSAGE);
+				lr.setLoggerName(this.getClass().getCanonicalName());
+				lr.setThrown(new IllegalStateException("Failure " + i));
+				dbh.publish(lr);
+			}
+			LogRecord noThrown = new LogRecord(JULJobLoggerLevel.ERROR, LOG_MESSAGE);
+			noThrown.setLoggerName(this.getClass().getCanonicalName());
+			dbh.publish(noThrown);
+
+			ResultSet traceRs = connection.createStatement().executeQuery("SELECT traceID, stackTrace FROM " + DEDUP_TABLE + "_trace");
+			assertThat(traceRs.next(), is(true));
+			long traceID = traceRs.getLong(1);
+			assertThat(traceRs.getString(2), startsWith(IllegalStateException.class.getName()));
+			assertThat(traceRs.next(), is(false));
+
+			// Log rows only keep the trace ID.
+			ResultSet selectRs = connection.createStatement().executeQuery("SELECT stackTrace, traceID FROM " + DEDUP_TABLE);
+			for (int i = 0; i < 10; i++) {
+				assertThat(selectRs.next(), is(true));
+				assertThat(selectRs.getString(1), is(nullValue()));
+				assertThat(selectRs.getLong(2), is(traceID));
+			}
+			assertThat(selectRs.next(), is(true));
+			assertThat(selectRs.getObject(2), is(nullValue()));
+			assertThat(selectRs.next(), is(false));
+		} finally {
+			dbh.clear();
+			dbh.close();
+		}
+	}
+
+	@Test
+	public void testPublishAsyncTraceDeduplicated() throws SQLException {
+		DatabaseHandler dbh = new DatabaseHandler(newPool(2), DEDUP_TABLE, 10, 20, 100, 2);
+		dbh.enableTraceDeduplication(16);
+
+		try {
+			for (int i = 0; i < 25; i++) {
+				LogRecord lr = new LogRecord(JULJobLoggerLevel.ERROR, LOG_MESSAGE);
+				lr.setLoggerName(this.getClass().getCanonicalName());
+				lr.setThrown(new IllegalStateException());
+				dbh.publish(lr);
+			}
+			dbh.flush();
+
+			ResultSet countRs = connection.createStatement().executeQuery("SELECT COUNT(*) FROM " + DEDUP_TABLE + "_trace");
+			assertThat(countRs.next(), is(true));
+			assertThat(countRs.getInt(1), is(1));
+
+			countRs = connection.createStatement().executeQuery("SELECT COUNT(*) FROM " + DEDUP_TABLE + " WHERE traceID IS NOT NULL");
+			assertThat(countRs.next(), is(true));
+			assertThat(countRs.getInt(1), is(25));
+		} finally {
+			dbh.clear();
+			dbh.close();
+		}
+	}
+
+	@Test
+	public void testEnableTraceDeduplicationAddsColumn() throws SQLException {
+		// A log table created before stack traces could be deduplicated.
+		Connection legacyConnection = DriverManager.getConnection(URL, USER, PASSWORD);
+		legacyConnection.createStatement().execute("CREATE TABLE joblogger_legacy (logTime timestamp not null, level varchar(32) not null,"
+				+ "logger varchar(255) not null, message varchar(255) not null, sequence integer not null, threadID integer not null,"
+				+ "stackTrace varchar(8192))");
+
+		DatabaseHandler dbh = new DatabaseHandler(legacyConnection, "joblogger_legacy");
+		try {
+			dbh.enableTraceDeduplication(16);
+
+			ResultSet columnRs = legacyConnection.getMetaData().getColumns(null, null, "JOBLOGGER_LEGACY", "TRACEID");
+			assertThat(columnRs.next(), is(true));
+		} finally {
+			legacyConnection.createStatement().execute("DROP TABLE joblogger_legacy");
+			legacyConnection.createStatement().execute("DROP TABLE joblogger_legacy_trace");
+			dbh.close();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEnableTraceDeduplicationInvalidCacheSize() throws SQLException {
+		new DatabaseHandler(connection, TABLE).enableTraceDeduplication(0);
+	}
+
+	@Test
+	public void testPublishTimePartitioned() throws SQLException {
+		DatabaseHandler dbh = new DatabaseHandler(newPool(1), PART_TABLE);
+		dbh.enableTimePartitioning(PartitionPeriod.DAILY, 0);
+
+		try {
+			assertThat(dbh.getTable(DAY_START + DAY - 1), is(PART_TABLE + "_20160501"));
+			assertThat(dbh.getTable(DAY_START + DAY), is(PART_TABLE + "_20160502"));
+
+			publishAt(dbh, DAY_START, 3);
+			publishAt(dbh, DAY_START + DAY + 10 * HOUR, 2);
+
+			assertThat(count(PART_TABLE + "_20160501"), is(3));
+			assertThat(count(PART_TABLE + "_20160502"), is(2));
+			assertThat(count(PART_TABLE), is(0));
+
+			// The view joins every partition.
+			assertThat(count(PART_TABLE + "_all"), is(5));
+		} finally {
+			dbh.clear();
+			dbh.close();
+		}
+	}
+
+	@Test
+	public void testPartitionRetention() throws SQLException {
+		DatabaseHandler dbh = new DatabaseHandler(newPool(1), PART_TABLE);
+		dbh.enableTimePartitioning(PartitionPeriod.DAILY, 2);
+
+		try {
+			for (int day = 0; day < 4; day++) {
+				publishAt(dbh, DAY_START + day * DAY, day + 1);
+			}
+
+			// Expired partitions are dropped as a whole, the view only joins the ones left.
+			assertThat(isTablePresent(PART_TABLE + "_20160501"), is(false));
+			assertThat(isTablePresent(PART_TABLE + "_20160502"), is(false));
+			assertThat(count(PART_TABLE + "_20160503"), is(3));
+			assertThat(count(PART_TABLE + "_20160504"), is(4));
+			assertThat(count(PART_TABLE + "_all"), is(7));
+
+			// A record older than every partition kept goes to the log table instead of a table dropped right away.
+			publishAt(dbh, DAY_START, 1);
+			assertThat(isTablePresent(PART_TABLE + "_20160501"), is(false));
+			assertThat(count(PART_TABLE), is(1));
+			assertThat(count(PART_TABLE + "_all"), is(8));
+		} finally {
+			dbh.clear();
+			dbh.close();
+		}
+	}
+
+	@Test
+	public void testPartitionRetentionOnEnable() throws SQLException {
+		DatabaseHandler dbh = new DatabaseHandler(newPool(1), PART_TABLE);
+		dbh.enableTimePartitioning(PartitionPeriod.HOURLY, 0);
+		try {
+			for (int hour = 0; hour < 3; hour++) {
+				publishAt(dbh, DAY_START + hour * HOUR, 1);
+			}
+		} finally {
+			dbh.close();
+		}
+
+		// Partitions left by a previous run count for the retention.
+		dbh = new DatabaseHandler(newPool(1), PART_TABLE);
+		dbh.enableTimePartitioning(PartitionPeriod.HOURLY, 1);
+		try {
+			assertThat(isTablePresent(PART_TABLE + "_2016050101"), is(false));
+			assertThat(count(PART_TABLE + "_2016050102"), is(1));
+			assertThat(count(PART_TABLE + "_all"), is(1));
+		} finally {
+			dbh.clear();
+			dbh.close();
+		}
+	}
+
+	@Test
+	public void testPublishAsyncTimePartitioned() throws SQLException {
+		DatabaseHandler dbh = new DatabaseHandler(newPool(2), PART_TABLE, 10, 20, 100, 2);
+		dbh.enableTimePartitioning(PartitionPeriod.HOURLY, 0);
+
+		try {
+			// Batches span the end of an hour, one record per millisecond.
+			for (int i = 0; i < 50; i++) {
+				LogRecord lr = new LogRecord(JULJobLoggerLevel.MESSAGE, LOG_MESSAGE);
+				lr.setLoggerName(this.getClass().getCanonicalName());
+				lr.setMillis(DAY_START + HOUR - 20 + i);
+				dbh.publish(lr);
+			}
+			dbh.flush();
+
+			assertThat(count(PART_TABLE + "_2016050100"), is(20));
+			assertThat(count(PART_TABLE + "_2016050101"), is(30));
+		} finally {
+			dbh.clear();
+			dbh.close();
+		}
+	}
+
+	@Test
+	public void testClearDropsPartitions() throws SQLException {
+		DatabaseHandler dbh = new DatabaseHandler(newPool(1), PART_TABLE);
+		dbh.enableTimePartitioning(PartitionPeriod.DAILY, 0);
+
+		try {
+			publishAt(dbh, DAY_START, 1);
+			dbh.clear();
+
+			assertThat(isTablePresent(PART_TABLE + "_20160501"), is(false));
+			assertThat(count(PART_TABLE + "_all"), is(0));
+
+			// The partition is created again on the next record.
+			publishAt(dbh, DAY_START, 1);
+			assertThat(count(PART_TABLE + "_20160501"), is(1));
+		} finally {
+			dbh.clear();
+			dbh.close();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEnableTimePartitioningInvalidRetention() throws SQLException {
+		new DatabaseHandler(connection, TABLE).enableTimePartitioning(PartitionPeriod.DAILY, -1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEnableTimePartitioningNullPeriod() throws SQLException {
+		new DatabaseHandler(connection, TABLE).enableTimePartitioning(null, 0);
+	}
+
+	@Test
+	public void testJournalStoresAndReplays() throws Exception {
+		File dir = Files.createTempDirectory("joblogger-journal").toFile();
+		DatabaseHandler dbh = new DatabaseHandler(newPool(1), JOURNAL_TABLE);
+		AtomicInteger errors = countErrors(dbh);
+		dbh.enableJournal(dir, 1024 * 1024, 20);
+
+		try {
+			// The database is down: records are journaled, only the first one tried to insert.
+			setJournalTableOnline(false);
+			publishAt(dbh, DAY_START, 5);
+			assertThat(errors.get(), is(greaterThan(0)));
+			assertThat(dbh.getJournalSize(), is(greaterThan(0L)));
+
+			// Once it's back, they're replayed.
+			setJournalTableOnline(true);
+			awaitJournalReplayed(dbh);
+			assertThat(count(JOURNAL_TABLE), is(5));
+
+			// New records are inserted directly again.
+			publishAt(dbh, DAY_START + 1, 1);
+			assertThat(count(JOURNAL_TABLE), is(6));
+		} finally {
+			setJournalTableOnline(true);
+			dbh.clear();
+			dbh.close();
+			deleteDirectory(dir);
+		}
+	}
+
+	@Test
+	public void testJournalAsyncNeverBlocks() throws Exception {
+		File dir = Files.createTempDirectory("joblogger-journal").toFile();
+		DatabaseHandler dbh = new DatabaseHandler(newPool(2), JOURNAL_TABLE, 1, 0, 1, 1);
+		countErrors(dbh);
+		dbh.enableJournal(dir, 1024 * 1024, 20);
+
+		try {
+			// The queue holds one record and the database is down: the rest go to the journal instead of blocking.
+			setJournalTableOnline(false);
+			for (int i = 0; i < 50; i++) {
+				LogRecord lr = new LogRecord(JULJobLoggerLevel.ERROR, LOG_MESSAGE);
+				lr.setLoggerName(this.getClass().getCanonicalName());
+				lr.setThrown(new IllegalStateException("Failure " + i));
+				dbh.publish(lr);
+			}
+			dbh.flush();
+			assertThat(dbh.getDropped(), is(0L));
+
+			setJournalTableOnline(true);
+			awaitJournalReplayed(dbh);
+			assertThat(count(JOURNAL_TABLE), is(50));
+
+			// Stack traces are kept.
+			ResultSet traceRs = connection.createStatement().executeQuery("SELECT COUNT(*) FROM " + JOURNAL_TABLE + " WHERE stackTrace LIKE '"
+					+ IllegalStateException.class.getName() + "%'");
+			assertThat(traceRs.next(), is(true));
+			assertThat(traceRs.getInt(1), is(50));
+		} finally {
+			setJournalTableOnline(true);
+			dbh.clear();
+			dbh.close();
+			deleteDirectory(dir);
+		}
+	}
+
+	@Test
+	public void testJournalReplayedOnRestart() throws Exception {
+		File dir = Files.createTempDirectory("joblogger-journal").toFile();
+		DatabaseHandler dbh = new DatabaseHandler(newPool(1), JOURNAL_TABLE);
+		countErrors(dbh);
+		dbh.enableJournal(dir, 1024 * 1024, 20);
+		setJournalTableOnline(false);
+		try {
+			publishAt(dbh, DAY_START, 3);
+		} finally {
+			dbh.close();
+			setJournalTableOnline(true);
+		}
+
+		// The records left in the journal are replayed by the next handler.
+		dbh = new DatabaseHandler(newPool(1), JOURNAL_TABLE);
+		dbh.enableJournal(dir, 1024 * 1024, 20);
+		try {
+			awaitJournalReplayed(dbh);
+			assertThat(count(JOURNAL_TABLE), is(3));
+		} finally {
+			dbh.clear();
+			dbh.close();
+			deleteDirectory(dir);
+		}
+	}
+
+	@Test
+	public void testJournalCorruptSegment() throws Exception {
+		// Two segments left by previous runs, the first one corrupt.
+		File dir = Files.createTempDirectory("joblogger-journal").toFile();
+		for (int run = 0; run < 2; run++) {
+			DiskJournal journal = new DiskJournal(dir, 1024 * 1024);
+			List<LogEntry> entries = new ArrayList<>();
+			for (int i = 0; i < 3; i++) {
+				entries.add(new LogEntry(DAY_START + i, "MESSAGE", 800, this.getClass().getCanonicalName(), LOG_MESSAGE + i, i, 1, null));
+			}
+			journal.append(entries);
+			journal.close();
+		}
+		File[] segments = dir.listFiles();
+		Arrays.sort(segments);
+		DiskJournalTest.corrupt(segments[0]);
+
+		// The corrupt segment is moved aside and the rest is replayed.
+		DatabaseHandler dbh = new DatabaseHandler(newPool(1), JOURNAL_TABLE);
+		AtomicInteger errors = countErrors(dbh);
+		dbh.enableJournal(dir, 1024 * 1024, 20);
+		try {
+			awaitJournalReplayed(dbh);
+			assertThat(count(JOURNAL_TABLE), is(3));
+			assertThat(errors.get(), is(1));
+			assertThat(new File(segments[0].getPath().replace(DiskJournal.SEGMENT_SUFFIX, DiskJournal.CORRUPT_SUFFIX)).isFile(), is(true));
+
+			// New records are inserted directly.
+			publishAt(dbh, DAY_START + 1, 1);
+			assertThat(count(JOURNAL_TABLE), is(4));
+		} finally {
+			dbh.clear();
+			dbh.close();
+			deleteDirectory(dir);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEnableJournalInvalidRetry() throws IOException, SQLException {
+		new DatabaseHandler(connection, TABLE).enableJournal(new File("."), 1024, 0);
+	}
+
+	/**
+	 * Take the journal test table away, as if the database was down, or bring it back.
+	 */
+	private static void setJournalTableOnline(boolean online) throws SQLException {
+		String offline = JOURNAL_TABLE + "_offline";
+		if (online && isTablePresent(offline)) {
+			connection.createStatement().execute("ALTER TABLE " + offline + " RENAME TO " + JOURNAL_TABLE);
+		} else if (!online && isTablePresent(JOURNAL_TABLE)) {
+			connection.createStatement().execute("ALTER TABLE " + JOURNAL_TABLE + " RENAME TO " + offline);
+		}
+	}
+
+	/**
+	 * Wait until the replayer has emptied the journal.
+	 */
+	private static void awaitJournalReplayed(DatabaseHandler dbh) throws InterruptedException {
+		for (int i = 0; i < 500 && dbh.getJournalSize() > 0; i++) {
+			Thread.sleep(10);
+		}
+		assertThat(dbh.getJournalSize(), is(0L));
+	}
+
+	/**
+	 * Count the errors of a handler instead of printing them.
+	 */
+	private static AtomicInteger countErrors(DatabaseHandler dbh) {
+		final AtomicInteger errors = new AtomicInteger();
+		dbh.setErrorManager(new ErrorManager() {
+			@Override
+			public void error(String msg, Exception ex, int code) {
+				errors.incrementAndGet();
+			}
+		});
+		return errors;
+	}
+
+	private static void deleteDirectory(File dir) {
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	/**
+	 * Publish records logged at a certain time.
+	 */
+	private void publishAt(DatabaseHandler dbh, long millis, int records) {
+		for (int i = 0; i < records; i++) {
+			LogRecord lr = new LogRecord(JULJobLoggerLevel.MESSAGE, LOG_MESSAGE);
+			lr.setLoggerName(this.getClass().getCanonicalName());
+			lr.setMillis(millis);
+			dbh.publish(lr);
+		}
+	}
+
+	private static int count(String table) throws SQLException {
+		ResultSet countRs = connection.createStatement().executeQuery("SELECT COUNT(*) FROM " + table);
+		assertThat(countRs.next(), is(true));
+		return countRs.getInt(1);
+	}
+
+	private static boolean isTablePresent(String table) throws SQLException {
+		try (ResultSet rs = connection.getMetaData().getTables(null, null, table.toUpperCase(), null)) {
+			return rs.next();
+		}
+	}
+
+	/**
+	 * Build a pool of connections to the test database.
+	 * 
+	 * @param size
+	 * @return
+	 */
+	private static ConnectionPool newPool(int size) {
+		Properties connProps = new Properties();
+		connProps.setProperty("user", USER);
+		connProps.setProperty("password", PASSWORD);
+
+		return new ConnectionPool(URL, connProps, size, 5000);
+	}
 }
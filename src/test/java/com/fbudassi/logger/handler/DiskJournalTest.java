@@ -0,0 +1,275 @@
+package com.fbudassi.logger.handler;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fbudassi.logger.binary.BinaryLogFormat;
+import com.fbudassi.logger.binary.LogEntry;
+
+/**
+ * Tests for DiskJournal.
+ * 
+ * @author fbudassi
+ */
+public class DiskJournalTest {
+
+	private static final String LOG_MESSAGE = "Test log message";
+	private static final long BASE_MILLIS = 1462097730123L;
+
+	private File dir;
+
+	@Before
+	public void createDirectory() throws IOException {
+		dir = Files.createTempDirectory("joblogger-journal").toFile();
+	}
+
+	@After
+	public void deleteDirectory() {
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateJournalNullDirectory() throws IOException {
+		new DiskJournal(null, 1024);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateJournalInvalidMaxSize() throws IOException {
+		new DiskJournal(dir, 0);
+	}
+
+	@Test
+	public void testAppendRead() throws IOException {
+		DiskJournal journal = new DiskJournal(dir, 1024 * 1024);
+		try {
+			assertThat(journal.isPending(), is(false));
+			journal.append(entries(0, 10));
+			assertThat(journal.isPending(), is(true));
+			assertThat(journal.getSize(), is(greaterThan(0L)));
+
+			List<LogEntry> read = journal.read(100);
+			assertThat(read.size(), is(10));
+			assertThat(read.get(0).getMessage(), is(LOG_MESSAGE + 0));
+			assertThat(read.get(9).getMessage(), is(LOG_MESSAGE + 9));
+			assertThat(read.get(9).getMillis(), is(BASE_MILLIS + 9));
+			journal.commit();
+
+			// Everything was replayed: the segment is gone.
+			assertThat(journal.read(100).size(), is(0));
+			assertThat(journal.isPending(), is(false));
+			assertThat(journal.getSize(), is(0L));
+			assertThat(segments().length, is(0));
+		} finally {
+			journal.close();
+		}
+	}
+
+	@Test
+	public void testReadBatches() throws IOException {
+		DiskJournal journal = new DiskJournal(dir, 1024 * 1024);
+		try {
+			journal.append(entries(0, 10));
+
+			assertThat(journal.read(4).get(0).getMessage(), is(LOG_MESSAGE + 0));
+			journal.commit();
+			assertThat(journal.read(4).get(0).getMessage(), is(LOG_MESSAGE + 4));
+			journal.commit();
+			assertThat(journal.read(4).size(), is(2));
+			journal.commit();
+			assertThat(journal.read(4).size(), is(0));
+		} finally {
+			journal.close();
+		}
+	}
+
+	@Test
+	public void testAppendWhileReading() throws IOException {
+		DiskJournal journal = new DiskJournal(dir, 1024 * 1024);
+		try {
+			journal.append(entries(0, 3));
+			assertThat(journal.read(10).size(), is(3));
+
+			// The replayer caught up: the next entries go to a new segment.
+			journal.append(entries(3, 5));
+			journal.commit();
+			assertThat(segments().length, is(2));
+
+			List<LogEntry> read = journal.read(10);
+			assertThat(read.size(), is(2));
+			assertThat(read.get(0).getMessage(), is(LOG_MESSAGE + 3));
+			journal.commit();
+			assertThat(journal.read(10).size(), is(0));
+			assertThat(segments().length, is(0));
+		} finally {
+			journal.close();
+		}
+	}
+
+	@Test
+	public void testResumeFromCheckpoint() throws IOException {
+		DiskJournal journal = new DiskJournal(dir, 1024 * 1024);
+		journal.append(entries(0, 10));
+		assertThat(journal.read(4).size(), is(4));
+		journal.commit();
+		journal.close();
+
+		journal = new DiskJournal(dir, 1024 * 1024);
+		try {
+			assertThat(journal.isPending(), is(true));
+			List<LogEntry> read = journal.read(100);
+			assertThat(read.size(), is(6));
+			assertThat(read.get(0).getMessage(), is(LOG_MESSAGE + 4));
+		} finally {
+			journal.close();
+		}
+	}
+
+	@Test
+	public void testUncommittedReadAgain() throws IOException {
+		DiskJournal journal = new DiskJournal(dir, 1024 * 1024);
+		journal.append(entries(0, 5));
+		assertThat(journal.read(100).size(), is(5));
+		journal.close();
+
+		// Entries read but not committed, i.e. the process stopped while inserting them.
+		journal = new DiskJournal(dir, 1024 * 1024);
+		try {
+			assertThat(journal.read(100).size(), is(5));
+		} finally {
+			journal.close();
+		}
+	}
+
+	@Test
+	public void testAppendAfterRestart() throws IOException {
+		DiskJournal journal = new DiskJournal(dir, 1024 * 1024);
+		journal.append(entries(0, 2));
+		journal.close();
+
+		journal = new DiskJournal(dir, 1024 * 1024);
+		try {
+			journal.append(entries(2, 4));
+			List<LogEntry> read = new ArrayList<>();
+			for (List<LogEntry> batch = journal.read(100); !batch.isEmpty(); batch = journal.read(100)) {
+				read.addAll(batch);
+				journal.commit();
+			}
+			assertThat(read.size(), is(4));
+			assertThat(read.get(0).getMessage(), is(LOG_MESSAGE + 0));
+			assertThat(read.get(3).getMessage(), is(LOG_MESSAGE + 3));
+		} finally {
+			journal.close();
+		}
+	}
+
+	@Test
+	public void testTruncatedSegment() throws IOException {
+		// The process stopped right after creating the segment.
+		Files.write(new File(dir, DiskJournal.SEGMENT_PREFIX + 0 + DiskJournal.SEGMENT_SUFFIX).toPath(), new byte[] { 'J', 'L' });
+
+		DiskJournal journal = new DiskJournal(dir, 1024 * 1024);
+		try {
+			assertThat(journal.isPending(), is(true));
+			assertThat(journal.read(100).size(), is(0));
+			assertThat(journal.isPending(), is(false));
+			assertThat(segments().length, is(0));
+		} finally {
+			journal.close();
+		}
+	}
+
+	@Test
+	public void testSkipCorruptSegment() throws IOException {
+		DiskJournal journal = new DiskJournal(dir, 1024 * 1024);
+		journal.append(entries(0, 3));
+		journal.close();
+		journal = new DiskJournal(dir, 1024 * 1024);
+		journal.append(entries(3, 5));
+		journal.close();
+		File[] segments = segments();
+		Arrays.sort(segments);
+		corrupt(segments[0]);
+
+		journal = new DiskJournal(dir, 1024 * 1024);
+		try {
+			assertThat(journal.skipSegment(), is(false));
+			try {
+				journal.read(100);
+				fail("A corrupt segment can't be read");
+			} catch (IOException e) {
+				// Expected.
+			}
+
+			// The segment is moved aside and the replay goes on with the next one.
+			assertThat(journal.skipSegment(), is(true));
+			assertThat(new File(segments[0].getPath().replace(DiskJournal.SEGMENT_SUFFIX, DiskJournal.CORRUPT_SUFFIX)).isFile(), is(true));
+			List<LogEntry> read = journal.read(100);
+			assertThat(read.size(), is(2));
+			assertThat(read.get(0).getMessage(), is(LOG_MESSAGE + 3));
+			journal.commit();
+			assertThat(journal.read(100).size(), is(0));
+			assertThat(journal.isPending(), is(false));
+			assertThat(journal.getSize(), is(0L));
+		} finally {
+			journal.close();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testAppendFull() throws IOException {
+		DiskJournal journal = new DiskJournal(dir, 16);
+		try {
+			journal.append(entries(0, 1));
+			journal.append(entries(1, 2));
+		} finally {
+			journal.close();
+		}
+	}
+
+	private File[] segments() {
+		return dir.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith(DiskJournal.SEGMENT_PREFIX);
+			}
+		});
+	}
+
+	/**
+	 * Replace the entries of a segment with a record that uses an undefined string.
+	 */
+	static void corrupt(File segment) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+			raf.setLength(BinaryLogFormat.MAGIC.length + 1);
+			raf.seek(raf.length());
+			raf.write(new byte[] { BinaryLogFormat.FRAME_RECORD, 3, 0, 0, 99 });
+		}
+	}
+
+	/**
+	 * Build entries from..to (exclusive), one per millisecond.
+	 */
+	private static List<LogEntry> entries(int from, int to) {
+		List<LogEntry> entries = new ArrayList<>();
+		for (int i = from; i < to; i++) {
+			entries.add(new LogEntry(BASE_MILLIS + i, "MESSAGE", 800, "DiskJournalTest", LOG_MESSAGE + i, i, 1, null));
+		}
+		return entries;
+	}
+}
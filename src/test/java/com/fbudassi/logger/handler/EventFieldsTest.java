@@ -0,0 +1,69 @@
+package com.fbudassi.logger.handler;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for EventFields.
+ * 
+ * @author fbudassi
+ */
+public class EventFieldsTest {
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAddKeyNull() {
+		new EventFields().add(null, 1L);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testGetKeyOutOfBounds() {
+		new EventFields().add("a", 1L).getKey(1);
+	}
+
+	@Test
+	public void testAddKeepsOrderAndTypes() {
+		EventFields fields = new EventFields().add("name", "job").add("rows", 10L).add("ratio", 0.25).add("ok", false);
+
+		assertThat(fields.size(), is(4));
+		assertThat(fields.getKey(0), is("name"));
+		assertThat(fields.getValue(0), is((Object) "job"));
+		assertThat(fields.getValue(1), is((Object) 10L));
+		assertThat(fields.getValue(2), is((Object) 0.25));
+		assertThat(fields.getValue(3), is((Object) false));
+	}
+
+	@Test
+	public void testAddGrows() {
+		EventFields fields = new EventFields();
+		for (int i = 0; i < 100; i++) {
+			fields.add("k" + i, (long) i);
+		}
+
+		assertThat(fields.size(), is(100));
+		assertThat(fields.getKey(99), is("k99"));
+		assertThat(fields.getValue(99), is((Object) 99L));
+	}
+
+	@Test
+	public void testEquals() {
+		EventFields fields = new EventFields().add("orderId", 1L).add("customer", "c-1").add("ok", true);
+		EventFields same = new EventFields().add("orderId", 1L).add("customer", "c-1").add("ok", true);
+		assertThat(same, is(fields));
+		assertThat(same.hashCode(), is(fields.hashCode()));
+		assertThat(new EventFields(), is(new EventFields()));
+
+		assertThat(new EventFields().add("orderId", 2L).add("customer", "c-1").add("ok", true), is(not(fields)));
+		assertThat(new EventFields().add("orderId", 1L).add("customer", "c-1"), is(not(fields)));
+		// Same text, different type.
+		assertThat(new EventFields().add("orderId", "1").add("customer", "c-1").add("ok", true), is(not(fields)));
+		assertThat(new EventFields().add("customer", "c-1").add("orderId", 1L).add("ok", true), is(not(fields)));
+	}
+
+	@Test
+	public void testToString() {
+		assertThat(new EventFields().toString(), is(""));
+		assertThat(new EventFields().add("jobId", "job-42").add("rows", 1000L).add("ok", true).toString(), is("jobId=job-42 rows=1000 ok=true"));
+	}
+}
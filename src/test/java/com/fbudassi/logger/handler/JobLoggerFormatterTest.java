@@ -0,0 +1,182 @@
+package com.fbudassi.logger.handler;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Date;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+import org.junit.Test;
+
+import com.fbudassi.logger.JULJobLoggerLevel;
+
+/**
+ * Tests for JobLoggerFormatter. Output is compared against java.util.logging.SimpleFormatter, which it replaces.
+ * 
+ * @author fbudassi
+ */
+public class JobLoggerFormatterTest {
+
+	private static final String LOG_MESSAGE = "Test log message";
+	private static final String LOG_MESSAGE_PARAM = "Test log message: {0}";
+
+	private final JobLoggerFormatter formatter = new JobLoggerFormatter();
+	private final SimpleFormatter simpleFormatter = new SimpleFormatter();
+
+	/**
+	 * formatMessage tests.
+	 */
+	@Test
+	public void testFormatMessageNoParams() {
+		LogRecord lr = newRecord("No params {0}");
+		assertThat(formatter.formatMessage(lr), is("No params {0}"));
+	}
+
+	@Test
+	public void testFormatMessageSameAsMessageFormat() {
+		assertSameMessage(LOG_MESSAGE_PARAM, "test_param");
+		assertSameMessage("{1} before {0}, twice {1}", "a", "b");
+		assertSameMessage("Missing {0} {3}", "a");
+		assertSameMessage("Numbers {0} and {1}", 1234567, 3.5);
+		assertSameMessage("Date {0}", new Date(0));
+		assertSameMessage("Null {0}", (Object) null);
+		assertSameMessage("Quoted '{0}' {1}", "a", "b");
+		assertSameMessage("Typed {0,number,#}", 1234567);
+		assertSameMessage("No placeholders {x}", "a");
+		assertSameMessage("Unbalanced {0", "a");
+	}
+
+	@Test
+	public void testFormatMessageMaxLength() {
+		LogRecord lr = newRecord("{0}{0}{0}", "0123456789");
+		assertThat(formatter.formatMessage(lr, 15), is("012345678901234"));
+		assertThat(formatter.formatMessage(lr, 0), is(""));
+		assertThat(formatter.formatMessage(newRecord(LOG_MESSAGE), 4), is("Test"));
+	}
+
+	@Test
+	public void testFormatMessageFields() {
+		LogRecord lr = new StructuredLogRecord(JULJobLoggerLevel.MESSAGE, "job finished", new EventFields().add("jobId", "job-42").add("rows", 1000L));
+		assertThat(formatter.formatMessage(lr), is("job finished jobId=job-42 rows=1000"));
+		assertThat(formatter.formatMessage(lr, 20), is("job finished jobId=j"));
+		assertThat(formatter.formatMessage(lr, 5), is("job f"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testFormatMessageNegativeMaxLength() {
+		formatter.formatMessage(newRecord(LOG_MESSAGE), -1);
+	}
+
+	/**
+	 * format tests.
+	 */
+	@Test
+	public void testFormatSameAsSimpleFormatter() {
+		LogRecord lr = newRecord(LOG_MESSAGE_PARAM, "test_param");
+		assertThat(formatter.format(lr), is(simpleFormatter.format(lr)));
+
+		lr.setSourceClassName(this.getClass().getCanonicalName());
+		lr.setSourceMethodName("testFormatSameAsSimpleFormatter");
+		assertThat(formatter.format(lr), is(simpleFormatter.format(lr)));
+	}
+
+	@Test
+	public void testFormatEventSameAsRecord() {
+		assertSameEvent(newRecord(LOG_MESSAGE));
+		assertSameEvent(newRecord(LOG_MESSAGE_PARAM, "test_param"));
+		assertSameEvent(newRecord("Quoted '{0}' {1,number,#}", "test_param", 42));
+		assertSameEvent(newRecord(null, "test_param"));
+
+		LogRecord lr = newRecord(LOG_MESSAGE);
+		lr.setThrown(new Exception());
+		assertSameEvent(lr);
+	}
+
+	@Test
+	public void testFormatFields() {
+		EventFields fields = new EventFields().add("rows", 3L);
+		LogRecord lr = new StructuredLogRecord(JULJobLoggerLevel.MESSAGE, LOG_MESSAGE, fields);
+		lr.setLoggerName(this.getClass().getCanonicalName());
+
+		// Same output as the plain message with the fields appended.
+		LogRecord plain = newRecord(LOG_MESSAGE + " rows=3");
+		plain.setMillis(lr.getMillis());
+		assertThat(formatter.format(lr), is(formatter.format(plain)));
+
+		String event = formatter.format(lr.getMillis(), lr.getLoggerName(), lr.getLevel(), lr.getMessage(), null, fields, null);
+		assertThat(event, is(formatter.format(lr)));
+	}
+
+	@Test
+	public void testFormatThrown() {
+		LogRecord lr = newRecord(LOG_MESSAGE);
+		lr.setThrown(new Exception());
+		assertThat(formatter.format(lr), is(simpleFormatter.format(lr)));
+	}
+
+	@Test
+	public void testFormatThrownBudget() {
+		LogRecord lr = newRecord(LOG_MESSAGE);
+		lr.setThrown(new Exception("message", new Exception("cause")));
+
+		// One frame of the exception; the cause was built on the same line, so all its frames are in common.
+		String formatted = new JobLoggerFormatter(Integer.MAX_VALUE, 1).format(lr);
+		assertThat(formatted.split("\tat ").length, is(2));
+		assertThat(formatted, containsString("Caused by: java.lang.Exception: cause"));
+		assertThat(formatted, containsString("frames omitted"));
+	}
+
+	@Test
+	public void testFormatStackTraceMaxLength() {
+		JobLoggerFormatter budgeted = new JobLoggerFormatter(20, Integer.MAX_VALUE);
+		Exception e = new Exception();
+
+		assertThat(budgeted.formatStackTrace(e, 100), is("java.lang.Exception" + System.getProperty("line.separator").charAt(0)));
+		assertThat(budgeted.formatStackTrace(e, 9), is("java.lang"));
+		assertThat(budgeted.formatStackTrace(null, 9), is(nullValue()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateNegativeMaxTraceFrames() {
+		new JobLoggerFormatter(100, -1);
+	}
+
+	/**
+	 * Assert that a template renders the same as java.util.logging.Formatter.formatMessage().
+	 * 
+	 * @param msg
+	 * @param params
+	 */
+	private void assertSameMessage(String msg, Object... params) {
+		LogRecord lr = newRecord(msg, params);
+
+		// Twice, to go through the template cache as well.
+		assertThat(formatter.formatMessage(lr), is(simpleFormatter.formatMessage(lr)));
+		assertThat(formatter.formatMessage(lr), is(simpleFormatter.formatMessage(lr)));
+	}
+
+	/**
+	 * Build a log record.
+	 * 
+	 * @param msg
+	 * @param params
+	 * @return
+	 */
+	/**
+	 * Assert that formatting the fields of a record renders the same as formatting the record.
+	 * 
+	 * @param lr
+	 */
+	private void assertSameEvent(LogRecord lr) {
+		String event = formatter.format(lr.getMillis(), lr.getLoggerName(), lr.getLevel(), lr.getMessage(), lr.getParameters(), lr.getThrown());
+		assertThat(event, is(formatter.format(lr)));
+	}
+
+	private LogRecord newRecord(String msg, Object... params) {
+		LogRecord lr = new LogRecord(JULJobLoggerLevel.MESSAGE, msg);
+		lr.setLoggerName(this.getClass().getCanonicalName());
+		lr.setParameters(params);
+		return lr;
+	}
+}
@@ -0,0 +1,139 @@
+package com.fbudassi.logger.handler;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.LogRecord;
+
+import org.junit.Test;
+
+import com.fbudassi.logger.JULJobLoggerLevel;
+
+/**
+ * Tests for JsonEncoder.
+ * 
+ * @author fbudassi
+ */
+public class JsonEncoderTest {
+
+	/**
+	 * 2016-05-01T10:15:30.123Z
+	 */
+	private static final long MILLIS = 1462097730123L;
+	private static final String PREFIX = "{\"time\":\"2016-05-01T10:15:30.123Z\",\"level\":\"MESSAGE\",\"logger\":\"job\",\"msg\":";
+
+	private final JsonEncoder encoder = new JsonEncoder();
+
+	/**
+	 * Constructor tests.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateNegativeTraceLength() {
+		new JsonEncoder(-1, 1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateNegativeTraceFrames() {
+		new JsonEncoder(1, -1);
+	}
+
+	/**
+	 * encode tests.
+	 */
+	@Test
+	public void testEncodeMessage() {
+		assertThat(encode("job finished", null, null, null), is(PREFIX + "\"job finished\"}\n"));
+	}
+
+	@Test
+	public void testEncodeFields() {
+		EventFields fields = new EventFields().add("jobId", "job-42").add("rows", 1000L).add("ratio", 0.5).add("ok", true).add("none", (Object) null)
+				.add("count", Integer.valueOf(-7)).add("other", new StringBuilder("sb"));
+
+		assertThat(encode("job finished", null, fields, null),
+				is(PREFIX + "\"job finished\",\"jobId\":\"job-42\",\"rows\":1000,\"ratio\":0.5,\"ok\":true,\"none\":null,\"count\":-7,\"other\":\"sb\"}\n"));
+	}
+
+	@Test
+	public void testEncodeNumbers() {
+		EventFields fields = new EventFields().add("zero", 0L).add("min", Long.MIN_VALUE).add("max", Long.MAX_VALUE).add("nan", Double.NaN);
+
+		assertThat(encode("n", null, fields, null), is(PREFIX + "\"n\",\"zero\":0,\"min\":" + Long.MIN_VALUE + ",\"max\":" + Long.MAX_VALUE
+				+ ",\"nan\":\"NaN\"}\n"));
+	}
+
+	@Test
+	public void testEncodeEscaped() {
+		assertThat(encode("a\"b\\c\nd\re\tf\u0001", null, null, null), is(PREFIX + "\"a\\\"b\\\\c\\nd\\re\\tf\\u0001\"}\n"));
+	}
+
+	@Test
+	public void testEncodeUtf8() {
+		// 2, 3 and 4 bytes characters.
+		String msg = "Caf\u00e9 \u20ac \ud83d\ude00";
+		ByteBuffer buffer = encoder.encode(MILLIS, "job", JULJobLoggerLevel.MESSAGE, msg, null, null, null);
+
+		byte[] expected = (PREFIX + "\"" + msg + "\"}\n").getBytes(StandardCharsets.UTF_8);
+		assertThat(toBytes(buffer), is(expected));
+	}
+
+	@Test
+	public void testEncodeUnpairedSurrogate() {
+		assertThat(encode("a\ud83db", null, null, null), is(PREFIX + "\"a?b\"}\n"));
+	}
+
+	@Test
+	public void testEncodeParams() {
+		assertThat(encode("Job {0} processed {1} records", new Object[] { "job-42", 1000 }, null, null),
+				is(PREFIX + "\"Job job-42 processed 1,000 records\"}\n"));
+	}
+
+	@Test
+	public void testEncodeThrown() {
+		IllegalStateException thrown = new IllegalStateException("Test");
+		String json = encode("failed", null, null, thrown);
+
+		assertThat(json, startsWith(PREFIX + "\"failed\",\"thrown\":\"java.lang.IllegalStateException: Test\\n"));
+		assertThat(json, endsWith("\"}\n"));
+		assertThat(json.indexOf('\n'), is(json.length() - 1));
+	}
+
+	@Test
+	public void testEncodeRecord() {
+		LogRecord lr = new StructuredLogRecord(JULJobLoggerLevel.MESSAGE, "job finished", new EventFields().add("rows", 3L));
+		lr.setMillis(MILLIS);
+		lr.setLoggerName("job");
+
+		assertThat(toString(encoder.encode(lr)), is(PREFIX + "\"job finished\",\"rows\":3}\n"));
+	}
+
+	@Test
+	public void testEncodeGrowsBuffer() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			sb.append((char) ('a' + i % 26));
+		}
+		String msg = sb.toString();
+
+		assertThat(encode(msg, null, null, null), is(PREFIX + "\"" + msg + "\"}\n"));
+
+		// The next record doesn't see the previous one.
+		assertThat(encode("small", null, null, null), is(PREFIX + "\"small\"}\n"));
+	}
+
+	private String encode(String msg, Object[] params, EventFields fields, Throwable thrown) {
+		return toString(encoder.encode(MILLIS, "job", JULJobLoggerLevel.MESSAGE, msg, params, fields, thrown));
+	}
+
+	private static String toString(ByteBuffer buffer) {
+		return new String(toBytes(buffer), StandardCharsets.UTF_8);
+	}
+
+	private static byte[] toBytes(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		return bytes;
+	}
+}
@@ -0,0 +1,234 @@
+package com.fbudassi.logger.handler;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.ErrorManager;
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fbudassi.logger.JULJobLoggerLevel;
+
+/**
+ * Tests for MappedFileHandler.
+ * 
+ * @author fbudassi
+ */
+public class MappedFileHandlerTest {
+
+	private static final String LOG_MESSAGE = "Test log message";
+
+	private File dir;
+	private String destination;
+
+	@Before
+	public void createDirectory() throws IOException {
+		dir = Files.createTempDirectory("joblogger").toFile();
+		destination = new File(dir, "joblogger.log").getPath();
+	}
+
+	@After
+	public void deleteDirectory() {
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	/**
+	 * Constructor tests.
+	 * 
+	 * @throws IOException
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateBlankDestination() throws IOException {
+		new MappedFileHandler(" ", true, 1024, false);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateInvalidSegmentSize() throws IOException {
+		new MappedFileHandler(destination, true, 0, false);
+	}
+
+	/**
+	 * publish tests.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testPublishSingleSegment() throws IOException {
+		MappedFileHandler mfh = newHandler(destination, true, 1024, false);
+		mfh.publish(newRecord(LOG_MESSAGE + 1));
+		mfh.publish(newRecord(LOG_MESSAGE + 2));
+		mfh.close();
+
+		// The segment is truncated to its content.
+		assertThat(read(mfh, 0), is("MESSAGE: " + LOG_MESSAGE + 1 + "\nMESSAGE: " + LOG_MESSAGE + 2 + "\n"));
+		assertThat(mfh.getSegmentFile(1).exists(), is(false));
+	}
+
+	@Test
+	public void testPublishRollsOver() throws IOException {
+		testRollOver(false);
+	}
+
+	@Test
+	public void testPublishRollsOverPreallocated() throws IOException {
+		testRollOver(true);
+	}
+
+	@Test
+	public void testAppendStartsNewSegment() throws IOException {
+		MappedFileHandler mfh = newHandler(destination, true, 1024, false);
+		mfh.publish(newRecord(LOG_MESSAGE));
+		mfh.close();
+
+		mfh = newHandler(destination, true, 1024, false);
+		mfh.publish(newRecord(LOG_MESSAGE));
+		mfh.close();
+		assertThat(mfh.getSegmentFile(1).exists(), is(true));
+
+		// Without append, old segments are removed.
+		mfh = newHandler(destination, false, 1024, false);
+		mfh.close();
+		assertThat(mfh.getSegmentFile(0).length(), is(0L));
+		assertThat(mfh.getSegmentFile(1).exists(), is(false));
+	}
+
+	@Test
+	public void testAppendTrimsZeroTail() throws IOException {
+		// A segment that was never truncated, i.e. the process died.
+		byte[] record = "MESSAGE: a\n".getBytes(StandardCharsets.UTF_8);
+		byte[] untruncated = Arrays.copyOf(record, 10000);
+		Files.write(new File(destination + ".0").toPath(), untruncated);
+
+		MappedFileHandler mfh = newHandler(destination, true, 1024, false);
+		mfh.publish(newRecord("b"));
+		mfh.close();
+
+		assertThat(read(mfh, 0), is("MESSAGE: a\n"));
+		assertThat(read(mfh, 1), is("MESSAGE: b\n"));
+	}
+
+	@Test
+	public void testRollFailureRecovers() throws IOException {
+		testRollFailure(false);
+	}
+
+	@Test
+	public void testRollFailureRecoversPreallocated() throws IOException {
+		testRollFailure(true);
+	}
+
+	/**
+	 * Make the next segment impossible to create, then possible again, and check the handler keeps writing.
+	 * 
+	 * @param preallocate
+	 * @throws IOException
+	 */
+	private void testRollFailure(boolean preallocate) throws IOException {
+		File blocker = new File(destination + ".1");
+		assertThat(blocker.mkdir(), is(true));
+
+		MappedFileHandler mfh = newHandler(destination, false, 16, preallocate);
+		final AtomicInteger errors = new AtomicInteger();
+		mfh.setErrorManager(new ErrorManager() {
+			@Override
+			public synchronized void error(String msg, Exception ex, int code) {
+				errors.incrementAndGet();
+			}
+		});
+
+		// The next record doesn't fit and has to roll over: nothing of it is written.
+		mfh.publish(newRecord("1234"));
+		mfh.publish(newRecord("lost"));
+		assertThat(errors.get(), is(1));
+
+		assertThat(blocker.delete(), is(true));
+		mfh.publish(newRecord("kept"));
+		mfh.close();
+
+		assertThat(read(mfh, 0), is("MESSAGE: 1234\n"));
+		assertThat(read(mfh, 1), is("MESSAGE: kept\n"));
+		assertThat(errors.get(), is(1));
+	}
+
+	/**
+	 * Publish records filling several segments and check every segment holds whole records, in order.
+	 * 
+	 * @param preallocate
+	 * @throws IOException
+	 */
+	private void testRollOver(boolean preallocate) throws IOException {
+		MappedFileHandler mfh = newHandler(destination, false, 64, preallocate);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 10; i++) {
+			mfh.publish(newRecord(LOG_MESSAGE + i));
+			expected.append("MESSAGE: ").append(LOG_MESSAGE).append(i).append('\n');
+		}
+		mfh.close();
+
+		// 27 bytes per record: two of them fit in a segment.
+		StringBuilder actual = new StringBuilder();
+		int segments = 0;
+		for (; mfh.getSegmentFile(segments).exists(); segments++) {
+			String content = read(mfh, segments);
+			assertThat(content.length(), is(54));
+			assertThat(content, startsWith("MESSAGE: "));
+			actual.append(content);
+		}
+		assertThat(actual.toString(), is(expected.toString()));
+		assertThat(segments, is(5));
+	}
+
+	@Test
+	public void testPublishBiggerThanSegment() throws IOException {
+		MappedFileHandler mfh = newHandler(destination, false, 16, false);
+		mfh.publish(newRecord("a"));
+		mfh.publish(newRecord(LOG_MESSAGE));
+		mfh.publish(newRecord("b"));
+		mfh.close();
+
+		// The big record gets a segment of its own.
+		assertThat(read(mfh, 0), is("MESSAGE: a\n"));
+		assertThat(read(mfh, 1), is("MESSAGE: " + LOG_MESSAGE + "\n"));
+		assertThat(read(mfh, 2), is("MESSAGE: b\n"));
+		assertThat(mfh.getBytesWritten(), is((long) (11 + 26 + 11)));
+	}
+
+	/**
+	 * Build a handler with a short one-line formatter.
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	private static MappedFileHandler newHandler(String destination, boolean append, int segmentSize, boolean preallocate) throws IOException {
+		MappedFileHandler mfh = new MappedFileHandler(destination, append, segmentSize, preallocate);
+		mfh.setEncoding(StandardCharsets.UTF_8.name());
+		mfh.setFormatter(new Formatter() {
+			@Override
+			public String format(LogRecord record) {
+				return record.getLevel() + ": " + record.getMessage() + "\n";
+			}
+		});
+		return mfh;
+	}
+
+	private static LogRecord newRecord(String msg) {
+		return new LogRecord(JULJobLoggerLevel.MESSAGE, msg);
+	}
+
+	private static String read(MappedFileHandler mfh, int segment) throws IOException {
+		return new String(Files.readAllBytes(mfh.getSegmentFile(segment).toPath()), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,120 @@
+package com.fbudassi.logger.handler;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.Test;
+
+import com.fbudassi.logger.metrics.JobLoggerMetrics;
+import com.fbudassi.logger.metrics.MetricsSnapshot;
+import com.fbudassi.logger.metrics.QueueGauge;
+
+/**
+ * Tests for MeteredHandler.
+ * 
+ * @author fbudassi
+ */
+public class MeteredHandlerTest {
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullDelegate() {
+		new MeteredHandler(null, "testNullDelegate");
+	}
+
+	@Test
+	public void testByteCounter() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		TextStreamHandler tsh = new TextStreamHandler(out, true);
+		tsh.setEncoding("UTF-8");
+		MeteredHandler mh = new MeteredHandler(tsh, "testByteCounter");
+
+		mh.publish(new LogRecord(Level.INFO, "Caf\u00e9 \u20ac"));
+		mh.publish(new LogRecord(Level.INFO, "Second record"));
+		mh.flush();
+
+		MetricsSnapshot.Sink sink = JobLoggerMetrics.snapshot().getSinks().get("testByteCounter");
+		assertThat(sink.getPublished(), is(2L));
+		assertThat(sink.getErrors(), is(0L));
+		assertThat(sink.getBytesWritten(), is((long) out.size()));
+		assertThat(sink.getLatencyMax(), is(greaterThan(0L)));
+
+		mh.close();
+		assertThat(JobLoggerMetrics.snapshot().getSinks().containsKey("testByteCounter"), is(false));
+	}
+
+	@Test
+	public void testErrorsAndQueue() {
+		FailingHandler fh = new FailingHandler();
+		MeteredHandler mh = new MeteredHandler(fh, "testErrorsAndQueue");
+
+		mh.publish(new LogRecord(Level.INFO, "First"));
+		mh.publish(new LogRecord(Level.INFO, "Second"));
+
+		MetricsSnapshot snapshot = JobLoggerMetrics.snapshot();
+		assertThat(snapshot.getSinks().get("testErrorsAndQueue").getErrors(), is(2L));
+		assertThat(snapshot.getQueues().get("testErrorsAndQueue").getDropped(), is(2L));
+		// The original ErrorManager still gets the errors.
+		assertThat(fh.reported, is(2));
+
+		mh.close();
+		assertThat(JobLoggerMetrics.snapshot().getQueues().containsKey("testErrorsAndQueue"), is(false));
+	}
+
+	@Test
+	public void testLevel() {
+		FailingHandler fh = new FailingHandler();
+		MeteredHandler mh = new MeteredHandler(fh, "testLevel");
+		mh.setLevel(Level.WARNING);
+
+		mh.publish(new LogRecord(Level.INFO, "Filtered"));
+		assertThat(JobLoggerMetrics.snapshot().getSinks().get("testLevel").getPublished(), is(0L));
+		mh.close();
+	}
+
+	/**
+	 * Handler with a queue that drops every record it gets, reporting an error.
+	 */
+	private static class FailingHandler extends Handler implements QueueGauge {
+		private long dropped;
+		private int reported;
+
+		private FailingHandler() {
+			setErrorManager(new ErrorManager() {
+				@Override
+				public synchronized void error(String msg, Exception ex, int code) {
+					reported++;
+				}
+			});
+		}
+
+		@Override
+		public void publish(LogRecord record) {
+			dropped++;
+			reportError("Write failed", null, ErrorManager.WRITE_FAILURE);
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+
+		@Override
+		public long getQueueDepth() {
+			return 0;
+		}
+
+		@Override
+		public long getDropped() {
+			return dropped;
+		}
+	}
+}
@@ -0,0 +1,254 @@
+package com.fbudassi.logger.handler;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fbudassi.logger.JULJobLoggerLevel;
+
+/**
+ * Tests for RollingFileHandler.
+ * 
+ * @author fbudassi
+ */
+public class RollingFileHandlerTest {
+
+	private static final String LOG_MESSAGE = "Test log message";
+
+	/**
+	 * Two formatted records ("MESSAGE: Test log messageN\n") fit in it, not three.
+	 */
+	private static final long MAX_SIZE = 60;
+
+	private File dir;
+	private String destination;
+
+	@Before
+	public void createDirectory() throws IOException {
+		dir = Files.createTempDirectory("joblogger").toFile();
+		destination = new File(dir, "joblogger.log").getPath();
+	}
+
+	@After
+	public void deleteDirectory() {
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	/**
+	 * Constructor tests.
+	 * 
+	 * @throws IOException
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateBlankDestination() throws IOException {
+		new RollingFileHandler(" ", true, MAX_SIZE, 0, 0, false);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateNegativeMaxSize() throws IOException {
+		new RollingFileHandler(destination, true, -1, 0, 0, false);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateNegativeInterval() throws IOException {
+		new RollingFileHandler(destination, true, 0, -1, 0, false);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateNegativeMaxArchives() throws IOException {
+		new RollingFileHandler(destination, true, MAX_SIZE, 0, -1, false);
+	}
+
+	/**
+	 * publish tests.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testPublishRollsBySize() throws IOException {
+		RollingFileHandler rfh = newHandler(true, MAX_SIZE, 0, 0, false);
+		publish(rfh, 1, 5);
+		rfh.close();
+
+		assertThat(read(rfh.getArchiveFile(0, false)), is(lines(1, 2)));
+		assertThat(read(rfh.getArchiveFile(1, false)), is(lines(3, 4)));
+		assertThat(read(rfh.getFile()), is(lines(5, 5)));
+		assertThat(dir.list().length, is(3));
+	}
+
+	@Test
+	public void testPublishRecordBiggerThanMaxSize() throws IOException {
+		RollingFileHandler rfh = newHandler(true, 10, 0, 0, false);
+		publish(rfh, 1, 3);
+		rfh.close();
+
+		// Records are never split, every one of them gets its own file.
+		assertThat(read(rfh.getArchiveFile(0, false)), is(lines(1, 1)));
+		assertThat(read(rfh.getArchiveFile(1, false)), is(lines(2, 2)));
+		assertThat(read(rfh.getFile()), is(lines(3, 3)));
+	}
+
+	@Test
+	public void testPublishRollsByTime() throws Exception {
+		RollingFileHandler rfh = newHandler(true, 0, 100, 0, false);
+		publish(rfh, 1, 1);
+		Thread.sleep(250);
+		publish(rfh, 2, 2);
+		rfh.close();
+
+		assertThat(read(rfh.getArchiveFile(0, false)), is(lines(1, 1)));
+		assertThat(read(rfh.getFile()), is(lines(2, 2)));
+	}
+
+	@Test
+	public void testPublishTimeSkipsEmptyFile() throws Exception {
+		RollingFileHandler rfh = newHandler(true, 0, 100, 0, false);
+		Thread.sleep(250);
+		publish(rfh, 1, 1);
+		rfh.close();
+
+		assertThat(rfh.getArchiveFile(0, false).exists(), is(false));
+		assertThat(read(rfh.getFile()), is(lines(1, 1)));
+	}
+
+	@Test
+	public void testPublishCompresses() throws IOException {
+		RollingFileHandler rfh = newHandler(true, MAX_SIZE, 0, 0, true);
+		publish(rfh, 1, 5);
+		rfh.close();
+
+		// Closing waits for the archives being compressed.
+		assertThat(rfh.getArchiveFile(0, false).exists(), is(false));
+		assertThat(rfh.getArchiveFile(1, false).exists(), is(false));
+		assertThat(gunzip(rfh.getArchiveFile(0, true)), is(lines(1, 2)));
+		assertThat(gunzip(rfh.getArchiveFile(1, true)), is(lines(3, 4)));
+		assertThat(read(rfh.getFile()), is(lines(5, 5)));
+	}
+
+	@Test
+	public void testPublishRetention() throws IOException {
+		RollingFileHandler rfh = newHandler(true, MAX_SIZE, 0, 2, true);
+		publish(rfh, 1, 10);
+		rfh.close();
+
+		// Archives 0 to 3 were deleted, the newest two are kept.
+		assertThat(dir.list().length, is(3));
+		assertThat(gunzip(rfh.getArchiveFile(3, true)), is(lines(7, 8)));
+		assertThat(gunzip(rfh.getArchiveFile(2, true)), is(lines(5, 6)));
+		assertThat(read(rfh.getFile()), is(lines(9, 10)));
+	}
+
+	@Test
+	public void testAppendContinuesArchives() throws IOException {
+		RollingFileHandler rfh = newHandler(true, MAX_SIZE, 0, 0, false);
+		publish(rfh, 1, 3);
+		rfh.close();
+
+		rfh = newHandler(true, MAX_SIZE, 0, 0, false);
+		publish(rfh, 4, 5);
+		rfh.close();
+
+		// The appended file was rolled over to the next archive.
+		assertThat(read(rfh.getArchiveFile(0, false)), is(lines(1, 2)));
+		assertThat(read(rfh.getArchiveFile(1, false)), is(lines(3, 4)));
+		assertThat(read(rfh.getFile()), is(lines(5, 5)));
+	}
+
+	@Test
+	public void testOverwriteKeepsArchives() throws IOException {
+		RollingFileHandler rfh = newHandler(true, MAX_SIZE, 0, 0, false);
+		publish(rfh, 1, 3);
+		rfh.close();
+
+		rfh = newHandler(false, MAX_SIZE, 0, 0, false);
+		publish(rfh, 4, 4);
+		rfh.close();
+
+		assertThat(read(rfh.getArchiveFile(0, false)), is(lines(1, 2)));
+		assertThat(read(rfh.getFile()), is(lines(4, 4)));
+	}
+
+	@Test
+	public void testCreateCompressesLeftovers() throws IOException {
+		File leftover = new File(destination + ".3");
+		Files.write(leftover.toPath(), lines(1, 2).getBytes(StandardCharsets.UTF_8));
+
+		RollingFileHandler rfh = newHandler(true, MAX_SIZE, 0, 0, true);
+		publish(rfh, 3, 5);
+		rfh.close();
+
+		// The leftover is compressed and new archives are numbered after it.
+		assertThat(gunzip(rfh.getArchiveFile(3, true)), is(lines(1, 2)));
+		assertThat(gunzip(rfh.getArchiveFile(4, true)), is(lines(3, 4)));
+		assertThat(leftover.exists(), is(false));
+	}
+
+	@Test
+	public void testPublishJson() throws IOException {
+		RollingFileHandler rfh = newHandler(true, 0, 0, 0, false);
+		rfh.setEncoder(new JsonEncoder());
+		publish(rfh, 1, 1);
+		rfh.close();
+
+		assertThat(read(rfh.getFile()), containsString("\"msg\":\"" + LOG_MESSAGE + "1\""));
+	}
+
+	private RollingFileHandler newHandler(boolean append, long maxSize, long interval, int maxArchives, boolean compress) throws IOException {
+		RollingFileHandler rfh = new RollingFileHandler(destination, append, maxSize, interval, maxArchives, compress);
+		rfh.setEncoding(StandardCharsets.UTF_8.name());
+		rfh.setFormatter(new Formatter() {
+			@Override
+			public String format(LogRecord record) {
+				return record.getLevel() + ": " + record.getMessage() + "\n";
+			}
+		});
+		return rfh;
+	}
+
+	private static void publish(RollingFileHandler rfh, int from, int to) {
+		for (int i = from; i <= to; i++) {
+			rfh.publish(new LogRecord(JULJobLoggerLevel.MESSAGE, LOG_MESSAGE + i));
+		}
+	}
+
+	private static String lines(int from, int to) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = from; i <= to; i++) {
+			sb.append("MESSAGE: ").append(LOG_MESSAGE).append(i).append('\n');
+		}
+		return sb.toString();
+	}
+
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+	}
+
+	private static String gunzip(File file) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (InputStream in = new GZIPInputStream(new FileInputStream(file))) {
+			byte[] buffer = new byte[1024];
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				baos.write(buffer, 0, n);
+			}
+		}
+		return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,129 @@
+package com.fbudassi.logger.handler;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+import org.junit.Test;
+
+import com.fbudassi.logger.handler.SinkRegistry.SinkFactory;
+
+/**
+ * Tests for SinkRegistry.
+ * 
+ * @author fbudassi
+ */
+public class SinkRegistryTest {
+
+	/**
+	 * acquire tests.
+	 * 
+	 * @throws Exception
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testAcquireBlankKey() throws Exception {
+		SinkRegistry.acquire(" ", new CountingFactory());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAcquireNullFactory() throws Exception {
+		SinkRegistry.acquire("testAcquireNullFactory", null);
+	}
+
+	@Test
+	public void testAcquireShared() throws Exception {
+		CountingFactory factory = new CountingFactory();
+
+		Handler first = SinkRegistry.acquire("testAcquireShared", factory);
+		Handler second = SinkRegistry.acquire("testAcquireShared", factory);
+
+		assertThat(second, is(sameInstance(first)));
+		assertThat(factory.created.get(), is(1));
+		assertThat(SinkRegistry.getReferences("testAcquireShared"), is(2));
+
+		SinkRegistry.release("testAcquireShared");
+		SinkRegistry.release("testAcquireShared");
+	}
+
+	@Test
+	public void testAcquireFactoryFails() throws Exception {
+		try {
+			SinkRegistry.acquire("testAcquireFactoryFails", new SinkFactory() {
+				@Override
+				public Handler create() throws Exception {
+					throw new IllegalStateException("Sink unavailable");
+				}
+			});
+			fail("Expected the factory exception");
+		} catch (IllegalStateException e) {
+			assertThat(SinkRegistry.getReferences("testAcquireFactoryFails"), is(0));
+		}
+	}
+
+	/**
+	 * release tests.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testReleaseClosesLastReference() throws Exception {
+		CountingFactory factory = new CountingFactory();
+		SinkRegistry.acquire("testReleaseClosesLastReference", factory);
+		SinkRegistry.acquire("testReleaseClosesLastReference", factory);
+
+		SinkRegistry.release("testReleaseClosesLastReference");
+		assertThat(factory.handler.closed, is(false));
+
+		SinkRegistry.release("testReleaseClosesLastReference");
+		assertThat(factory.handler.closed, is(true));
+		assertThat(SinkRegistry.getReferences("testReleaseClosesLastReference"), is(0));
+
+		// A new acquire builds a new handler.
+		SinkRegistry.acquire("testReleaseClosesLastReference", factory);
+		assertThat(factory.created.get(), is(2));
+		SinkRegistry.release("testReleaseClosesLastReference");
+	}
+
+	@Test
+	public void testReleaseUnknown() {
+		SinkRegistry.release("testReleaseUnknown");
+		assertThat(SinkRegistry.getReferences("testReleaseUnknown"), is(0));
+	}
+
+	/**
+	 * Factory that counts the handlers it builds.
+	 */
+	private static class CountingFactory implements SinkFactory {
+		private final AtomicInteger created = new AtomicInteger();
+		private ClosableHandler handler;
+
+		@Override
+		public Handler create() throws Exception {
+			created.incrementAndGet();
+			return handler = new ClosableHandler();
+		}
+	}
+
+	/**
+	 * Handler that remembers whether it was closed.
+	 */
+	private static class ClosableHandler extends Handler {
+		private volatile boolean closed;
+
+		@Override
+		public void publish(LogRecord record) {
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+}
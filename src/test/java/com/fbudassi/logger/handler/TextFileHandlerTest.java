@@ -0,0 +1,114 @@
+package com.fbudassi.logger.handler;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fbudassi.logger.JULJobLoggerLevel;
+
+/**
+ * Tests for TextFileHandler.
+ * 
+ * @author fbudassi
+ */
+public class TextFileHandlerTest {
+
+	private static final String LOG_MESSAGE = "Test log message";
+
+	private File dir;
+	private String destination;
+
+	@Before
+	public void createDirectory() throws IOException {
+		dir = Files.createTempDirectory("joblogger").toFile();
+		destination = new File(dir, "joblogger.log").getPath();
+	}
+
+	@After
+	public void deleteDirectory() {
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	/**
+	 * Constructor tests.
+	 * 
+	 * @throws IOException
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateBlankDestination() throws IOException {
+		new TextFileHandler(" ", true);
+	}
+
+	@Test
+	public void testCreateNoLockFile() throws IOException {
+		TextFileHandler tfh = newHandler(destination, true);
+		tfh.close();
+
+		assertThat(tfh.getFile(), is(new File(destination)));
+		assertThat(dir.list().length, is(1));
+	}
+
+	/**
+	 * publish tests.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testPublishAppend() throws IOException {
+		TextFileHandler tfh = newHandler(destination, true);
+		tfh.publish(newRecord(LOG_MESSAGE + 1));
+		tfh.close();
+
+		tfh = newHandler(destination, true);
+		tfh.publish(newRecord(LOG_MESSAGE + 2));
+		tfh.close();
+
+		assertThat(read(), is("MESSAGE: " + LOG_MESSAGE + 1 + "\nMESSAGE: " + LOG_MESSAGE + 2 + "\n"));
+	}
+
+	@Test
+	public void testPublishOverwrite() throws IOException {
+		TextFileHandler tfh = newHandler(destination, true);
+		tfh.publish(newRecord(LOG_MESSAGE + 1));
+		tfh.close();
+
+		tfh = newHandler(destination, false);
+		tfh.publish(newRecord(LOG_MESSAGE + 2));
+		tfh.close();
+
+		assertThat(read(), is("MESSAGE: " + LOG_MESSAGE + 2 + "\n"));
+	}
+
+	private static TextFileHandler newHandler(String destination, boolean append) throws IOException {
+		TextFileHandler tfh = new TextFileHandler(destination, append);
+		tfh.setEncoding(StandardCharsets.UTF_8.name());
+		tfh.setFormatter(new Formatter() {
+			@Override
+			public String format(LogRecord record) {
+				return record.getLevel() + ": " + record.getMessage() + "\n";
+			}
+		});
+		return tfh;
+	}
+
+	private static LogRecord newRecord(String msg) {
+		return new LogRecord(JULJobLoggerLevel.MESSAGE, msg);
+	}
+
+	private String read() throws IOException {
+		return new String(Files.readAllBytes(new File(destination).toPath()), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,187 @@
+package com.fbudassi.logger.handler;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+import org.junit.Test;
+
+import com.fbudassi.logger.JULJobLoggerLevel;
+
+/**
+ * Tests for TextStreamHandler.
+ * 
+ * @author fbudassi
+ */
+public class TextStreamHandlerTest {
+
+	private static final String LOG_MESSAGE = "Test log message";
+
+	/**
+	 * Constructor tests.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateOutNull() {
+		new TextStreamHandler(null, true);
+	}
+
+	/**
+	 * publish tests.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testPublishHeadAndTail() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		TextStreamHandler tsh = newHandler(bytes, true);
+		tsh.publish(newRecord(LOG_MESSAGE + 1));
+		tsh.publish(newRecord(LOG_MESSAGE + 2));
+		tsh.close();
+
+		String expected = "HEAD\nMESSAGE: " + LOG_MESSAGE + 1 + "\nMESSAGE: " + LOG_MESSAGE + 2 + "\nTAIL\n";
+		assertThat(new String(bytes.toByteArray(), StandardCharsets.UTF_8), is(expected));
+		assertThat(tsh.getBytesWritten(), is((long) expected.length()));
+	}
+
+	@Test
+	public void testPublishNothingNoTail() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		TextStreamHandler tsh = newHandler(bytes, true);
+		tsh.close();
+
+		assertThat(bytes.size(), is(0));
+	}
+
+	@Test
+	public void testPublishNotLoggable() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		TextStreamHandler tsh = newHandler(bytes, true);
+		tsh.setLevel(JULJobLoggerLevel.ERROR);
+		tsh.publish(newRecord(LOG_MESSAGE));
+		tsh.flush();
+
+		assertThat(bytes.size(), is(0));
+	}
+
+	@Test
+	public void testPublishAfterClose() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		TextStreamHandler tsh = newHandler(bytes, true);
+		tsh.close();
+		tsh.publish(newRecord(LOG_MESSAGE));
+
+		assertThat(bytes.size(), is(0));
+	}
+
+	@Test
+	public void testPublishConcurrentRecordsNotInterleaved() throws Exception {
+		final int threads = 8;
+		final int records = 500;
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final TextStreamHandler tsh = newHandler(bytes, false);
+		final CountDownLatch start = new CountDownLatch(1);
+
+		Thread[] workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int j = 0; j < records; j++) {
+						tsh.publish(newRecord(LOG_MESSAGE));
+					}
+				}
+			});
+			workers[i].start();
+		}
+		start.countDown();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		tsh.close();
+
+		String[] lines = new String(bytes.toByteArray(), StandardCharsets.UTF_8).split("\n");
+		assertThat(lines.length, is(threads * records + 2));
+		for (int i = 1; i < lines.length - 1; i++) {
+			assertThat(lines[i], is("MESSAGE: " + LOG_MESSAGE));
+		}
+	}
+
+	@Test
+	public void testPublishJson() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		TextStreamHandler tsh = newHandler(bytes, true);
+		tsh.setEncoder(new JsonEncoder());
+
+		LogRecord lr = new StructuredLogRecord(JULJobLoggerLevel.MESSAGE, "job finished", new EventFields().add("rows", 3L));
+		lr.setMillis(0);
+		lr.setLoggerName("job");
+		tsh.publish(lr);
+		tsh.close();
+
+		// No head nor tail, only the JSON line.
+		String expected = "{\"time\":\"1970-01-01T00:00:00.000Z\",\"level\":\"MESSAGE\",\"logger\":\"job\",\"msg\":\"job finished\",\"rows\":3}\n";
+		assertThat(new String(bytes.toByteArray(), StandardCharsets.UTF_8), is(expected));
+		assertThat(tsh.getBytesWritten(), is((long) expected.length()));
+	}
+
+	/**
+	 * close tests.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testCloseKeepsStreamOpen() throws IOException {
+		final boolean[] closed = new boolean[1];
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream() {
+			@Override
+			public void close() {
+				closed[0] = true;
+			}
+		};
+
+		newHandler(bytes, false).close();
+		assertThat(closed[0], is(false));
+
+		newHandler(bytes, true).close();
+		assertThat(closed[0], is(true));
+	}
+
+	private static TextStreamHandler newHandler(ByteArrayOutputStream out, boolean closeStream) throws IOException {
+		TextStreamHandler tsh = new TextStreamHandler(out, closeStream);
+		tsh.setEncoding(StandardCharsets.UTF_8.name());
+		tsh.setFormatter(new Formatter() {
+			@Override
+			public String format(LogRecord record) {
+				return record.getLevel() + ": " + record.getMessage() + "\n";
+			}
+
+			@Override
+			public String getHead(Handler h) {
+				return "HEAD\n";
+			}
+
+			@Override
+			public String getTail(Handler h) {
+				return "TAIL\n";
+			}
+		});
+		return tsh;
+	}
+
+	private static LogRecord newRecord(String msg) {
+		return new LogRecord(JULJobLoggerLevel.MESSAGE, msg);
+	}
+}
@@ -0,0 +1,258 @@
+package com.fbudassi.logger.index;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fbudassi.logger.JULJobLoggerLevel;
+import com.fbudassi.logger.handler.JsonEncoder;
+import com.fbudassi.logger.handler.TextFileHandler;
+
+/**
+ * Tests for LogQuery, using TextFileHandler and LogIndexWriter to write the files.
+ * 
+ * @author fbudassi
+ */
+public class LogQueryTest {
+
+	private static final String LOG_MESSAGE = "Test log message";
+	private static final long BASE_MILLIS = 1462097730123L;
+	private static final int BLOCK_SIZE = 1024;
+
+	private File dir;
+	private File log;
+
+	@Before
+	public void createDirectory() throws IOException {
+		dir = Files.createTempDirectory("joblogger").toFile();
+		log = new File(dir, "joblogger.log");
+	}
+
+	@After
+	public void deleteDirectory() {
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	/**
+	 * Index tests.
+	 * 
+	 * @throws IOException
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testIndexNeedsJson() throws IOException {
+		TextFileHandler tfh = new TextFileHandler(log.getPath(), true);
+		try {
+			tfh.enableIndex(BLOCK_SIZE);
+		} finally {
+			tfh.close();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testIndexInvalidBlockSize() throws IOException {
+		new LogIndexWriter(LogIndexFormat.getIndexFile(log), 0, 0);
+	}
+
+	@Test
+	public void testIndexEntries() throws IOException {
+		TextFileHandler tfh = newHandler(true);
+		publish(tfh, 0, 100, JULJobLoggerLevel.MESSAGE);
+		tfh.close();
+
+		// Blocks are contiguous and cover the whole file, the last one was written on close.
+		byte[] index = Files.readAllBytes(LogIndexFormat.getIndexFile(log).toPath());
+		int entries = (index.length - LogIndexFormat.HEADER_SIZE) / LogIndexFormat.ENTRY_SIZE;
+		assertThat((index.length - LogIndexFormat.HEADER_SIZE) % LogIndexFormat.ENTRY_SIZE, is(0));
+		assertThat(entries, is(greaterThan(1)));
+		assertThat((long) entries, is(lessThanOrEqualTo(log.length() / BLOCK_SIZE + 1)));
+	}
+
+	@Test
+	public void testLevelBit() {
+		assertThat(LogIndexFormat.levelBit("ERROR"), is(not(LogIndexFormat.levelBit("WARN"))));
+		assertThat(LogIndexFormat.levelBit("CUSTOM"), is(not(0)));
+		assertThat(LogIndexFormat.levelBit("CUSTOM"), is(LogIndexFormat.levelBit("CUSTOM")));
+	}
+
+	/**
+	 * Query tests.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testQueryAll() throws IOException {
+		TextFileHandler tfh = newHandler(true);
+		publish(tfh, 0, 100, JULJobLoggerLevel.MESSAGE);
+		tfh.close();
+
+		List<String> records = new LogQuery(log).run();
+		assertThat(records.size(), is(100));
+		assertThat(records.get(0), startsWith("{\"time\":\"2016-05-01T10:15:30.123Z\",\"level\":\"MESSAGE\""));
+		assertThat(records.get(99), containsString("\"msg\":\"" + LOG_MESSAGE + 99 + "\""));
+	}
+
+	@Test
+	public void testQueryLevelSkipsBlocks() throws IOException {
+		TextFileHandler tfh = newHandler(true);
+		publish(tfh, 0, 100, JULJobLoggerLevel.MESSAGE);
+		publish(tfh, 100, 103, JULJobLoggerLevel.ERROR);
+		publish(tfh, 103, 200, JULJobLoggerLevel.MESSAGE);
+		tfh.close();
+
+		LogQuery query = new LogQuery(log).level(JULJobLoggerLevel.ERROR);
+		List<String> records = query.run();
+		assertThat(records.size(), is(3));
+		assertThat(records.get(0), containsString("\"msg\":\"" + LOG_MESSAGE + 100 + "\""));
+
+		// Only the blocks holding the errors were read.
+		assertThat(query.getBytesScanned(), is(lessThanOrEqualTo(3L * BLOCK_SIZE)));
+	}
+
+	@Test
+	public void testQueryLevels() throws IOException {
+		TextFileHandler tfh = newHandler(true);
+		publish(tfh, 0, 10, JULJobLoggerLevel.MESSAGE);
+		publish(tfh, 10, 12, JULJobLoggerLevel.WARN);
+		publish(tfh, 12, 15, JULJobLoggerLevel.ERROR);
+		tfh.close();
+
+		assertThat(new LogQuery(log).level(JULJobLoggerLevel.WARN, JULJobLoggerLevel.ERROR).run().size(), is(5));
+		assertThat(new LogQuery(log).level(Level.SEVERE).run().size(), is(0));
+	}
+
+	@Test
+	public void testQueryTime() throws IOException {
+		TextFileHandler tfh = newHandler(true);
+		publish(tfh, 0, 200, JULJobLoggerLevel.MESSAGE);
+		tfh.close();
+
+		// One record per millisecond: from is inclusive, to is exclusive.
+		LogQuery query = new LogQuery(log).from(BASE_MILLIS + 150).to(BASE_MILLIS + 160);
+		List<String> records = query.run();
+		assertThat(records.size(), is(10));
+		assertThat(records.get(0), containsString("\"msg\":\"" + LOG_MESSAGE + 150 + "\""));
+		assertThat(records.get(9), containsString("\"msg\":\"" + LOG_MESSAGE + 159 + "\""));
+		assertThat(query.getBytesScanned(), is(lessThan(log.length() / 2)));
+	}
+
+	@Test
+	public void testQueryUnindexedTail() throws IOException {
+		TextFileHandler tfh = newHandler(true);
+		publish(tfh, 0, 100, JULJobLoggerLevel.MESSAGE);
+		publish(tfh, 100, 101, JULJobLoggerLevel.ERROR);
+
+		// The last block isn't in the index until the handler is closed.
+		try {
+			List<String> records = new LogQuery(log).level(JULJobLoggerLevel.ERROR).run();
+			assertThat(records.size(), is(1));
+		} finally {
+			tfh.close();
+		}
+	}
+
+	@Test
+	public void testQueryAppend() throws IOException {
+		TextFileHandler tfh = newHandler(true);
+		publish(tfh, 0, 50, JULJobLoggerLevel.MESSAGE);
+		tfh.close();
+
+		tfh = newHandler(true);
+		publish(tfh, 50, 100, JULJobLoggerLevel.ERROR);
+		tfh.close();
+
+		LogQuery query = new LogQuery(log).level(JULJobLoggerLevel.ERROR);
+		assertThat(query.run().size(), is(50));
+		assertThat(new LogQuery(log).run().size(), is(100));
+	}
+
+	@Test
+	public void testQueryOverwrite() throws IOException {
+		TextFileHandler tfh = newHandler(true);
+		publish(tfh, 0, 100, JULJobLoggerLevel.ERROR);
+		tfh.close();
+
+		tfh = newHandler(false);
+		publish(tfh, 0, 10, JULJobLoggerLevel.ERROR);
+		tfh.close();
+
+		assertThat(new LogQuery(log).level(JULJobLoggerLevel.ERROR).run().size(), is(10));
+	}
+
+	@Test
+	public void testQueryWithoutIndex() throws IOException {
+		TextFileHandler tfh = newHandler(true);
+		publish(tfh, 0, 30000, JULJobLoggerLevel.MESSAGE);
+		publish(tfh, 30000, 30001, JULJobLoggerLevel.ERROR);
+		tfh.close();
+		LogIndexFormat.getIndexFile(log).delete();
+
+		// The file spans several chunks, scanned in parallel without losing records on their edges.
+		assertThat(log.length(), is(greaterThan(2L * 1024 * 1024)));
+		LogQuery query = new LogQuery(log).parallelism(4);
+		assertThat(query.run().size(), is(30001));
+		assertThat(query.getBytesScanned(), is(greaterThanOrEqualTo(log.length())));
+
+		List<String> records = query.level(JULJobLoggerLevel.ERROR).run();
+		assertThat(records.size(), is(1));
+		assertThat(records.get(0), containsString("\"msg\":\"" + LOG_MESSAGE + 30000 + "\""));
+	}
+
+	@Test
+	public void testQueryInvalidIndex() throws IOException {
+		TextFileHandler tfh = newHandler(true);
+		publish(tfh, 0, 100, JULJobLoggerLevel.ERROR);
+		tfh.close();
+		Files.write(LogIndexFormat.getIndexFile(log).toPath(), new byte[] { 'N', 'O', 'P', 'E', 1 });
+
+		assertThat(new LogQuery(log).level(JULJobLoggerLevel.ERROR).run().size(), is(100));
+	}
+
+	@Test
+	public void testQueryParallel() throws IOException {
+		TextFileHandler tfh = newHandler(true);
+		publish(tfh, 0, 1000, JULJobLoggerLevel.WARN);
+		tfh.close();
+
+		List<String> sequential = new LogQuery(log).parallelism(1).run();
+		List<String> parallel = new LogQuery(log).parallelism(4).run();
+		assertThat(parallel, is(sequential));
+		assertThat(parallel.size(), is(1000));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testQueryInvalidParallelism() {
+		new LogQuery(log).parallelism(0);
+	}
+
+	private TextFileHandler newHandler(boolean append) throws IOException {
+		TextFileHandler tfh = new TextFileHandler(log.getPath(), append);
+		tfh.setEncoder(new JsonEncoder());
+		tfh.enableIndex(BLOCK_SIZE);
+		return tfh;
+	}
+
+	/**
+	 * Publish records from..to (exclusive), one per millisecond.
+	 */
+	private static void publish(TextFileHandler tfh, int from, int to, Level level) {
+		for (int i = from; i < to; i++) {
+			LogRecord lr = new LogRecord(level, LOG_MESSAGE + i);
+			lr.setLoggerName("LogQueryTest");
+			lr.setMillis(BASE_MILLIS + i);
+			tfh.publish(lr);
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package com.fbudassi.logger.limit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests for RateLimiter.
+ * 
+ * @author fbudassi
+ */
+public class RateLimiterTest {
+
+	private static final String KEY = "Test log message: {0}";
+	private static final String OTHER_KEY = "Other log message: {0}";
+
+	/**
+	 * Constructor tests.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateNegativeRate() {
+		new RateLimiter(-1, 1, 1000);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCreateInvalidSampleRate() {
+		new RateLimiter(10, 0, 1000);
+	}
+
+	/**
+	 * tryAcquire tests.
+	 */
+	@Test
+	public void testTryAcquireBurstThenRate() {
+		RateLimiter limiter = new RateLimiter(10, 1, 1000);
+		long now = System.nanoTime();
+
+		// A burst of one second worth of calls goes through, the next one doesn't.
+		for (int i = 0; i < 10; i++) {
+			assertThat(limiter.tryAcquire(KEY, now), is(true));
+		}
+		assertThat(limiter.tryAcquire(KEY, now), is(false));
+
+		// One more permit every 100 ms.
+		assertThat(limiter.tryAcquire(KEY, now + TimeUnit.MILLISECONDS.toNanos(100)), is(true));
+		assertThat(limiter.tryAcquire(KEY, now + TimeUnit.MILLISECONDS.toNanos(100)), is(false));
+	}
+
+	@Test
+	public void testTryAcquirePerKey() {
+		RateLimiter limiter = new RateLimiter(1, 1, 1000);
+		long now = System.nanoTime();
+
+		assertThat(limiter.tryAcquire(KEY, now), is(true));
+		assertThat(limiter.tryAcquire(KEY, now), is(false));
+		assertThat(limiter.tryAcquire(OTHER_KEY, now), is(true));
+		assertThat(limiter.tryAcquire(null, now), is(true));
+	}
+
+	@Test
+	public void testTryAcquireSampling() {
+		RateLimiter limiter = new RateLimiter(0, 10, 1000);
+		long now = System.nanoTime();
+
+		int allowed = 0;
+		for (int i = 0; i < 10000; i++) {
+			if (limiter.tryAcquire(KEY, now)) {
+				allowed++;
+			}
+		}
+		assertThat(allowed, is(both(greaterThan(700)).and(lessThan(1300))));
+		assertThat(limiter.drainSuppressed().get(KEY), is((long) (10000 - allowed)));
+	}
+
+	/**
+	 * Summary tests.
+	 */
+	@Test
+	public void testDrainSuppressed() {
+		RateLimiter limiter = new RateLimiter(1, 1, 1000);
+		long now = System.nanoTime();
+
+		for (int i = 0; i < 5; i++) {
+			limiter.tryAcquire(KEY, now);
+		}
+		limiter.tryAcquire(OTHER_KEY, now);
+
+		Map<String, Long> suppressed = limiter.drainSuppressed();
+		assertThat(suppressed.size(), is(1));
+		assertThat(suppressed.get(KEY), is(4L));
+
+		// Counters are reset.
+		assertThat(limiter.drainSuppressed().isEmpty(), is(true));
+	}
+
+	@Test
+	public void testIsSummaryDue() {
+		RateLimiter limiter = new RateLimiter(1, 1, 1000);
+		long now = System.nanoTime();
+
+		assertThat(limiter.isSummaryDue(now), is(false));
+
+		long later = now + TimeUnit.MILLISECONDS.toNanos(1500);
+		assertThat(limiter.isSummaryDue(later), is(true));
+		assertThat(limiter.isSummaryDue(later), is(false));
+	}
+}
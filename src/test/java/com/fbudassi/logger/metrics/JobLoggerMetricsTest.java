@@ -0,0 +1,109 @@
+package com.fbudassi.logger.metrics;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+import org.junit.Test;
+
+import com.fbudassi.logger.JULJobLoggerLevel;
+
+/**
+ * Tests for JobLoggerMetrics.
+ * 
+ * @author fbudassi
+ */
+public class JobLoggerMetricsTest {
+
+	@Test
+	public void testRecordLevel() {
+		MetricsSnapshot before = JobLoggerMetrics.snapshot();
+
+		JobLoggerMetrics.recordLevel(JULJobLoggerLevel.ERROR);
+		JobLoggerMetrics.recordLevel(JULJobLoggerLevel.WARN);
+		JobLoggerMetrics.recordLevel(JULJobLoggerLevel.WARN);
+		JobLoggerMetrics.recordLevel(JULJobLoggerLevel.MESSAGE);
+		JobLoggerMetrics.recordSuppressed();
+
+		MetricsSnapshot after = JobLoggerMetrics.snapshot();
+		assertThat(after.getErrors() - before.getErrors(), is(1L));
+		assertThat(after.getWarnings() - before.getWarnings(), is(2L));
+		assertThat(after.getMessages() - before.getMessages(), is(1L));
+		assertThat(after.getSuppressed() - before.getSuppressed(), is(1L));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRegisterSinkBlankName() {
+		JobLoggerMetrics.registerSink(" ");
+	}
+
+	@Test
+	public void testRegisterSink() {
+		SinkMetrics metrics = JobLoggerMetrics.registerSink("testRegisterSink");
+		metrics.recordPublish(1000);
+		metrics.recordPublish(3000);
+		metrics.recordError();
+
+		MetricsSnapshot.Sink sink = JobLoggerMetrics.snapshot().getSinks().get("testRegisterSink");
+		assertThat(sink.getPublished(), is(2L));
+		assertThat(sink.getErrors(), is(1L));
+		assertThat(sink.getBytesWritten(), is(-1L));
+		assertThat(sink.getLatencyMax(), is(3000L));
+		assertThat(sink.getLatencyMean(), is(2000L));
+
+		JobLoggerMetrics.unregisterSink("testRegisterSink", metrics);
+		assertThat(JobLoggerMetrics.snapshot().getSinks().containsKey("testRegisterSink"), is(false));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRegisterQueueNullGauge() {
+		JobLoggerMetrics.registerQueue("testRegisterQueueNullGauge", null);
+	}
+
+	@Test
+	public void testRegisterQueue() {
+		QueueGauge gauge = new QueueGauge() {
+			@Override
+			public long getQueueDepth() {
+				return 7;
+			}
+
+			@Override
+			public long getDropped() {
+				return 2;
+			}
+		};
+		JobLoggerMetrics.registerQueue("testRegisterQueue", gauge);
+
+		MetricsSnapshot.Queue queue = JobLoggerMetrics.snapshot().getQueues().get("testRegisterQueue");
+		assertThat(queue.getDepth(), is(7L));
+		assertThat(queue.getDropped(), is(2L));
+
+		JobLoggerMetrics.unregisterQueue("testRegisterQueue", gauge);
+		assertThat(JobLoggerMetrics.snapshot().getQueues().containsKey("testRegisterQueue"), is(false));
+	}
+
+	@Test
+	public void testMBean() throws Exception {
+		JobLoggerMetrics.registerMBean();
+		// Registering twice is harmless.
+		JobLoggerMetrics.registerMBean();
+
+		SinkMetrics metrics = JobLoggerMetrics.registerSink("testMBean");
+		metrics.recordPublish(1000);
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(JobLoggerMetrics.OBJECT_NAME);
+		assertThat((Long) server.getAttribute(name, "ErrorCount"), is(greaterThanOrEqualTo(0L)));
+
+		TabularData published = (TabularData) server.getAttribute(name, "SinkPublishCounts");
+		assertThat(published.get(new Object[] { "testMBean" }).get("value"), is((Object) 1L));
+
+		JobLoggerMetrics.unregisterSink("testMBean", metrics);
+	}
+}
@@ -0,0 +1,85 @@
+package com.fbudassi.logger.metrics;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for LatencyHistogram.
+ * 
+ * @author fbudassi
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBuckets() {
+		assertBuckets(new LatencyHistogram(), 0.25);
+	}
+
+	@Test
+	public void testBucketsPrecision() {
+		assertBuckets(new LatencyHistogram(1), 0.5);
+		assertBuckets(new LatencyHistogram(7), 1.0 / 128);
+		assertBuckets(new LatencyHistogram(10), 1.0 / 1024);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidPrecision() {
+		new LatencyHistogram(0);
+	}
+
+	@Test
+	public void testEmpty() {
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		assertThat(histogram.getCount(), is(0L));
+		assertThat(histogram.getMean(), is(0L));
+		assertThat(histogram.getMax(), is(0L));
+		assertThat(histogram.getValueAtPercentile(99), is(0L));
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+		histogram.record(-5);
+
+		assertThat(histogram.getCount(), is(1001L));
+		assertThat(histogram.getMax(), is(1000000L));
+		assertThat(histogram.getValueAtPercentile(0), is(0L));
+		assertThat(histogram.getValueAtPercentile(100), is(1000000L));
+
+		long p50 = histogram.getValueAtPercentile(50);
+		assertThat(p50, is(both(greaterThanOrEqualTo(500000L)).and(lessThanOrEqualTo(625000L))));
+		long p99 = histogram.getValueAtPercentile(99);
+		assertThat(p99, is(both(greaterThanOrEqualTo(990000L)).and(lessThanOrEqualTo(1000000L))));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidPercentile() {
+		new LatencyHistogram().getValueAtPercentile(101);
+	}
+
+	/**
+	 * Check that every value falls in a bucket whose upper bound is at least the value and at most a certain error over it, and that the previous bucket
+	 * ends before the value.
+	 * 
+	 * @param histogram
+	 * @param error
+	 */
+	private static void assertBuckets(LatencyHistogram histogram, double error) {
+		long[] values = { 0, 1, 3, 4, 5, 7, 8, 9, 1000, 1023, 1024, 123456789, Long.MAX_VALUE / 3, Long.MAX_VALUE };
+		for (long value : values) {
+			int bucket = histogram.getBucket(value);
+			long upper = histogram.getUpperBound(bucket);
+			assertThat(upper, is(greaterThanOrEqualTo(value)));
+			assertThat((double) upper, is(lessThanOrEqualTo(value * (1 + error) + 1)));
+			if (bucket > 0) {
+				assertThat(histogram.getUpperBound(bucket - 1), is(lessThan(value)));
+			}
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package com.fbudassi.logger.sink;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.LogRecord;
+
+import org.junit.Test;
+
+import com.fbudassi.logger.JULJobLoggerLevel;
+import com.fbudassi.logger.handler.EventFields;
+import com.fbudassi.logger.handler.JobLoggerFormatter;
+import com.fbudassi.logger.handler.JsonEncoder;
+
+/**
+ * Tests for ConsoleSink.
+ * 
+ * @author fbudassi
+ */
+public class ConsoleSinkTest {
+
+	private final JobLoggerFormatter formatter = new JobLoggerFormatter();
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOutNull() {
+		new ConsoleSink(null, formatter);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testFormatterNull() {
+		new ConsoleSink(System.err, (JobLoggerFormatter) null);
+	}
+
+	@Test
+	public void testWriteSameAsHandler() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ConsoleSink sink = new ConsoleSink(bytes, formatter);
+
+		LogEvent event = new LogEvent(System.currentTimeMillis(), "testWriteSameAsHandler", JULJobLoggerLevel.WARN, "Job {0} failed", new Object[] { 42 },
+				new IllegalStateException("Test"));
+		sink.write(event);
+		sink.close();
+
+		// Same output a handler with the same formatter writes for the record of the event.
+		LogRecord lr = event.toLogRecord();
+		assertThat(new String(bytes.toByteArray(), Charset.defaultCharset()), is(formatter.format(lr)));
+	}
+
+	@Test
+	public void testWriteJson() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		JsonEncoder encoder = new JsonEncoder();
+		ConsoleSink sink = new ConsoleSink(bytes, encoder);
+
+		LogEvent event = new LogEvent(0, "testWriteJson", JULJobLoggerLevel.ERROR, "job failed", null, new EventFields().add("jobId", "job-42"), null);
+		sink.write(event);
+		sink.close();
+
+		assertThat(new String(bytes.toByteArray(), StandardCharsets.UTF_8),
+				is("{\"time\":\"1970-01-01T00:00:00.000Z\",\"level\":\"ERROR\",\"logger\":\"testWriteJson\",\"msg\":\"job failed\",\"jobId\":\"job-42\"}\n"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEncoderNull() {
+		new ConsoleSink(System.err, (JsonEncoder) null);
+	}
+}
@@ -0,0 +1,103 @@
+package com.fbudassi.logger.sink;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+import org.junit.Test;
+
+import com.fbudassi.logger.JULJobLoggerLevel;
+
+/**
+ * Tests for HandlerSink and LogEvent.
+ * 
+ * @author fbudassi
+ */
+public class HandlerSinkTest {
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testHandlerNull() {
+		new HandlerSink(null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEventLevelNull() {
+		new LogEvent(0, "testEventLevelNull", null, "Test", null, null);
+	}
+
+	@Test
+	public void testWrite() {
+		final List<LogRecord> records = new ArrayList<>();
+		final boolean[] closed = new boolean[1];
+		HandlerSink sink = new HandlerSink(new Handler() {
+			@Override
+			public void publish(LogRecord record) {
+				records.add(record);
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+				closed[0] = true;
+			}
+		});
+
+		Object[] params = new Object[] { "test_param" };
+		Throwable thrown = new IllegalStateException("Test");
+		sink.write(new LogEvent(1234L, "testWrite", JULJobLoggerLevel.ERROR, "Test {0}", params, thrown));
+
+		assertThat(records.size(), is(1));
+		LogRecord lr = records.get(0);
+		assertThat(lr.getMillis(), is(1234L));
+		assertThat(lr.getLoggerName(), is("testWrite"));
+		assertThat(lr.getLevel(), is(JULJobLoggerLevel.ERROR));
+		assertThat(lr.getMessage(), is("Test {0}"));
+		assertThat(lr.getParameters(), is(params));
+		assertThat(lr.getThrown(), is(sameInstance(thrown)));
+
+		sink.close();
+		assertThat(closed[0], is(true));
+	}
+
+	@Test
+	public void testWriteSharedRecord() {
+		CollectingHandler first = new CollectingHandler();
+		CollectingHandler second = new CollectingHandler();
+
+		LogEvent event = new LogEvent(1234L, "testWriteSharedRecord", JULJobLoggerLevel.MESSAGE, "Test", null, null);
+		new HandlerSink(first).write(event);
+		new HandlerSink(second).write(event);
+
+		// Both handlers get the same record, with the same sequence number.
+		assertThat(second.records.get(0), is(sameInstance(first.records.get(0))));
+		assertThat(second.records.get(0).getSequenceNumber(), is(first.records.get(0).getSequenceNumber()));
+	}
+
+	/**
+	 * Handler that keeps every record it gets.
+	 */
+	private static class CollectingHandler extends Handler {
+
+		private final List<LogRecord> records = new ArrayList<>();
+
+		@Override
+		public void publish(LogRecord record) {
+			records.add(record);
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -3,6 +3,9 @@ package com.fbudassi.logger.util;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
 import org.junit.Test;
 
 /**
@@ -25,4 +28,141 @@ public class ExceptionUtilsTest {
 		Exception e = new Exception();
 		assertThat(ExceptionUtils.getStackTrace(e), allOf(is(notNullValue()), startsWith("java.lang.Exception")));
 	}
+
+	@Test
+	public void testGetStackTraceSameAsPrintStackTrace() {
+		Exception e = new IllegalStateException("outer", new IllegalArgumentException("inner"));
+		e.addSuppressed(new RuntimeException("suppressed"));
+
+		StringWriter sw = new StringWriter();
+		e.printStackTrace(new PrintWriter(sw, true));
+		assertThat(ExceptionUtils.getStackTrace(e), is(sw.toString()));
+	}
+
+	@Test
+	public void testGetStackTraceMaxLength() {
+		Exception e = new Exception("message", new Exception("cause"));
+		String full = ExceptionUtils.getStackTrace(e);
+
+		assertThat(ExceptionUtils.getStackTrace(e, 20, Integer.MAX_VALUE), is(full.substring(0, 20)));
+		assertThat(ExceptionUtils.getStackTrace(e, full.length() + 10, Integer.MAX_VALUE), is(full));
+	}
+
+	@Test
+	public void testGetStackTraceMaxFrames() {
+		Exception e = new Exception();
+		int frames = e.getStackTrace().length;
+
+		String trace = ExceptionUtils.getStackTrace(e, Integer.MAX_VALUE, 2);
+		assertThat(trace.split("\tat ").length, is(3));
+		assertThat(trace, containsString("... " + (frames - 2) + " frames omitted"));
+	}
+
+	@Test
+	public void testGetStackTraceRepeatedFrames() {
+		StackOverflowError error = recurse(0);
+
+		String trace = ExceptionUtils.getStackTrace(error);
+		assertThat(trace, containsString("... repeated "));
+		assertThat(trace.length(), is(lessThan(4096)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAppendStackTraceNegativeMaxLength() {
+		ExceptionUtils.appendStackTrace(new StringBuilder(), new Exception(), -1, 10);
+	}
+
+	@Test
+	public void testAppendStackTraceKeepsBuilderContent() {
+		StringBuilder sb = new StringBuilder("prefix ");
+		ExceptionUtils.appendStackTrace(sb, new Exception(), 9, Integer.MAX_VALUE);
+		assertThat(sb.toString(), is("prefix java.lang"));
+	}
+
+	/**
+	 * capture tests.
+	 */
+	@Test
+	public void testCaptureNull() {
+		assertThat(ExceptionUtils.capture(null), is(nullValue()));
+	}
+
+	@Test
+	public void testCaptureRendersSameAsOriginal() {
+		Exception e = new IllegalStateException("outer", new IllegalArgumentException("inner"));
+		e.addSuppressed(new RuntimeException("suppressed"));
+
+		Throwable captured = ExceptionUtils.capture(e);
+		assertThat(captured, is(instanceOf(CapturedThrowable.class)));
+		assertThat(captured.toString(), is(e.toString()));
+		assertThat(ExceptionUtils.getStackTrace(captured), is(ExceptionUtils.getStackTrace(e)));
+		assertThat(ExceptionUtils.getFingerprint(captured), is(ExceptionUtils.getFingerprint(e)));
+	}
+
+	@Test
+	public void testCaptureCausesCycle() {
+		Exception first = new Exception();
+		Exception second = new Exception(first);
+		first.initCause(second);
+
+		Throwable captured = ExceptionUtils.capture(first);
+		assertThat(captured.getCause(), is(notNullValue()));
+		assertThat(captured.getCause().getCause(), is(nullValue()));
+	}
+
+	/**
+	 * getFingerprint tests.
+	 */
+	@Test
+	public void testGetFingerprintNull() {
+		assertThat(ExceptionUtils.getFingerprint(null), is(0L));
+	}
+
+	@Test
+	public void testGetFingerprintIgnoresMessage() {
+		long[] fingerprints = new long[2];
+		for (int i = 0; i < fingerprints.length; i++) {
+			fingerprints[i] = ExceptionUtils.getFingerprint(new Exception("message " + i));
+		}
+		assertThat(fingerprints[0], is(fingerprints[1]));
+	}
+
+	@Test
+	public void testGetFingerprintDifferentClass() {
+		Exception e = new Exception("message");
+		RuntimeException re = new RuntimeException("message");
+		re.setStackTrace(e.getStackTrace());
+		assertThat(ExceptionUtils.getFingerprint(re), is(not(ExceptionUtils.getFingerprint(e))));
+	}
+
+	@Test
+	public void testGetFingerprintDifferentCause() {
+		Exception e = new Exception("message");
+		Exception withCause = new Exception("message");
+		withCause.setStackTrace(e.getStackTrace());
+		withCause.initCause(new IllegalStateException());
+		assertThat(ExceptionUtils.getFingerprint(withCause), is(not(ExceptionUtils.getFingerprint(e))));
+	}
+
+	@Test
+	public void testGetFingerprintCausesCycle() {
+		Exception first = new Exception();
+		Exception second = new Exception(first);
+		first.initCause(second);
+		assertThat(ExceptionUtils.getFingerprint(first), is(not(0L)));
+	}
+
+	/**
+	 * Recurse until the stack overflows.
+	 * 
+	 * @param depth
+	 * @return
+	 */
+	private static StackOverflowError recurse(int depth) {
+		try {
+			return recurse(depth + 1);
+		} catch (StackOverflowError e) {
+			return e;
+		}
+	}
 }
@@ -3,6 +3,7 @@ package com.fbudassi.logger.util;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Properties;
 
@@ -85,4 +86,26 @@ public class PropertiesUtilsTest {
 
 		assertThat(props.getProperty(TEST_KEY), is("old"));
 	}
+
+	/**
+	 * getClasspathFile tests.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testGetClasspathFileBlank() {
+		PropertiesUtils.getClasspathFile(" ");
+	}
+
+	@Test
+	public void testGetClasspathFileExistent() {
+		File file = PropertiesUtils.getClasspathFile("joblogger.properties");
+
+		assertThat(file, is(notNullValue()));
+		assertThat(file.isFile(), is(true));
+		assertThat(file.getName(), is("joblogger.properties"));
+	}
+
+	@Test
+	public void testGetClasspathFileNonExistent() {
+		assertThat(PropertiesUtils.getClasspathFile("nonexistent.properties"), is(nullValue()));
+	}
 }
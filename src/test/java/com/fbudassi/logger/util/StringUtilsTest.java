@@ -82,4 +82,22 @@ public class StringUtilsTest {
 	public void testTruncateLessThan() {
 		assertThat(StringUtils.truncate(TEST_STRING, TEST_STRING.length() - 1), is(TEST_STRING.substring(0, TEST_STRING.length() - 1)));
 	}
+
+	/**
+	 * getUtf8Length tests.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetUtf8LengthNull() {
+		assertThat(StringUtils.getUtf8Length(null), is(0));
+	}
+
+	@Test
+	public void testGetUtf8Length() throws Exception {
+		String[] strings = { "", TEST_STRING, "Caf\u00e9", "\u20ac 10", "\ud83d\ude00 smile" };
+		for (String str : strings) {
+			assertThat(StringUtils.getUtf8Length(str), is(str.getBytes("UTF-8").length));
+		}
+	}
 }